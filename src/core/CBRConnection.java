@@ -4,6 +4,7 @@
  */
 package core;
 
+import input.TransferDoneEvent;
 import routing.MessageRouter;
 
 /**
@@ -12,6 +13,31 @@ import routing.MessageRouter;
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** world where the transfer done events are scheduled (null if they
+	 * are not scheduled) */
+	private static World world = null;
+
+	static {
+		DTNSim.registerForReset(CBRConnection.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Sets the world where the connections schedule an event for the time
+	 * when a message transfer is done
+	 * @param w The world or null if the events are not scheduled
+	 * @see World#TRANSFER_DONE_EVENTS_S
+	 */
+	static void setWorld(World w) {
+		world = w;
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static void reset() {
+		world = null;
+	}
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -56,6 +82,10 @@ public class CBRConnection extends Connection {
 			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() +
 			(1.0*m.getSize()) / this.speed;
+			if (world != null) {
+				world.scheduleEvent(new TransferDoneEvent(this, newMessage,
+						from, this.transferDoneTime));
+			}
 		}
 
 		return retVal;
@@ -204,6 +204,32 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 
+	/**
+	 * Returns the current destination (the next waypoint) of the node
+	 * @return The destination or null if the node has no destination yet
+	 */
+	public Coord getDestination() {
+		return this.destination;
+	}
+
+	/**
+	 * Returns how long the node keeps moving (with a constant speed) towards
+	 * its current destination if it is moved now, i.e., the time it takes
+	 * to reach the destination.
+	 * @return The time to reach the destination, or 0 if the node doesn't
+	 * move now (it is waiting, its movement is not active, or it has no
+	 * destination)
+	 */
+	public double getTimeToDestination() {
+		if (this.destination == null || this.speed <= 0 ||
+				SimClock.getTime() < this.nextTimeToMove ||
+				!isMovementActive()) {
+			return 0;
+		}
+
+		return this.location.distance(this.destination) / this.speed;
+	}
+
 	/**
 	 * Sets the Node's location overriding any location set by movement model
 	 * @param location The location to set
@@ -327,6 +353,18 @@ public class DTNHost implements Comparable<DTNHost> {
 		forceConnection(h,null,true);
 	}
 
+	/**
+	 * Returns the time when the router of this host has time driven work to
+	 * do at its update (see {@link MessageRouter#getNextTimedUpdate()})
+	 * @return The time or Double.MAX_VALUE if there is no such work
+	 */
+	public double getNextTimedUpdate() {
+		if (this.router == null) {
+			return Double.MAX_VALUE;
+		}
+		return this.router.getNextTimedUpdate();
+	}
+
 	/**
 	 * Updates node's network layer and router.
 	 * @param simulateConnections Should network layer be updated too
@@ -375,7 +413,6 @@ public class DTNHost implements Comparable<DTNHost> {
 	public void move(double timeIncrement) {
 		double possibleMovement;
 		double distance;
-		double dx, dy;
 
 		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return;
@@ -399,6 +436,52 @@ public class DTNHost implements Comparable<DTNHost> {
 			distance = this.location.distance(this.destination);
 		}
 
+		moveTowardsDestination(possibleMovement, distance);
+	}
+
+	/**
+	 * Moves the node for the given time if the node stays on its current
+	 * path segment (i.e., doesn't reach its current destination). Unlike
+	 * {@link #move(double)}, this method never requests new paths or
+	 * waypoints and doesn't inform movement listeners, so it can be called
+	 * for different hosts concurrently. The activeness of the movement
+	 * model is <strong>not</strong> checked; caller must do that.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved (or it was not time to move yet),
+	 * false if the move requires a new waypoint and
+	 * {@link #move(double)} must be called instead. Nothing is changed
+	 * if false is returned.
+	 */
+	public boolean moveOnCurrentSegment(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+
+		if (SimClock.getTime() < this.nextTimeToMove) {
+			return true; // not time to move yet
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+		if (possibleMovement >= distance) {
+			return false; // would reach the destination
+		}
+
+		moveTowardsDestination(possibleMovement, distance);
+		return true;
+	}
+
+	/**
+	 * Moves the node towards the current destination
+	 * @param possibleMovement How much the node moves
+	 * @param distance Distance to the destination
+	 */
+	private void moveTowardsDestination(double possibleMovement,
+			double distance) {
+		double dx, dy;
+
 		// move towards the point for possibleMovement amount
 		dx = (possibleMovement/distance) * (this.destination.getX() -
 				this.location.getX());
@@ -7,9 +7,18 @@ import gui.DTNSimGUI;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import report.Report;
 import ui.DTNSimTextUI;
+import ui.DTNSimUI;
 
 /**
  * Simulator's main class
@@ -20,6 +29,11 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** If this option ({@value}) follows the batch mode's number of runs,
+	 * the runs are executed in parallel in separate
+	 * {@link SimulationContext}s. The option must be followed by the
+	 * number of threads to use. */
+	public static final String PARALLEL_FLAG = "-p";
 
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -32,7 +46,9 @@ public class DTNSim {
 	 * If first argument is {@link #BATCH_MODE_FLAG}, the batch mode and text UI
 	 * is started. The batch mode option must be followed by the number of runs,
 	 * or a with a combination of starting run and the number of runs,
-	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
+	 * delimited with a {@value #RANGE_DELIMETER}, and optionally by the
+	 * {@value #PARALLEL_FLAG} option and the number of threads for parallel
+	 * runs. Different settings from run
 	 * arrays are used for different runs (see
 	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings
 	 * files for the simulation run (if any). For GUI mode, the number before
@@ -45,6 +61,7 @@ public class DTNSim {
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
+		int nrofThreads = 0;
 
 		/* set US locale to parse decimals in consistent way */
 		java.util.Locale.setDefault(java.util.Locale.US);
@@ -59,6 +76,11 @@ public class DTNSim {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
                 }
+				if (args.length > firstConfIndex + 1 &&
+						args[firstConfIndex].equals(PARALLEL_FLAG)) {
+					nrofThreads = parseNrofThreads(args[firstConfIndex + 1]);
+					firstConfIndex += 2;
+				}
 			}
 			else { /* GUI mode */
 				try { /* is there a run index for the GUI mode ? */
@@ -78,14 +100,26 @@ public class DTNSim {
 
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			int nrofFailed = 0;
+			if (nrofThreads > 0) {
+				nrofFailed = runInParallel(confFiles, firstConfIndex,
+						nrofRuns, nrofThreads);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
+			if (nrofFailed > 0) {
+				System.err.println(nrofFailed + " of " +
+						(nrofRuns[1] - nrofRuns[0]) + " runs failed");
+				System.exit(-1);
+			}
 		}
 		else {
 			Settings.setRunIndex(guiIndex);
@@ -93,6 +127,129 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Executes batch mode runs in parallel. Every run is executed in its own
+	 * {@link SimulationContext}. The lines the runs print start with the
+	 * run's index. If a run fails, the error is printed with the run's index
+	 * and the other runs are executed normally.
+	 * @param confFiles File name paths where to read the settings
+	 * @param firstConfIndex Index of the first config file name
+	 * @param nrofRuns The first and (last_run_index - 1) of the runs
+	 * @param nrofThreads How many runs are executed at the same time
+	 * @return The number of runs that failed
+	 */
+	private static int runInParallel(final String[] confFiles,
+			final int firstConfIndex, int[] nrofRuns, int nrofThreads) {
+		try {
+			checkReportFiles(nrofRuns);
+		} catch (SettingsError er) {
+			System.err.println("Can't start: " + er.getMessage());
+			System.exit(-1);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nrofThreads);
+		List<Future<Boolean>> runs = new ArrayList<Future<Boolean>>();
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			final String run = "Run " + (i+1) + "/" + nrofRuns[1];
+			runs.add(pool.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					print(run + " started");
+					try {
+						new SimulationContext().run(confFiles, firstConfIndex,
+								runIndex, run + ": ");
+					} catch (Throwable t) {
+						synchronized (System.err) {
+							System.err.println(run + " failed: " + t);
+							t.printStackTrace();
+						}
+						return false;
+					}
+					print(run + " done");
+					return true;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		int nrofFailed = 0;
+		for (Future<Boolean> f : runs) {
+			try {
+				if (!f.get()) {
+					nrofFailed++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return nrofFailed;
+			} catch (ExecutionException e) {
+				/* the runs catch their errors */
+				throw new SimError("Unexpected run failure: " + e.getCause());
+			}
+		}
+		return nrofFailed;
+	}
+
+	/**
+	 * Checks that runs that are executed in parallel don't write to the
+	 * same report files.
+	 * @param nrofRuns The first and (last_run_index - 1) of the runs
+	 * @throws SettingsError if two runs would write to the same file
+	 */
+	private static void checkReportFiles(int[] nrofRuns) {
+		Map<String, Integer> files = new HashMap<String, Integer>();
+
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			Settings.setRunIndex(i);
+			Settings s = new Settings();
+			String scenarioName = s.valueFillString(s.getSetting(
+					SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S));
+
+			for (int j=1, n = s.getInt(DTNSimUI.NROF_REPORT_S); j<=n; j++) {
+				String reportClass = s.getSetting(DTNSimUI.REPORT_S + j);
+				reportClass = reportClass.substring(
+						reportClass.lastIndexOf('.') + 1);
+				Settings rs = new Settings(reportClass);
+				rs.setSecondaryNamespace(Report.REPORT_NS);
+				String file;
+				if (rs.contains(Report.OUTPUT_SETTING)) {
+					file = rs.valueFillString(rs.getSetting(
+							Report.OUTPUT_SETTING));
+				}
+				else {
+					String outDir = s.getSetting(Report.REPORTDIR_SETTING);
+					if (!outDir.endsWith("/")) {
+						outDir += "/";
+					}
+					file = outDir + scenarioName + "_" + reportClass;
+				}
+
+				Integer other = files.put(file, i);
+				if (other != null && other != i) {
+					throw new SettingsError("Runs " + (other + 1) + " and " +
+							(i + 1) + " would write the same report " +
+							file + "; use a different " + SimScenario.SCENARIO_NS +
+							"." + SimScenario.NAME_S + " (or report output) " +
+							"for every parallel run");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes one batch mode run. Called by {@link SimulationContext} for
+	 * the context's own DTNSim class. Errors are thrown to the caller.
+	 * @param confFiles File name paths where to read the settings
+	 * @param firstConfIndex Index of the first config file name
+	 * @param runIndex The run index of the run
+	 * @param outputPrefix Prefix of the lines the run prints
+	 */
+	public static void runInContext(String[] confFiles, int firstConfIndex,
+			int runIndex, String outputPrefix) {
+		loadSettings(confFiles, firstConfIndex);
+		Settings.setRunIndex(runIndex);
+		new DTNSimTextUI(outputPrefix).start(true);
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings
@@ -129,6 +286,25 @@ public class DTNSim {
 		}
 	}
 
+	/**
+	 * Loads the settings of a run that is executed in a simulation context.
+	 * Unlike {@link #initSettings(String[], int)}, errors are thrown to the
+	 * caller.
+	 * @param confFiles File name paths where to read additional settings
+	 * @param firstIndex Index of the first config file name
+	 * @throws SettingsError if the settings can't be loaded
+	 */
+	private static void loadSettings(String[] confFiles, int firstIndex) {
+		if (firstIndex >= confFiles.length) {
+			return;
+		}
+
+		Settings.init(confFiles[firstIndex]);
+		for (int i=firstIndex+1; i<confFiles.length; i++) {
+			Settings.addSettings(confFiles[i]);
+		}
+	}
+
 	/**
 	 * Registers a class for resetting. Reset is performed after every
 	 * batch run of the simulator to reset the class' state to initial
@@ -216,6 +392,29 @@ public class DTNSim {
 		return val;
 	}
 
+	/**
+	 * Parses the number of threads for parallel runs from a command line
+	 * argument
+	 * @param arg The argument to parse
+	 * @return The number of threads
+	 */
+	private static int parseNrofThreads(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			val = 0;
+		}
+
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of threads");
+			System.exit(-1);
+		}
+
+		return val;
+	}
+
 	/**
 	 * Prints text to stdout
 	 * @param txt Text to print
@@ -4,34 +4,46 @@
  */
 package core;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * The parts of a message that never change (source, destination, id, size,
+ * creation time, and application id) are shared by all replicates of the
+ * message. The path of a replicate shares the path of the message it was
+ * replicated from, and the properties are copied only when a replicate
+ * changes them.
+ * Message IDs are interned to dense int indexes (see {@link #getIdIndex()})
+ * that can be used as primitive keys instead of the ID strings. An ID keeps
+ * its index for the whole run, also when all the messages with the ID are
+ * gone, so the indexes don't depend on garbage collection; the table of
+ * interned IDs is cleared between runs.
  */
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path;
+	/** the immutable data shared by the replicates */
+	private Payload payload;
+	/** Nodes this message has passed (the last node of the path) */
+	private Path path;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Interned message IDs of this run */
+	private static Map<String, InternedId> ids;
+	/** Interned message IDs of this run by their indexes */
+	private static List<InternedId> idsByIndex;
+	/** Next ID index to be given */
+	private static int nextIdIndex;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
 	/** Initial TTL of the message */
 	private int initTtl;
 
@@ -45,9 +57,8 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
-
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** are the properties shared with other replicates (copy on write) */
+	private boolean propertiesShared;
 
 	static {
 		reset();
@@ -63,23 +74,28 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this(new Payload(from, to, internId(id), size, SimClock.getTime(),
+				null));
+		addNodeOnPath(from);
+	}
+
+	/**
+	 * Creates a new Message with the given immutable data and an empty path
+	 * @param payload The immutable data of the message
+	 */
+	private Message(Payload payload) {
+		this.payload = payload;
+		this.path = null;
 		this.uniqueId = nextUniqueId;
 
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
+		this.timeReceived = SimClock.getTime();
 		this.initTtl = INFINITE_TTL;
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
-		this.appID = null;
+		this.propertiesShared = false;
 
 		Message.nextUniqueId++;
-		addNodeOnPath(from);
 	}
 
 	/**
@@ -87,7 +103,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.payload.from;
 	}
 
 	/**
@@ -95,7 +111,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.payload.to;
 	}
 
 	/**
@@ -103,7 +119,19 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.payload.id.id;
+	}
+
+	/**
+	 * Returns the index of the message's ID. All messages with the same ID
+	 * have the same index and the indexes are given in the order the IDs
+	 * are first used (starting from 0), so they can be used as primitive
+	 * keys or array indexes instead of the ID strings. An ID keeps its
+	 * index until the simulator is reset.
+	 * @return The index of the message ID
+	 */
+	public int getIdIndex() {
+		return this.payload.id.index;
 	}
 
 	/**
@@ -120,7 +148,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.payload.size;
 	}
 
 	/**
@@ -128,12 +156,13 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new Path(node, this.path);
 	}
 
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list can't
+	 * be modified and it doesn't change when nodes are added to the path.
+	 * @return The list
 	 */
 	public List<DTNHost> getHops() {
 		return this.path;
@@ -159,11 +188,24 @@ public class Message implements Comparable<Message> {
 		}
 		else {
 			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+					(SimClock.getTime()-this.payload.timeCreated)) /60.0 );
 		}
 	}
 
 
+	/**
+	 * Returns the time after which the TTL of the message has run out, i.e.,
+	 * {@link #getTtl()} returns zero or less. The TTL is in whole minutes, so
+	 * this is one minute before the initial TTL has passed completely.
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.payload.timeCreated + (this.initTtl - 1) * 60.0;
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -195,7 +237,7 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.payload.timeCreated;
 	}
 
 	/**
@@ -246,28 +288,28 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id;
+		return this.payload.id.id;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. The immutable data and the
+	 * path are shared with the other message and the properties are shared
+	 * until either of the messages changes them. If new fields are
 	 * introduced to this class, most likely they should be copied here too
 	 * (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
+		this.payload = m.payload;
+		this.path = m.path;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
-		this.appID = m.appID;
 
+		this.properties = m.properties;
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 
@@ -317,6 +359,11 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}
+		else if (this.propertiesShared) {
+			/* copy on write; the other replicates keep the old values */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,7 +373,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
+		Message m = new Message(this.payload);
 		m.copyFrom(this);
 		return m;
 	}
@@ -344,20 +391,179 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		ids = new HashMap<String, InternedId>();
+		idsByIndex = new ArrayList<InternedId>();
+		nextIdIndex = 0;
+	}
+
+	/**
+	 * Returns the index of a message ID (see {@link #getIdIndex()})
+	 * @param id The message ID
+	 * @return The index of the ID or -1 if no message of this run has had
+	 * the ID
+	 */
+	public static int getIdIndex(String id) {
+		InternedId interned = ids.get(id);
+		return interned == null ? -1 : interned.index;
+	}
+
+	/**
+	 * Returns the message ID of an index (see {@link #getIdIndex()})
+	 * @param idIndex The index of the ID
+	 * @return The message ID or null if no ID of this run has the index
+	 */
+	public static String getId(int idIndex) {
+		if (idIndex < 0 || idIndex >= idsByIndex.size()) {
+			return null;
+		}
+		return idsByIndex.get(idIndex).id;
+	}
+
+	/**
+	 * Returns the interned message ID. IDs that have not been used yet get
+	 * the next free index.
+	 * @param id The message ID
+	 * @return The interned ID
+	 */
+	private static InternedId internId(String id) {
+		InternedId interned = ids.get(id);
+		if (interned == null) {
+			interned = new InternedId(id, nextIdIndex++);
+			ids.put(id, interned);
+			idsByIndex.add(interned);
+		}
+		return interned;
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.payload.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		Payload p = this.payload;
+		this.payload = new Payload(p.from, p.to, p.id, p.size,
+				p.timeCreated, appID);
+	}
+
+	/**
+	 * Message ID and its index. Messages that have the same ID share the
+	 * object.
+	 */
+	private static final class InternedId {
+		private final String id;
+		private final int index;
+
+		private InternedId(String id, int index) {
+			this.id = id;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The data of a message that is the same for all its replicates
+	 */
+	private static final class Payload {
+		private final DTNHost from;
+		private final DTNHost to;
+		/** Identifier of the message */
+		private final InternedId id;
+		/** Size of the message (bytes) */
+		private final int size;
+		/** The time when this message was created */
+		private final double timeCreated;
+		/** Application ID of the application that created the message */
+		private final String appID;
+
+		private Payload(DTNHost from, DTNHost to, InternedId id, int size,
+				double timeCreated, String appID) {
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.size = size;
+			this.timeCreated = timeCreated;
+			this.appID = appID;
+		}
 	}
 
+	/**
+	 * Path of a message as an immutable list of nodes. Every path object
+	 * holds the last node of the path and refers to the path before it, so
+	 * the paths of replicates share their common beginning.
+	 */
+	private static final class Path extends AbstractList<DTNHost> {
+		/** the last node of the path */
+		private final DTNHost node;
+		/** the path before the last node (null for the first node) */
+		private final Path previous;
+		/** number of nodes on the path */
+		private final int size;
+
+		private Path(DTNHost node, Path previous) {
+			this.node = node;
+			this.previous = previous;
+			this.size = (previous == null ? 1 : previous.size + 1);
+		}
+
+		@Override
+		public DTNHost get(int index) {
+			if (index < 0 || index >= this.size) {
+				throw new IndexOutOfBoundsException("Index: " + index +
+						", Size: " + this.size);
+			}
+			Path p = this;
+			for (int i = this.size - 1; i > index; i--) {
+				p = p.previous;
+			}
+			return p.node;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for (Path p = this; p != null; p = p.previous) {
+				if (p.node == null ? o == null : p.node.equals(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Iterator<DTNHost> iterator() {
+			final DTNHost[] nodes = new DTNHost[this.size];
+			int i = this.size;
+			for (Path p = this; p != null; p = p.previous) {
+				nodes[--i] = p.node;
+			}
+
+			return new Iterator<DTNHost>() {
+				private int next = 0;
+
+				public boolean hasNext() {
+					return next < nodes.length;
+				}
+
+				public DTNHost next() {
+					if (next >= nodes.length) {
+						throw new NoSuchElementException();
+					}
+					return nodes[next++];
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
 }
@@ -4,7 +4,6 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
@@ -60,6 +59,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** index of this interface in its connectivity optimizer (or -1) */
+	private int optimizerIndex = -1;
+	/** visitor that tries to connect to the visited interfaces */
+	private ConnectivityOptimizer.NearInterfaceVisitor connector = null;
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
@@ -155,7 +158,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+			optimizer = ConnectivityOptimizer.getOptimizer(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
 		} else {
@@ -224,6 +227,34 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 
+	/**
+	 * Returns the connectivity optimizer of this interface
+	 * @return the connectivity optimizer or null if the interface doesn't
+	 * use one (e.g., it has no transmit range)
+	 */
+	public ConnectivityOptimizer getOptimizer() {
+		return this.optimizer;
+	}
+
+	/**
+	 * Returns the index the connectivity optimizer has given to this
+	 * interface (see {@link #setOptimizerIndex(int)})
+	 * @return The index or -1 if no index has been set
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+
+	/**
+	 * Sets the index of this interface in its connectivity optimizer.
+	 * Optimizers can use the index for finding the interface's data
+	 * without a hash lookup.
+	 * @param index The index (or -1 to clear it)
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+
 	/**
 	 * Returns true if the interface is on at the moment (false if not)
 	 * @return true if the interface is on at the moment (false if not)
@@ -360,6 +391,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
+		if (optimizer != null) {
+			return optimizer.isWithinRange(this, anotherInterface,
+					smallerRange);
+		}
+
 		return this.host.getLocation().distance(
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
@@ -379,6 +415,21 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 
+	/**
+	 * Tries to connect to all interfaces the connectivity optimizer finds
+	 * to be near this interface (see {@link #connect(NetworkInterface)}).
+	 */
+	protected void connectToNearInterfaces() {
+		if (this.connector == null) {
+			this.connector = new ConnectivityOptimizer.NearInterfaceVisitor() {
+				public void visit(NetworkInterface ni) {
+					connect(ni);
+				}
+			};
+		}
+		optimizer.visitNearInterfaces(this, this.connector);
+	}
+
 	/**
 	 * Makes sure that a value is positive
 	 * @param value Value to check
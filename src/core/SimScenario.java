@@ -164,6 +164,13 @@ public class SimScenario implements Serializable {
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval,
 				updateListeners, simulateConnections,
 				eqHandler.getEventQueues());
+
+		/* the world needs to know about changes in hosts it didn't update */
+		World.AffectedHostsListener ahl = world.getAffectedHostsListener();
+		if (ahl != null) {
+			addMessageListener(ahl);
+			addConnectionListener(ahl);
+		}
 	}
 
 	/**
@@ -379,9 +386,8 @@ public class SimScenario implements Serializable {
 					mRouterProto.addApplication(protoApp);
 				} catch (SettingsError se) {
 					// Failed to create an application for this group
-					System.err.println("Failed to setup an application: " + se);
-					System.err.println("Caught at " + se.getStackTrace()[0]);
-					System.exit(-1);
+					throw new SettingsError("Failed to setup an application: " +
+							se.getMessage());
 				}
 			}
 
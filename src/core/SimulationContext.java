@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Context of a simulation run that is isolated from the other runs in the
+ * same JVM. The per-run state of the simulator (settings, simulation clock,
+ * scenario, address and id counters, connectivity grids, random number
+ * generators, etc.) is kept in static fields, so a context loads all the
+ * simulator's classes with its own class loader: the static state of the
+ * context's classes is owned by the context and the runs of different
+ * contexts can be executed concurrently. The classes are loaded from the
+ * class path of the JVM; only the Java platform classes are shared.
+ */
+public class SimulationContext {
+	/** Name of the method that runs a simulation in the context's DTNSim */
+	private static final String RUN_METHOD_NAME = "runInContext";
+
+	private URLClassLoader loader;
+
+	/**
+	 * Creates a new context with a new set of the simulator's classes
+	 */
+	public SimulationContext() {
+		this.loader = new URLClassLoader(getClassPath(),
+				ClassLoader.getSystemClassLoader().getParent());
+	}
+
+	/**
+	 * Runs a batch mode simulation run in this context. The run's settings
+	 * are read from the configuration files. Can be called only once per
+	 * context.
+	 * @param confFiles Paths of the configuration files
+	 * @param firstConfIndex Index of the first configuration file
+	 * @param runIndex The run index of the run
+	 * @param outputPrefix Prefix of the lines the run prints
+	 * @throws SimError if the run could not be started in the context or
+	 * it failed (errors of the run are thrown as they are)
+	 */
+	public void run(String[] confFiles, int firstConfIndex, int runIndex,
+			String outputPrefix) {
+		try {
+			Class<?> c = Class.forName(DTNSim.class.getName(), true,
+					this.loader);
+			Method m = c.getMethod(RUN_METHOD_NAME, String[].class,
+					int.class, int.class, String.class);
+			m.invoke(null, confFiles, firstConfIndex, runIndex, outputPrefix);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError("Run " + runIndex + " failed: " + cause);
+		} catch (Exception e) {
+			throw new SimError("Can't start run " + runIndex +
+					" in a new context", e);
+		} finally {
+			try {
+				this.loader.close();
+			} catch (IOException e) {
+				// the run is done anyway
+			}
+		}
+	}
+
+	/**
+	 * Returns the locations of the JVM's class path
+	 * @return The class path locations
+	 */
+	private static URL[] getClassPath() {
+		String[] paths = System.getProperty("java.class.path").split(
+				File.pathSeparator);
+		List<URL> urls = new ArrayList<URL>();
+		for (String path : paths) {
+			try {
+				urls.add(new File(path).toURI().toURL());
+			} catch (MalformedURLException e) {
+				throw new SimError("Invalid class path entry " + path, e);
+			}
+		}
+		return urls.toArray(new URL[0]);
+	}
+}
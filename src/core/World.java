@@ -4,14 +4,26 @@
  */
 package core;
 
+import input.EventCalendar;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityOptimizer;
+import routing.ActiveRouter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import util.Tuple;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,13 +49,93 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the hosts be moved using multiple threads -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false.
+	 * Hosts that stay on their current path segment are moved in parallel
+	 * and the rest (that need a new waypoint or path from their movement
+	 * model) are moved afterwards in the host order. Hence, the results
+	 * are identical to the ones of the sequential movement. After the
+	 * movement, connectivity optimizers can update the interfaces'
+	 * locations with the same threads (see
+	 * {@link ConnectivityOptimizer#updateLocations(ForkJoinPool)};
+	 * {@link interfaces.SweepConnectivityGrid} searches the pairs within
+	 * range in parallel). The connections and the routers are still
+	 * updated sequentially in the update order, because that order decides
+	 * e.g. which host initiates a connection, the order of listener
+	 * callbacks, and the messages' unique IDs. The parallel movement costs
+	 * some extra work per host, so it pays off only with many hosts and
+	 * processors (see <CODE>test.ParallelMovementBenchmark</CODE>); with only
+	 * one thread the hosts are moved sequentially.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+
+	/**
+	 * Number of worker threads used for parallel movement -setting id
+	 * ({@value}). Integer value. Default is the number of available
+	 * processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+
+	/**
+	 * Should only the hosts affected by an external event be updated after
+	 * the event -setting id ({@value}). Boolean (true/false) variable.
+	 * Default is false (all hosts are updated after every event), except
+	 * with connectivity optimizers that predict contact events (e.g.,
+	 * {@link interfaces.KineticConnectivity}), which require this to be
+	 * true so that a contact event updates only the hosts of the contact
+	 * and their neighbors.
+	 * The affected hosts are the ones the event refers to, the ones whose
+	 * messages or connections have changed after their last update, the
+	 * hosts that are transferring messages, and the current neighbors of
+	 * all of those. They are updated in the same order as in a full update.
+	 * All hosts are still updated at every update interval, and after events
+	 * that don't refer to any hosts (e.g., scheduled updates). Hosts whose
+	 * routers have time driven work to do, such as TTL checks or
+	 * applications, are queued by the time of the work (see
+	 * {@link routing.MessageRouter#getNextTimedUpdate()}) and updated after
+	 * the first event at or after that time. The only time driven work that
+	 * is done at the next update interval instead of at the event's time is
+	 * the scanning energy of the energy model.
+	 */
+	public static final String UPDATE_AFFECTED_ONLY_S =
+		"updateAffectedHostsOnly";
+
+	/**
+	 * Should message transfers of constant bit-rate connections be
+	 * finalized at the exact time they are done -setting id ({@value}).
+	 * Boolean (true/false) variable. Default is false (transfers are
+	 * finalized at the first update of the sending host after they are
+	 * done, i.e., up to one update interval late). If true, the connections
+	 * schedule an event for the time the transfer is done and the sending
+	 * and receiving hosts are updated after the event. Every such event
+	 * causes an update of all hosts unless
+	 * {@link #UPDATE_AFFECTED_ONLY_S} is also used.
+	 */
+	public static final String TRANSFER_DONE_EVENTS_S = "transferDoneEvents";
+
+	/**
+	 * Should active routers drop messages at the exact time their TTL runs
+	 * out -setting id ({@value}). Boolean (true/false) variable. Default is
+	 * false (routers drop the expired messages once every
+	 * {@link routing.ActiveRouter#TTL_CHECK_INTERVAL} seconds and only when
+	 * they are not sending). If true, routers drop expired messages at every
+	 * update, also while sending (except the messages being sent), and
+	 * schedule an event for the time the next message in the buffer expires.
+	 */
+	public static final String TTL_EXPIRY_EVENTS_S = "ttlExpiryEvents";
+
+	/** Number of hosts one parallel movement task moves at most */
+	private static final int MOVE_TASK_SIZE = 256;
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
+	/** calendar that merges the scheduled updates and event queues */
+	private EventCalendar calendar;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
@@ -56,6 +148,42 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** thread pool for moving hosts in parallel (null if not in use) */
+	private ForkJoinPool movePool;
+	/** is host (by index) moving and should it be moved by the movement
+	 * tasks */
+	private boolean[] moveInParallel;
+	/** does host (by index) need a sequential move after movement tasks */
+	private boolean[] needsSequentialMove;
+	/** connectivity optimizers of the hosts' network interfaces */
+	private List<ConnectivityOptimizer> optimizers;
+	/** hosts to update after the current event (null if all hosts are
+	 * updated after every event) */
+	private List<DTNHost> hostsToUpdate;
+	/** is host (by index) in the hostsToUpdate list */
+	private boolean[] toUpdate;
+	/** hosts that were transferring messages when last checked */
+	private Set<DTNHost> transferringHosts;
+	/** have the hosts moved after all of them were updated */
+	private boolean movedAfterUpdate;
+	/** hosts marked affected by the current event */
+	private List<DTNHost> eventHosts;
+	/** listener that marks hosts affected (null if not in use) */
+	private AffectedHostsListener affectedHostsListener;
+	/** times of the hosts' (by index) next time driven router work */
+	private double[] timedUpdates;
+	/** hosts by the times of their next time driven router work; times that
+	 * have changed after they were queued are skipped */
+	private PriorityQueue<Tuple<Double, DTNHost>> timedUpdateQueue;
+
+	/** Orders the timed updates by their times */
+	private static final Comparator<Tuple<Double, DTNHost>>
+		TIMED_UPDATE_ORDER = new Comparator<Tuple<Double, DTNHost>>() {
+		public int compare(Tuple<Double, DTNHost> t1,
+				Tuple<Double, DTNHost> t2) {
+			return t1.getKey().compareTo(t2.getKey());
+		}
+	};
 
 	/**
 	 * Constructor.
@@ -69,16 +197,54 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
+		/* copy of the list since connectivity optimizers can add queues */
+		this.eventQueues = new ArrayList<EventQueue>(eventQueues);
 
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;
+		this.movedAfterUpdate = true;
 
-		setNextEventQueue();
+		initOptimizers();
+		initCalendar();
 		initSettings();
 	}
 
+	/**
+	 * Collects the connectivity optimizers of all hosts' network interfaces.
+	 * Optimizers that are also event queues (i.e., they predict connectivity
+	 * events) are added to the event queues of this world.
+	 */
+	private void initOptimizers() {
+		this.optimizers = new ArrayList<ConnectivityOptimizer>();
+
+		for (DTNHost host : this.hosts) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				ConnectivityOptimizer o = ni.getOptimizer();
+				if (o == null || this.optimizers.contains(o)) {
+					continue;
+				}
+				this.optimizers.add(o);
+				if (o instanceof EventQueue) {
+					this.eventQueues.add((EventQueue)o);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the event calendar. Scheduled updates precede the other
+	 * events with the same time, and events of the queues precede the ones
+	 * of the later queues.
+	 */
+	private void initCalendar() {
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(this.scheduledUpdates);
+		queues.addAll(this.eventQueues);
+		this.calendar = new EventCalendar(queues);
+		this.nextQueueEventTime = this.calendar.nextEventsTime();
+	}
+
 	/**
 	 * Initializes settings fields that can be configured using Settings class
 	 */
@@ -98,6 +264,69 @@ public class World {
 		else { // null pointer means "don't randomize"
 			this.updateOrder = null;
 		}
+
+		if (s.getBoolean(PARALLEL_MOVEMENT_S, false)) {
+			int nrofThreads = s.getInt(NROF_THREADS_S,
+					Runtime.getRuntime().availableProcessors());
+			if (nrofThreads < 1) {
+				throw new SettingsError("Invalid value for " +
+						s.getFullPropertyName(NROF_THREADS_S) + ": " +
+						nrofThreads);
+			}
+			/* with one thread the pool would only add overhead */
+			this.movePool = (nrofThreads > 1 ?
+					new ForkJoinPool(nrofThreads) : null);
+		}
+		else {
+			this.movePool = null;
+		}
+
+		if (s.getBoolean(TRANSFER_DONE_EVENTS_S, false)) {
+			CBRConnection.setWorld(this);
+		}
+		else {
+			CBRConnection.setWorld(null);
+		}
+
+		if (s.getBoolean(TTL_EXPIRY_EVENTS_S, false)) {
+			ActiveRouter.setWorld(this);
+		}
+		else {
+			ActiveRouter.setWorld(null);
+		}
+
+		boolean predictedContacts = false;
+		for (ConnectivityOptimizer o : this.optimizers) {
+			if (o instanceof EventQueue) {
+				predictedContacts = true;
+			}
+		}
+		boolean affectedOnly = s.getBoolean(UPDATE_AFFECTED_ONLY_S,
+				predictedContacts);
+		if (predictedContacts && !affectedOnly) {
+			throw new SettingsError(s.getFullPropertyName(
+					UPDATE_AFFECTED_ONLY_S) + " must be true with " +
+					"connectivity optimizers that predict contacts");
+		}
+
+		if (affectedOnly) {
+			this.hostsToUpdate = new ArrayList<DTNHost>();
+			this.toUpdate = new boolean[hosts.size()];
+			this.transferringHosts = new HashSet<DTNHost>();
+			this.eventHosts = new ArrayList<DTNHost>();
+			this.affectedHostsListener = new AffectedHostsListener();
+			this.timedUpdates = new double[hosts.size()];
+			Arrays.fill(this.timedUpdates, Double.MAX_VALUE);
+			this.timedUpdateQueue = new PriorityQueue<Tuple<Double, DTNHost>>(
+					Math.max(hosts.size(), 1), TIMED_UPDATE_ORDER);
+			for (int i=0, n = hosts.size(); i < n; i++) {
+				queueTimedUpdate(hosts.get(i));
+			}
+		}
+		else {
+			this.hostsToUpdate = null;
+			this.affectedHostsListener = null;
+		}
 	}
 
 	/**
@@ -108,6 +337,7 @@ public class World {
 	 */
 	public void warmupMovementModel(double time) {
 		if (time <= 0) {
+			optimizersHostsMoved();
 			return;
 		}
 
@@ -120,26 +350,17 @@ public class World {
 
 		moveHosts(finalStep);
 		simClock.setTime(0);
+		optimizersHostsMoved();
 	}
 
 	/**
-	 * Goes through all event Queues and sets the
-	 * event queue that has the next event.
+	 * Goes through all event Queues and sets the time of the next event.
+	 * Needed only if the next event of a queue may have become earlier
+	 * without the queue's events being requested through the world.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.calendar.refresh();
+		this.nextQueueEventTime = this.calendar.nextEventsTime();
 	}
 
 	/**
@@ -155,14 +376,22 @@ public class World {
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			ExternalEvent ee = this.calendar.nextEvent();
+			if (!ee.isCancelled()) {
+				ee.processEvent(this);
+				if (this.hostsToUpdate != null) {
+					updateAffectedHosts();
+				}
+				else {
+					updateHosts(); // update all hosts after every event
+				}
+			}
+			this.nextQueueEventTime = this.calendar.nextEventsTime();
 		}
 
 		moveHosts(this.updateInterval);
 		simClock.setTime(runUntil);
+		optimizersHostsMoved();
 
 		updateHosts();
 
@@ -178,6 +407,12 @@ public class World {
 	 * are made in random order.
 	 */
 	private void updateHosts() {
+		if (this.hostsToUpdate != null) {
+			/* all hosts are updated; only changes made by the updates of
+			 * other hosts need to be tracked */
+			clearHostsToUpdate();
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -187,10 +422,7 @@ public class World {
 			}
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() :
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng);
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -202,6 +434,211 @@ public class World {
 		if (simulateConOnce && simulateConnections) {
 			simulateConnections = false;
 		}
+		this.movedAfterUpdate = false;
+
+		if (this.hostsToUpdate != null) {
+			this.eventHosts.clear();
+			this.transferringHosts.clear();
+			pollTimedUpdates(); // all hosts were updated
+			for (int i=0, n = hosts.size(); i < n; i++) {
+				checkTransferring(hosts.get(i));
+				queueTimedUpdate(hosts.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Shuffles the update order using the current (integer) simulation time
+	 * as the random seed
+	 */
+	private void shuffleUpdateOrder() {
+		assert this.updateOrder.size() == this.hosts.size() :
+			"Nrof hosts has changed unexpectedly";
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng);
+	}
+
+	/**
+	 * Updates the hosts affected by the latest event: the hosts marked with
+	 * {@link #markHostAffected(DTNHost)}, the hosts whose messages or
+	 * connections have changed after their last update, the hosts that are
+	 * transferring messages, and the current neighbors of all of those.
+	 * The hosts are updated in the same order as in {@link #updateHosts()},
+	 * so the result is the same as updating all hosts as long as the updates
+	 * of the other hosts would not have changed anything. If the event
+	 * didn't mark any hosts or the hosts have moved after the last full
+	 * update, all hosts are updated.
+	 */
+	private void updateAffectedHosts() {
+		if (this.eventHosts.isEmpty() || this.movedAfterUpdate ||
+				(simulateConOnce && simulateConnections)) {
+			updateHosts();
+			return;
+		}
+
+		for (DTNHost host : this.transferringHosts) {
+			addHostToUpdate(host);
+		}
+		for (DTNHost host : pollTimedUpdates()) {
+			addHostToUpdate(host);
+		}
+		/* a change in a host can let its neighbors start new transfers */
+		for (int i=0, n = this.hostsToUpdate.size(); i < n; i++) {
+			addNeighborsToUpdate(this.hostsToUpdate.get(i));
+		}
+		this.eventHosts.clear();
+
+		List<DTNHost> ordered;
+		if (this.updateOrder == null) {
+			ordered = new ArrayList<DTNHost>(this.hostsToUpdate);
+			Collections.sort(ordered); // by address
+		}
+		else {
+			/* the order must be shuffled the same way as in full updates */
+			shuffleUpdateOrder();
+			ordered = new ArrayList<DTNHost>(this.hostsToUpdate.size());
+			for (int i=0, n = updateOrder.size(); i < n; i++) {
+				DTNHost host = this.updateOrder.get(i);
+				if (this.toUpdate[host.getAddress()]) {
+					ordered.add(host);
+				}
+			}
+		}
+
+		/* hosts marked during the updates are updated after the next event */
+		clearHostsToUpdate();
+
+		for (int i=0, n = ordered.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			ordered.get(i).update(simulateConnections);
+		}
+
+		/* the updates can start transfers only with the hosts' neighbors */
+		for (int i=0, n = ordered.size(); i < n; i++) {
+			DTNHost host = ordered.get(i);
+			queueTimedUpdate(host);
+			checkTransferring(host);
+			for (NetworkInterface ni : host.getInterfaces()) {
+				for (Connection con : ni.getConnections()) {
+					checkTransferring(con.getOtherNode(host));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the timed updates that are due from the queue
+	 * @return The hosts whose time driven work is due
+	 */
+	private List<DTNHost> pollTimedUpdates() {
+		List<DTNHost> due = new ArrayList<DTNHost>();
+		double now = SimClock.getTime();
+		while (!this.timedUpdateQueue.isEmpty() &&
+				this.timedUpdateQueue.peek().getKey() <= now) {
+			Tuple<Double, DTNHost> t = this.timedUpdateQueue.poll();
+			DTNHost host = t.getValue();
+			if (t.getKey() == this.timedUpdates[host.getAddress()]) {
+				due.add(host);
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * Queues the time of a host's next time driven router work after the
+	 * host has been updated, if the time has changed or it is still due
+	 * (and so no longer in the queue)
+	 * @param host The host
+	 */
+	private void queueTimedUpdate(DTNHost host) {
+		double time = host.getNextTimedUpdate();
+		int address = host.getAddress();
+		if (time != this.timedUpdates[address] ||
+				time <= SimClock.getTime()) {
+			this.timedUpdates[address] = time;
+			if (time != Double.MAX_VALUE) {
+				this.timedUpdateQueue.add(
+						new Tuple<Double, DTNHost>(time, host));
+			}
+		}
+	}
+
+	/**
+	 * Adds a host to the hosts to update after the current event (if it is
+	 * not there already)
+	 * @param host The host to add
+	 */
+	private void addHostToUpdate(DTNHost host) {
+		if (!this.toUpdate[host.getAddress()]) {
+			this.toUpdate[host.getAddress()] = true;
+			this.hostsToUpdate.add(host);
+		}
+	}
+
+	/**
+	 * Adds the current neighbors of a host to the hosts to update
+	 * @param host The host whose neighbors are added
+	 */
+	private void addNeighborsToUpdate(DTNHost host) {
+		for (NetworkInterface ni : host.getInterfaces()) {
+			for (Connection con : ni.getConnections()) {
+				addHostToUpdate(con.getOtherNode(host));
+			}
+		}
+	}
+
+	/**
+	 * Checks if a host has a connection that is transferring a message and
+	 * updates the set of transferring hosts accordingly
+	 * @param host The host to check
+	 */
+	private void checkTransferring(DTNHost host) {
+		for (NetworkInterface ni : host.getInterfaces()) {
+			for (Connection con : ni.getConnections()) {
+				if (con.isTransferring()) {
+					this.transferringHosts.add(host);
+					return;
+				}
+			}
+		}
+		this.transferringHosts.remove(host);
+	}
+
+	/**
+	 * Tells the world that an event changed the state of a host. If only the
+	 * affected hosts are updated after events (see
+	 * {@link #UPDATE_AFFECTED_ONLY_S}), the host (and its neighbors) will be
+	 * updated after the event. Hosts returned by
+	 * {@link #getNodeByAddress(int)} are marked automatically.
+	 * @param host The host
+	 */
+	public void markHostAffected(DTNHost host) {
+		if (this.hostsToUpdate != null) {
+			this.eventHosts.add(host);
+			addHostToUpdate(host);
+		}
+	}
+
+	/**
+	 * Returns the listener that has to be registered as a message and
+	 * connection listener of all hosts when only the affected hosts are
+	 * updated after events (see {@link #UPDATE_AFFECTED_ONLY_S})
+	 * @return The listener or null if all hosts are updated after events
+	 */
+	public AffectedHostsListener getAffectedHostsListener() {
+		return this.affectedHostsListener;
+	}
+
+	/**
+	 * Clears the hosts to update
+	 */
+	private void clearHostsToUpdate() {
+		for (int i=0, n = this.hostsToUpdate.size(); i < n; i++) {
+			this.toUpdate[this.hostsToUpdate.get(i).getAddress()] = false;
+		}
+		this.hostsToUpdate.clear();
 	}
 
 	/**
@@ -209,12 +646,67 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		this.movedAfterUpdate = true;
+		if (this.movePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * movement thread pool. Activeness of the hosts is checked first
+	 * sequentially (activeness handlers can be shared by hosts), then the
+	 * hosts that stay on their current path segment are moved in parallel,
+	 * and finally the rest of the active hosts are moved in the host order.
+	 * Since the last phase is the only one that uses movement models
+	 * (and their shared random number generator) or informs movement
+	 * listeners, the result is the same as with
+	 * {@link #moveHosts(double)}'s sequential movement.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		int n = hosts.size();
+
+		if (this.moveInParallel == null || this.moveInParallel.length != n) {
+			this.moveInParallel = new boolean[n];
+			this.needsSequentialMove = new boolean[n];
+		}
+
+		for (int i=0; i<n; i++) {
+			this.moveInParallel[i] = hosts.get(i).isMovementActive();
+			this.needsSequentialMove[i] = false;
+		}
+
+		movePool.invoke(new MoveTask(timeIncrement, 0, n));
+
+		for (int i=0; i<n; i++) {
+			if (this.needsSequentialMove[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Tells all connectivity optimizers that the hosts have been moved
+	 * and when they are moved the next time. With parallel movement, the
+	 * optimizers can also update all the interfaces' locations with the
+	 * movement threads.
+	 */
+	private void optimizersHostsMoved() {
+		for (int i=0, n = optimizers.size(); i < n; i++) {
+			optimizers.get(i).hostsMoved(this.updateInterval);
+			if (this.movePool != null) {
+				optimizers.get(i).updateLocations(this.movePool);
+			}
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -222,6 +714,17 @@ public class World {
 		this.isCancelled = true;
 	}
 
+	/**
+	 * Stops the worker threads of parallel movement (if in use). After
+	 * this, the hosts are moved sequentially.
+	 */
+	public void shutdown() {
+		if (this.movePool != null) {
+			this.movePool.shutdown();
+			this.movePool = null;
+		}
+	}
+
 	/**
 	 * Returns the hosts in a list
 	 * @return the hosts in a list
@@ -247,7 +750,8 @@ public class World {
 	}
 
 	/**
-	 * Returns a node from the world by its address
+	 * Returns a node from the world by its address. The node is marked as
+	 * affected by the current event (see {@link #markHostAffected(DTNHost)}).
 	 * @param address The address of the node
 	 * @return The requested node or null if it wasn't found
 	 */
@@ -260,6 +764,7 @@ public class World {
 		DTNHost node = this.hosts.get(address);
 		assert node.getAddress() == address : "Node indexing failed. " +
 			"Node " + node + " in index " + address;
+		markHostAffected(node);
 
 		return node;
 	}
@@ -271,5 +776,105 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		calendar.queueChanged(scheduledUpdates);
+	}
+
+	/**
+	 * Schedules an event to be processed at its time. Hosts are updated
+	 * after the event as after external events, unless the event has been
+	 * cancelled by then (see {@link ExternalEvent#isCancelled()}).
+	 * @param ee The event
+	 */
+	public void scheduleEvent(ExternalEvent ee) {
+		scheduledUpdates.addEvent(ee);
+		calendar.queueChanged(scheduledUpdates);
+	}
+
+	/**
+	 * Listener that marks the hosts whose messages or connections change
+	 * outside their own updates, so that they are updated after the next
+	 * event even if the event doesn't refer to them.
+	 */
+	public class AffectedHostsListener implements MessageListener,
+			ConnectionListener {
+
+		private AffectedHostsListener() { }
+
+		public void newMessage(Message m) {
+			addHostToUpdate(m.getFrom());
+		}
+
+		public void messageTransferStarted(Message m, DTNHost from,
+				DTNHost to) {
+			addHostToUpdate(from);
+			addHostToUpdate(to);
+		}
+
+		public void messageDeleted(Message m, DTNHost where,
+				boolean dropped) {
+			addHostToUpdate(where);
+		}
+
+		public void messageTransferAborted(Message m, DTNHost from,
+				DTNHost to) {
+			addHostToUpdate(from);
+			addHostToUpdate(to);
+		}
+
+		public void messageTransferred(Message m, DTNHost from, DTNHost to,
+				boolean firstDelivery) {
+			addHostToUpdate(from);
+			addHostToUpdate(to);
+		}
+
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			addHostToUpdate(host1);
+			addHostToUpdate(host2);
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			addHostToUpdate(host1);
+			addHostToUpdate(host2);
+		}
+	}
+
+	/**
+	 * Fork-join task that moves a range of hosts on their current path
+	 * segments and marks the hosts that need a sequential move.
+	 */
+	@SuppressWarnings("serial")
+	private class MoveTask extends RecursiveAction {
+		private double timeIncrement;
+		private int from;
+		private int to;
+
+		/**
+		 * Creates a new task for hosts in the index range [from, to)
+		 * @param timeIncrement The time how long the hosts should move
+		 * @param from Index of the first host to move
+		 * @param to Index of the host after the last host to move
+		 */
+		private MoveTask(double timeIncrement, int from, int to) {
+			this.timeIncrement = timeIncrement;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > MOVE_TASK_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MoveTask(timeIncrement, from, middle),
+						new MoveTask(timeIncrement, middle, to));
+				return;
+			}
+
+			for (int i=from; i<to; i++) {
+				if (moveInParallel[i] &&
+						!hosts.get(i).moveOnCurrentSegment(timeIncrement)) {
+					needsSequentialMove[i] = true;
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import movement.map.MapNode;
+import movement.map.SimMap;
+import core.Coord;
+import core.SettingsError;
+
+/**
+ * <P>Reads maps from compiled binary map files. A binary map file contains
+ * the map nodes read from one or more WKT map files (see
+ * {@link WKTMapReader}) in the same order as they would be in a map read
+ * from the WKT files, so the simulation results are the same with both.
+ * The file is memory mapped and the node data is stored in arrays, so even
+ * large maps load fast.</P>
+ *
+ * <P>Binary map files are created with the main method of this class:<BR>
+ * <CODE>java -cp target input.BinaryMapReader &lt;output file&gt;
+ * &lt;map file 1&gt; [&lt;map file 2&gt; ...]</CODE><BR>
+ * Nodes read from the Nth WKT file get the map node type N.</P>
+ *
+ * <P>File format (big-endian):
+ * <PRE>
+ * int magic, int version
+ * int nrof source files, for each: int length, UTF-8 bytes of the path
+ * int nrof nodes (N), int nrof neighbor entries (E)
+ * double[N] x coordinates, double[N] y coordinates
+ * int[N] node type bit masks
+ * int[N+1] index of the first neighbor entry of each node
+ * int[E] neighbor node indexes
+ * </PRE></P>
+ */
+public class BinaryMapReader {
+	/** Extension of binary map files */
+	public static final String BINARY_EXT = ".binmap";
+
+	/** Magic number at the beginning of binary map files ("ONEM") */
+	private static final int MAGIC = 0x4F4E454D;
+	/** Version of the file format */
+	private static final int VERSION = 1;
+	/** Character set of the source file paths */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * Reads a map from a binary map file
+	 * @param mapFile The binary map file
+	 * @return The map (not mirrored or translated)
+	 * @throws IOException if the file couldn't be read
+	 * @throws SettingsError if the file is not a valid binary map file or
+	 * all the map nodes are not connected
+	 */
+	public static SimMap readMap(File mapFile) throws IOException {
+		ByteBuffer buf = map(mapFile);
+		readSources(buf, mapFile);
+
+		int nrofNodes = buf.getInt();
+		int nrofEntries = buf.getInt();
+		double[] xs = new double[nrofNodes];
+		double[] ys = new double[nrofNodes];
+		int[] types = new int[nrofNodes];
+		int[] firstNeighbors = new int[nrofNodes + 1];
+		int[] neighbors = new int[nrofEntries];
+
+		buf.asDoubleBuffer().get(xs);
+		buf.position(buf.position() + nrofNodes * 8);
+		buf.asDoubleBuffer().get(ys);
+		buf.position(buf.position() + nrofNodes * 8);
+		buf.asIntBuffer().get(types);
+		buf.position(buf.position() + nrofNodes * 4);
+		buf.asIntBuffer().get(firstNeighbors);
+		buf.position(buf.position() + (nrofNodes + 1) * 4);
+		buf.asIntBuffer().get(neighbors);
+
+		checkConnectedness(firstNeighbors, neighbors, mapFile);
+
+		MapNode[] nodes = new MapNode[nrofNodes];
+		for (int i=0; i<nrofNodes; i++) {
+			nodes[i] = new MapNode(new Coord(xs[i], ys[i]));
+			for (int type = MapNode.MIN_TYPE; type <= MapNode.MAX_TYPE;
+					type++) {
+				if ((types[i] & (1 << type)) != 0) {
+					nodes[i].addType(type);
+				}
+			}
+		}
+
+		for (int i=0; i<nrofNodes; i++) {
+			for (int e = firstNeighbors[i]; e < firstNeighbors[i+1]; e++) {
+				nodes[i].addNeighbor(nodes[neighbors[e]]);
+			}
+		}
+
+		return new SimMap(Arrays.asList(nodes));
+	}
+
+	/**
+	 * Returns true if the binary map file exists, was compiled from the given
+	 * source files, and is newer than all of them
+	 * @param mapFile The binary map file
+	 * @param sourceFiles Paths of the WKT map files
+	 * @return true if the binary map file can be used instead of the
+	 * WKT map files
+	 */
+	public static boolean isUpToDate(File mapFile, List<String> sourceFiles) {
+		if (!mapFile.isFile()) {
+			return false;
+		}
+
+		List<String> compiledSources;
+		try {
+			compiledSources = readSources(map(mapFile), mapFile);
+			if (!compiledSources.equals(getCanonicalPaths(sourceFiles))) {
+				return false; // compiled from different files
+			}
+		} catch (IOException e) {
+			return false;
+		} catch (SettingsError e) {
+			return false; // not a valid binary map file
+		}
+
+		for (String source : sourceFiles) {
+			if (new File(source).lastModified() > mapFile.lastModified()) {
+				return false; // source has been modified after compiling
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stores a map read from the given WKT map files to a binary map file.
+	 * Nodes read from the Nth file get the map node type N.
+	 * @param fileName Path to the file where the map is stored
+	 * @param sourceFiles Paths of the WKT map files
+	 * @throws IOException if reading or storing the map failed
+	 */
+	public static void storeToBinaryFile(String fileName,
+			List<String> sourceFiles) throws IOException {
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i=0; i<sourceFiles.size(); i++) {
+			r.addPaths(new File(sourceFiles.get(i)), i + 1);
+		}
+		List<MapNode> nodes = r.getMap().getNodes();
+
+		Map<MapNode, Integer> indexes = new IdentityHashMap<MapNode, Integer>();
+		int nrofEntries = 0;
+		for (MapNode n : nodes) {
+			indexes.put(n, indexes.size());
+			nrofEntries += n.getNeighbors().size();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			List<String> paths = getCanonicalPaths(sourceFiles);
+			out.writeInt(paths.size());
+			for (String path : paths) {
+				byte[] bytes = path.getBytes(CHARSET);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(nodes.size());
+			out.writeInt(nrofEntries);
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getX());
+			}
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getY());
+			}
+			for (MapNode n : nodes) {
+				int mask = 0;
+				for (int type = MapNode.MIN_TYPE; type <= MapNode.MAX_TYPE;
+						type++) {
+					if (n.isType(type)) {
+						mask |= 1 << type;
+					}
+				}
+				out.writeInt(mask);
+			}
+			int entry = 0;
+			for (MapNode n : nodes) {
+				out.writeInt(entry);
+				entry += n.getNeighbors().size();
+			}
+			out.writeInt(entry);
+			for (MapNode n : nodes) {
+				for (MapNode neighbor : n.getNeighbors()) {
+					out.writeInt(indexes.get(neighbor));
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps the whole file to memory
+	 * @param file The file to map
+	 * @return A buffer of the file's contents
+	 * @throws IOException if the mapping failed
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			return buf;
+		} finally {
+			raf.close(); // the mapping stays valid after closing
+		}
+	}
+
+	/**
+	 * Reads the header and the source file paths of a binary map file
+	 * @param buf Buffer positioned at the beginning of the file
+	 * @param file The file (for error messages)
+	 * @return The canonical paths of the source files
+	 * @throws SettingsError if the file is not a valid binary map file
+	 */
+	private static List<String> readSources(ByteBuffer buf, File file)
+			throws IOException {
+		if (buf.remaining() < 12 || buf.getInt() != MAGIC) {
+			throw new SettingsError(file + " is not a binary map file");
+		}
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new SettingsError("Unsupported version " + version +
+					" of binary map file " + file);
+		}
+
+		int nrofSources = buf.getInt();
+		List<String> sources = new ArrayList<String>(nrofSources);
+		for (int i=0; i<nrofSources; i++) {
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			sources.add(new String(bytes, CHARSET));
+		}
+		return sources;
+	}
+
+	/**
+	 * Returns the canonical paths of files
+	 * @param files Paths of the files
+	 * @return The canonical paths in the same order
+	 * @throws IOException if a canonical path couldn't be resolved
+	 */
+	private static List<String> getCanonicalPaths(List<String> files)
+			throws IOException {
+		List<String> paths = new ArrayList<String>(files.size());
+		for (String f : files) {
+			paths.add(new File(f).getCanonicalPath());
+		}
+		return paths;
+	}
+
+	/**
+	 * Checks that all map nodes can be reached from the first node
+	 * @param firstNeighbors Index of the first neighbor entry of each node
+	 * @param neighbors The neighbor entries
+	 * @param file The map file (for error messages)
+	 * @throws SettingsError if the map is empty or not fully connected
+	 */
+	private static void checkConnectedness(int[] firstNeighbors,
+			int[] neighbors, File file) {
+		int nrofNodes = firstNeighbors.length - 1;
+		if (nrofNodes == 0) {
+			throw new SettingsError("No map nodes in the map file " + file);
+		}
+
+		boolean[] visited = new boolean[nrofNodes];
+		int[] queue = new int[nrofNodes];
+		int head = 0;
+		int tail = 0;
+		visited[0] = true;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int node = queue[head++];
+			for (int e = firstNeighbors[node]; e < firstNeighbors[node+1];
+					e++) {
+				if (!visited[neighbors[e]]) {
+					visited[neighbors[e]] = true;
+					queue[tail++] = neighbors[e];
+				}
+			}
+		}
+
+		if (tail != nrofNodes) {
+			throw new SettingsError("SimMap is not fully connected. Only " +
+					tail + " out of " + nrofNodes + " map nodes can be " +
+					"reached from the first node of map file " + file);
+		}
+	}
+
+	/**
+	 * Compiles WKT map files to a binary map file.
+	 * @param args The output file and the WKT map files
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java input.BinaryMapReader " +
+					"<output file> <map file 1> [<map file 2> ...]");
+			System.exit(1);
+		}
+
+		List<String> sources = new ArrayList<String>();
+		for (int i=1; i<args.length; i++) {
+			sources.add(args[i]);
+		}
+		storeToBinaryFile(args[0], sources);
+		System.out.println("Compiled " + sources.size() + " map file(s) to " +
+				args[0]);
+	}
+}
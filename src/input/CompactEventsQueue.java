@@ -0,0 +1,458 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * <P>Event queue that reads external events from a compact binary events
+ * file. The events are stored in fixed-width records and the message and
+ * interface IDs in a separate table, so the file can be memory mapped in
+ * windows and the events are created only when they are requested. The
+ * file can be larger than the heap.</P>
+ *
+ * <P>Compact events files are created from standard external events files
+ * (see {@link StandardEventsReader}) or {@link BinaryEventsReader} files
+ * with the main method of this class:<BR>
+ * <CODE>java -cp target input.CompactEventsQueue &lt;events file&gt;
+ * &lt;output file&gt;</CODE><BR>
+ * {@link ExternalEventsQueue} uses this queue for files whose name ends with
+ * {@value #COMPACT_EXT}.</P>
+ *
+ * <P>File format (big-endian):
+ * <PRE>
+ * header: int magic, int version, long nrof events, long nrof IDs,
+ *         long offset of the ID table
+ * records: double time, int type, int host1, int host2,
+ *          int ID index (-1 for none), int size, int response size
+ * ID table: long[nrof IDs + 1] offsets of the IDs from the ID data start,
+ *           ID data (UTF-8)
+ * </PRE></P>
+ */
+public class CompactEventsQueue implements EventQueue {
+	/** Extension of compact events files */
+	public static final String COMPACT_EXT = ".cee";
+
+	/** Magic number of compact events files ("ONEE") */
+	private static final int MAGIC = 0x4F4E4545;
+	/** Version of the file format */
+	private static final int VERSION = 1;
+	/** Size of the file header */
+	private static final int HEADER_SIZE = 32;
+	/** Size of an event record */
+	private static final int RECORD_SIZE = 32;
+	/** How many records are mapped at a time */
+	private static final int RECORDS_PER_WINDOW = 1 << 21;
+	/** Size of the mapped windows of the ID table */
+	private static final int ID_WINDOW_SIZE = 1 << 26;
+	/** Character set of the IDs */
+	private static final String CHARSET = "UTF-8";
+
+	/** Record type for message creation */
+	private static final int CREATE = 1;
+	/** Record type for message transfer start */
+	private static final int SEND = 2;
+	/** Record type for message delivery */
+	private static final int DELIVERED = 3;
+	/** Record type for aborted message transfer */
+	private static final int ABORT = 4;
+	/** Record type for message drop */
+	private static final int DROP = 5;
+	/** Record type for message removal */
+	private static final int REMOVE = 6;
+	/** Record type for connection up */
+	private static final int CONN_UP = 7;
+	/** Record type for connection down */
+	private static final int CONN_DOWN = 8;
+
+	private FileChannel channel;
+	private MappedRegion records;
+	private MappedRegion idOffsets;
+	private MappedRegion idData;
+	private long nrofEvents;
+	/** Index of the next event */
+	private long nextIndex;
+	/** Buffer for decoding IDs */
+	private byte[] idBytes;
+
+	/**
+	 * Opens a compact events file
+	 * @param eventsFile The file
+	 * @throws SimError if the file couldn't be opened or is not a valid
+	 * compact events file
+	 */
+	public CompactEventsQueue(File eventsFile) {
+		try {
+			this.channel = new FileInputStream(eventsFile).getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_SIZE ||
+					header.getInt() != MAGIC) {
+				throw new SimError(eventsFile + " is not a compact events file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new SimError("Unsupported version " + version +
+						" of compact events file " + eventsFile);
+			}
+			this.nrofEvents = header.getLong();
+			long nrofIds = header.getLong();
+			long idTableStart = header.getLong();
+			long idDataStart = idTableStart + (nrofIds + 1) * 8;
+
+			this.records = new MappedRegion(channel, HEADER_SIZE,
+					nrofEvents * RECORD_SIZE,
+					(long)RECORDS_PER_WINDOW * RECORD_SIZE, RECORD_SIZE);
+			this.idOffsets = new MappedRegion(channel, idTableStart,
+					(nrofIds + 1) * 8, ID_WINDOW_SIZE, 8);
+			this.idData = new MappedRegion(channel, idDataStart,
+					channel.size() - idDataStart, ID_WINDOW_SIZE, 1);
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+		this.nextIndex = 0;
+		this.idBytes = new byte[64];
+	}
+
+	/**
+	 * Returns true if the file has the extension of compact events files
+	 * @param file The file to check
+	 * @return True if the file is a compact events file
+	 */
+	public static boolean isCompactEventsFile(File file) {
+		return file.getName().endsWith(COMPACT_EXT);
+	}
+
+	/**
+	 * Returns the next event in the queue or ExternalEvent with time of
+	 * double.MAX_VALUE if there are no events left
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (nextIndex >= nrofEvents) {
+			if (nextIndex == nrofEvents) {
+				close();
+				nextIndex++;
+			}
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ByteBuffer buf = records.get(nextIndex * RECORD_SIZE, RECORD_SIZE);
+		nextIndex++;
+		double time = buf.getDouble();
+		int type = buf.getInt();
+		int host1 = buf.getInt();
+		int host2 = buf.getInt();
+		int idIndex = buf.getInt();
+		int size = buf.getInt();
+		int responseSize = buf.getInt();
+		String id = (idIndex >= 0 ? getId(idIndex) : null);
+
+		switch (type) {
+		case CREATE:
+			return new MessageCreateEvent(host1, host2, id, size,
+					responseSize, time);
+		case SEND:
+			return new MessageRelayEvent(host1, host2, id, time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(host1, host2, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(host1, host2, id, time,
+					MessageRelayEvent.ABORTED);
+		case DROP:
+			return new MessageDeleteEvent(host1, id, time, true);
+		case REMOVE:
+			return new MessageDeleteEvent(host1, id, time, false);
+		case CONN_UP:
+			return new ConnectionEvent(host1, host2, id, true, time);
+		case CONN_DOWN:
+			return new ConnectionEvent(host1, host2, id, false, time);
+		default:
+			throw new SimError("Invalid event type " + type + " in record " +
+					(nextIndex - 1) + " of compact events file");
+		}
+	}
+
+	/**
+	 * Returns next event's time or Double.MAX_VALUE if there are no
+	 * events left
+	 * @return Next event's time
+	 */
+	public double nextEventsTime() {
+		if (nextIndex >= nrofEvents) {
+			return Double.MAX_VALUE;
+		}
+		return records.get(nextIndex * RECORD_SIZE, RECORD_SIZE).getDouble();
+	}
+
+	/**
+	 * Returns the number of events left in the queue
+	 * @return The number of events left
+	 */
+	public long eventsLeft() {
+		return Math.max(0, nrofEvents - nextIndex);
+	}
+
+	/**
+	 * Returns an ID from the ID table
+	 * @param index Index of the ID
+	 * @return The ID
+	 */
+	private String getId(int index) {
+		ByteBuffer offsets = idOffsets.get(index * 8L, 16);
+		long start = offsets.getLong();
+		int length = (int)(offsets.getLong() - start);
+		if (idBytes.length < length) {
+			idBytes = new byte[Math.max(length, idBytes.length * 2)];
+		}
+		idData.get(start, length).get(idBytes, 0, length);
+		try {
+			return new String(idBytes, 0, length, CHARSET);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Closes the file. The mapped windows are released by the garbage
+	 * collector.
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Converts an external events file to a compact events file
+	 * @param eventsFile The external events file (in the standard or
+	 * {@link BinaryEventsReader} format)
+	 * @param fileName Path of the compact events file to create
+	 * @return The number of events converted
+	 * @throws IOException if reading or writing failed
+	 */
+	public static long storeToCompactFile(File eventsFile, String fileName)
+			throws IOException {
+		ExternalEventsReader reader;
+		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+			reader = new BinaryEventsReader(eventsFile);
+		}
+		else {
+			reader = new StandardEventsReader(eventsFile);
+		}
+
+		Map<String, Integer> idIndexes = new HashMap<String, Integer>();
+		List<String> ids = new ArrayList<String>();
+		long nrofEvents = 0;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName), 1 << 16));
+		try {
+			for (int i=0; i<HEADER_SIZE; i++) {
+				out.write(0); // header is written when the counts are known
+			}
+
+			List<ExternalEvent> events;
+			while (!(events = reader.readEvents(
+					ExternalEventsQueue.DEFAULT_NROF_PRELOAD)).isEmpty()) {
+				for (ExternalEvent ee : events) {
+					writeRecord(out, ee, idIndexes, ids);
+					nrofEvents++;
+				}
+			}
+
+			long offset = 0;
+			out.writeLong(offset);
+			for (String id : ids) {
+				offset += id.getBytes(CHARSET).length;
+				out.writeLong(offset);
+			}
+			for (String id : ids) {
+				out.write(id.getBytes(CHARSET));
+			}
+		} finally {
+			out.close();
+			reader.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+		try {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeLong(nrofEvents);
+			raf.writeLong(ids.size());
+			raf.writeLong(HEADER_SIZE + nrofEvents * RECORD_SIZE);
+		} finally {
+			raf.close();
+		}
+
+		return nrofEvents;
+	}
+
+	/**
+	 * Writes an event record
+	 * @param out Where to write
+	 * @param ee The event
+	 * @param idIndexes Indexes of the IDs written so far
+	 * @param ids The IDs written so far
+	 * @throws IOException if writing failed
+	 * @throws SimError if the event type is not supported
+	 */
+	private static void writeRecord(DataOutputStream out, ExternalEvent ee,
+			Map<String, Integer> idIndexes, List<String> ids)
+			throws IOException {
+		int type;
+		int host1;
+		int host2;
+		String id;
+		int size = 0;
+		int responseSize = 0;
+
+		if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			type = ce.isUp ? CONN_UP : CONN_DOWN;
+			host1 = ce.fromAddr;
+			host2 = ce.toAddr;
+			id = ce.interfaceId;
+		}
+		else if (ee instanceof MessageEvent) {
+			MessageEvent me = (MessageEvent)ee;
+			host1 = me.fromAddr;
+			host2 = me.toAddr;
+			id = me.id;
+			if (ee instanceof MessageCreateEvent) {
+				type = CREATE;
+				size = ((MessageCreateEvent)ee).getSize();
+				responseSize = ((MessageCreateEvent)ee).getResponseSize();
+			}
+			else if (ee instanceof MessageDeleteEvent) {
+				type = ((MessageDeleteEvent)ee).isDrop() ? DROP : REMOVE;
+			}
+			else if (ee instanceof MessageRelayEvent) {
+				int stage = ((MessageRelayEvent)ee).getStage();
+				type = (stage == MessageRelayEvent.SENDING ? SEND :
+					stage == MessageRelayEvent.TRANSFERRED ? DELIVERED :
+						ABORT);
+			}
+			else {
+				throw new SimError("Unsupported event type " + ee);
+			}
+		}
+		else {
+			throw new SimError("Unsupported event type " + ee);
+		}
+
+		int idIndex = -1;
+		if (id != null) {
+			Integer index = idIndexes.get(id);
+			if (index == null) {
+				index = ids.size();
+				idIndexes.put(id, index);
+				ids.add(id);
+			}
+			idIndex = index;
+		}
+
+		out.writeDouble(ee.getTime());
+		out.writeInt(type);
+		out.writeInt(host1);
+		out.writeInt(host2);
+		out.writeInt(idIndex);
+		out.writeInt(size);
+		out.writeInt(responseSize);
+	}
+
+	/**
+	 * Converts an external events file to a compact events file.
+	 * @param args The external events file and the output file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java input.CompactEventsQueue " +
+					"<events file> <output file>");
+			System.exit(1);
+		}
+		java.util.Locale.setDefault(java.util.Locale.US);
+
+		String fileName = args[1];
+		if (!fileName.endsWith(COMPACT_EXT)) {
+			fileName += COMPACT_EXT;
+		}
+		long nrof = storeToCompactFile(new File(args[0]), fileName);
+		System.out.println("Converted " + nrof + " events to " + fileName);
+	}
+
+	/**
+	 * Region of a file that is memory mapped in windows
+	 */
+	private static class MappedRegion {
+		private FileChannel channel;
+		private long start;
+		private long size;
+		private long windowSize;
+		private long alignment;
+		private ByteBuffer window;
+		/** Start and end of the current window relative to region start */
+		private long windowStart;
+		private long windowEnd;
+
+		/**
+		 * Creates a new region
+		 * @param channel The file's channel
+		 * @param start Start of the region in the file
+		 * @param size Size of the region
+		 * @param windowSize Maximum size of a mapped window
+		 * @param alignment Alignment of the window starts
+		 */
+		public MappedRegion(FileChannel channel, long start, long size,
+				long windowSize, long alignment) {
+			this.channel = channel;
+			this.start = start;
+			this.size = size;
+			this.windowSize = windowSize;
+			this.alignment = alignment;
+			this.windowStart = 0;
+			this.windowEnd = 0;
+		}
+
+		/**
+		 * Returns a buffer positioned at the given offset of the region
+		 * @param offset The offset relative to the region start
+		 * @param length How many bytes will be read from the buffer
+		 * @return The buffer
+		 */
+		public ByteBuffer get(long offset, int length) {
+			if (offset < windowStart || offset + length > windowEnd) {
+				windowStart = offset - offset % alignment;
+				windowEnd = Math.min(size, windowStart + windowSize);
+				try {
+					window = channel.map(FileChannel.MapMode.READ_ONLY,
+							start + windowStart, windowEnd - windowStart);
+				} catch (IOException e) {
+					throw new SimError(e.getMessage(), e);
+				}
+			}
+			window.position((int)(offset - windowStart));
+			return window;
+		}
+	}
+}
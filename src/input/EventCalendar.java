@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event queue that merges other event queues. The queues are kept in a
+ * binary heap ordered by their next events' times, so the next event is
+ * found in O(log n) time instead of polling every queue. Events with the
+ * same time are returned in the order their queues were given to the
+ * calendar.
+ * <P>The calendar caches the queues' next event times. The time of the
+ * queue whose event was returned is re-read after every event and a cached
+ * time that is too early is noticed when the queue reaches the top of the
+ * heap. If the next event of a queue can become earlier by other means
+ * (e.g., a new scheduled update is added), the calendar must be told about
+ * it with {@link #queueChanged(EventQueue)} or {@link #refresh()}.</P>
+ */
+public class EventCalendar implements EventQueue {
+	/** the queues in heap order */
+	private EventQueue[] queues;
+	/** cached next event times of the queues (heap order) */
+	private double[] times;
+	/** indexes of the queues in the original list (heap order) */
+	private int[] indexes;
+	/** heap positions of the queues by their original index */
+	private int[] positions;
+	/** original indexes of the queues */
+	private Map<EventQueue, Integer> queueIndexes;
+
+	/**
+	 * Creates a calendar for the given queues
+	 * @param eventQueues The queues, in the order of precedence for events
+	 * that happen at the same time
+	 */
+	public EventCalendar(List<EventQueue> eventQueues) {
+		int n = eventQueues.size();
+		this.queues = new EventQueue[n];
+		this.times = new double[n];
+		this.indexes = new int[n];
+		this.positions = new int[n];
+		this.queueIndexes = new IdentityHashMap<EventQueue, Integer>();
+
+		for (int i=0; i<n; i++) {
+			EventQueue eq = eventQueues.get(i);
+			this.queues[i] = eq;
+			this.indexes[i] = i;
+			this.queueIndexes.put(eq, i);
+		}
+		refresh();
+	}
+
+	/**
+	 * Returns the next event of the queue that has the earliest event, or
+	 * an event with time Double.MAX_VALUE if there are no events left
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (nextEventsTime() == Double.MAX_VALUE) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ExternalEvent ee = this.queues[0].nextEvent();
+		this.times[0] = this.queues[0].nextEventsTime();
+		siftDown(0);
+		return ee;
+	}
+
+	/**
+	 * Returns the time of the earliest event in any of the queues, or
+	 * Double.MAX_VALUE if there are no events left
+	 * @return The next event's time
+	 */
+	public double nextEventsTime() {
+		if (this.queues.length == 0) {
+			return Double.MAX_VALUE;
+		}
+
+		double time = this.queues[0].nextEventsTime();
+		while (time != this.times[0]) { // cached time is out of date
+			this.times[0] = time;
+			siftDown(0);
+			time = this.queues[0].nextEventsTime();
+		}
+		return time;
+	}
+
+	/**
+	 * Re-reads the next event time of a queue
+	 * @param eq The queue whose events have changed
+	 */
+	public void queueChanged(EventQueue eq) {
+		int pos = this.positions[this.queueIndexes.get(eq)];
+		this.times[pos] = eq.nextEventsTime();
+		siftDown(siftUp(pos));
+	}
+
+	/**
+	 * Re-reads the next event times of all queues and rebuilds the heap
+	 */
+	public void refresh() {
+		int n = this.queues.length;
+		for (int i=0; i<n; i++) {
+			this.times[i] = this.queues[i].nextEventsTime();
+		}
+		for (int i = (n >>> 1) - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+		for (int i=0; i<n; i++) {
+			this.positions[this.indexes[i]] = i;
+		}
+	}
+
+	/**
+	 * Returns true if the queue in heap position i should be before the
+	 * one in position j
+	 */
+	private boolean isBefore(int i, int j) {
+		return this.times[i] < this.times[j] ||
+			(this.times[i] == this.times[j] &&
+					this.indexes[i] < this.indexes[j]);
+	}
+
+	/**
+	 * Moves the queue at the given heap position up until the heap is valid
+	 * @param pos The position
+	 * @return The new position of the queue
+	 */
+	private int siftUp(int pos) {
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!isBefore(pos, parent)) {
+				break;
+			}
+			swap(pos, parent);
+			pos = parent;
+		}
+		return pos;
+	}
+
+	/**
+	 * Moves the queue at the given heap position down until the heap is
+	 * valid
+	 * @param pos The position
+	 */
+	private void siftDown(int pos) {
+		int n = this.queues.length;
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && isBefore(child + 1, child)) {
+				child++;
+			}
+			if (!isBefore(child, pos)) {
+				break;
+			}
+			swap(pos, child);
+			pos = child;
+		}
+	}
+
+	/**
+	 * Swaps two queues in the heap
+	 */
+	private void swap(int i, int j) {
+		EventQueue eq = this.queues[i];
+		this.queues[i] = this.queues[j];
+		this.queues[j] = eq;
+		double t = this.times[i];
+		this.times[i] = this.times[j];
+		this.times[j] = t;
+		int index = this.indexes[i];
+		this.indexes[i] = this.indexes[j];
+		this.indexes[j] = index;
+		this.positions[this.indexes[i]] = i;
+		this.positions[this.indexes[j]] = j;
+	}
+}
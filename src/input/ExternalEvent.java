@@ -29,6 +29,16 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns true if the event has been cancelled after it was queued.
+	 * Cancelled events are not processed and the hosts are not updated
+	 * after them.
+	 * @return false (events of this class are never cancelled)
+	 */
+	public boolean isCancelled() {
+		return false;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
@@ -8,6 +8,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import util.ReadAheadQueue;
 import core.Settings;
 
 /**
@@ -21,6 +22,9 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** read the events ahead in a background thread -setting id
+	 * ({@value}). Boolean valued, default is false. */
+	public static final String READ_AHEAD_SETTING = "readAhead";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -31,24 +35,49 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	/** queue for compact events files or null if the file is not such */
+	private CompactEventsQueue compactQueue;
+	/** batches of events read ahead or null if read ahead is not used */
+	private ReadAheadQueue<List<ExternalEvent>> readAheadQueue;
+	/** should the events be read ahead in a background thread */
+	private boolean readAhead;
 
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file. If the file ends with
+	 * extension {@link CompactEventsQueue#COMPACT_EXT}, the events are read
+	 * directly from the memory mapped file (without preloading).
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
+	 * @see CompactEventsQueue
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, false);
+	}
+
+	/**
+	 * Creates a new Queue from a file
+	 * @param filePath Path to the file where the events are read from
+	 * @param nrofPreload How many events to preload
+	 * @param readAhead If true, the events are read and parsed in a
+	 * background thread while the earlier events are processed. The events
+	 * of compact events files are never read ahead.
+	 * @see #ExternalEventsQueue(String, int)
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			boolean readAhead) {
 		setNrofPreload(nrofPreload);
+		this.readAhead = readAhead;
 		init(filePath);
 	}
 
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PATH_SETTING} and {@link #READ_AHEAD_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,6 +87,7 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		this.readAhead = s.getBoolean(READ_AHEAD_SETTING, false);
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -77,6 +107,11 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 
+		if (CompactEventsQueue.isCompactEventsFile(eventsFile)) {
+			this.compactQueue = new CompactEventsQueue(eventsFile);
+			return;
+		}
+
 		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
@@ -84,16 +119,46 @@ public class ExternalEventsQueue implements EventQueue {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 
+		if (readAhead) {
+			startReadAhead();
+		}
+
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
 
+	/**
+	 * Starts reading the events in batches of {@link #nrofPreload} events
+	 * in a background thread. At most two batches are read ahead of the
+	 * batch in use.
+	 */
+	private void startReadAhead() {
+		final ExternalEventsReader r = this.reader;
+		final int nrof = this.nrofPreload;
+		ReadAheadQueue.Source<List<ExternalEvent>> source =
+			new ReadAheadQueue.Source<List<ExternalEvent>>() {
+			public List<ExternalEvent> read() {
+				List<ExternalEvent> events = r.readEvents(nrof);
+				if (events.size() == 0) {
+					r.close();
+					return null;
+				}
+				return events;
+			}
+		};
+		this.readAheadQueue = new ReadAheadQueue<List<ExternalEvent>>(
+				"ExternalEvents " + eventsFile.getName(), source, 2);
+	}
+
 	/**
 	 * Returns next event's time or Double.MAX_VALUE if there are no
 	 * events left
 	 * @return Next event's time
 	 */
 	public double nextEventsTime() {
+		if (compactQueue != null) {
+			return compactQueue.nextEventsTime();
+		}
 		if (eventsLeftInBuffer() <= 0 ) {
 			// in case user request time of an event that doesn't exist
 			return Double.MAX_VALUE;
@@ -109,6 +174,9 @@ public class ExternalEventsQueue implements EventQueue {
 	 * @return The next event
 	 */
 	public ExternalEvent nextEvent() {
+		if (compactQueue != null) {
+			return compactQueue.nextEvent();
+		}
 		if (queue.size() == 0) { // no more events
 			return new ExternalEvent(Double.MAX_VALUE);
 		}
@@ -130,6 +198,10 @@ public class ExternalEventsQueue implements EventQueue {
 	 * @return The amount of events left or 0 there aren't any events
 	 */
 	public int eventsLeftInBuffer() {
+		if (compactQueue != null) {
+			return (int)Math.min(Integer.MAX_VALUE,
+					compactQueue.eventsLeft());
+		}
 		if (queue == null || queue.size() == 0) {
 			return 0;
 		}
@@ -150,7 +222,17 @@ public class ExternalEventsQueue implements EventQueue {
 			return new ArrayList<ExternalEvent>(0);
 		}
 
-		List<ExternalEvent> events = reader.readEvents(nrof);
+		List<ExternalEvent> events;
+		if (readAheadQueue != null) { /* the reader thread closes the reader */
+			events = readAheadQueue.take();
+			if (events == null) {
+				events = new ArrayList<ExternalEvent>(0);
+				allEventsRead = true;
+			}
+			return events;
+		}
+
+		events = reader.readEvents(nrof);
 
 		if (nrof > 0 && events.size() == 0) {
 			reader.close();
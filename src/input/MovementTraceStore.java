@@ -0,0 +1,584 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * <P>Store of node location traces that keeps the samples of each node in
+ * memory mapped columns of times and coordinates instead of objects, so
+ * traces larger than the heap can be used. Nodes are identified by their
+ * index (order of the first appearance in the trace) and samples by their
+ * index in the columns; the samples of a node are consecutive and sorted
+ * by time.</P>
+ *
+ * <P>Trace store files are created from {@link ExternalMovementReader}
+ * format files with the main method of this class:<BR>
+ * <CODE>java -cp target input.MovementTraceStore &lt;movement file&gt;
+ * &lt;output file&gt;</CODE><BR>
+ * The times and coordinates are normalized the same way the
+ * {@link ExternalMovementReader} does by default.
+ * {@link movement.ExternalMovement} uses the store for files whose name ends
+ * with {@value #STORE_EXT}.</P>
+ *
+ * <P>File format (big-endian):
+ * <PRE>
+ * header: int magic, int version, int nrof nodes, int nrof initial nodes,
+ *         long nrof samples, double minTime, maxTime, minX, maxX, minY, maxY,
+ *         double initial time, double sampling interval
+ * long[nrof nodes + 1] index of the first sample of each node
+ * double[nrof samples] times, double[nrof samples] x coordinates,
+ * double[nrof samples] y coordinates
+ * IDs: for each node, int length and the ID (UTF-8)
+ * </PRE></P>
+ */
+public class MovementTraceStore {
+	/** Extension of trace store files */
+	public static final String STORE_EXT = ".mts";
+
+	/** Magic number of trace store files ("ONET") */
+	private static final int MAGIC = 0x4F4E4554;
+	/** Version of the file format */
+	private static final int VERSION = 1;
+	/** Size of the file header */
+	private static final int HEADER_SIZE = 88;
+	/** Size of the mapped segments of the columns (a multiple of 8) */
+	private static final long SEGMENT_SIZE = 1 << 30;
+	/** Character set of the IDs */
+	private static final String CHARSET = "UTF-8";
+	/** Prefix for comment lines of the text traces */
+	private static final String COMMENT_PREFIX =
+		ExternalMovementReader.COMMENT_PREFIX;
+
+	private int nrofNodes;
+	private int nrofInitialNodes;
+	private long nrofSamples;
+	private double minTime;
+	private double maxTime;
+	private double minX;
+	private double maxX;
+	private double minY;
+	private double maxY;
+	private double initTime;
+	private double samplingInterval;
+
+	private long[] firstSamples;
+	private Column times;
+	private Column xs;
+	private Column ys;
+	private String[] ids;
+
+	/**
+	 * Opens a trace store file
+	 * @param storeFile The file
+	 * @throws SettingsError if the file is not a valid trace store file
+	 * @throws SimError if reading the file failed
+	 */
+	public MovementTraceStore(File storeFile) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(storeFile, "r");
+			if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+				throw new SettingsError(storeFile + " is not a trace store " +
+						"file");
+			}
+			int version = raf.readInt();
+			if (version != VERSION) {
+				throw new SettingsError("Unsupported version " + version +
+						" of trace store file " + storeFile);
+			}
+			this.nrofNodes = raf.readInt();
+			this.nrofInitialNodes = raf.readInt();
+			this.nrofSamples = raf.readLong();
+			this.minTime = raf.readDouble();
+			this.maxTime = raf.readDouble();
+			this.minX = raf.readDouble();
+			this.maxX = raf.readDouble();
+			this.minY = raf.readDouble();
+			this.maxY = raf.readDouble();
+			this.initTime = raf.readDouble();
+			this.samplingInterval = raf.readDouble();
+
+			FileChannel channel = raf.getChannel();
+			long pos = HEADER_SIZE;
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					pos, (nrofNodes + 1) * 8L);
+			this.firstSamples = new long[nrofNodes + 1];
+			buf.asLongBuffer().get(firstSamples);
+			pos += (nrofNodes + 1) * 8L;
+
+			FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+			this.times = new Column(channel, mode, pos, nrofSamples);
+			pos += nrofSamples * 8;
+			this.xs = new Column(channel, mode, pos, nrofSamples);
+			pos += nrofSamples * 8;
+			this.ys = new Column(channel, mode, pos, nrofSamples);
+			pos += nrofSamples * 8;
+
+			channel.position(pos);
+			DataInputStream in = new DataInputStream(
+					Channels.newInputStream(channel));
+			this.ids = new String[nrofNodes];
+			for (int i=0; i<nrofNodes; i++) {
+				byte[] id = new byte[in.readInt()];
+				in.readFully(id);
+				ids[i] = new String(id, CHARSET);
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't read trace store file " + storeFile +
+					": " + e.getMessage(), e);
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close(); // mappings stay valid after closing
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the file has the extension of trace store files
+	 * @param file The file to check
+	 * @return True if the file is a trace store file
+	 */
+	public static boolean isTraceStoreFile(File file) {
+		return file.getName().endsWith(STORE_EXT);
+	}
+
+	/**
+	 * Returns the number of nodes in the trace
+	 * @return the number of nodes
+	 */
+	public int getNrofNodes() {
+		return nrofNodes;
+	}
+
+	/**
+	 * Returns the number of nodes that have a location at the initial
+	 * time. These are the nodes with the smallest indexes.
+	 * @return the number of initial nodes
+	 */
+	public int getNrofInitialNodes() {
+		return nrofInitialNodes;
+	}
+
+	/**
+	 * Returns the ID of a node in the trace file
+	 * @param node Index of the node
+	 * @return The ID
+	 */
+	public String getId(int node) {
+		return ids[node];
+	}
+
+	/**
+	 * Returns the index of the first sample of a node
+	 * @param node Index of the node
+	 * @return The index of the first sample
+	 */
+	public long getFirstSample(int node) {
+		return firstSamples[node];
+	}
+
+	/**
+	 * Returns the index after the last sample of a node
+	 * @param node Index of the node
+	 * @return The index after the last sample
+	 */
+	public long getSampleEnd(int node) {
+		return firstSamples[node + 1];
+	}
+
+	/**
+	 * Returns the time of a sample
+	 * @param sample Index of the sample
+	 * @return The (normalized) time
+	 */
+	public double getTime(long sample) {
+		return times.get(sample);
+	}
+
+	/**
+	 * Returns the x coordinate of a sample
+	 * @param sample Index of the sample
+	 * @return The (normalized) x coordinate
+	 */
+	public double getX(long sample) {
+		return xs.get(sample);
+	}
+
+	/**
+	 * Returns the y coordinate of a sample
+	 * @param sample Index of the sample
+	 * @return The (normalized) y coordinate
+	 */
+	public double getY(long sample) {
+		return ys.get(sample);
+	}
+
+	/**
+	 * Returns the (normalized) time of the first time instance
+	 * @return the initial time
+	 */
+	public double getInitTime() {
+		return initTime;
+	}
+
+	/**
+	 * Returns the time difference of the first two time instances
+	 * @return the sampling interval
+	 */
+	public double getSamplingInterval() {
+		return samplingInterval;
+	}
+
+	/**
+	 * Returns offset maxTime
+	 * @return the maxTime
+	 */
+	public double getMaxTime() {
+		return maxTime;
+	}
+
+	/**
+	 * Returns offset maxX
+	 * @return the maxX
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Returns offset maxY
+	 * @return the maxY
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Returns offset minTime
+	 * @return the minTime
+	 */
+	public double getMinTime() {
+		return minTime;
+	}
+
+	/**
+	 * Returns offset minX
+	 * @return the minX
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns offset minY
+	 * @return the minY
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Converts an {@link ExternalMovementReader} format file to a trace
+	 * store file. The input is read twice: first to count the samples of
+	 * each node and then to write them to their places, so only the
+	 * per-node counts are kept in memory.
+	 * @param movementFile The movement file
+	 * @param fileName Path of the trace store file to create
+	 * @return The number of samples converted
+	 * @throws IOException if reading or writing failed
+	 * @throws SettingsError if the movement file has invalid lines
+	 */
+	public static long storeToTraceFile(File movementFile, String fileName)
+			throws IOException {
+		TraceParser parser = new TraceParser(movementFile);
+		Map<String, Integer> nodeIndexes = new HashMap<String, Integer>();
+		List<String> ids = new ArrayList<String>();
+		long[] counts = new long[16];
+		long nrofSamples = 0;
+		int nrofInitialNodes = -1;
+		double initTime = 0;
+		double samplingInterval = 0;
+
+		/* first pass: nodes and their sample counts */
+		try {
+			while (parser.next()) {
+				if (nrofSamples == 0) {
+					initTime = parser.time;
+				}
+				else if (nrofInitialNodes < 0 && parser.time != initTime) {
+					nrofInitialNodes = ids.size();
+					samplingInterval = parser.time - initTime;
+				}
+				Integer index = nodeIndexes.get(parser.id);
+				if (index == null) {
+					index = ids.size();
+					nodeIndexes.put(parser.id, index);
+					ids.add(parser.id);
+					if (index == counts.length) {
+						counts = Arrays.copyOf(counts, index * 2);
+					}
+				}
+				counts[index]++;
+				nrofSamples++;
+			}
+		} finally {
+			parser.close();
+		}
+		if (nrofInitialNodes < 0) { // only one time instance
+			nrofInitialNodes = ids.size();
+		}
+
+		int nrofNodes = ids.size();
+		long[] firstSamples = new long[nrofNodes + 1];
+		for (int i=0; i<nrofNodes; i++) {
+			firstSamples[i + 1] = firstSamples[i] + counts[i];
+		}
+		long[] nextSamples = Arrays.copyOf(firstSamples, nrofNodes);
+		long columnsStart = HEADER_SIZE + (nrofNodes + 1) * 8L;
+		long idsStart = columnsStart + nrofSamples * 24;
+
+		new File(fileName).delete();
+		RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+		parser = new TraceParser(movementFile);
+		try {
+			raf.setLength(idsStart);
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(nrofNodes);
+			raf.writeInt(nrofInitialNodes);
+			raf.writeLong(nrofSamples);
+			raf.writeDouble(parser.minTime);
+			raf.writeDouble(parser.maxTime);
+			raf.writeDouble(parser.minX);
+			raf.writeDouble(parser.maxX);
+			raf.writeDouble(parser.minY);
+			raf.writeDouble(parser.maxY);
+			raf.writeDouble(initTime);
+			raf.writeDouble(samplingInterval);
+			for (long first : firstSamples) {
+				raf.writeLong(first);
+			}
+
+			/* second pass: samples to their places in the columns */
+			FileChannel channel = raf.getChannel();
+			FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+			Column times = new Column(channel, mode, columnsStart,
+					nrofSamples);
+			Column xs = new Column(channel, mode,
+					columnsStart + nrofSamples * 8, nrofSamples);
+			Column ys = new Column(channel, mode,
+					columnsStart + nrofSamples * 16, nrofSamples);
+			while (parser.next()) {
+				int index = nodeIndexes.get(parser.id);
+				long sample = nextSamples[index]++;
+				times.put(sample, parser.time);
+				xs.put(sample, parser.x);
+				ys.put(sample, parser.y);
+			}
+			times.force();
+			xs.force();
+			ys.force();
+
+			raf.seek(idsStart);
+			for (String id : ids) {
+				byte[] bytes = id.getBytes(CHARSET);
+				raf.writeInt(bytes.length);
+				raf.write(bytes);
+			}
+		} finally {
+			parser.close();
+			raf.close();
+		}
+
+		return nrofSamples;
+	}
+
+	/**
+	 * Converts an external movement file to a trace store file.
+	 * @param args The movement file and the output file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java input.MovementTraceStore " +
+					"<movement file> <output file>");
+			System.exit(1);
+		}
+		java.util.Locale.setDefault(java.util.Locale.US);
+
+		String fileName = args[1];
+		if (!fileName.endsWith(STORE_EXT)) {
+			fileName += STORE_EXT;
+		}
+		long nrof = storeToTraceFile(new File(args[0]), fileName);
+		System.out.println("Converted " + nrof + " samples to " + fileName);
+	}
+
+	/**
+	 * Column of doubles that is memory mapped in segments
+	 */
+	private static class Column {
+		private MappedByteBuffer[] segments;
+
+		/**
+		 * Maps a column
+		 * @param channel The file's channel
+		 * @param mode Mapping mode
+		 * @param start Start of the column in the file
+		 * @param length Number of values in the column
+		 * @throws IOException if the mapping failed
+		 */
+		public Column(FileChannel channel, FileChannel.MapMode mode,
+				long start, long length) throws IOException {
+			long size = length * 8;
+			int nrofSegments = (int)((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			this.segments = new MappedByteBuffer[nrofSegments];
+			for (int i=0; i<nrofSegments; i++) {
+				long offset = i * SEGMENT_SIZE;
+				segments[i] = channel.map(mode, start + offset,
+						Math.min(SEGMENT_SIZE, size - offset));
+			}
+		}
+
+		/**
+		 * Returns a value of the column
+		 * @param index Index of the value
+		 * @return The value
+		 */
+		public double get(long index) {
+			long pos = index * 8;
+			return segments[(int)(pos / SEGMENT_SIZE)].getDouble(
+					(int)(pos % SEGMENT_SIZE));
+		}
+
+		/**
+		 * Sets a value of the column
+		 * @param index Index of the value
+		 * @param value The value
+		 */
+		public void put(long index, double value) {
+			long pos = index * 8;
+			segments[(int)(pos / SEGMENT_SIZE)].putDouble(
+					(int)(pos % SEGMENT_SIZE), value);
+		}
+
+		/**
+		 * Writes the changes of a read-write column to the file
+		 */
+		public void force() {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+		}
+	}
+
+	/**
+	 * Parser for the lines of {@link ExternalMovementReader} format files
+	 */
+	private static class TraceParser {
+		private BufferedReader reader;
+		private double minTime;
+		private double maxTime;
+		private double minX;
+		private double maxX;
+		private double minY;
+		private double maxY;
+		/* values of the last parsed line (normalized) */
+		private double time;
+		private String id;
+		private double x;
+		private double y;
+
+		/**
+		 * Opens a movement file and reads its offset header
+		 * @param file The file
+		 * @throws IOException if reading failed
+		 * @throws SettingsError if the file or its header was invalid
+		 */
+		public TraceParser(File file) throws IOException {
+			try {
+				this.reader = new BufferedReader(new FileReader(file),
+						1 << 16);
+			} catch (FileNotFoundException e) {
+				throw new SettingsError("Couldn't find external movement " +
+						"input file " + file);
+			}
+
+			String offsets = reader.readLine();
+			try {
+				StringTokenizer st = new StringTokenizer(offsets);
+				minTime = Double.parseDouble(st.nextToken());
+				maxTime = Double.parseDouble(st.nextToken());
+				minX = Double.parseDouble(st.nextToken());
+				maxX = Double.parseDouble(st.nextToken());
+				minY = Double.parseDouble(st.nextToken());
+				maxY = Double.parseDouble(st.nextToken());
+			} catch (Exception e) {
+				reader.close();
+				throw new SettingsError("Invalid offset line '" + offsets +
+						"'");
+			}
+		}
+
+		/**
+		 * Parses the next sample
+		 * @return True if a sample was parsed, false if there were no more
+		 * samples
+		 * @throws IOException if reading failed
+		 * @throws SettingsError if an invalid line was read
+		 */
+		public boolean next() throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() == 0 ||
+						line.startsWith(COMMENT_PREFIX)) {
+					continue; /* skip empty and comment lines */
+				}
+
+				try {
+					StringTokenizer st = new StringTokenizer(line);
+					time = Double.parseDouble(st.nextToken()) - minTime;
+					id = st.nextToken();
+					x = Double.parseDouble(st.nextToken()) - minX;
+					y = Double.parseDouble(st.nextToken()) - minY;
+				} catch (Exception e) {
+					throw new SettingsError("Invalid line '" + line + "'");
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Closes the file
+		 */
+		public void close() {
+			try {
+				reader.close();
+			} catch (IOException e) {}
+		}
+	}
+}
@@ -4,25 +4,35 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time
- * are merged to a single update.
+ * are merged to a single update. Other events can be scheduled too (see
+ * {@link #addEvent(ExternalEvent)}). The events are kept in a binary heap so
+ * adding and removing an event takes O(log n) time. Events with the same
+ * time are returned in the order they were added.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** the updates and events in a binary heap ordered by their time and
+	 * insertion order */
+	private PriorityQueue<Entry> updates;
+	/** the updates in the queue by their time */
+	private Map<Double, ExternalEvent> updateTimes;
+	/** number of events added (for ordering same-time events) */
+	private long nrofAdded;
 
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new PriorityQueue<Entry>();
+		this.updateTimes = new HashMap<Double, ExternalEvent>();
+		this.nrofAdded = 0;
 	}
 
 	/**
@@ -31,15 +41,15 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		if (this.updates.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
 
+		ExternalEvent event = this.updates.poll().event;
+		Double key = key(event.getTime());
+		if (this.updateTimes.get(key) == event) {
+			this.updateTimes.remove(key);
+		}
 		return event;
 	}
 
@@ -49,7 +59,10 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		if (this.updates.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return this.updates.peek().event.getTime();
 	}
 
 	/**
@@ -57,49 +70,67 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
-
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
-		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
-		}
-		else { // given event happens later..
-			putToQueue(ee);
+		Double key = key(simTime);
+		if (!this.updateTimes.containsKey(key)) { // no update at the time
+			ExternalEvent ee = new ExternalEvent(simTime);
+			this.updateTimes.put(key, ee);
+			this.updates.add(new Entry(ee, nrofAdded++));
 		}
 	}
 
 	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
+	 * Adds an event to the queue. The event is processed at its time (in
+	 * addition to any update at the same time).
+	 * @param ee The event to add
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
-			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
-			}
-		}
+	public void addEvent(ExternalEvent ee) {
+		this.updates.add(new Entry(ee, nrofAdded++));
+	}
 
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);
+	/**
+	 * Returns the key of an update time in the set of times
+	 * @param simTime The update time
+	 * @return The key (same for negative and positive zero)
+	 */
+	private Double key(double simTime) {
+		return simTime + 0.0;
 	}
 
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		Entry[] entries = this.updates.toArray(new Entry[0]);
+		Arrays.sort(entries);
+		String times = "updates @ ";
 
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		if (entries.length == 0) {
+			return times + Double.MAX_VALUE;
+		}
+		for (int i=0; i<entries.length; i++) {
+			times += (i > 0 ? ", " : "") + entries[i].event.getTime();
 		}
 
 		return times;
 	}
+
+	/**
+	 * Queued event with its insertion number. ExternalEvents compare only
+	 * their times, so the number keeps the same-time events in FIFO order.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private ExternalEvent event;
+		private long number;
+
+		private Entry(ExternalEvent event, long number) {
+			this.event = event;
+			this.number = number;
+		}
+
+		public int compareTo(Entry other) {
+			int c = this.event.compareTo(other.event);
+			if (c != 0) {
+				return c;
+			}
+			return this.number < other.number ? -1 :
+				(this.number == other.number ? 0 : 1);
+		}
+	}
 }
@@ -4,17 +4,15 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.Integer;
-import java.lang.NumberFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import core.SimError;
 
@@ -43,6 +41,11 @@ import core.SimError;
  * message ID for referring to all messages the node has in message buffer
  * (i.e., to delete all messages).
  * </P>
+ * <P> The file is read through a channel into a byte buffer and the lines are
+ * tokenized in place: times, host addresses and sizes are parsed directly
+ * from the bytes and only message and interface IDs are converted to
+ * strings.
+ * </P>
  */
 public class StandardEventsReader implements ExternalEventsReader {
 	/** Identifier of message creation event ({@value}) */
@@ -66,153 +69,70 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
-	private BufferedReader reader;
+	/** Initial size of the read buffer (grows if a line doesn't fit) */
+	private static final int BUFFER_SIZE = 1 << 20;
+	/** Powers of ten that are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	/** Largest integer mantissa that can be exactly represented as double */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i=1; i<POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+		}
+	}
+
+	private FileChannel channel;
+	/** Character set used for message and interface IDs */
+	private Charset charset;
+	/** The read buffer and a byte buffer view of it for the channel */
+	private byte[] data;
+	private ByteBuffer buffer;
+	/** Start of the unprocessed data in the buffer */
+	private int pos;
+	/** End of the valid data in the buffer */
+	private int limit;
+	/** Has the end of the file been reached */
+	private boolean eof;
+
+	/** Start and end of the current line in the buffer */
+	private int lineStart;
+	private int lineEnd;
+	/** Start and end of the current token in the buffer */
+	private int tokenStart;
+	private int tokenEnd;
 
 	public StandardEventsReader(File eventsFile){
 		try {
-			//this.scanner = new Scanner(eventsFile);
-			this.reader = new BufferedReader(new FileReader(eventsFile));
+			this.channel = new FileInputStream(eventsFile).getChannel();
 		} catch (FileNotFoundException e) {
 			throw new SimError(e.getMessage(),e);
 		}
+		this.charset = Charset.defaultCharset();
+		this.data = new byte[BUFFER_SIZE];
+		this.buffer = ByteBuffer.wrap(data);
+		this.pos = 0;
+		this.limit = 0;
+		this.eof = false;
 	}
 
 
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
 
-		String line;
-		try {
-			line = this.reader.readLine();
-		} catch (IOException e1) {
-			throw new SimError("Reading from external event file failed.");
-		}
-		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
-				// skip empty and comment lines
-				try {
-					line = this.reader.readLine();
-				} catch (IOException e) {
-					throw new SimError("Reading from external event file " +
-							"failed.");
-				}
-				continue;
+		while (eventsRead < nrof && nextLine()) {
+			if (isSkipLine()) {
+				continue; // skip empty and comment lines
 			}
 
-			double time;
-			String action;
-			String msgId;
-			int hostAddr;
-			int host2Addr;
-
 			try {
-				time = lineScan.nextDouble();
-				action = lineScan.next();
-
-				if (action.equals(DROP)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, true));
-				}
-				else if (action.equals(REMOVE)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, false));
-				}
-				else if (action.equals(CONNECTION)) {
-					String connEventType;
-					boolean isUp;
-					hostAddr = getHostAddress(lineScan.next());
-					host2Addr = getHostAddress(lineScan.next());
-					connEventType = lineScan.next();
-
-					String interfaceId = null;
-					if (lineScan.hasNext()) {
-						interfaceId = lineScan.next();
-					}
-
-					if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
-						isUp = true;
-					}
-					else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
-						isUp = false;
-					}
-					else {
-						throw new SimError("Unknown up/down value '" +
-								connEventType + "'");
-					}
-
-					ConnectionEvent ce = new ConnectionEvent(hostAddr,
-							host2Addr, interfaceId, isUp, time);
-
-					events.add(ce);
-				}
-				else {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-
-					host2Addr = getHostAddress(lineScan.next());
-
-					if (action.equals(CREATE)){
-						int size = 0;
-
-						if (lineScan.hasNextInt()){
-							size = lineScan.nextInt();
-						}
-						else if (lineScan.hasNext()){
-							size = convertToInteger(lineScan.next());
-						}else{
-							throw new Exception("Invalid number of columns for CREATE event");
-						}
-
-						int respSize = 0;
-						if (lineScan.hasNextInt()) {
-							respSize = lineScan.nextInt();
-						}
-						else if(lineScan.hasNext()) {
-							respSize = convertToInteger(lineScan.next());
-						}
-						events.add(new MessageCreateEvent(hostAddr, host2Addr,
-								msgId, size, respSize, time));
-					}
-					else {
-						int stage = -1;
-						if (action.equals(SEND)) {
-							stage = MessageRelayEvent.SENDING;
-						}
-						else if (action.equals(DELIVERED)) {
-							stage = MessageRelayEvent.TRANSFERRED;
-						}
-						else if (action.equals(ABORT)) {
-							stage = MessageRelayEvent.ABORTED;
-						}
-						else {
-							throw new SimError("Unknown action '" + action +
-								"' in external events");
-						}
-						events.add(new MessageRelayEvent(hostAddr, host2Addr,
-								msgId, time, stage));
-					}
-				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
-				}
+				events.add(parseEvent());
 				eventsRead++;
-				if (eventsRead < nrof) {
-					line = this.reader.readLine();
-				}
 			} catch (Exception e) {
-				e.printStackTrace();
 				throw new SimError("Can't parse external event " +
-						(eventsRead+1) + " from '" + line + "'", e);
+						(eventsRead+1) + " from '" + getLine() + "'", e);
 			}
 		}
 
@@ -220,60 +140,459 @@ public class StandardEventsReader implements ExternalEventsReader {
 	}
 
 	/**
-	 * Parses a host address from a hostId string (the numeric part after
-	 * optional non-numeric part).
-	 * @param hostId The id to parse the address from
-	 * @return The address
-	 * @throws SimError if no address could be parsed from the id
+	 * Parses an event from the current line
+	 * @return The event
+	 * @throws SimError if the line is not a valid event
+	 * @throws NumberFormatException if a numeric field is not valid
 	 */
-	private int getHostAddress(String hostId) {
-		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
-			addressPart = hostId; // host id is only the address
+	private ExternalEvent parseEvent() {
+		double time;
+		String msgId;
+		int hostAddr;
+		int host2Addr;
+
+		nextRequiredToken();
+		time = parseDouble();
+		nextRequiredToken();
+
+		if (tokenEquals(DROP)) {
+			msgId = nextString();
+			hostAddr = nextHostAddress();
+			return new MessageDeleteEvent(hostAddr, msgId, time, true);
+		}
+		else if (tokenEquals(REMOVE)) {
+			msgId = nextString();
+			hostAddr = nextHostAddress();
+			return new MessageDeleteEvent(hostAddr, msgId, time, false);
 		}
-		else if (hostId.matches("^\\D+\\d+$")) {
-			String [] parts = hostId.split("\\D");
-			addressPart = parts[parts.length-1]; // last occurence is the addr
+		else if (tokenEquals(CONNECTION)) {
+			boolean isUp;
+			hostAddr = nextHostAddress();
+			host2Addr = nextHostAddress();
+			nextRequiredToken();
+
+			if (tokenEqualsIgnoreCase(CONNECTION_UP)) {
+				isUp = true;
+			}
+			else if (tokenEqualsIgnoreCase(CONNECTION_DOWN)) {
+				isUp = false;
+			}
+			else {
+				throw new SimError("Unknown up/down value '" +
+						getToken() + "'");
+			}
+
+			String interfaceId = null;
+			if (nextToken()) {
+				interfaceId = getToken();
+			}
+
+			return new ConnectionEvent(hostAddr, host2Addr, interfaceId, isUp,
+					time);
+		}
+
+		boolean isCreate = tokenEquals(CREATE);
+		int stage = -1;
+		if (tokenEquals(SEND)) {
+			stage = MessageRelayEvent.SENDING;
+		}
+		else if (tokenEquals(DELIVERED)) {
+			stage = MessageRelayEvent.TRANSFERRED;
 		}
-		else {
-			throw new SimError("Invalid host ID '" + hostId + "'");
+		else if (tokenEquals(ABORT)) {
+			stage = MessageRelayEvent.ABORTED;
 		}
+		else if (!isCreate) {
+			throw new SimError("Unknown action '" + getToken() +
+					"' in external events");
+		}
+
+		msgId = nextString();
+		hostAddr = nextHostAddress();
+		host2Addr = nextHostAddress();
+
+		if (isCreate) {
+			int size = 0;
+			if (nextToken()) {
+				size = parseSize();
+			}
+			else {
+				throw new SimError("Invalid number of columns for CREATE " +
+						"event");
+			}
 
-		return Integer.parseInt(addressPart);
+			int respSize = 0;
+			if (nextToken()) {
+				respSize = parseSize();
+			}
+			return new MessageCreateEvent(hostAddr, host2Addr, msgId, size,
+					respSize, time);
+		}
+
+		return new MessageRelayEvent(hostAddr, host2Addr, msgId, time, stage);
 	}
 
-	public void close() {
+	/**
+	 * Moves to the next line of the file. Lines end with a line feed or a
+	 * carriage return (or both).
+	 * @return true if there was a line, false if the end of the file was
+	 * reached
+	 */
+	private boolean nextLine() {
+		int i = pos;
+		while (true) {
+			while (i < limit && data[i] != '\n' && data[i] != '\r') {
+				i++;
+			}
+			if (i < limit || (eof && i > pos)) {
+				break; // found the end of the line (or the last line)
+			}
+			if (eof) {
+				return false;
+			}
+			i -= pos;
+			fill();
+			i += pos;
+		}
+
+		lineStart = pos;
+		lineEnd = i;
+		tokenStart = tokenEnd = lineStart;
+		if (i < limit && data[i] == '\r' && i + 1 < limit &&
+				data[i + 1] == '\n') {
+			i++; // CR LF ends a single line
+		}
+		pos = Math.min(i + 1, limit);
+		return true;
+	}
+
+	/**
+	 * Moves the unprocessed data to the beginning of the buffer (growing it
+	 * if it's full) and reads more data from the file
+	 * @throws SimError if reading failed
+	 */
+	private void fill() {
+		if (pos > 0) {
+			System.arraycopy(data, pos, data, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		else if (limit == data.length) { // a line longer than the buffer
+			byte[] newData = new byte[data.length * 2];
+			System.arraycopy(data, 0, newData, 0, limit);
+			data = newData;
+			buffer = ByteBuffer.wrap(data);
+		}
+
 		try {
-			this.reader.close();
-		} catch (IOException e) {}
+			buffer.clear();
+			buffer.position(limit);
+			int nrofRead = channel.read(buffer);
+			if (nrofRead < 0) {
+				eof = true;
+			}
+			else {
+				limit += nrofRead;
+			}
+		} catch (IOException e) {
+			throw new SimError("Reading from external event file failed.", e);
+		}
+	}
+
+	/**
+	 * Returns true if the current line is empty or a comment line
+	 * @return true if the line should be skipped
+	 */
+	private boolean isSkipLine() {
+		if (lineEnd > lineStart && data[lineStart] == '#') {
+			return true;
+		}
+		boolean isEmpty = !nextToken();
+		tokenStart = tokenEnd = lineStart; // parsing starts from the beginning
+		return isEmpty;
+	}
+
+	/**
+	 * Moves to the next whitespace separated token on the current line
+	 * @return true if there was a token, false if the line ended
+	 */
+	private boolean nextToken() {
+		int i = tokenEnd;
+		while (i < lineEnd && isWhitespace(data[i])) {
+			i++;
+		}
+		tokenStart = i;
+		while (i < lineEnd && !isWhitespace(data[i])) {
+			i++;
+		}
+		tokenEnd = i;
+		return tokenEnd > tokenStart;
+	}
+
+	/**
+	 * Moves to the next token on the current line
+	 * @throws SimError if the line ended
+	 */
+	private void nextRequiredToken() {
+		if (!nextToken()) {
+			throw new SimError("Missing field");
+		}
+	}
+
+	/**
+	 * Returns true for whitespace characters
+	 * @param b The character
+	 * @return true if the character is whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f' || b == 0x0B ||
+			(b >= 0x1C && b <= 0x1F);
+	}
+
+	/**
+	 * Returns the current token as a string
+	 * @return The token
+	 */
+	private String getToken() {
+		return new String(data, tokenStart, tokenEnd - tokenStart, charset);
+	}
+
+	/**
+	 * Returns the current line as a string
+	 * @return The line
+	 */
+	private String getLine() {
+		return new String(data, lineStart, lineEnd - lineStart, charset);
+	}
+
+	/**
+	 * Moves to the next token and returns it as a string
+	 * @return The token
+	 * @throws SimError if the line ended
+	 */
+	private String nextString() {
+		nextRequiredToken();
+		return getToken();
+	}
+
+	/**
+	 * Returns true if the current token is equal to a string
+	 * @param s The (ASCII) string
+	 * @return true if the token equals the string
+	 */
+	private boolean tokenEquals(String s) {
+		if (tokenEnd - tokenStart != s.length()) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (data[tokenStart + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current token is equal to a string ignoring case
+	 * @param s The (ASCII) string
+	 * @return true if the token equals the string ignoring case
+	 */
+	private boolean tokenEqualsIgnoreCase(String s) {
+		if (tokenEnd - tokenStart != s.length()) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (Character.toLowerCase((char)data[tokenStart + i]) !=
+					Character.toLowerCase(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the current token as a decimal number
+	 * @return The number
+	 * @throws NumberFormatException if the token is not a number
+	 */
+	private double parseDouble() {
+		int i = tokenStart;
+		boolean negative = false;
+		if (data[i] == '-' || data[i] == '+') {
+			negative = (data[i] == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int nrofDigits = 0;
+		int scale = 0;
+		boolean dot = false;
+		for (; i < tokenEnd; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9' && nrofDigits < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				nrofDigits++;
+				if (dot) {
+					scale++;
+				}
+			}
+			else if (b == '.' && !dot) {
+				dot = true;
+			}
+			else { // exponent, long mantissa etc. -> use the library parser
+				return Double.parseDouble(getToken());
+			}
+		}
+
+		if (nrofDigits == 0 || mantissa >= MAX_EXACT_MANTISSA ||
+				scale >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(getToken());
+		}
+		// exact operands -> correctly rounded like Double.parseDouble
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses an integer from a part of the current token
+	 * @param start Start of the digits
+	 * @param end End of the digits
+	 * @param negative Is the number negative
+	 * @return The integer
+	 * @throws NumberFormatException if there are no digits, some character
+	 * is not a digit or the value doesn't fit to int
+	 */
+	private int parseInt(int start, int end, boolean negative) {
+		if (start == end) {
+			throw new NumberFormatException("No digits in '" + getToken() +
+					"'");
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			byte b = data[i];
+			if (b < '0' || b > '9') {
+				throw new NumberFormatException("Invalid integer '" +
+						getToken() + "'");
+			}
+			value = value * 10 + (b - '0');
+			if (value > (long)Integer.MAX_VALUE + 1) {
+				throw new NumberFormatException("Integer out of range '" +
+						getToken() + "'");
+			}
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Integer out of range '" +
+					getToken() + "'");
+		}
+		return (int)value;
+	}
+
+	/**
+	 * Moves to the next token and parses a host address from it (the
+	 * numeric part after optional non-numeric part).
+	 * @return The address
+	 * @throws SimError if no address could be parsed from the id
+	 */
+	private int nextHostAddress() {
+		nextRequiredToken();
+		int digitsStart = tokenEnd;
+		while (digitsStart > tokenStart && isDigit(data[digitsStart - 1])) {
+			digitsStart--;
+		}
+		for (int i = tokenStart; i < digitsStart; i++) {
+			if (isDigit(data[i])) {
+				digitsStart = tokenEnd; // digits in the non-numeric part
+				break;
+			}
+		}
+		if (digitsStart == tokenEnd) {
+			throw new SimError("Invalid host ID '" + getToken() + "'");
+		}
+
+		return parseInt(digitsStart, tokenEnd, false);
 	}
 
-	private int convertToInteger(String str){
-		String dataUnit = str.replaceAll("[\\d.]","").trim();
-		String numericPart = str.replaceAll("[^\\d.]","");
-		int number = Integer.parseInt(numericPart);
+	/**
+	 * Parses a size from the current token. The size is either an integer or
+	 * an unsigned integer with a unit suffix (k, M, G, kiB, MiB, or GiB).
+	 * @return The size in bytes
+	 * @throws NumberFormatException if the token is not a valid size
+	 */
+	private int parseSize() {
+		int start = tokenStart;
+		boolean negative = false;
+		if (data[start] == '-' || data[start] == '+') {
+			negative = (data[start] == '-');
+			start++;
+		}
+		if (start < tokenEnd && isDigit(data[tokenEnd - 1])) {
+			return parseInt(start, tokenEnd, negative); // no unit
+		}
+
+		int numberEnd = tokenStart;
+		while (numberEnd < tokenEnd && isDigit(data[numberEnd])) {
+			numberEnd++;
+		}
+		int number = parseInt(tokenStart, numberEnd, false);
 
-		if (dataUnit.equals("k")) {
+		if (unitEquals(numberEnd, "k")) {
 			return (number * 1000);
 		}
-		else if (dataUnit.equals("M")) {
+		else if (unitEquals(numberEnd, "M")) {
 			return (number * 1000000);
 		}
-		else if (dataUnit.equals("G")) {
+		else if (unitEquals(numberEnd, "G")) {
 			return (number * 1000000000);
 		}
-		else if (dataUnit.equals("kiB")) {
+		else if (unitEquals(numberEnd, "kiB")) {
 			return (number * 1024);
 		}
-		else if (dataUnit.equals("MiB")) {
+		else if (unitEquals(numberEnd, "MiB")) {
 			return (number * 1048576);
 		}
-		else if (dataUnit.equals("GiB")) {
+		else if (unitEquals(numberEnd, "GiB")) {
 			return (number * 1073741824);
 		}
 		else{
-			throw new NumberFormatException("Invalid number format for StandardEventsReader: ["+str+"]");
+			throw new NumberFormatException("Invalid number format for " +
+					"StandardEventsReader: [" + getToken() + "]");
+		}
+	}
+
+	/**
+	 * Returns true if the rest of the current token is the given unit
+	 * @param start Start of the unit in the token
+	 * @param unit The unit
+	 * @return true if the unit matched
+	 */
+	private boolean unitEquals(int start, String unit) {
+		if (tokenEnd - start != unit.length()) {
+			return false;
+		}
+		for (int i=0; i<unit.length(); i++) {
+			if (data[start + i] != unit.charAt(i)) {
+				return false;
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * Returns true for (ASCII) digits
+	 * @param b The character
+	 * @return true if the character is a digit
+	 */
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {}
 	}
 
 }
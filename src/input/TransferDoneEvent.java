@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.World;
+
+/**
+ * Event that happens when a message transfer is done. Makes sure that the
+ * sending and receiving hosts are updated (and the transfer finalized) at
+ * the exact time the transfer is done. The event is cancelled if the
+ * transfer is aborted or finalized before the event.
+ */
+public class TransferDoneEvent extends ExternalEvent {
+	/** the connection transferring the message */
+	private Connection con;
+	/** the message being transferred */
+	private Message message;
+	/** the host sending the message */
+	private DTNHost from;
+	/** the host receiving the message */
+	private DTNHost to;
+
+	/**
+	 * Creates a new transfer done event
+	 * @param con The connection transferring the message
+	 * @param message The message (as received by the other host)
+	 * @param from The host sending the message
+	 * @param time Time when the transfer is done
+	 */
+	public TransferDoneEvent(Connection con, Message message, DTNHost from,
+			double time) {
+		super(time);
+		this.con = con;
+		this.message = message;
+		this.from = from;
+		this.to = con.getOtherNode(from);
+	}
+
+	/**
+	 * Returns true if the connection no longer transfers the message
+	 * (the transfer was aborted or already finalized)
+	 * @return true if the transfer is no longer going on
+	 */
+	@Override
+	public boolean isCancelled() {
+		return this.con.getMessage() != this.message;
+	}
+
+	@Override
+	public void processEvent(World world) {
+		world.markHostAffected(this.from);
+		world.markHostAffected(this.to);
+	}
+
+	@Override
+	public String toString() {
+		return "TRANSFER_DONE @" + this.time + " " + this.from + "->" +
+			this.to;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import core.DTNHost;
+import core.World;
+
+/**
+ * Event that happens when the TTL of a message in a host's buffer runs out.
+ * Makes sure that the host is updated (and the message dropped) at the
+ * exact time the message expires.
+ */
+public class TtlExpiryEvent extends ExternalEvent {
+	/** the host whose message expires */
+	private DTNHost host;
+
+	/**
+	 * Creates a new TTL expiry event
+	 * @param host The host whose message expires
+	 * @param time Time when the message expires
+	 */
+	public TtlExpiryEvent(DTNHost host, double time) {
+		super(time);
+		this.host = host;
+	}
+
+	@Override
+	public void processEvent(World world) {
+		world.markHostAffected(this.host);
+	}
+
+	@Override
+	public String toString() {
+		return "TTL_EXPIRY @" + this.time + " " + this.host;
+	}
+}
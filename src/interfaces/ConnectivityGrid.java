@@ -5,8 +5,10 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
@@ -54,8 +56,20 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** how large array is initially chosen for a cell */
+	private static final int EXPECTED_INTERFACE_COUNT = 5;
+	/** ids of the interfaces in each cell (by cell index); null for cells
+	 * that have never had any interfaces */
+	private int[][] cellInterfaces;
+	/** number of interfaces in each cell (by cell index) */
+	private int[] cellSizes;
+	/** interfaces by their ids (the id of an interface is also stored as
+	 * its {@link NetworkInterface#getOptimizerIndex() optimizer index}) */
+	private NetworkInterface[] interfaces;
+	/** index of the cell of each interface (by interface id) */
+	private int[] interfaceCells;
+	/** number of interfaces in this grid */
+	private int nrofInterfaces;
 	private int cellSize;
 	private int rows;
 	private int cols;
@@ -101,15 +115,13 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier
-		this.cells = new GridCell[rows+2][cols+2];
+		this.cellInterfaces = new int[(rows+2) * (cols+2)][];
+		this.cellSizes = new int[(rows+2) * (cols+2)];
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
-		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.interfaceCells = new int[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
 	}
 
 	/**
@@ -133,13 +145,26 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Adds a network interface to the overlay grid
+	 * Adds a network interface to the overlay grid (unless it is already
+	 * present). An interface can be in only one grid at a time.
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		if (idOf(ni) >= 0) {
+			return;
+		}
+
+		int id = nrofInterfaces++;
+		if (id == interfaces.length) {
+			interfaces = Arrays.copyOf(interfaces, id * 2);
+			interfaceCells = Arrays.copyOf(interfaceCells, id * 2);
+		}
+
+		int cell = cellFromCoord(ni.getLocation());
+		interfaces[id] = ni;
+		interfaceCells[id] = cell;
+		addToCell(cell, id);
+		ni.setOptimizerIndex(id);
 	}
 
 	/**
@@ -147,11 +172,45 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int id = idOf(ni);
+		if (id < 0) {
+			return;
+		}
+
+		removeFromCell(interfaceCells[id], id);
+		ni.setOptimizerIndex(-1);
+
+		/* move the last interface to the free id to keep the ids dense */
+		int lastId = --nrofInterfaces;
+		if (id != lastId) {
+			NetworkInterface last = interfaces[lastId];
+			int lastCell = interfaceCells[lastId];
+			int[] members = cellInterfaces[lastCell];
+			for (int i=0, n=cellSizes[lastCell]; i<n; i++) {
+				if (members[i] == lastId) {
+					members[i] = id;
+					break;
+				}
+			}
+			interfaces[id] = last;
+			interfaceCells[id] = lastCell;
+			last.setOptimizerIndex(id);
+		}
+		interfaces[lastId] = null;
+	}
+
+	/**
+	 * Returns the id of an interface in this grid
+	 * @param ni The interface
+	 * @return The id of the interface or -1 if the interface is not in
+	 * this grid
+	 */
+	private int idOf(NetworkInterface ni) {
+		int id = ni.getOptimizerIndex();
+		if (id >= 0 && id < nrofInterfaces && interfaces[id] == ni) {
+			return id;
 		}
-		ginterfaces.remove(ni);
+		return -1;
 	}
 
 	/**
@@ -169,48 +228,68 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int id = idOf(ni);
+		assert id >= 0 : "interface " + ni + " is not in the grid";
+		int oldCell = interfaceCells[id];
+		int newCell = cellFromCoord(ni.getLocation());
 
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			removeFromCell(oldCell, id);
+			addToCell(newCell, id);
+			interfaceCells[id] = newCell;
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells
+	 * Adds an interface to the end of a cell's interface list
+	 * @param cell Index of the cell
+	 * @param id Id of the interface
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	private void addToCell(int cell, int id) {
+		int[] members = cellInterfaces[cell];
+		int size = cellSizes[cell];
+
+		if (members == null) {
+			members = new int[EXPECTED_INTERFACE_COUNT];
+			cellInterfaces[cell] = members;
+		}
+		else if (size == members.length) {
+			members = Arrays.copyOf(members, size * 2);
+			cellInterfaces[cell] = members;
+		}
+
+		members[size] = id;
+		cellSizes[cell] = size + 1;
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Removes an interface from a cell's interface list. The order of the
+	 * rest of the interfaces in the cell is preserved.
+	 * @param cell Index of the cell
+	 * @param id Id of the interface
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void removeFromCell(int cell, int id) {
+		int[] members = cellInterfaces[cell];
+		int size = cellSizes[cell];
+
+		for (int i=0; i<size; i++) {
+			if (members[i] == id) {
+				System.arraycopy(members, i + 1, members, i, size - i - 1);
+				cellSizes[cell] = size - 1;
+				return;
+			}
+		}
+
+		assert false : "interface " + interfaces[id] +
+			" not found from cell " + cell;
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
+	 * Get the index of the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return The cell index
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellFromCoord(Coord c) {
 		// +1 due empty cells on both sides of the matrix
 		int row = (int)(c.getY()/cellSize) + 1;
 		int col = (int)(c.getX()/cellSize) + 1;
@@ -218,14 +297,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
 		c + " is out of world's bounds";
 
-		return this.cells[row][col];
+		return row * (cols + 2) + col;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		List<NetworkInterface> all = Arrays.asList(interfaces);
+		return new ArrayList<NetworkInterface>(all.subList(0,
+				nrofInterfaces));
 	}
 
 	/**
@@ -236,20 +317,49 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
-		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
-
-		if (loc != null) {
-			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+
+		visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
 			}
-		}
+		});
 
 		return niList;
 	}
 
+	/**
+	 * Calls the visitor for all interfaces that are in the same or
+	 * neighboring grid cells as the given interface (including the
+	 * interface itself). The interfaces are visited one cell row at a time
+	 * and within a cell in the order they entered the cell.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for the near interfaces
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		if (idOf(ni) < 0) {
+			return;
+		}
+
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		int width = cols + 2;
+
+		for (int r = row - 1; r <= row + 1; r++) {
+			for (int cell = r * width + col - 1, last = cell + 2;
+					cell <= last; cell++) {
+				int[] members = cellInterfaces[cell];
+				for (int i=0, n=cellSizes[cell]; i<n; i++) {
+					visitor.visit(interfaces[members[i]]);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -260,64 +370,4 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
 	}
 
-	/**
-	 * A single cell in the cell grid. Contains the interfaces that are
-	 * currently in that part of the grid.
-	 */
-	public class GridCell {
-		// how large array is initially chosen
-		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
-
-		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
-		}
-
-		/**
-		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
-		 */
-		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
-		}
-
-		/**
-		 * Adds an interface to this cell
-		 * @param ni The interface to add
-		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
-		}
-
-		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
-		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
-		}
-
-		/**
-		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
-		 * @param to The cell where the interface should be moved to
-		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni);
-			assert removeOk : "interface " + ni +
-				" not found from cell with " + interfaces.toString();
-		}
-
-		/**
-		 * Returns a string representation of the cell
-		 * @return a string representation of the cell
-		 */
-		public String toString() {
-			return getClass().getSimpleName() + " with " +
-				this.interfaces.size() + " interfaces :" + this.interfaces;
-		}
-	}
-
 }
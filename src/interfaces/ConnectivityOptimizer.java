@@ -5,14 +5,68 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
 
 import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
 abstract public class ConnectivityOptimizer {
+	/**
+	 * Connectivity optimizer -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Defines the
+	 * optimizer the network interfaces use for finding near interfaces.
+	 * Valid values are {@link #GRID_OPTIMIZER} (default; see
+	 * {@link ConnectivityGrid}), {@link #SWEEP_OPTIMIZER} (see
+	 * {@link SweepConnectivityGrid}) and {@link #KINETIC_OPTIMIZER} (see
+	 * {@link KineticConnectivity}).
+	 */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** Setting value for {@link ConnectivityGrid} optimizer ({@value}) */
+	public static final String GRID_OPTIMIZER = "ConnectivityGrid";
+	/** Setting value for {@link SweepConnectivityGrid} optimizer
+	 * ({@value}) */
+	public static final String SWEEP_OPTIMIZER = "SweepConnectivityGrid";
+	/** Setting value for {@link KineticConnectivity} optimizer
+	 * ({@value}) */
+	public static final String KINETIC_OPTIMIZER = "KineticConnectivity";
+
+	/**
+	 * Returns the connectivity optimizer for a specific type of interfaces.
+	 * The type of the optimizer is defined by the {@link #OPTIMIZER_S}
+	 * setting.
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using the
+	 * optimizer
+	 * @return The connectivity optimizer for the interfaces
+	 */
+	public static ConnectivityOptimizer getOptimizer(int key,
+			double maxRange) {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		String type = s.getSetting(OPTIMIZER_S, GRID_OPTIMIZER);
+
+		if (type.equals(GRID_OPTIMIZER)) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, maxRange);
+		}
+		else if (type.equals(SWEEP_OPTIMIZER)) {
+			return SweepConnectivityGrid.SweepConnectivityGridFactory(key,
+					maxRange);
+		}
+		else if (type.equals(KINETIC_OPTIMIZER)) {
+			return KineticConnectivity.KineticConnectivityFactory(key,
+					maxRange);
+		}
+		else {
+			throw new SettingsError("Unknown connectivity optimizer " + type +
+					" for " + s.getFullPropertyName(OPTIMIZER_S));
+		}
+	}
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,9 +94,81 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. Unlike
+	 * {@link #getNearInterfaces(NetworkInterface)}, this doesn't need to
+	 * collect the interfaces to a new collection. The default
+	 * implementation visits the interfaces returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}; subclasses should
+	 * override this with an allocation-free version.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every interface within
+	 * proximity
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
+	/**
+	 * Returns true if two interfaces of this optimizer are within the given
+	 * range of each other. The default implementation compares the distance
+	 * of the interfaces' current locations to the range; optimizers that
+	 * know the contacts better (e.g., between the simulation updates)
+	 * can override this.
+	 * @param ni The first network interface
+	 * @param other The other network interface
+	 * @param range The range (the smaller range of the two interfaces)
+	 * @return True if the interfaces are within range, false if not
+	 */
+	public boolean isWithinRange(NetworkInterface ni, NetworkInterface other,
+			double range) {
+		return ni.getLocation().distance(other.getLocation()) <= range;
+	}
+
+	/**
+	 * Called by the world after all hosts have been moved and the
+	 * simulation time has been advanced, but before the hosts are updated.
+	 * The default implementation does nothing.
+	 * @param interval Time (simulated seconds) until the hosts are moved
+	 * again
+	 */
+	public void hostsMoved(double interval) {
+		// nothing to do by default
+	}
+
+	/**
+	 * Called by the world right after {@link #hostsMoved(double)} when the
+	 * hosts are moved in parallel (see {@link World#PARALLEL_MOVEMENT_S}).
+	 * Optimizers can use the threads of the pool to update the locations
+	 * of all their interfaces at once, as long as the results are the same
+	 * as with the {@link #updateLocation(NetworkInterface)} calls of the
+	 * host updates. The default implementation does nothing.
+	 * @param pool The thread pool to use
+	 */
+	public void updateLocations(ForkJoinPool pool) {
+		// nothing to do by default
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Interface for callbacks of
+	 * {@link ConnectivityOptimizer#visitNearInterfaces(NetworkInterface,
+	 * NearInterfaceVisitor)}
+	 */
+	public interface NearInterfaceVisitor {
+		/**
+		 * Called for every visited interface
+		 * @param ni The visited network interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
@@ -0,0 +1,692 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import input.EventQueue;
+import input.ExternalEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import movement.MovementModel;
+
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.World;
+
+/**
+ * <P>
+ * Kinetic connectivity optimizer that predicts when the interfaces come
+ * within and go out of range of each other between the simulation updates.
+ * </P>
+ *
+ * <P>Hosts move from waypoint to waypoint along straight lines with a
+ * constant speed. Every time the hosts have been moved (see
+ * {@link #hostsMoved(double)}), the current location, velocity and the time
+ * to reach the current destination of every host is recorded, and for
+ * every pair of interfaces that could come within range before the next
+ * update, the exact times when the distance of the interfaces crosses the
+ * range are solved. The contact start and end times are pushed to a
+ * priority queue that the {@link World} processes like any other
+ * {@link EventQueue}, so the contacts are created and torn down at their
+ * actual times even with a coarse update interval and also contacts that
+ * are shorter than the update interval are found. After a contact event,
+ * only the hosts of the contact and their neighbors are updated: the world
+ * requires {@link World#UPDATE_AFFECTED_ONLY_S} with this optimizer (and
+ * uses it by default).</P>
+ *
+ * <P>The interfaces still create the connections using their
+ * {@link NetworkInterface#connect(NetworkInterface)} method and tear them
+ * down in their update, but whether two interfaces are within range is
+ * answered by the predicted contacts (see
+ * {@link #isWithinRange(NetworkInterface, NetworkInterface, double)}), not
+ * by the locations of the hosts (which change only when the hosts are
+ * moved).</P>
+ *
+ * <P>Predictions assume that a host that reaches its destination before
+ * the next update stays there until the update (as does a host that is
+ * waiting or gets a new path only when it is moved the next time), and use
+ * the transmit ranges the interfaces had when the hosts were moved. The
+ * contacts are re-checked from the actual locations after every movement,
+ * so any deviation lasts at most one update interval.</P>
+ *
+ * <P><strong>Note:</strong> this class does NOT support negative
+ * coordinates.</P>
+ */
+public class KineticConnectivity extends ConnectivityOptimizer
+	implements EventQueue {
+	/** how large array is initially chosen for partners and interfaces */
+	private static final int EXPECTED_INTERFACE_COUNT = 8;
+
+	private static int worldSizeX;
+	private static int worldSizeY;
+	private static HashMap<Integer, KineticConnectivity> gridobjects;
+
+	/** interfaces by their ids (the id of an interface is also stored as
+	 * its {@link NetworkInterface#getOptimizerIndex() optimizer index}) */
+	private NetworkInterface[] interfaces;
+	private int nrofInterfaces;
+
+	/** range used when the optimizer was created */
+	private double initRange;
+	/** the grid used for finding the candidate pairs */
+	private SweepGrid grid;
+	/** visitor that predicts the contacts of the candidate pairs */
+	private SweepGrid.PairVisitor predictor;
+
+	/** x and y coordinates of interfaces at the prediction time */
+	private double[] xs;
+	private double[] ys;
+	/** x and y components of the interfaces' velocities (m/s) */
+	private double[] vxs;
+	private double[] vys;
+	/** how long the interfaces move with their velocities (seconds) */
+	private double[] moveTimes;
+	/** transmit ranges of the interfaces at the prediction time */
+	private double[] ranges;
+
+	/** ids of the interfaces that are currently within range */
+	private int[][] partners;
+	/** number of partners of each interface (by interface id) */
+	private int[] nrofPartners;
+
+	/** predicted contact events ordered by time */
+	private PriorityQueue<ContactEvent> events;
+	/** number of predicted events (used for ordering simultaneous ones) */
+	private long nrofEvents;
+	/** simulation time of the latest prediction */
+	private double predictionTime;
+	/** how long (seconds) the latest prediction covers */
+	private double predictionInterval;
+	/** have interfaces been added or removed after the last prediction */
+	private boolean interfacesChanged;
+
+	static {
+		DTNSim.registerForReset(KineticConnectivity.class.
+				getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		gridobjects = new HashMap<Integer, KineticConnectivity>();
+
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+	}
+
+	/**
+	 * Creates a new kinetic connectivity optimizer
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  optimizer.
+	 */
+	private KineticConnectivity(double maxRange) {
+		this.initRange = maxRange;
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.xs = new double[EXPECTED_INTERFACE_COUNT];
+		this.ys = new double[EXPECTED_INTERFACE_COUNT];
+		this.vxs = new double[EXPECTED_INTERFACE_COUNT];
+		this.vys = new double[EXPECTED_INTERFACE_COUNT];
+		this.moveTimes = new double[EXPECTED_INTERFACE_COUNT];
+		this.ranges = new double[EXPECTED_INTERFACE_COUNT];
+		this.partners = new int[EXPECTED_INTERFACE_COUNT][];
+		this.nrofPartners = new int[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
+		this.interfacesChanged = true;
+		this.grid = new SweepGrid(worldSizeX, worldSizeY);
+		this.predictor = new SweepGrid.PairVisitor() {
+			public void visitPair(int a, int b, double distanceSq) {
+				predictPair(a, b, distanceSq);
+			}
+		};
+		this.events = new PriorityQueue<ContactEvent>(
+				EXPECTED_INTERFACE_COUNT, new Comparator<ContactEvent>() {
+			public int compare(ContactEvent e1, ContactEvent e2) {
+				int result = e1.compareTo(e2);
+				if (result == 0) { // same time -> order of prediction
+					result = e1.number < e2.number ? -1 : 1;
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Returns a kinetic connectivity optimizer based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  optimizer.
+	 * @return The kinetic connectivity optimizer for a specific interface
+	 */
+	public static KineticConnectivity KineticConnectivityFactory(int key,
+			double maxRange) {
+		KineticConnectivity kc = gridobjects.get(key);
+		if (kc == null) {
+			kc = new KineticConnectivity(maxRange);
+			gridobjects.put(key, kc);
+		}
+		return kc;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already
+	 * present). An interface can be in only one optimizer at a time.
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (idOf(ni) >= 0) {
+			return;
+		}
+
+		int id = nrofInterfaces++;
+		if (id == interfaces.length) {
+			int newSize = id * 2;
+			interfaces = Arrays.copyOf(interfaces, newSize);
+			xs = Arrays.copyOf(xs, newSize);
+			ys = Arrays.copyOf(ys, newSize);
+			vxs = Arrays.copyOf(vxs, newSize);
+			vys = Arrays.copyOf(vys, newSize);
+			moveTimes = Arrays.copyOf(moveTimes, newSize);
+			ranges = Arrays.copyOf(ranges, newSize);
+			partners = Arrays.copyOf(partners, newSize);
+			nrofPartners = Arrays.copyOf(nrofPartners, newSize);
+		}
+
+		interfaces[id] = ni;
+		nrofPartners[id] = 0;
+		ni.setOptimizerIndex(id);
+		interfacesChanged = true;
+	}
+
+	/**
+	 * Removes a network interface from the optimizer
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		int id = idOf(ni);
+		if (id < 0) {
+			return;
+		}
+		ni.setOptimizerIndex(-1);
+
+		/* move the last interface to the free id to keep the ids dense;
+		 * partner lists and predictions are invalid until the next
+		 * prediction */
+		int lastId = --nrofInterfaces;
+		if (id != lastId) {
+			interfaces[id] = interfaces[lastId];
+			interfaces[id].setOptimizerIndex(id);
+		}
+		interfaces[lastId] = null;
+		events.clear();
+		interfacesChanged = true;
+	}
+
+	/**
+	 * Returns the id of an interface in this optimizer
+	 * @param ni The interface
+	 * @return The id of the interface or -1 if the interface is not in
+	 * this optimizer
+	 */
+	private int idOf(NetworkInterface ni) {
+		int id = ni.getOptimizerIndex();
+		if (id >= 0 && id < nrofInterfaces && interfaces[id] == ni) {
+			return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Makes sure that there is a prediction that includes all the
+	 * interfaces. Locations are not tracked per interface but all at once
+	 * when the hosts have been moved (see {@link #hostsMoved(double)}).
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		checkPrediction();
+	}
+
+	/**
+	 * Predicts the contacts from the hosts' current locations and movement
+	 * until the hosts are moved again.
+	 * @param interval Time (simulated seconds) until the hosts are moved
+	 * again
+	 */
+	@Override
+	public void hostsMoved(double interval) {
+		predict(interval);
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		List<NetworkInterface> all = Arrays.asList(interfaces);
+		return new ArrayList<NetworkInterface>(all.subList(0,
+				nrofInterfaces));
+	}
+
+	/**
+	 * Returns all interfaces that are currently within range of the given
+	 * interface (the interface itself is not included)
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+
+		visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
+			}
+		});
+
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that are currently within range
+	 * of the given interface (the interface itself is not visited).
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for the near interfaces
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		checkPrediction();
+
+		int id = idOf(ni);
+		if (id < 0) {
+			return;
+		}
+
+		int[] p = partners[id];
+		for (int i=0, n=nrofPartners[id]; i<n; i++) {
+			visitor.visit(interfaces[p[i]]);
+		}
+	}
+
+	/**
+	 * Returns true if the interfaces are currently within range of each
+	 * other according to the predicted contacts. For interfaces that are
+	 * not in this optimizer, the locations are compared.
+	 * @param ni The first network interface
+	 * @param other The other network interface
+	 * @param range The range (the smaller range of the two interfaces)
+	 * @return True if the interfaces are within range, false if not
+	 */
+	@Override
+	public boolean isWithinRange(NetworkInterface ni, NetworkInterface other,
+			double range) {
+		checkPrediction();
+
+		int id = idOf(ni);
+		int otherId = idOf(other);
+		if (id < 0 || otherId < 0) {
+			return super.isWithinRange(ni, other, range);
+		}
+		if (range <= 0) {
+			return false; // e.g., the interface was turned off
+		}
+
+		return indexOfPartner(id, otherId) >= 0;
+	}
+
+	/**
+	 * Returns the next predicted contact event or an event with time of
+	 * double.MAX_VALUE if there are no predicted events left.
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (events.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return events.poll();
+	}
+
+	/**
+	 * Returns next predicted contact event's time or Double.MAX_VALUE if
+	 * there are no predicted events left.
+	 * @return Next event's time
+	 */
+	public double nextEventsTime() {
+		if (events.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return events.peek().getTime();
+	}
+
+	/**
+	 * Predicts the contacts (without any events) if interfaces have been
+	 * added or removed after the last prediction
+	 */
+	private void checkPrediction() {
+		if (interfacesChanged) {
+			predict(0);
+		}
+	}
+
+	/**
+	 * Records the current state of all interfaces, sets the interface pairs
+	 * that are within range as partners, and predicts the contact events
+	 * for the given time
+	 * @param interval How long time (seconds) the events are predicted for
+	 */
+	private void predict(double interval) {
+		predictionTime = SimClock.getTime();
+		predictionInterval = interval;
+		interfacesChanged = false;
+		events.clear();
+
+		double range = initRange;
+		double maxSpeed = 0;
+		for (int i=0; i<nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			DTNHost host = ni.getHost();
+			double r = ni.getTransmitRange();
+			if (r > range) {
+				range = r;
+			}
+			ranges[i] = r;
+
+			Coord c = host.getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+
+			double moveTime = host.getTimeToDestination();
+			if (moveTime > 0) {
+				Coord d = host.getDestination();
+				double vx = (d.getX() - xs[i]) / moveTime;
+				double vy = (d.getY() - ys[i]) / moveTime;
+				double speed = Math.sqrt(vx*vx + vy*vy);
+				if (speed > maxSpeed) {
+					maxSpeed = speed;
+				}
+				vxs[i] = vx;
+				vys[i] = vy;
+			}
+			else {
+				vxs[i] = 0;
+				vys[i] = 0;
+			}
+			moveTimes[i] = moveTime;
+		}
+
+		/* pairs further apart can't get within range before next update */
+		Arrays.fill(nrofPartners, 0, nrofInterfaces, 0);
+		grid.sweep(xs, ys, nrofInterfaces, range + 2 * maxSpeed * interval,
+				predictor, null);
+	}
+
+	/**
+	 * Sets the pair as partners if they are within range and predicts the
+	 * pair's contact events. The interval is split to (at most) three
+	 * parts at the times when the interfaces reach their destinations;
+	 * within every part, the relative movement is linear.
+	 * @param a Id of the first interface
+	 * @param b Id of the other interface
+	 * @param distanceSq Squared distance of the interfaces
+	 */
+	private void predictPair(int a, int b, double distanceSq) {
+		double range = Math.min(ranges[a], ranges[b]);
+		if (range <= 0) {
+			return;
+		}
+		double rangeSq = range * range;
+
+		boolean inRange = distanceSq <= rangeSq;
+		if (inRange) {
+			addPartner(a, b);
+			addPartner(b, a);
+		}
+
+		double timeA = Math.min(moveTimes[a], predictionInterval);
+		double timeB = Math.min(moveTimes[b], predictionInterval);
+		if (timeA == 0 && timeB == 0) {
+			return; // neither of the interfaces moves
+		}
+
+		double first = Math.min(timeA, timeB);
+		double second = Math.max(timeA, timeB);
+		inRange = predictPart(a, b, 0, first, timeA, timeB, rangeSq, inRange);
+		inRange = predictPart(a, b, first, second, timeA, timeB, rangeSq,
+				inRange);
+		predictPart(a, b, second, predictionInterval, timeA, timeB, rangeSq,
+				inRange);
+	}
+
+	/**
+	 * Predicts the contact events of a pair for a part of the prediction
+	 * interval where both interfaces move linearly. The times when the
+	 * distance equals the range are the roots of the quadratic equation
+	 * |p + w*t|^2 = range^2 where p is the relative location at the
+	 * beginning of the part and w is the relative velocity.
+	 * @param a Id of the first interface
+	 * @param b Id of the other interface
+	 * @param start Start time of the part (relative to prediction time)
+	 * @param end End time of the part (relative to prediction time)
+	 * @param timeA How long the first interface moves
+	 * @param timeB How long the other interface moves
+	 * @param rangeSq Squared range
+	 * @param inRange Are the interfaces within range at the start
+	 * @return Are the interfaces within range at the end
+	 */
+	private boolean predictPart(int a, int b, double start, double end,
+			double timeA, double timeB, double rangeSq, boolean inRange) {
+		if (end <= start) {
+			return inRange;
+		}
+
+		double px = xs[b] + vxs[b] * Math.min(start, timeB) -
+			xs[a] - vxs[a] * Math.min(start, timeA);
+		double py = ys[b] + vys[b] * Math.min(start, timeB) -
+			ys[a] - vys[a] * Math.min(start, timeA);
+		double wx = (start < timeB ? vxs[b] : 0) - (start < timeA ? vxs[a] : 0);
+		double wy = (start < timeB ? vys[b] : 0) - (start < timeA ? vys[a] : 0);
+
+		double qa = wx*wx + wy*wy;
+		double qb = 2 * (px*wx + py*wy);
+		double qc = px*px + py*py - rangeSq;
+
+		inRange = changeContact(a, b, start, inRange, qc <= 0);
+		double disc = qb*qb - 4*qa*qc;
+		if (qa == 0 || disc < 0) {
+			return inRange; // no relative movement or never within range
+		}
+
+		double sqrtDisc = Math.sqrt(disc);
+		double length = end - start;
+		double enter = (-qb - sqrtDisc) / (2*qa);
+		double leave = (-qb + sqrtDisc) / (2*qa);
+		if (enter > 0 && enter < length) {
+			inRange = changeContact(a, b, start + enter, inRange, true);
+		}
+		if (leave > 0 && leave < length) {
+			inRange = changeContact(a, b, start + leave, inRange, false);
+		}
+
+		return inRange;
+	}
+
+	/**
+	 * Creates a contact event if the contact state of a pair changes before
+	 * the end of the prediction interval
+	 * @param a Id of the first interface
+	 * @param b Id of the other interface
+	 * @param time Time of the change (relative to prediction time)
+	 * @param inRange Were the interfaces within range before the change
+	 * @param newInRange Are the interfaces within range after the change
+	 * @return newInRange
+	 */
+	private boolean changeContact(int a, int b, double time, boolean inRange,
+			boolean newInRange) {
+		if (inRange == newInRange || time <= 0) {
+			return newInRange;
+		}
+
+		double eventTime = predictionTime + time;
+		if (eventTime > predictionTime &&
+				eventTime < predictionTime + predictionInterval) {
+			events.add(new ContactEvent(eventTime, a, b, newInRange,
+					nrofEvents++));
+		}
+		return newInRange;
+	}
+
+	/**
+	 * Sets the contact state of a pair
+	 * @param a Id of the first interface
+	 * @param b Id of the other interface
+	 * @param up True if the interfaces came within range, false if they
+	 * went out of range
+	 */
+	private void setContact(int a, int b, boolean up) {
+		if (up) {
+			if (indexOfPartner(a, b) < 0) {
+				addPartner(a, b);
+				addPartner(b, a);
+			}
+		}
+		else {
+			removePartner(a, b);
+			removePartner(b, a);
+		}
+	}
+
+	/**
+	 * Adds a partner for an interface
+	 * @param id Id of the interface
+	 * @param partner Id of the partner interface
+	 */
+	private void addPartner(int id, int partner) {
+		int[] p = partners[id];
+		int n = nrofPartners[id];
+
+		if (p == null) {
+			p = new int[EXPECTED_INTERFACE_COUNT];
+			partners[id] = p;
+		}
+		else if (n == p.length) {
+			p = Arrays.copyOf(p, n * 2);
+			partners[id] = p;
+		}
+
+		p[n] = partner;
+		nrofPartners[id] = n + 1;
+	}
+
+	/**
+	 * Removes a partner of an interface (if it is a partner)
+	 * @param id Id of the interface
+	 * @param partner Id of the partner interface
+	 */
+	private void removePartner(int id, int partner) {
+		int index = indexOfPartner(id, partner);
+		if (index < 0) {
+			return;
+		}
+
+		int n = --nrofPartners[id];
+		System.arraycopy(partners[id], index + 1, partners[id], index,
+				n - index);
+	}
+
+	/**
+	 * Returns the index of a partner in an interface's partner list
+	 * @param id Id of the interface
+	 * @param partner Id of the partner interface
+	 * @return The index or -1 if the interfaces are not partners
+	 */
+	private int indexOfPartner(int id, int partner) {
+		int[] p = partners[id];
+		for (int i=0, n=nrofPartners[id]; i<n; i++) {
+			if (p[i] == partner) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a string representation of the optimizer
+	 * @return a string representation of the optimizer
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + nrofInterfaces +
+			" interfaces, " + events.size() + " predicted events";
+	}
+
+	/**
+	 * Predicted event of a pair of interfaces coming within or going out of
+	 * range of each other
+	 */
+	@SuppressWarnings("serial")
+	private class ContactEvent extends ExternalEvent {
+		private int a;
+		private int b;
+		private boolean up;
+		/** order number of the event among the predicted events */
+		private long number;
+
+		/**
+		 * Creates a new contact event
+		 * @param time Time of the event
+		 * @param a Id of the first interface
+		 * @param b Id of the other interface
+		 * @param up True if the interfaces come within range, false if they
+		 * go out of range
+		 * @param number Order number of the event
+		 */
+		private ContactEvent(double time, int a, int b, boolean up,
+				long number) {
+			super(time);
+			this.a = a;
+			this.b = b;
+			this.up = up;
+			this.number = number;
+		}
+
+		/**
+		 * Sets the contact state of the pair and marks the hosts of the pair
+		 * affected. The interfaces create or tear down the connection when
+		 * their hosts are updated after the event.
+		 */
+		@Override
+		public void processEvent(World world) {
+			setContact(a, b, up);
+			world.markHostAffected(interfaces[a].getHost());
+			world.markHostAffected(interfaces[b].getHost());
+		}
+
+		@Override
+		public String toString() {
+			return "CONTACT " + (up ? "UP" : "DOWN") + " @" + this.time +
+				" " + interfaces[a] + " <-> " + interfaces[b];
+		}
+	}
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import movement.MovementModel;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+
+/**
+ * <P>
+ * Connectivity optimizer that finds the interface pairs within range with a
+ * single sweep over an overlay grid once per simulation update.</P>
+ *
+ * <P>Where {@link ConnectivityGrid} makes every interface check all the
+ * interfaces in its own and the eight neighboring cells (so that every
+ * candidate pair is checked from both sides), this optimizer rebuilds a
+ * {@link SweepGrid} from the current locations of the interfaces and then
+ * visits, for every cell, only the pairs within the cell and the pairs with
+ * the "forward" half of the neighboring cells (east, south-west, south and
+ * south-east). This way every candidate pair is distance-checked only once.
+ * </P>
+ *
+ * <P>The pairs found to be within range are given to both interfaces
+ * as their near interfaces (see
+ * {@link #visitNearInterfaces(NetworkInterface, NearInterfaceVisitor)}), so
+ * the interfaces still create the connections using their
+ * {@link NetworkInterface#connect(NetworkInterface)} method (which does the
+ * final checks, e.g., whether the interfaces are scanning) and tear them down
+ * in their update. Whether two interfaces are within range is answered from
+ * the pairs of the latest sweep (see
+ * {@link #isWithinRange(NetworkInterface, NetworkInterface, double)}), so
+ * the distance of a pair is computed only once per sweep, also for tearing
+ * down the connections.</P>
+ *
+ * <P>Grid's cell size is the largest transmit range of the interfaces, so
+ * {@link ConnectivityGrid#CELL_SIZE_MULT_S} setting is not used. Pairs are
+ * searched within the largest transmit range and only the pairs within the
+ * smaller transmit range of the two interfaces are recorded.</P>
+ *
+ * <P><strong>Note:</strong> this class does NOT support negative
+ * coordinates.</P>
+ */
+public class SweepConnectivityGrid extends ConnectivityOptimizer {
+	/** how large array is initially chosen for partners and interfaces */
+	private static final int EXPECTED_INTERFACE_COUNT = 8;
+
+	private static int worldSizeX;
+	private static int worldSizeY;
+	private static HashMap<Integer, SweepConnectivityGrid> gridobjects;
+
+	/** interfaces by their ids (the id of an interface is also stored as
+	 * its {@link NetworkInterface#getOptimizerIndex() optimizer index}) */
+	private NetworkInterface[] interfaces;
+	private int nrofInterfaces;
+
+	/** range used when the grid was created */
+	private double initRange;
+	/** the grid used for finding the pairs */
+	private SweepGrid grid;
+	/** visitor that records the pairs found by the grid as partners */
+	private SweepGrid.PairVisitor partnerRecorder;
+	/** x and y coordinates of interfaces at the time of the last sweep */
+	private double[] xs;
+	private double[] ys;
+	/** transmit ranges of the interfaces at the time of the last sweep */
+	private double[] ranges;
+
+	/** ids of the interfaces that were within range in the last sweep */
+	private int[][] partners;
+	/** number of partners of each interface (by interface id) */
+	private int[] nrofPartners;
+
+	/** have interfaces been added, removed, or moved after the last
+	 * sweep */
+	private boolean sweepNeeded;
+
+	static {
+		DTNSim.registerForReset(SweepConnectivityGrid.class.
+				getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		gridobjects = new HashMap<Integer, SweepConnectivityGrid>();
+
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		worldSizeX = worldSize[0];
+		worldSizeY = worldSize[1];
+	}
+
+	/**
+	 * Creates a new sweep grid
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  grid.
+	 */
+	private SweepConnectivityGrid(double maxRange) {
+		this.initRange = maxRange;
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.xs = new double[EXPECTED_INTERFACE_COUNT];
+		this.ys = new double[EXPECTED_INTERFACE_COUNT];
+		this.ranges = new double[EXPECTED_INTERFACE_COUNT];
+		this.partners = new int[EXPECTED_INTERFACE_COUNT][];
+		this.nrofPartners = new int[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
+		this.grid = new SweepGrid(worldSizeX, worldSizeY);
+		this.partnerRecorder = new SweepGrid.PairVisitor() {
+			public void visitPair(int a, int b, double distanceSq) {
+				double range = Math.min(ranges[a], ranges[b]);
+				if (range > 0 && distanceSq <= range * range) {
+					addPartner(a, b);
+					addPartner(b, a);
+				}
+			}
+		};
+		this.sweepNeeded = true;
+	}
+
+	/**
+	 * Returns a sweep grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param maxRange Maximum range used by the radio technology using this
+	 *  grid.
+	 * @return The sweep grid object for a specific interface
+	 */
+	public static SweepConnectivityGrid SweepConnectivityGridFactory(int key,
+			double maxRange) {
+		SweepConnectivityGrid grid = gridobjects.get(key);
+		if (grid == null) {
+			grid = new SweepConnectivityGrid(maxRange);
+			gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Adds a network interface to the grid (unless it is already present).
+	 * An interface can be in only one optimizer at a time.
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (idOf(ni) >= 0) {
+			return;
+		}
+
+		int id = nrofInterfaces++;
+		if (id == interfaces.length) {
+			int newSize = id * 2;
+			interfaces = Arrays.copyOf(interfaces, newSize);
+			xs = Arrays.copyOf(xs, newSize);
+			ys = Arrays.copyOf(ys, newSize);
+			ranges = Arrays.copyOf(ranges, newSize);
+			partners = Arrays.copyOf(partners, newSize);
+			nrofPartners = Arrays.copyOf(nrofPartners, newSize);
+		}
+
+		interfaces[id] = ni;
+		nrofPartners[id] = 0;
+		ni.setOptimizerIndex(id);
+		sweepNeeded = true;
+	}
+
+	/**
+	 * Removes a network interface from the grid
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		int id = idOf(ni);
+		if (id < 0) {
+			return;
+		}
+		ni.setOptimizerIndex(-1);
+
+		/* move the last interface to the free id to keep the ids dense;
+		 * partner lists are invalid until the next sweep */
+		int lastId = --nrofInterfaces;
+		if (id != lastId) {
+			interfaces[id] = interfaces[lastId];
+			interfaces[id].setOptimizerIndex(id);
+		}
+		interfaces[lastId] = null;
+		sweepNeeded = true;
+	}
+
+	/**
+	 * Returns the id of an interface in this grid
+	 * @param ni The interface
+	 * @return The id of the interface or -1 if the interface is not in
+	 * this grid
+	 */
+	private int idOf(NetworkInterface ni) {
+		int id = ni.getOptimizerIndex();
+		if (id >= 0 && id < nrofInterfaces && interfaces[id] == ni) {
+			return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Makes sure the pairs within range are up to date. Since all the hosts
+	 * are moved at the same time, the grid is swept only once after every
+	 * move of the hosts (and after adding or removing interfaces).
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		checkSweep();
+	}
+
+	/**
+	 * Marks the pairs found in the latest sweep outdated. The grid is swept
+	 * again when the pairs are needed the next time.
+	 * @param interval Time until the hosts are moved again (not used)
+	 */
+	@Override
+	public void hostsMoved(double interval) {
+		sweepNeeded = true;
+	}
+
+	/**
+	 * Sweeps the grid right away and searches the pairs with the threads of
+	 * the pool. The pairs are recorded in the same order as in a sequential
+	 * sweep, so the connections are the same.
+	 * @param pool The thread pool to use
+	 */
+	@Override
+	public void updateLocations(ForkJoinPool pool) {
+		if (sweepNeeded) {
+			sweep(pool);
+		}
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		List<NetworkInterface> all = Arrays.asList(interfaces);
+		return new ArrayList<NetworkInterface>(all.subList(0,
+				nrofInterfaces));
+	}
+
+	/**
+	 * Returns all interfaces that were within range of the given interface
+	 * in the latest sweep (the interface itself is not included)
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+
+		visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
+			}
+		});
+
+		return niList;
+	}
+
+	/**
+	 * Calls the visitor for all interfaces that were within range of the
+	 * given interface in the latest sweep (the interface itself is not
+	 * visited). Interfaces are within range if their distance is at most
+	 * the smaller transmit range of the two.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor to call for the near interfaces
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		checkSweep();
+
+		int id = idOf(ni);
+		if (id < 0) {
+			return;
+		}
+
+		int[] p = partners[id];
+		for (int i=0, n=nrofPartners[id]; i<n; i++) {
+			visitor.visit(interfaces[p[i]]);
+		}
+	}
+
+	/**
+	 * Returns true if the interfaces were within range of each other in the
+	 * latest sweep. If the range differs from the one the pair had in the
+	 * sweep (e.g., an interface's transmit range has been changed after
+	 * it), the squared distance of the locations of the sweep is compared
+	 * to the range. For interfaces that are not in this grid, the current
+	 * locations are compared.
+	 * @param ni The first network interface
+	 * @param other The other network interface
+	 * @param range The range (the smaller range of the two interfaces)
+	 * @return True if the interfaces are within range, false if not
+	 */
+	@Override
+	public boolean isWithinRange(NetworkInterface ni, NetworkInterface other,
+			double range) {
+		checkSweep();
+
+		int id = idOf(ni);
+		int otherId = idOf(other);
+		if (id < 0 || otherId < 0) {
+			return super.isWithinRange(ni, other, range);
+		}
+		if (range <= 0) {
+			return false; // e.g., the interface was turned off
+		}
+		if (range != Math.min(ranges[id], ranges[otherId])) {
+			double dx = xs[id] - xs[otherId];
+			double dy = ys[id] - ys[otherId];
+			return dx*dx + dy*dy <= range * range;
+		}
+
+		return indexOfPartner(id, otherId) >= 0;
+	}
+
+	/**
+	 * Sweeps the grid if the hosts have moved or the interfaces have changed
+	 * after the last sweep. Updates after external events that happen
+	 * between the moves use the pairs of the latest sweep, since the
+	 * locations haven't changed after it.
+	 */
+	private void checkSweep() {
+		if (sweepNeeded) {
+			sweep(null);
+		}
+	}
+
+	/**
+	 * Sweeps the grid with the interfaces' current locations and finds
+	 * all the interface pairs within range.
+	 * @param pool Thread pool for searching the pairs in parallel or null
+	 * to search them in this thread
+	 */
+	private void sweep(ForkJoinPool pool) {
+		sweepNeeded = false;
+
+		double range = initRange;
+		for (int i=0; i<nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			double r = ni.getTransmitRange();
+			if (r > range) {
+				range = r;
+			}
+			ranges[i] = r;
+			Coord c = ni.getLocation();
+			xs[i] = c.getX();
+			ys[i] = c.getY();
+		}
+
+		Arrays.fill(nrofPartners, 0, nrofInterfaces, 0);
+		grid.sweep(xs, ys, nrofInterfaces, range, partnerRecorder, pool);
+	}
+
+	/**
+	 * Adds a partner for an interface
+	 * @param id Id of the interface
+	 * @param partner Id of the partner interface
+	 */
+	private void addPartner(int id, int partner) {
+		int[] p = partners[id];
+		int n = nrofPartners[id];
+
+		if (p == null) {
+			p = new int[EXPECTED_INTERFACE_COUNT];
+			partners[id] = p;
+		}
+		else if (n == p.length) {
+			p = Arrays.copyOf(p, n * 2);
+			partners[id] = p;
+		}
+
+		p[n] = partner;
+		nrofPartners[id] = n + 1;
+	}
+
+	/**
+	 * Returns the index of a partner in an interface's partner list
+	 * @param id Id of the interface
+	 * @param partner Id of the partner interface
+	 * @return The index or -1 if the interfaces are not partners
+	 */
+	private int indexOfPartner(int id, int partner) {
+		int[] p = partners[id];
+		for (int i=0, n=nrofPartners[id]; i<n; i++) {
+			if (p[i] == partner) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			grid.getCols() + "x" + grid.getRows() + ", cell size=" +
+			grid.getCellSize();
+	}
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <P>
+ * Overlay grid that finds all pairs of points that are within a given
+ * distance of each other with a single sweep.</P>
+ *
+ * <P>The grid is rebuilt from the points' coordinates for every sweep
+ * (counting sort by the cell index) and then, for every cell that has
+ * points, the pairs within the cell and the pairs with the "forward" half
+ * of the neighboring cells (east, south-west, south and south-east) are
+ * checked. Only the cells that have points are visited, so the cost of a
+ * sweep depends on the number of points, not on the number of cells. This way every
+ * candidate pair is distance-checked only once. The check compares squared
+ * distances so no square roots are needed.</P>
+ *
+ * <P>The pairs can also be searched with a thread pool. The cells that have
+ * points are split to consecutive chunks; the pair checks only read the
+ * grid, so the chunks don't conflict. Each chunk collects its pairs and
+ * the visitor is called for them in the chunk order afterwards, so the
+ * visitor sees the pairs in the same order as in a sequential sweep.</P>
+ *
+ * <P><strong>Note:</strong> this class does NOT support negative
+ * coordinates.</P>
+ */
+class SweepGrid {
+	/** Number of cells with points a parallel pair search task checks at
+	 * most */
+	private static final int PAIR_TASK_SIZE = 128;
+
+	private int worldSizeX;
+	private int worldSizeY;
+
+	private int cellSize;
+	private int rows;
+	private int cols;
+
+	/** start index of each cell's points in {@link #cellMembers}
+	 * (by cell index; valid only for the cells that have points) */
+	private int[] cellStart;
+	/** number of points in each cell (by cell index; all zero between
+	 * the sweeps) */
+	private int[] cellSizes;
+	/** indices of the cells that have points, in ascending order */
+	private int[] occupiedCells;
+	/** number of cells that have points */
+	private int nrofOccupied;
+	/** point indices ordered by their cells */
+	private int[] cellMembers;
+	/** cell index of each point */
+	private int[] pointCells;
+
+	private double[] xs;
+	private double[] ys;
+	/** pairs found by the chunks of a parallel search (by chunk index) */
+	private PairList[] chunkPairs;
+
+	/**
+	 * Creates a new sweep grid for the given world size
+	 * @param worldSizeX Width of the world
+	 * @param worldSizeY Height of the world
+	 */
+	SweepGrid(int worldSizeX, int worldSizeY) {
+		this.worldSizeX = worldSizeX;
+		this.worldSizeY = worldSizeY;
+		this.cellSize = -1;
+		this.cellMembers = new int[0];
+		this.pointCells = new int[0];
+		this.occupiedCells = new int[0];
+	}
+
+	/**
+	 * Calls the visitor for every pair of points that are within the given
+	 * range of each other. Cell size of the grid is the range (rounded up).
+	 * @param xs The x coordinates of the points
+	 * @param ys The y coordinates of the points
+	 * @param nrofPoints Number of points (from the beginning of the arrays)
+	 * @param range The range
+	 * @param visitor The visitor to call for the pairs
+	 * @param pool Thread pool for searching the pairs in parallel or null to
+	 * search them in the calling thread. The visitor is always called from
+	 * the calling thread.
+	 */
+	void sweep(double[] xs, double[] ys, int nrofPoints, double range,
+			PairVisitor visitor, ForkJoinPool pool) {
+		int size = (int)Math.ceil(range);
+		if (size < 1) {
+			size = 1;
+		}
+		if (size != cellSize) {
+			initCells(size);
+		}
+		if (cellMembers.length < nrofPoints) {
+			cellMembers = new int[xs.length];
+			pointCells = new int[xs.length];
+			occupiedCells = new int[xs.length];
+		}
+
+		this.xs = xs;
+		this.ys = ys;
+		rebuildCells(nrofPoints);
+		if (pool == null || nrofOccupied <= PAIR_TASK_SIZE) {
+			findPairs(0, nrofOccupied, range * range, visitor);
+		}
+		else {
+			findPairsInParallel(range * range, visitor, pool);
+		}
+		for (int i=0; i<nrofOccupied; i++) {
+			cellSizes[occupiedCells[i]] = 0;
+		}
+		this.xs = null;
+		this.ys = null;
+	}
+
+	/**
+	 * Returns the current cell size
+	 * @return the current cell size (or -1 if the grid hasn't been swept)
+	 */
+	int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the number of cell rows
+	 * @return the number of cell rows
+	 */
+	int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Returns the number of cell columns
+	 * @return the number of cell columns
+	 */
+	int getCols() {
+		return this.cols;
+	}
+
+	/**
+	 * Initializes the cell arrays for the given cell size
+	 * @param size Cell's edge's length
+	 */
+	private void initCells(int size) {
+		this.cellSize = size;
+		this.rows = worldSizeY/cellSize + 1;
+		this.cols = worldSizeX/cellSize + 1;
+		// leave empty cells on both sides to make neighbor search easier
+		this.cellStart = new int[(rows+2) * (cols+2)];
+		this.cellSizes = new int[(rows+2) * (cols+2)];
+	}
+
+	/**
+	 * Puts all points to the cells of their coordinates (counting sort by
+	 * the cell index). Within a cell, the points are in their index order.
+	 * @param nrofPoints Number of points
+	 */
+	private void rebuildCells(int nrofPoints) {
+		nrofOccupied = 0;
+
+		for (int i=0; i<nrofPoints; i++) {
+			// +1 due empty cells on both sides of the matrix
+			int row = (int)(ys[i]/cellSize) + 1;
+			int col = (int)(xs[i]/cellSize) + 1;
+
+			assert row > 0 && row <= rows && col > 0 && col <= cols :
+				"Location (" + xs[i] + "," + ys[i] +
+				") is out of world's bounds";
+
+			int cell = row * (cols + 2) + col;
+			pointCells[i] = cell;
+			if (cellSizes[cell]++ == 0) {
+				occupiedCells[nrofOccupied++] = cell;
+			}
+		}
+		Arrays.sort(occupiedCells, 0, nrofOccupied);
+
+		int start = 0;
+		for (int i=0; i<nrofOccupied; i++) {
+			int cell = occupiedCells[i];
+			cellStart[cell] = start;
+			start += cellSizes[cell];
+		}
+
+		/* cellStart[c] is used as the next free slot of cell c while
+		 * filling, so afterwards it is moved back to the start */
+		for (int i=0; i<nrofPoints; i++) {
+			int cell = pointCells[i];
+			cellMembers[cellStart[cell]++] = i;
+		}
+		for (int i=0; i<nrofOccupied; i++) {
+			int cell = occupiedCells[i];
+			cellStart[cell] -= cellSizes[cell];
+		}
+	}
+
+	/**
+	 * Finds the point pairs within range by checking the pairs within
+	 * the given cells that have points and between the cells and their
+	 * forward neighbor cells.
+	 * @param from Index of the first cell in {@link #occupiedCells}
+	 * @param to Index of the cell after the last cell in
+	 * {@link #occupiedCells}
+	 * @param rangeSq Squared range
+	 * @param visitor The visitor to call for the pairs within range
+	 */
+	private void findPairs(int from, int to, double rangeSq,
+			PairVisitor visitor) {
+		int width = cols + 2;
+
+		for (int k=from; k<to; k++) {
+			int cell = occupiedCells[k];
+			int start = cellStart[cell];
+			int end = start + cellSizes[cell];
+
+			for (int i = start; i < end; i++) {
+				int a = cellMembers[i];
+				for (int j = i + 1; j < end; j++) {
+					checkPair(a, cellMembers[j], rangeSq, visitor);
+				}
+				checkPairs(a, cell + 1, rangeSq, visitor);
+				checkPairs(a, cell + width - 1, rangeSq, visitor);
+				checkPairs(a, cell + width, rangeSq, visitor);
+				checkPairs(a, cell + width + 1, rangeSq, visitor);
+			}
+		}
+	}
+
+	/**
+	 * Finds all point pairs within range with the threads of the pool and
+	 * calls the visitor for them in the order of a sequential search
+	 * @param rangeSq Squared range
+	 * @param visitor The visitor to call for the pairs within range
+	 * @param pool The thread pool
+	 */
+	private void findPairsInParallel(double rangeSq, PairVisitor visitor,
+			ForkJoinPool pool) {
+		int nrofChunks = (nrofOccupied + PAIR_TASK_SIZE - 1) / PAIR_TASK_SIZE;
+		if (chunkPairs == null || chunkPairs.length < nrofChunks) {
+			PairList[] old = chunkPairs;
+			chunkPairs = new PairList[nrofChunks];
+			for (int i=0; i<nrofChunks; i++) {
+				chunkPairs[i] = (old != null && i < old.length ? old[i] :
+					new PairList());
+			}
+		}
+
+		pool.invoke(new PairTask(0, nrofChunks, rangeSq));
+
+		for (int i=0; i<nrofChunks; i++) {
+			chunkPairs[i].visitAll(visitor);
+		}
+	}
+
+	/**
+	 * Checks the pairs of a point and all points in a cell
+	 * @param a Index of the point
+	 * @param cell Index of the cell
+	 * @param rangeSq Squared range
+	 * @param visitor The visitor to call for the pairs within range
+	 */
+	private void checkPairs(int a, int cell, double rangeSq,
+			PairVisitor visitor) {
+		for (int j = cellStart[cell], end = j + cellSizes[cell];
+				j < end; j++) {
+			checkPair(a, cellMembers[j], rangeSq, visitor);
+		}
+	}
+
+	/**
+	 * Checks if two points are within range and calls the visitor if they
+	 * are
+	 * @param a Index of the first point
+	 * @param b Index of the other point
+	 * @param rangeSq Squared range
+	 * @param visitor The visitor to call if the points are within range
+	 */
+	private void checkPair(int a, int b, double rangeSq,
+			PairVisitor visitor) {
+		double dx = xs[a] - xs[b];
+		double dy = ys[a] - ys[b];
+		double distanceSq = dx*dx + dy*dy;
+		if (distanceSq <= rangeSq) {
+			visitor.visitPair(a, b, distanceSq);
+		}
+	}
+
+	/**
+	 * Fork-join task that finds the pairs of a range of cell chunks
+	 */
+	@SuppressWarnings("serial")
+	private class PairTask extends RecursiveAction {
+		private int from;
+		private int to;
+		private double rangeSq;
+
+		/**
+		 * Creates a new task for chunks in the index range [from, to)
+		 * @param from Index of the first chunk
+		 * @param to Index of the chunk after the last chunk
+		 * @param rangeSq Squared range
+		 */
+		private PairTask(int from, int to, double rangeSq) {
+			this.from = from;
+			this.to = to;
+			this.rangeSq = rangeSq;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PairTask(from, middle, rangeSq),
+						new PairTask(middle, to, rangeSq));
+				return;
+			}
+
+			PairList pairs = chunkPairs[from];
+			pairs.clear();
+			findPairs(from * PAIR_TASK_SIZE, Math.min(nrofOccupied,
+					(from + 1) * PAIR_TASK_SIZE), rangeSq, pairs);
+		}
+	}
+
+	/**
+	 * Pair visitor that stores the pairs so that they can be visited
+	 * later (in the same order)
+	 */
+	private static class PairList implements PairVisitor {
+		private int[] as = new int[64];
+		private int[] bs = new int[64];
+		private double[] distances = new double[64];
+		private int size = 0;
+
+		public void visitPair(int a, int b, double distanceSq) {
+			if (size == as.length) {
+				as = Arrays.copyOf(as, size * 2);
+				bs = Arrays.copyOf(bs, size * 2);
+				distances = Arrays.copyOf(distances, size * 2);
+			}
+			as[size] = a;
+			bs[size] = b;
+			distances[size] = distanceSq;
+			size++;
+		}
+
+		/**
+		 * Calls the visitor for all stored pairs
+		 * @param visitor The visitor to call
+		 */
+		private void visitAll(PairVisitor visitor) {
+			for (int i=0; i<size; i++) {
+				visitor.visitPair(as[i], bs[i], distances[i]);
+			}
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+
+	/**
+	 * Interface for callbacks of the pairs found in a sweep
+	 */
+	interface PairVisitor {
+		/**
+		 * Called for every pair of points within range (every pair is
+		 * visited only once, in no specific order)
+		 * @param a Index of the first point
+		 * @param b Index of the other point
+		 * @param distanceSq Squared distance of the points
+		 */
+		public void visitPair(int a, int b, double distanceSq);
+	}
+}
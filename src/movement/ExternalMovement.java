@@ -5,13 +5,16 @@
 package movement;
 
 import input.ExternalMovementReader;
+import input.MovementTraceStore;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 
+import util.ReadAheadQueue;
 import util.Tuple;
 
 import core.Coord;
@@ -20,15 +23,24 @@ import core.Settings;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. The locations
+ * are read from an {@link ExternalMovementReader} format file or, if the
+ * file's name ends with {@value MovementTraceStore#STORE_EXT}, from a
+ * {@link MovementTraceStore} file. With a trace store file, the paths are
+ * created from the store when they are needed and the locations are not
+ * preloaded.
  */
 public class ExternalMovement extends MovementModel {
 	/** Namespace for settings */
 	public static final String EXTERNAL_MOVEMENT_NS = "ExternalMovement";
 	/** external locations file's path -setting id ({@value})*/
 	public static final String MOVEMENT_FILE_S = "file";
-	/** number of preloaded intervals per preload run -setting id ({@value})*/
+	/** number of preloaded intervals per preload run -setting id ({@value}).
+	 * With trace store files, the maximum number of waypoints in a path. */
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** read the locations ahead in a background thread -setting id
+	 * ({@value}). Boolean valued, default is false. */
+	public static final String READ_AHEAD_S = "readAhead";
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
@@ -49,6 +61,14 @@ public class ExternalMovement extends MovementModel {
 	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
+	/** time stamp - locations tuples read ahead or null if not in use */
+	private static ReadAheadQueue<Tuple<Double, List<Tuple<String, Coord>>>>
+		readAheadQueue;
+	/** store of the locations or null if the locations are read from
+	 * a text file */
+	private static MovementTraceStore traceStore;
+	/** index of the trace store node for the next replicated model */
+	private static int nextStoreNode;
 
 	/** the very first location of the node */
 	private Coord intialLocation;
@@ -65,6 +85,15 @@ public class ExternalMovement extends MovementModel {
 	/** is this node active */
 	private boolean isActive;
 
+	/* state of the node when the paths are created from the trace store */
+	/** index of the next sample of the node */
+	private long nextSample;
+	/** index after the last sample of the node */
+	private long sampleEnd;
+	/** coordinates of the latest path waypoint */
+	private double latestX;
+	private double latestY;
+
 	static {
 		DTNSim.registerForReset(ExternalMovement.class.getCanonicalName());
 		reset();
@@ -82,12 +111,6 @@ public class ExternalMovement extends MovementModel {
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
 			idMapping = new HashMap<String, ExternalMovement>();
 			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
-
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
 
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
@@ -96,9 +119,55 @@ public class ExternalMovement extends MovementModel {
 					nrofPreload = 1;
 				}
 			}
+
+			File inputFile = new File(inputFileName);
+			if (MovementTraceStore.isTraceStoreFile(inputFile)) {
+				traceStore = new MovementTraceStore(inputFile);
+				nextStoreNode = 0;
+				initTime = traceStore.getInitTime();
+				samplingInterval = traceStore.getSamplingInterval();
+				return;
+			}
+
+			reader = new ExternalMovementReader(inputFileName);
+			initLocations = reader.readNextMovements();
+			initTime = reader.getLastTimeStamp();
+			samplingInterval = -1;
+			lastPreloadTime = -1;
+
+			if (s.getBoolean(READ_AHEAD_S, false)) {
+				startReadAhead();
+			}
 		}
 	}
 
+	/**
+	 * Starts reading the locations of the following time instances in a
+	 * background thread. At most two preload runs worth of time instances
+	 * are read ahead.
+	 */
+	private static void startReadAhead() {
+		final ExternalMovementReader r = reader;
+		ReadAheadQueue.Source<Tuple<Double, List<Tuple<String, Coord>>>> source
+			= new ReadAheadQueue.Source<
+				Tuple<Double, List<Tuple<String, Coord>>>>() {
+			private boolean allRead = false;
+			public Tuple<Double, List<Tuple<String, Coord>>> read() {
+				if (allRead) {
+					return null;
+				}
+				List<Tuple<String, Coord>> list = r.readNextMovements();
+				allRead = list.size() == 0;
+				return new Tuple<Double, List<Tuple<String, Coord>>>(
+						r.getLastTimeStamp(), list);
+			}
+		};
+		readAheadQueue =
+			new ReadAheadQueue<Tuple<Double, List<Tuple<String, Coord>>>>(
+				"ExternalMovement " + inputFileName, source,
+				2 * (int)nrofPreload);
+	}
+
 	/**
 	 * Copy constructor. Gives out location data for the new node from
 	 * location queue.
@@ -110,7 +179,10 @@ public class ExternalMovement extends MovementModel {
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (traceStore != null) {
+			initFromStore();
+		}
+		else if (initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
 			Tuple<String, Coord> initLoc = initLocations.remove(0);
 			this.intialLocation = this.latestLocation = initLoc.getValue();
@@ -127,6 +199,70 @@ public class ExternalMovement extends MovementModel {
 		}
 	}
 
+	/**
+	 * Gives the next initial node of the trace store to this model, or sets
+	 * this model inactive if all the initial nodes are in use
+	 */
+	private void initFromStore() {
+		if (nextStoreNode >= traceStore.getNrofInitialNodes()) {
+			this.intialLocation = DEF_INIT_LOC;
+			isActive = false;
+			return;
+		}
+
+		int node = nextStoreNode++;
+		long first = traceStore.getFirstSample(node);
+		this.latestX = traceStore.getX(first);
+		this.latestY = traceStore.getY(first);
+		this.intialLocation = new Coord(latestX, latestY);
+		this.latestPathStartTime = initTime;
+		this.nextSample = first + 1;
+		this.sampleEnd = traceStore.getSampleEnd(node);
+		isActive = true;
+	}
+
+	/**
+	 * Skips the trace store samples where the node didn't move. The next
+	 * path starts at the time of the last skipped sample.
+	 */
+	private void skipStationarySamples() {
+		while (nextSample < sampleEnd &&
+				traceStore.getX(nextSample) == latestX &&
+				traceStore.getY(nextSample) == latestY) {
+			latestPathStartTime = traceStore.getTime(nextSample);
+			nextSample++;
+		}
+	}
+
+	/**
+	 * Creates the next path from the trace store. The path ends when the
+	 * node stops or after {@link #nrofPreload} waypoints. The node reaches
+	 * every waypoint at the time of its sample, also if some samples of the
+	 * node are missing from the trace.
+	 * @return The path
+	 */
+	private Path getStorePath() {
+		Path p = new Path();
+		for (int i=0; i < nrofPreload && nextSample < sampleEnd; i++) {
+			double x = traceStore.getX(nextSample);
+			double y = traceStore.getY(nextSample);
+			if (x == latestX && y == latestY) {
+				break; // node stopped
+			}
+
+			double dx = x - latestX;
+			double dy = y - latestY;
+			double duration = traceStore.getTime(nextSample) -
+				traceStore.getTime(nextSample - 1);
+			double speed = Math.sqrt(dx*dx + dy*dy) / duration;
+			p.addWaypoint(new Coord(x, y), speed);
+			latestX = x;
+			latestY = y;
+			nextSample++;
+		}
+		return p;
+	}
+
 	/**
 	 * Checks if more paths should be preloaded and preloads them if
 	 * needed.
@@ -193,6 +329,15 @@ public class ExternalMovement extends MovementModel {
 	 */
 	@Override
 	public double nextPathAvailable() {
+		if (traceStore != null) {
+			if (!isActive) {
+				return Double.MAX_VALUE;
+			}
+			skipStationarySamples();
+			return nextSample < sampleEnd ? latestPathStartTime :
+				Double.MAX_VALUE;
+		}
+
 		if (pathQueue.size() == 0) {
 			return latestPathStartTime;
 		}
@@ -205,6 +350,13 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 
+		if (traceStore != null) {
+			if (SimClock.getTime() < this.nextPathAvailable()) {
+				return null;
+			}
+			return getStorePath();
+		}
+
 		checkPathNeed(); // check if we should preload more paths
 
 		if (SimClock.getTime() < this.nextPathAvailable()) {
@@ -224,11 +376,17 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
+		if (traceStore != null) {
+			return (int)(traceStore.getMaxX() - traceStore.getMinX()) + 1;
+		}
 		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
+		if (traceStore != null) {
+			return (int)(traceStore.getMaxY() - traceStore.getMinY()) + 1;
+		}
 		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
 	}
 
@@ -244,8 +402,22 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+		List<Tuple<String, Coord>> list;
+		double time;
+
+		if (readAheadQueue != null) {
+			Tuple<Double, List<Tuple<String, Coord>>> next =
+				readAheadQueue.take();
+			if (next == null) { // all read already
+				return Double.NaN;
+			}
+			list = next.getValue();
+			time = next.getKey();
+		}
+		else {
+			list = reader.readNextMovements();
+			time = reader.getLastTimeStamp();
+		}
 
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
@@ -272,6 +444,8 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public static void reset() {
 		idMapping = null;
+		traceStore = null;
+		readAheadQueue = null; // the reader thread is stopped by its reset
 	}
 
 }
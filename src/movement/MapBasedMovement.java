@@ -4,6 +4,7 @@
  */
 package movement;
 
+import input.BinaryMapReader;
 import input.WKTMapReader;
 
 import java.io.File;
@@ -45,6 +46,12 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String NROF_FILES_S = "nrofMapFiles";
 	/** map file -setting id ({@value})*/
 	public static final String FILE_S = "mapFile";
+	/** compiled binary map file -setting id ({@value}). The binary map file
+	 * is used instead of the map files if it was compiled from the same
+	 * files and is newer than them (see {@link BinaryMapReader}). Default is
+	 * the path of the first map file with
+	 * {@link BinaryMapReader#BINARY_EXT} extension appended. */
+	public static final String COMPILED_FILE_S = "compiledMapFile";
 
 	/**
 	 * Per node group setting for selecting map node types that are OK for
@@ -258,8 +265,9 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	}
 
 	/**
-	 * Reads a sim map from location set to the settings, mirrors the map and
-	 * moves its upper left corner to origo.
+	 * Reads a sim map from location set to the settings (from a compiled
+	 * binary map file if it is up to date), mirrors the map and moves its
+	 * upper left corner to origo.
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
@@ -289,7 +297,19 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			for (int i = 1; i <= nrofMapFiles; i++ ) {
 				String pathFile = settings.getSetting(FILE_S + i);
 				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+			}
+
+			File compiledFile = getCompiledMapFile(settings);
+			if (compiledFile != null &&
+					BinaryMapReader.isUpToDate(compiledFile, cachedMapFiles)) {
+				simMap = BinaryMapReader.readMap(compiledFile);
+			}
+			else {
+				for (int i = 1; i <= nrofMapFiles; i++ ) {
+					r.addPaths(new File(cachedMapFiles.get(i-1)), i);
+				}
+				simMap = r.getMap();
+				checkMapConnectedness(simMap.getNodes());
 			}
 
 			nrofMapFilesRead = nrofMapFiles;
@@ -297,8 +317,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
 		// mirrors the map (y' = -y) and moves its upper left corner to origo
 		simMap.mirror();
 		Coord offset = simMap.getMinBound().clone();
@@ -309,6 +327,23 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return simMap;
 	}
 
+	/**
+	 * Returns the compiled binary map file for the map files
+	 * @param settings The Settings where the map file names are found
+	 * @return The compiled binary map file (that may not exist) or null if
+	 * there are no map files
+	 */
+	private File getCompiledMapFile(Settings settings) {
+		if (settings.contains(COMPILED_FILE_S)) {
+			return new File(settings.getSetting(COMPILED_FILE_S));
+		}
+		if (settings.getInt(NROF_FILES_S) == 0) {
+			return null;
+		}
+		return new File(settings.getSetting(FILE_S + 1) +
+				BinaryMapReader.BINARY_EXT);
+	}
+
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
@@ -327,12 +362,11 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		firstNode = nodes.get(0);
 
 		visited.add(firstNode);
-		unvisited.addAll(firstNode.getNeighbors());
+		unvisited.add(firstNode);
 
 		while ((next = unvisited.poll()) != null) {
-			visited.add(next);
 			for (MapNode n: next.getNeighbors()) {
-				if (!visited.contains(n) && ! unvisited.contains(n)) {
+				if (visited.add(n)) { // nodes are marked visited when queued
 					unvisited.add(n);
 				}
 			}
@@ -4,63 +4,110 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+
+import util.IndexedHeap;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. The search is
+ * done in the {@link MapGraph} of the map using arrays indexed by node
+ * index and an indexed heap. The arrays are reused between searches: nodes
+ * whose stamp is not the stamp of the current search have not been reached.
+ * If the {@link RouteCache} is enabled, the routes in the map are first
+ * looked from the cache and, if landmarks are enabled, A* search with
+ * landmark distances as lower bounds is used.
  */
 public class DijkstraPathFinder {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
+	/** Initial capacity of the node arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The map whose graph is used or null if not known */
+	private SimMap map;
+	/** Cache for the routes in the map or null if not used */
+	private RouteCache routeCache;
+	/** Landmark distances for the current search or null for no A* */
+	private double[][] landmarks;
+	/** Destination of the current search */
+	private int destination;
+	/** Previous nodes on the shortest path(s) */
+	private int[] prevNodes;
+	/** Node distances from the source node */
+	private double[] distances;
+	/** Stamps of the searches that have reached the nodes */
+	private int[] stamps;
+	/** Stamp of the current search */
+	private int stamp;
 	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	private IndexedHeap unvisited;
 
 	private int [] okMapNodes;
+	/** Bit mask of the OK map node types */
+	private int okTypeMask;
 
 	/**
 	 * Constructor.
 	 * @param okMapNodes The map node types that are OK for paths or null if
 	 * all nodes are OK
+	 * @param map The map whose nodes the paths are searched for or null if
+	 * the map is not known. Without the map, a graph of the nodes reachable
+	 * from the source is created for every search.
 	 */
-	public DijkstraPathFinder(int [] okMapNodes) {
+	public DijkstraPathFinder(int [] okMapNodes, SimMap map) {
 		super();
 		this.okMapNodes = okMapNodes;
+		this.okTypeMask = (okMapNodes != null ?
+				MapGraph.getTypeMask(okMapNodes) : 0);
+		this.map = map;
+		this.routeCache = (map != null ? RouteCache.getInstance() : null);
+		this.prevNodes = new int[INITIAL_CAPACITY];
+		this.distances = new double[INITIAL_CAPACITY];
+		this.stamps = new int[INITIAL_CAPACITY];
+		this.stamp = 0;
+		this.unvisited = new IndexedHeap(INITIAL_CAPACITY);
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Constructor for path finder without a known map.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @see #DijkstraPathFinder(int[], SimMap)
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
+	public DijkstraPathFinder(int [] okMapNodes) {
+		this(okMapNodes, null);
+	}
 
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
+	/**
+	 * Initializes a new search with a source node
+	 * @param graph The graph to search
+	 * @param node Index of the path's source node
+	 * @param destination Index of the path's destination node
+	 * @param landmarks Landmark distances for A* search or null
+	 */
+	private void initWith(MapGraph graph, int node, int destination,
+			double[][] landmarks) {
+		assert (okMapNodes != null ? graph.isType(node, okTypeMask) : true);
+
+		if (stamps.length < graph.size()) {
+			int capacity = Math.max(graph.size(), stamps.length * 2);
+			prevNodes = new int[capacity];
+			distances = new double[capacity];
+			stamps = new int[capacity];
+			stamp = 0;
+		}
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			stamp = 0;
+		}
+		stamp++;
+		unvisited.clear();
+		this.destination = destination;
+		this.landmarks = landmarks;
 
 		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+		setDistance(node, 0);
 	}
 
 	/**
@@ -71,61 +118,91 @@ public class DijkstraPathFinder {
 	 * a list of MapNodes or an empty list if such path is not available
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
+		List<MapNode> path = new ArrayList<MapNode>();
 
 		if (from.compareTo(to) == 0) { // source and destination are the same
 			path.add(from); // return a list containing only source node
 			return path;
 		}
 
-		initWith(from);
-		MapNode node = null;
+		MapGraph graph = (map != null ? map.getGraph() : null);
+		RouteCache cache = this.routeCache;
+		if (graph == null || graph.getIndex(from) < 0) {
+			graph = new MapGraph(Collections.singleton(from));
+			cache = null; // only routes of the map's graph are cached
+		}
+		int source = graph.getIndex(from);
+		int destination = graph.getIndex(to);
+		if (destination < 0) {
+			return path; // destination can't be reached from the source
+		}
+
+		double[][] landmarkDists = null;
+		int typeMask = RouteCache.getKeyTypeMask(okMapNodes);
+		if (cache != null) {
+			List<MapNode> cachedPath = cache.getRoute(graph, source,
+					destination, typeMask);
+			if (cachedPath != null) {
+				return cachedPath;
+			}
+			if (cache.getNrofLandmarks() > 0) {
+				landmarkDists = graph.getLandmarkDistances(
+						cache.getNrofLandmarks());
+			}
+		}
+
+		initWith(graph, source, destination, landmarkDists);
+		int node = -1;
 
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
+		while (!unvisited.isEmpty()) {
+			node = unvisited.poll();
+			if (node == destination) {
 				break; // we found the destination -> no need to search further
 			}
 
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
+			relax(graph, node); // add/update neighbor nodes' distances
 		}
 
 		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to);
-			MapNode prev = prevNodes.get(to);
-			while (prev != from) {
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
+		if (node == destination) { // found a path
+			for (int n = destination; n != source; n = prevNodes[n]) {
+				path.add(graph.getNode(n));
 			}
-
-			path.add(0, from); // finally put the source node to first node
+			path.add(from); // finally put the source node to the path
+			Collections.reverse(path);
 		}
 
+		if (cache != null) {
+			cache.putRoute(graph, source, destination, typeMask, path);
+		}
 		return path;
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * @param graph The graph to search
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
+	private void relax(MapGraph graph, int node) {
+		double nodeDist = distances[node];
+		for (int e = graph.getFirstEdge(node), end = graph.getFirstEdge(node+1);
+				e < end; e++) {
+			int n = graph.getEdgeTarget(e);
+			boolean reached = (stamps[n] == stamp);
+			if (reached && !unvisited.contains(n)) {
 				continue; // skip visited nodes
 			}
 
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
+			if (okMapNodes != null && !graph.isType(n, okTypeMask)) {
 				continue; // skip nodes that are not OK
 			}
 
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			double nDist = nodeDist + graph.getEdgeLength(e);
 
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
+			if (!reached || distances[n] > nDist) { // stored > found dist?
+				prevNodes[n] = node;
 				setDistance(n, nDist);
 			}
 		}
@@ -136,93 +213,31 @@ public class DijkstraPathFinder {
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
-	}
-
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
+	private void setDistance(int n, double distance) {
+		stamps[n] = stamp;
+		distances[n] = distance;
+		double key = distance;
+		if (landmarks != null) { // A*: add lower bound of distance to dest.
+			key += getLowerBound(n);
 		}
+		unvisited.put(n, key); // insert node to its place in the queue
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Returns a lower bound for the distance from a node to the destination
+	 * using the landmark distances
+	 * @param n The node
+	 * @return The lower bound
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
+	private double getLowerBound(int n) {
+		double bound = 0;
+		for (double[] landmarkDists : landmarks) {
+			double nDist = landmarkDists[n];
+			double destDist = landmarkDists[destination];
+			if (nDist != Double.MAX_VALUE && destDist != Double.MAX_VALUE) {
+				bound = Math.max(bound, Math.abs(destDist - nDist));
 			}
 		}
-
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
-		}
-
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+		return bound;
 	}
 }
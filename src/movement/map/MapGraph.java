@@ -0,0 +1,265 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.IndexedHeap;
+
+/**
+ * <P>Compact (read only) presentation of the graph formed by map nodes and
+ * their neighbors. Every node has a dense int index and the edges are
+ * stored in compressed sparse row arrays: the edges of node i are at
+ * indexes [{@link #getFirstEdge(int) getFirstEdge(i)},
+ * {@link #getFirstEdge(int) getFirstEdge(i+1)}) in the same order as the
+ * neighbors of the node. The edge lengths (euclidean distances) are
+ * calculated when the graph is created.</P>
+ *
+ * <P>The node indexes are in the order of the node coordinates (see
+ * {@link MapNode#compareTo(MapNode)}), so comparing the indexes gives the
+ * same result as comparing the nodes.</P>
+ */
+public class MapGraph {
+	/** the nodes by index */
+	private MapNode[] nodes;
+	/** indexes of the nodes */
+	private Map<MapNode, Integer> indexes;
+	/** type bit masks of the nodes by index */
+	private int[] typeMasks;
+	/** index of the first edge of each node (and total number of edges) */
+	private int[] firstEdges;
+	/** the nodes where the edges lead to */
+	private int[] edgeTargets;
+	/** lengths of the edges */
+	private double[] edgeLengths;
+	/** is there an edge to the opposite direction for every edge */
+	private boolean symmetric;
+	/** distances from the landmarks to all nodes or null if not calculated */
+	private double[][] landmarkDistances;
+
+	/**
+	 * Creates a graph of the given nodes and all the nodes that can be
+	 * reached from them.
+	 * @param mapNodes The nodes of the graph
+	 */
+	public MapGraph(Collection<MapNode> mapNodes) {
+		this.indexes = new HashMap<MapNode, Integer>();
+		List<MapNode> all = new ArrayList<MapNode>(mapNodes);
+		for (MapNode n : all) {
+			indexes.put(n, 0);
+		}
+		for (int i=0; i<all.size(); i++) { // add neighbors outside the nodes
+			for (MapNode neighbor : all.get(i).getNeighbors()) {
+				if (!indexes.containsKey(neighbor)) {
+					indexes.put(neighbor, 0);
+					all.add(neighbor);
+				}
+			}
+		}
+
+		this.nodes = all.toArray(new MapNode[all.size()]);
+		Arrays.sort(this.nodes);
+		this.typeMasks = new int[nodes.length];
+		this.firstEdges = new int[nodes.length + 1];
+		int nrofEdges = 0;
+		for (int i=0; i<nodes.length; i++) {
+			indexes.put(nodes[i], i);
+			typeMasks[i] = nodes[i].getTypeMask();
+			nrofEdges += nodes[i].getNeighbors().size();
+		}
+
+		this.edgeTargets = new int[nrofEdges];
+		this.edgeLengths = new double[nrofEdges];
+		int edge = 0;
+		for (int i=0; i<nodes.length; i++) {
+			firstEdges[i] = edge;
+			for (MapNode neighbor : nodes[i].getNeighbors()) {
+				edgeTargets[edge] = indexes.get(neighbor);
+				edgeLengths[edge] = nodes[i].getLocation().distance(
+						neighbor.getLocation());
+				edge++;
+			}
+		}
+		firstEdges[nodes.length] = edge;
+		this.symmetric = checkSymmetry();
+	}
+
+	/**
+	 * Returns true if there is an edge to the opposite direction for every
+	 * edge of the graph
+	 * @return true if the edges are symmetric
+	 */
+	private boolean checkSymmetry() {
+		for (int i=0; i<nodes.length; i++) {
+			for (int e = firstEdges[i]; e < firstEdges[i+1]; e++) {
+				int target = edgeTargets[e];
+				boolean found = false;
+				for (int r = firstEdges[target]; r < firstEdges[target+1]; r++){
+					if (edgeTargets[r] == i) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Returns the index of a node
+	 * @param node The node
+	 * @return The index of the node or -1 if the node is not in the graph
+	 */
+	public int getIndex(MapNode node) {
+		Integer index = indexes.get(node);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Returns a node by its index
+	 * @param index Index of the node
+	 * @return The node
+	 */
+	public MapNode getNode(int index) {
+		return this.nodes[index];
+	}
+
+	/**
+	 * Returns true if the node is of any of the types in the mask
+	 * @param index Index of the node
+	 * @param typeMask Bit mask of the types
+	 * @return true if the node is of any of the types
+	 * @see MapNode#isType(int[])
+	 */
+	public boolean isType(int index, int typeMask) {
+		return (typeMasks[index] & typeMask) != 0;
+	}
+
+	/**
+	 * Returns the index of the first edge of a node. The edges of the node
+	 * end at the first edge of the next node.
+	 * @param index Index of the node (0...size())
+	 * @return Index of the first edge
+	 */
+	public int getFirstEdge(int index) {
+		return this.firstEdges[index];
+	}
+
+	/**
+	 * Returns the node an edge leads to
+	 * @param edge Index of the edge
+	 * @return Index of the node
+	 */
+	public int getEdgeTarget(int edge) {
+		return this.edgeTargets[edge];
+	}
+
+	/**
+	 * Returns the length of an edge
+	 * @param edge Index of the edge
+	 * @return The euclidean distance between the nodes of the edge
+	 */
+	public double getEdgeLength(int edge) {
+		return this.edgeLengths[edge];
+	}
+
+	/**
+	 * Returns the shortest distances from landmark nodes to all the nodes.
+	 * For any nodes u and v, |d(L,u) - d(L,v)| is a lower bound for the
+	 * distance between u and v. The landmarks are chosen so that every new
+	 * landmark is the node farthest away from the previous landmarks. The
+	 * distances are calculated on the first call and reused after that.
+	 * @param nrofLandmarks The number of landmarks
+	 * @return The distances by landmark and node index
+	 * (Double.MAX_VALUE for unreachable nodes) or null if the edges of the
+	 * graph are not symmetric (and the distances are not lower bounds)
+	 */
+	public double[][] getLandmarkDistances(int nrofLandmarks) {
+		if (!symmetric || nodes.length == 0) {
+			return null;
+		}
+		nrofLandmarks = Math.min(nrofLandmarks, nodes.length);
+		if (landmarkDistances != null &&
+				landmarkDistances.length == nrofLandmarks) {
+			return landmarkDistances;
+		}
+
+		double[][] distances = new double[nrofLandmarks][];
+		double[] minDistances = getDistancesFrom(0);
+		for (int i=0; i<nrofLandmarks; i++) {
+			int landmark = 0;
+			for (int n=0; n<nodes.length; n++) {
+				if (minDistances[n] != Double.MAX_VALUE &&
+						minDistances[n] > minDistances[landmark]) {
+					landmark = n;
+				}
+			}
+
+			distances[i] = getDistancesFrom(landmark);
+			for (int n=0; n<nodes.length; n++) {
+				minDistances[n] = Math.min(minDistances[n], distances[i][n]);
+			}
+		}
+
+		this.landmarkDistances = distances;
+		return distances;
+	}
+
+	/**
+	 * Calculates the shortest distances from a node to all the nodes
+	 * @param source Index of the source node
+	 * @return The distances by node index (Double.MAX_VALUE for nodes that
+	 * can't be reached)
+	 */
+	private double[] getDistancesFrom(int source) {
+		double[] distances = new double[nodes.length];
+		Arrays.fill(distances, Double.MAX_VALUE);
+		boolean[] visited = new boolean[nodes.length];
+		IndexedHeap unvisited = new IndexedHeap(nodes.length);
+
+		distances[source] = 0;
+		unvisited.put(source, 0);
+		while (!unvisited.isEmpty()) {
+			int node = unvisited.poll();
+			visited[node] = true;
+			for (int e = firstEdges[node]; e < firstEdges[node+1]; e++) {
+				int n = edgeTargets[e];
+				double nDist = distances[node] + edgeLengths[e];
+				if (!visited[n] && distances[n] > nDist) {
+					distances[n] = nDist;
+					unvisited.put(n, nDist);
+				}
+			}
+		}
+
+		return distances;
+	}
+
+	/**
+	 * Returns a type bit mask for {@link #isType(int, int)}
+	 * @param types The types (values in range [{@value MapNode#MIN_TYPE},
+	 * {@value MapNode#MAX_TYPE}])
+	 * @return Bit mask that matches any of the types
+	 */
+	public static int getTypeMask(int[] types) {
+		return MapNode.typesToBitMask(types);
+	}
+}
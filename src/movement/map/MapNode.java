@@ -83,11 +83,33 @@ public class MapNode implements Comparable<MapNode> {
 	 * @return A bit mask for the given type
 	 * @throws SettingsError if the type is out of range
 	 */
-	private int typeToBitMask(int type) {
+	private static int typeToBitMask(int type) {
 		assert type >= MIN_TYPE && type <= MAX_TYPE : "Invalid node type "+type;
 		return 1 << type; // create the mask by bitwise shift
 	}
 
+	/**
+	 * Converts types to a bit mask that matches the nodes of any of the types
+	 * @param types The types to convert
+	 * @return A bit mask for the types
+	 * @see #getTypeMask()
+	 */
+	static int typesToBitMask(int[] types) {
+		int mask = 0;
+		for (int type : types) {
+			mask |= typeToBitMask(type);
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the bit mask of this node's types (0 if the node has no types)
+	 * @return the bit mask of this node's types
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+
 	/**
 	 * Adds the node as this node's neighbour (unless the node is null)
 	 * @param node The node to add or null for no action
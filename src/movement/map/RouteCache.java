@@ -0,0 +1,272 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.DTNSim;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * <P>Cache of the shortest routes between map nodes that is shared by all
+ * the path finders (and so by all the hosts) of a simulation run. Routes are
+ * stored by their source, destination and the map node types that were OK
+ * for the route. When the cache is full, the least recently used route is
+ * evicted. Activity models and points of interest route between a small set
+ * of map nodes, so most routes are found from the cache.</P>
+ *
+ * <P>The cache can also enable landmark (ALT) based A* search for the routes
+ * that are not found from the cache (see {@link #NROF_LANDMARKS_S}).</P>
+ *
+ * <P>The cache is disabled by default. Hit and miss counts can be reported
+ * with {@link report.RouteCacheReport}.</P>
+ */
+public class RouteCache {
+	/** route cache's settings namespace ({@value})*/
+	public static final String ROUTE_CACHE_NS = "RouteCache";
+	/** Maximum number of cached routes -setting id ({@value}). Default is 0
+	 * (routes are not cached). */
+	public static final String SIZE_S = "size";
+	/** Number of landmarks for A* search -setting id ({@value}). If the value
+	 * is greater than zero, routes that are not in the cache are searched
+	 * using A* with the distances to the landmarks as the lower bounds.
+	 * Landmarks are only used with maps whose paths are bidirectional. With
+	 * landmarks, a different (but equally short) route may be chosen than
+	 * without them. Default is 0 (no landmarks). */
+	public static final String NROF_LANDMARKS_S = "nrofLandmarks";
+
+	/** Type mask used in the keys of routes where all map nodes are OK */
+	private static final int ALL_TYPES = -1;
+
+	/** the cache of the current run or null if not created yet */
+	private static RouteCache instance = null;
+	/** has the instance been created (or disabled) for this run */
+	private static boolean instanceCreated = false;
+
+	static {
+		DTNSim.registerForReset(RouteCache.class.getCanonicalName());
+		reset();
+	}
+
+	private int maxSize;
+	private int nrofLandmarks;
+	/** the routes in LRU order */
+	private Map<RouteKey, int[]> routes;
+	/** key object for lookups */
+	private RouteKey lookupKey;
+
+	private long nrofHits;
+	private long nrofMisses;
+	private long nrofEvictions;
+
+	/**
+	 * Creates a new route cache
+	 * @param maxSize Maximum number of cached routes (0 for no caching)
+	 * @param nrofLandmarks Number of landmarks for A* searches (0 for
+	 * no landmarks)
+	 */
+	public RouteCache(int maxSize, int nrofLandmarks) {
+		this.maxSize = maxSize;
+		this.nrofLandmarks = nrofLandmarks;
+		this.lookupKey = new RouteKey();
+		this.routes = new LinkedHashMap<RouteKey, int[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<RouteKey, int[]> eldest) {
+				if (size() > RouteCache.this.maxSize) {
+					nrofEvictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the route cache of the current simulation run based on the
+	 * settings
+	 * @return The route cache or null if route caching and landmarks are
+	 * disabled
+	 * @throws SettingsError if the settings are invalid
+	 */
+	public static RouteCache getInstance() {
+		if (!instanceCreated) {
+			Settings s = new Settings(ROUTE_CACHE_NS);
+			int size = s.getInt(SIZE_S, 0);
+			int landmarks = s.getInt(NROF_LANDMARKS_S, 0);
+			if (size < 0 || landmarks < 0) {
+				throw new SettingsError("Negative value for " +
+						s.getFullPropertyName(size < 0 ? SIZE_S :
+							NROF_LANDMARKS_S));
+			}
+			if (size > 0 || landmarks > 0) {
+				instance = new RouteCache(size, landmarks);
+			}
+			instanceCreated = true;
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static void reset() {
+		instance = null;
+		instanceCreated = false;
+	}
+
+	/**
+	 * Returns a cached route
+	 * @param graph The graph of the route's nodes
+	 * @param from Index of the source node
+	 * @param to Index of the destination node
+	 * @param typeMask Bit mask of the OK map node types
+	 * (see {@link MapGraph#getTypeMask(int[])}) or -1 if all nodes are OK
+	 * @return The route (a new list) or null if the route is not in the cache
+	 */
+	public List<MapNode> getRoute(MapGraph graph, int from, int to,
+			int typeMask) {
+		if (maxSize == 0) {
+			return null;
+		}
+
+		lookupKey.set(graph, from, to, typeMask);
+		int[] route = routes.get(lookupKey);
+		if (route == null) {
+			nrofMisses++;
+			return null;
+		}
+
+		nrofHits++;
+		List<MapNode> path = new ArrayList<MapNode>(route.length);
+		for (int node : route) {
+			path.add(graph.getNode(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Stores a route to the cache
+	 * @param graph The graph of the route's nodes
+	 * @param from Index of the source node
+	 * @param to Index of the destination node
+	 * @param typeMask Bit mask of the OK map node types or -1 if all nodes
+	 * are OK
+	 * @param path The nodes of the route (or an empty list if there is no
+	 * route)
+	 */
+	public void putRoute(MapGraph graph, int from, int to, int typeMask,
+			List<MapNode> path) {
+		if (maxSize == 0) {
+			return;
+		}
+
+		int[] route = new int[path.size()];
+		for (int i=0; i<route.length; i++) {
+			route[i] = graph.getIndex(path.get(i));
+		}
+		RouteKey key = new RouteKey();
+		key.set(graph, from, to, typeMask);
+		routes.put(key, route);
+	}
+
+	/**
+	 * Returns the type mask for route keys
+	 * @param okMapNodes The OK map node types or null if all are OK
+	 * @return The type mask
+	 */
+	static int getKeyTypeMask(int[] okMapNodes) {
+		return okMapNodes != null ? MapGraph.getTypeMask(okMapNodes) :
+			ALL_TYPES;
+	}
+
+	/**
+	 * Returns the number of landmarks to use in A* searches
+	 * @return the number of landmarks (0 for plain Dijkstra search)
+	 */
+	public int getNrofLandmarks() {
+		return this.nrofLandmarks;
+	}
+
+	/**
+	 * Returns the maximum number of cached routes
+	 * @return the maximum number of cached routes
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Returns the number of routes in the cache
+	 * @return the number of routes in the cache
+	 */
+	public int size() {
+		return this.routes.size();
+	}
+
+	/**
+	 * Returns the number of routes that were found from the cache
+	 * @return the number of cache hits
+	 */
+	public long getNrofHits() {
+		return this.nrofHits;
+	}
+
+	/**
+	 * Returns the number of routes that were not found from the cache
+	 * @return the number of cache misses
+	 */
+	public long getNrofMisses() {
+		return this.nrofMisses;
+	}
+
+	/**
+	 * Returns the number of routes that were evicted from the full cache
+	 * @return the number of evictions
+	 */
+	public long getNrofEvictions() {
+		return this.nrofEvictions;
+	}
+
+	/**
+	 * Key of a cached route
+	 */
+	private static class RouteKey {
+		private MapGraph graph;
+		private int from;
+		private int to;
+		private int typeMask;
+
+		private void set(MapGraph graph, int from, int to, int typeMask) {
+			this.graph = graph;
+			this.from = from;
+			this.to = to;
+			this.typeMask = typeMask;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey other = (RouteKey)o;
+			return graph == other.graph && from == other.from &&
+				to == other.to && typeMask == other.typeMask;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(graph);
+			hash = 31 * hash + from;
+			hash = 31 * hash + to;
+			return 31 * hash + typeMask;
+		}
+	}
+}
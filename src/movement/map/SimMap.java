@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,8 @@ public class SimMap implements Serializable {
 
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** graph presentation of the map or null if not created yet */
+	private transient MapGraph graph = null;
 
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -37,6 +40,21 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 
+	/**
+	 * Creates a map whose node list is in the given order. The nodes are
+	 * hashed by their coordinates when a node is first requested by
+	 * coordinates.
+	 * @param nodes The map nodes
+	 */
+	public SimMap(List<MapNode> nodes) {
+		this.offset = new Coord(0,0);
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		this.isMirrored = false;
+		this.needsRehash = true;
+		setBounds();
+	}
+
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -45,6 +63,19 @@ public class SimMap implements Serializable {
 		return this.nodes;
 	}
 
+	/**
+	 * Returns the graph presentation of the map for path finding. The graph
+	 * is created when it is requested the first time (after translations
+	 * and mirroring), so the nodes shouldn't be modified after that.
+	 * @return the graph presentation of the map
+	 */
+	public MapGraph getGraph() {
+		if (this.graph == null) {
+			this.graph = new MapGraph(this.nodes);
+		}
+		return this.graph;
+	}
+
 	/**
 	 * Returns a MapNode at given coordinates or null if there's no MapNode
 	 * in the location of the coordinate
@@ -57,6 +88,7 @@ public class SimMap implements Serializable {
 			for (MapNode node : getNodes()) {
 				nodesMap.put(node.getLocation(), node); // re-hash
 			}
+			needsRehash = false;
 		}
 
 		return nodesMap.get(c);
@@ -111,6 +143,7 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 
 		needsRehash = true;
+		graph = null;
 	}
 
 	/**
@@ -127,6 +160,7 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		graph = null;
 	}
 
 	/**
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import movement.map.RouteCache;
+
+/**
+ * Reports the statistics of the map route cache (see {@link RouteCache}):
+ * how many routes were found from the cache and how many had to be
+ * searched.
+ */
+public class RouteCacheReport extends Report {
+
+	@Override
+	public void done() {
+		RouteCache cache = RouteCache.getInstance();
+		write("Route cache stats for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+
+		if (cache == null) {
+			write("Route cache is not enabled");
+			super.done();
+			return;
+		}
+
+		long nrofRequests = cache.getNrofHits() + cache.getNrofMisses();
+		double hitRatio = Double.NaN;
+		if (nrofRequests > 0) {
+			hitRatio = (1.0 * cache.getNrofHits()) / nrofRequests;
+		}
+
+		String statsText = "hits: " + cache.getNrofHits() +
+			"\nmisses: " + cache.getNrofMisses() +
+			"\nhit_ratio: " + format(hitRatio) +
+			"\nevictions: " + cache.getNrofEvictions() +
+			"\ncached_routes: " + cache.size() +
+			"\nmax_size: " + cache.getMaxSize() +
+			"\nlandmarks: " + cache.getNrofLandmarks();
+
+		write(statsText);
+		super.done();
+	}
+}
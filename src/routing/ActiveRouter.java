@@ -7,21 +7,28 @@ package routing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
+import input.TtlExpiryEvent;
 import routing.util.EnergyModel;
+import routing.util.EvictionPolicy;
+import routing.util.FifoEvictionPolicy;
+import routing.util.MessageBuffer;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
 
 import core.Connection;
 import core.DTNHost;
+import core.DTNSim;
 import core.Message;
 import core.MessageListener;
 import core.NetworkInterface;
 import core.Settings;
 import core.SimClock;
+import core.World;
 
 /**
  * Superclass of active routers. Contains convenience methods (e.g.
@@ -45,9 +52,23 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** time of the last scheduled TTL expiry event */
+	private double nextExpiryEvent;
+	/** world where the TTL expiry events are scheduled (null if expired
+	 * messages are dropped at the periodic TTL checks) */
+	private static World world = null;
+
+	static {
+		DTNSim.registerForReset(ActiveRouter.class.getCanonicalName());
+		reset();
+	}
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	/** policy for choosing the messages to drop when the buffer is full */
+	private EvictionPolicy evictionPolicy;
+	/** filter that accepts the messages that are not being sent */
+	private EvictionPolicy.RemovableFilter notSendingFilter;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -66,6 +87,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		} else {
 			this.energy = null; /* no energy model */
 		}
+
+		this.evictionPolicy = new FifoEvictionPolicy();
 	}
 
 	/**
@@ -77,6 +100,25 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.deleteDelivered = r.deleteDelivered;
 		this.policy = r.policy;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
+		this.evictionPolicy = new FifoEvictionPolicy();
+	}
+
+	/**
+	 * Sets the world where the routers schedule an event for the time when
+	 * the next message in their buffer expires. If the world is set, the
+	 * routers drop expired messages at every update.
+	 * @param w The world or null if the events are not scheduled
+	 * @see World#TTL_EXPIRY_EVENTS_S
+	 */
+	public static void setWorld(World w) {
+		world = w;
+	}
+
+	/**
+	 * Resets the static fields of the class
+	 */
+	public static void reset() {
+		world = null;
 	}
 
 	@Override
@@ -84,6 +126,12 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.nextExpiryEvent = -1;
+		this.notSendingFilter = new EvictionPolicy.RemovableFilter() {
+			public boolean isRemovable(Message m) {
+				return !isSending(m.getId());
+			}
+		};
 	}
 
 	/**
@@ -106,15 +154,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
-		/* do a copy to avoid concurrent modification exceptions
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+		/* index tolerates removals (startTransfer may remove messages) */
+		for (Message m : getMessagesTo(other)) {
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -232,8 +275,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
-				super.isBlacklistedMessage(m.getId())) {
+		if ( hasMessage(m) || isDeliveredMessage(m) ||
+				super.isBlacklistedMessage(m)) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 
@@ -288,18 +331,45 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is zero or less (except the ones being sent).
+	 * The messages are found from the expiry time index of the buffer, so
+	 * only the expired messages are visited.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl();
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		double now = SimClock.getTime();
+		if (getMessageBuffer().getNextExpiryTime() >= now) {
+			return; /* nothing has expired */
+		}
+
+		for (Message m : getMessageBuffer().getExpiredMessages(now)) {
+			if (!isSending(m.getId())) {
+				deleteMessage(m.getId(), true);
 			}
 		}
 	}
 
+	/**
+	 * Schedules an event for the time when the next message in the buffer
+	 * expires, unless an event is already scheduled for that time or before
+	 * it
+	 */
+	private void scheduleExpiryEvent() {
+		double now = SimClock.getTime();
+		double next = getMessageBuffer().getNextExpiryTime();
+		if (next == Double.MAX_VALUE || next < now) {
+			return; /* no TTLs or the expired message is being sent */
+		}
+
+		/* messages expire just after their expiry time */
+		double eventTime = Math.nextUp(next);
+		if (nextExpiryEvent > now && nextExpiryEvent <= eventTime) {
+			return;
+		}
+
+		world.scheduleEvent(new TtlExpiryEvent(getHost(), eventTime));
+		nextExpiryEvent = eventTime;
+	}
+
 	/**
 	 * Tries to make room for a new message. Current implementation simply
 	 * calls {@link #makeRoomForMessage(int)} and ignores the return value.
@@ -313,8 +383,11 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the next message to remove from the message buffer as defined
+	 * by the router's eviction policy (see
+	 * {@link #setEvictionPolicy(EvictionPolicy)}). By default, this is the
+	 * oldest (by receive time) message (that is not being sent if
+	 * excludeMsgBeingSent is true).
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
@@ -323,45 +396,79 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
+		return this.evictionPolicy.getNextMessageToRemove(getMessageBuffer(),
+				excludeMsgBeingSent ? this.notSendingFilter : null);
+	}
 
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
-		}
+	/**
+	 * Returns the eviction policy of this router
+	 * @return the eviction policy
+	 */
+	protected EvictionPolicy getEvictionPolicy() {
+		return this.evictionPolicy;
+	}
 
-		return oldest;
+	/**
+	 * Sets the policy that chooses the messages to drop when there is not
+	 * enough room in the buffer. Default is {@link FifoEvictionPolicy}.
+	 * @param evictionPolicy The eviction policy
+	 */
+	protected void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
 	}
 
 	/**
 	 * Returns a list of message-connections tuples of the messages whose
-	 * recipient is some host that we're connected to at the moment.
+	 * recipient is some host that we're connected to at the moment. The
+	 * tuples are in the same order as {@link #getMessageCollection()}.
+	 * The messages of each connected host are looked up from the
+	 * destination index of the buffer (see {@link #getMessagesTo(DTNHost)})
+	 * and the lists of the connections are merged, so the tuples are not
+	 * sorted.
 	 * @return a list of message-connections tuples
 	 */
 	protected List<Tuple<Message, Connection>> getMessagesForConnected() {
-		if (getNrofMessages() == 0 || getConnections().size() == 0) {
+		List<Connection> connections = getConnections();
+		if (getNrofMessages() == 0 || connections.size() == 0) {
 			/* no messages -> empty list */
 			return new ArrayList<Tuple<Message, Connection>>(0);
 		}
 
+		int n = connections.size();
+		List<Iterator<Message>> forCons = new ArrayList<Iterator<Message>>(n);
+		Message[] next = new Message[n];
+		int nrofMessages = 0;
+		for (int i=0; i<n; i++) {
+			Collection<Message> forCon = getMessagesTo(
+					connections.get(i).getOtherNode(getHost()));
+			Iterator<Message> iter = forCon.iterator();
+			forCons.add(iter);
+			next[i] = iter.hasNext() ? iter.next() : null;
+			nrofMessages += forCon.size();
+		}
+
+		/* the messages of each connection are in the buffer order; merge
+		 * them by taking the next message that is first in the buffer (the
+		 * connection order breaks ties of the same message) */
+		MessageBuffer buffer = getMessageBuffer();
 		List<Tuple<Message, Connection>> forTuples =
-			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
+			new ArrayList<Tuple<Message, Connection>>(nrofMessages);
+		while (true) {
+			int first = -1;
+			for (int i=0; i<n; i++) {
+				if (next[i] != null && (first < 0 || buffer.
+						compareIterationOrder(next[i], next[first]) < 0)) {
+					first = i;
 				}
 			}
+			if (first < 0) {
+				break; // all messages merged
+			}
+
+			forTuples.add(new Tuple<Message, Connection>(next[first],
+					connections.get(first)));
+			Iterator<Message> iter = forCons.get(first);
+			next[first] = iter.hasNext() ? iter.next() : null;
 		}
 
 		return forTuples;
@@ -397,11 +504,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	  * for receiving (or doesn't accept any). If a transfer is started, the
 	  * connection is included in the list of sending connections.
 	  * @param con Connection trough which the messages are sent
-	  * @param messages A list of messages to try
+	  * @param messages The messages to try (in iteration order)
 	  * @return The message whose transfer was started or null if no
 	  * transfer was started.
 	  */
-	protected Message tryAllMessages(Connection con, List<Message> messages) {
+	protected Message tryAllMessages(Connection con,
+			Collection<Message> messages) {
 		for (Message m : messages) {
 			int retVal = startTransfer(m, con);
 			if (retVal == RCV_OK) {
@@ -421,12 +529,12 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * connection, the messages are tried in the order they are in the list.
 	 * Once an accepting connection is found, no other connections or messages
 	 * are tried.
-	 * @param messages The list of Messages to try
+	 * @param messages The Messages to try (in iteration order)
 	 * @param connections The list of Connections to try
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
 	 */
-	protected Connection tryMessagesToConnections(List<Message> messages,
+	protected Connection tryMessagesToConnections(Collection<Message> messages,
 			List<Connection> connections) {
 		for (int i=0, n=connections.size(); i<n; i++) {
 			Connection con = connections.get(i);
@@ -441,9 +549,10 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	/**
 	 * Tries to send all messages that this router is carrying to all
-	 * connections this node has. Messages are ordered using the
-	 * {@link MessageRouter#sortByQueueMode(List)}. See
-	 * {@link #tryMessagesToConnections(List, List)} for sending details.
+	 * connections this node has. Messages are tried in the send queue order
+	 * (see {@link MessageRouter#getSendQueue()}). See
+	 * {@link #tryMessagesToConnections(Collection, List)} for sending
+	 * details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
 	 */
@@ -453,11 +562,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
-
-		return tryMessagesToConnections(messages, connections);
+		return tryMessagesToConnections(getSendQueue(), connections);
 	}
 
 	/**
@@ -574,7 +679,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Checks out all sending connections to finalize the ready ones
 	 * and abort those whose connection went down. Also drops messages
-	 * whose TTL <= 0 (checking every one simulated minute).
+	 * whose TTL <= 0 (checking every one simulated minute or, if
+	 * {@link World#TTL_EXPIRY_EVENTS_S} is used, at every update).
 	 * @see #addToSendingConnections(Connection)
 	 */
 	@Override
@@ -617,8 +723,12 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 
+		if (world != null) {
+			dropExpiredMessages();
+			scheduleExpiryEvent();
+		}
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
+		else if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL &&
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
@@ -631,6 +741,27 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the time of the next TTL check or, if TTL expiry events are
+	 * used, the time when the next message in the buffer has expired
+	 */
+	@Override
+	public double getNextTimedUpdate() {
+		double next = super.getNextTimedUpdate();
+		if (world == null) {
+			/* a microsecond early, so that rounding in update() can't
+			 * make the host miss the check */
+			next = Math.min(next, lastTtlCheck + TTL_CHECK_INTERVAL - 1e-6);
+		}
+		else if (getMessageBuffer().getNextExpiryTime() != Double.MAX_VALUE) {
+			/* all hosts whose messages have expired drop them after the
+			 * first expiry event, as in a full update */
+			next = Math.min(next,
+					Math.nextUp(getMessageBuffer().getNextExpiryTime()));
+		}
+		return next;
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
@@ -51,11 +51,10 @@ public class LifeRouter extends ActiveRouter {
 	 */
 	private int getPeerMessageCount(Message m) {
 		DTNHost me = getHost();
-		String id = m.getId();
 		int peerMsgCount = 0;
 
 		for (Connection c : getConnections()) {
-			if (c.getOtherNode(me).getRouter().hasMessage(id)) {
+			if (c.getOtherNode(me).getRouter().hasMessage(m)) {
 				peerMsgCount++;
 			}
 		}
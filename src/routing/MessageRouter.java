@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -20,7 +21,13 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.BitSetIdRegistry;
+import routing.util.BloomFilterIdRegistry;
+import routing.util.MessageBuffer;
+import routing.util.MessageIdRegistry;
 import routing.util.RoutingInfo;
+import routing.util.TimeWindowIdRegistry;
+import util.IntHashMap;
 import util.Tuple;
 
 /**
@@ -41,8 +48,13 @@ public abstract class MessageRouter {
 	 * one message can be sent directly to the final recipient).
 	 * Valid values are<BR>
 	 * <UL>
-	 * <LI/> 1 : random (message order is randomized every time; default option)
+	 * <LI/> 1 : random (the messages are shuffled again every simulated
+	 * second; default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
+	 * <LI/> 3 : random key (every message gets a random position in the send
+	 * queue when it is added to the buffer and keeps it until it is removed;
+	 * the queue is never reshuffled, so it is kept up to date incrementally
+	 * instead of shuffling a copy of the buffer every second)
 	 * </UL>
 	 */
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
@@ -51,11 +63,49 @@ public abstract class MessageRouter {
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+	/** Setting value for random key queue mode */
+	public static final int Q_MODE_RANDOM_KEY = 3;
 
 	/** Setting string for random queue mode */
 	public static final String STR_Q_MODE_RANDOM = "RANDOM";
 	/** Setting string for FIFO queue mode */
 	public static final String STR_Q_MODE_FIFO = "FIFO";
+	/** Setting string for random key queue mode */
+	public static final String STR_Q_MODE_RANDOM_KEY = "RANDOM_KEY";
+
+	/**
+	 * Message ID registry type -setting id ({@value}). Defines how the
+	 * router remembers the IDs of the messages it has received as the final
+	 * recipient and the IDs of the messages its applications have
+	 * blacklisted. Valid values are<BR>
+	 * <UL>
+	 * <LI/> BITSET : exact, one bit per message ID of the simulation (default)
+	 * <LI/> WINDOW : exact, but the IDs are forgotten after a time window
+	 * (see {@link #REGISTRY_WINDOW_S})
+	 * <LI/> BLOOM : Bloom filter of fixed size that may falsely report
+	 * messages as delivered or blacklisted (see {@link #REGISTRY_BLOOM_S})
+	 * </UL>
+	 */
+	public static final String REGISTRY_S = "messageRegistry";
+	/**
+	 * Message ID registry time window -setting id ({@value}). Seconds the
+	 * IDs are remembered in the WINDOW registry. Should be longer than the
+	 * TTL of the messages.
+	 */
+	public static final String REGISTRY_WINDOW_S = "messageRegistryWindow";
+	/**
+	 * Message ID registry Bloom filter -setting id ({@value}). Two
+	 * comma-separated values: expected number of message IDs per registry
+	 * and the maximum false positive rate with that many IDs.
+	 */
+	public static final String REGISTRY_BLOOM_S = "messageRegistryBloom";
+
+	/** Setting string for the bit set registry */
+	public static final String STR_REGISTRY_BITSET = "BITSET";
+	/** Setting string for the time window registry */
+	public static final String STR_REGISTRY_WINDOW = "WINDOW";
+	/** Setting string for the Bloom filter registry */
+	public static final String STR_REGISTRY_BLOOM = "BLOOM";
 
 	/* Return values when asking to start a transmission:
 	 * RCV_OK (0) means that the host accepts the message and transfer started,
@@ -83,14 +133,27 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -99;
 
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred and the hosts they are from, by the
+	 * ID indexes of the messages. Messages with the same ID are
+	 * distinguished by the sender. */
+	private IntHashMap<List<Tuple<Message, DTNHost>>> incomingMessages;
+	/** Number of the messages being transferred */
+	private int nrofIncomingMessages;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private MessageBuffer messages;
+	/** The shuffled send queue of random queue mode (or null if the buffer
+	 * has changed since it was shuffled) */
+	private List<Message> randomSendQueue;
+	/** Simulation time (seconds) the random send queue was shuffled for */
+	private int randomSendQueueTime;
+	/** IDs of the messages this router has received as the final
+	 * recipient */
+	private MessageIdRegistry deliveredMessages;
+	/** number of messages this router has received as the final recipient */
+	private int nrofDeliveredMessages;
+	/** IDs of the messages that Applications on this router have
+	 * blacklisted */
+	private MessageIdRegistry blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -99,6 +162,12 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Type of the message ID registries (one of the STR_REGISTRY values) */
+	private String registryType;
+	/** Time window of the WINDOW registries (seconds) */
+	private double registryWindow;
+	/** Expected number of IDs and false positive rate of BLOOM registries */
+	private double[] registryBloom;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -130,9 +199,12 @@ public abstract class MessageRouter {
 				this.sendQueueMode = Q_MODE_FIFO;
 			} else if (mode.trim().toUpperCase().equals(STR_Q_MODE_RANDOM)){
 				this.sendQueueMode = Q_MODE_RANDOM;
+			} else if (mode.trim().toUpperCase().equals(
+					STR_Q_MODE_RANDOM_KEY)) {
+				this.sendQueueMode = Q_MODE_RANDOM_KEY;
 			} else {
 				this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
-				if (sendQueueMode < 1 || sendQueueMode > 2) {
+				if (sendQueueMode < 1 || sendQueueMode > 3) {
 					throw new SettingsError("Invalid value for " +
 							s.getFullPropertyName(SEND_QUEUE_MODE_S));
 				}
@@ -141,6 +213,23 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+
+		this.registryType = s.getSetting(REGISTRY_S,
+				STR_REGISTRY_BITSET).trim().toUpperCase();
+		if (registryType.equals(STR_REGISTRY_WINDOW)) {
+			this.registryWindow = s.getDouble(REGISTRY_WINDOW_S);
+			s.ensurePositiveValue(registryWindow, REGISTRY_WINDOW_S);
+		} else if (registryType.equals(STR_REGISTRY_BLOOM)) {
+			this.registryBloom = s.getCsvDoubles(REGISTRY_BLOOM_S, 2);
+			if (registryBloom[0] < 1 || registryBloom[1] <= 0 ||
+					registryBloom[1] >= 1) {
+				throw new SettingsError("Invalid value for " +
+						s.getFullPropertyName(REGISTRY_BLOOM_S));
+			}
+		} else if (!registryType.equals(STR_REGISTRY_BITSET)) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(REGISTRY_S));
+		}
 	}
 
 	/**
@@ -151,10 +240,18 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.incomingMessages = new IntHashMap<List<Tuple<Message, DTNHost>>>();
+		this.nrofIncomingMessages = 0;
+		if (this.sendQueueMode == Q_MODE_RANDOM_KEY) {
+			this.messages = new MessageBuffer(new Random(host.getAddress()));
+		}
+		else {
+			this.messages = new MessageBuffer();
+		}
+		this.randomSendQueue = null;
+		this.deliveredMessages = createRegistry();
+		this.nrofDeliveredMessages = 0;
+		this.blacklistedMessages = createRegistry();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -167,6 +264,9 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.registryType = r.registryType;
+		this.registryWindow = r.registryWindow;
+		this.registryBloom = r.registryBloom;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -176,6 +276,21 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Creates a new message ID registry of the type defined by the settings
+	 * (see {@link #REGISTRY_S})
+	 * @return The new registry
+	 */
+	private MessageIdRegistry createRegistry() {
+		if (registryType.equals(STR_REGISTRY_WINDOW)) {
+			return new TimeWindowIdRegistry(registryWindow);
+		} else if (registryType.equals(STR_REGISTRY_BLOOM)) {
+			return new BloomFilterIdRegistry((int)registryBloom[0],
+					registryBloom[1]);
+		}
+		return new BitSetIdRegistry();
+	}
+
 	/**
 	 * Updates router.
 	 * This method should be called (at least once) on every simulation
@@ -189,6 +304,26 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the time when the router has time driven work to do at its
+	 * update even if nothing else changes (e.g., expired messages to drop).
+	 * When only the hosts affected by events are updated (see
+	 * {@link core.World#UPDATE_AFFECTED_ONLY_S}), the router's host is also
+	 * updated after the first event at or after this time. The time is
+	 * asked after the host's updates, so it may change only when the router
+	 * is updated or its messages change (which also makes the host
+	 * affected). It may be a little earlier than the work is due. Routers
+	 * with applications have work at every update, since the applications
+	 * are updated with the router.
+	 * @return The time or Double.MAX_VALUE if the router has no such work
+	 */
+	public double getNextTimedUpdate() {
+		if (this.applications.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return SimClock.getTime();
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -210,7 +345,18 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
+	}
+
+	/**
+	 * Checks if this router has a message with the same ID as the given
+	 * message buffered. Faster than {@link #hasMessage(String)} because the
+	 * ID index of the message is used as the key.
+	 * @param m The message
+	 * @return True if the router has a message with the same ID, false if not
+	 */
+	public boolean hasMessage(Message m) {
+		return this.messages.contains(m.getIdIndex());
 	}
 
 	/**
@@ -222,7 +368,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.contains(m.getIdIndex()));
 	}
 
 	/**
@@ -235,7 +381,18 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		int idIndex = Message.getIdIndex(id);
+		return idIndex >= 0 && this.blacklistedMessages.contains(idIndex);
+	}
+
+	/**
+	 * Returns <code>true</code> if a message with the same ID as the given
+	 * message has been blacklisted (see {@link #isBlacklistedMessage(String)})
+	 * @param m The message
+	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
+	 */
+	protected boolean isBlacklistedMessage(Message m) {
+		return this.blacklistedMessages.contains(m.getIdIndex());
 	}
 
 	/**
@@ -247,7 +404,57 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+
+	/**
+	 * Returns the messages of this router in the order defined by the
+	 * current sending queue mode. In FIFO and random key modes the queue is
+	 * kept up to date as messages are added and removed, so it is not sorted
+	 * or copied per call, and it can be iterated while messages are removed
+	 * from (or added to) the buffer; the iteration continues after the
+	 * message that was returned last. In random mode the queue is a copy of
+	 * the messages shuffled with {@link #sortByQueueMode(List)}; the copy is
+	 * reused until the buffer changes or the next simulated second starts
+	 * (the shuffle would give the same order) and it doesn't change when
+	 * messages are removed.
+	 * @return The messages of this router in the send queue order
+	 */
+	@SuppressWarnings(value = "unchecked")
+	protected Collection<Message> getSendQueue() {
+		if (this.sendQueueMode != Q_MODE_RANDOM) {
+			return this.messages.getSendQueue();
+		}
+
+		if (this.randomSendQueue == null ||
+				this.randomSendQueueTime != SimClock.getIntTime()) {
+			this.randomSendQueue = Collections.unmodifiableList(
+					sortByQueueMode(new ArrayList<Message>(
+							getMessageCollection())));
+			this.randomSendQueueTime = SimClock.getIntTime();
+		}
+		return this.randomSendQueue;
+	}
+
+	/**
+	 * Returns the messages of this router whose final recipient is the
+	 * given host, in the same order as {@link #getMessageCollection()}.
+	 * The messages are indexed by their destinations, so this is a lookup
+	 * and not a search through the buffer.
+	 * @param to The destination host
+	 * @return The messages to the host (an empty collection if there are
+	 * none)
+	 */
+	protected Collection<Message> getMessagesTo(DTNHost to) {
+		return this.messages.getMessagesTo(to);
+	}
+
+	/**
+	 * Returns the message buffer of this router
+	 * @return the message buffer
+	 */
+	protected MessageBuffer getMessageBuffer() {
+		return this.messages;
 	}
 
 	/**
@@ -274,17 +481,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.messages.getOccupancy();
 	}
 
 	/**
@@ -383,11 +584,12 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.add(incoming.getIdIndex());
+			this.nrofDeliveredMessages++;
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.add(incoming.getIdIndex());
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -405,7 +607,21 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		List<Tuple<Message, DTNHost>> incoming =
+			this.incomingMessages.get(m.getIdIndex());
+		if (incoming == null) {
+			incoming = new ArrayList<Tuple<Message, DTNHost>>(1);
+			this.incomingMessages.put(m.getIdIndex(), incoming);
+		}
+		Tuple<Message, DTNHost> t = new Tuple<Message, DTNHost>(m, from);
+		int index = indexOfSender(incoming, from);
+		if (index >= 0) {
+			incoming.set(index, t);
+		}
+		else {
+			incoming.add(t);
+			this.nrofIncomingMessages++;
+		}
 	}
 
 	/**
@@ -416,7 +632,36 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int idIndex = Message.getIdIndex(id);
+		List<Tuple<Message, DTNHost>> incoming =
+			(idIndex < 0 ? null : this.incomingMessages.get(idIndex));
+		int index = (incoming == null ? -1 : indexOfSender(incoming, from));
+		if (index < 0) {
+			return null;
+		}
+
+		Message m = incoming.remove(index).getKey();
+		if (incoming.isEmpty()) {
+			this.incomingMessages.remove(idIndex);
+		}
+		this.nrofIncomingMessages--;
+		return m;
+	}
+
+	/**
+	 * Returns the index of the incoming message from the given host
+	 * @param incoming The incoming messages with the same ID
+	 * @param from The host that sent the message (previous hop)
+	 * @return The index of the message or -1 if it wasn't found
+	 */
+	private static int indexOfSender(List<Tuple<Message, DTNHost>> incoming,
+			DTNHost from) {
+		for (int i=0, n=incoming.size(); i<n; i++) {
+			if (incoming.get(i).getValue() == from) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -426,7 +671,8 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		int idIndex = Message.getIdIndex(id);
+		return idIndex >= 0 && this.incomingMessages.containsKey(idIndex);
 	}
 
 	/**
@@ -437,7 +683,8 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
+		this.randomSendQueue = null;
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -453,6 +700,9 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.randomSendQueue = null;
+		}
 		return m;
 	}
 
@@ -483,11 +733,23 @@ public abstract class MessageRouter {
 	 * the message was too big for the buffer)
 	 */
 	public boolean createNewMessage(Message m) {
-		m.setTtl(this.msgTtl);
+		setTtl(m, this.msgTtl);
 		addToMessages(m, true);
 		return true;
 	}
 
+	/**
+	 * Sets the TTL of a message. If the message is in the buffer of this
+	 * router, the buffer's expiry time index is updated too, so routers
+	 * should change TTLs through this method.
+	 * @param m The message
+	 * @param ttl The time-to-live to set (see {@link Message#setTtl(int)})
+	 */
+	protected void setTtl(Message m, int ttl) {
+		m.setTtl(ttl);
+		this.messages.ttlChanged(m);
+	}
+
 	/**
 	 * Deletes a message from the buffer and informs message listeners
 	 * about the event
@@ -509,7 +771,9 @@ public abstract class MessageRouter {
 	/**
 	 * Sorts/shuffles the given list according to the current sending queue
 	 * mode. The list can contain either Message or Tuple<Message, Connection>
-	 * objects. Other objects cause error.
+	 * objects. Other objects cause error. Routers that send messages from
+	 * their own buffer in the queue mode order should use
+	 * {@link #getSendQueue()} instead.
 	 * @param list The list to sort or shuffle
 	 * @return The sorted/shuffled list
 	 */
@@ -520,33 +784,21 @@ public abstract class MessageRouter {
 			Collections.shuffle(list, new Random(SimClock.getIntTime()));
 			break;
 		case Q_MODE_FIFO:
-			Collections.sort(list,
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " +
-								"the list");
-					}
-
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
+		case Q_MODE_RANDOM_KEY:
+			if (list.size() <= 1) {
+				break; // nothing to sort
+			}
+			Object first = list.get(0);
+			if (first instanceof Tuple) {
+				Collections.sort((List<Tuple<Message, Connection>>)list,
+						tupleQueueModeOrder);
+			}
+			else if (first instanceof Message) {
+				Collections.sort((List<Message>)list, queueModeOrder);
+			}
+			else {
+				throw new SimError("Invalid type of objects in the list");
+			}
 			break;
 		/* add more queue modes here */
 		default:
@@ -556,9 +808,42 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/** Compares two messages by {@link #compareByQueueMode} */
+	private final Comparator<Message> queueModeOrder =
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			return compareByQueueMode(m1, m2);
+		}
+	};
+
+	/** Compares two tuples by {@link #compareByQueueMode} */
+	private final Comparator<Tuple<Message, Connection>> tupleQueueModeOrder =
+		new Comparator<Tuple<Message, Connection>>() {
+		public int compare(Tuple<Message, Connection> t1,
+				Tuple<Message, Connection> t2) {
+			return compareByQueueMode(t1.getKey(), t2.getKey());
+		}
+	};
+
+	/**
+	 * Compares two messages by their receiving time
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1 if the first message was received first, 1 if the second
+	 * message was received first, or 0 if they were received at the same time
+	 */
+	private static int compareByReceiveTime(Message m1, Message m2) {
+		double diff = m1.getReceiveTime() - m2.getReceiveTime();
+		if (diff == 0) {
+			return 0;
+		}
+		return (diff < 0 ? -1 : 1);
+	}
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
-	 * queue mode
+	 * queue mode. The messages don't need to be in the buffer of this
+	 * router (see {@link MessageBuffer#compareSendOrder(Message, Message)}).
 	 * @param m1 The first message
 	 * @param m2 The second message
 	 * @return -1 if the first message should come first, 1 if the second
@@ -570,11 +855,9 @@ public abstract class MessageRouter {
 			/* return randomly (enough) but consistently -1, 0 or 1 */
 			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1;
 		case Q_MODE_FIFO:
-			double diff = m1.getReceiveTime() - m2.getReceiveTime();
-			if (diff == 0) {
-				return 0;
-			}
-			return (diff < 0 ? -1 : 1);
+			return compareByReceiveTime(m1, m2);
+		case Q_MODE_RANDOM_KEY:
+			return this.messages.compareSendOrder(m1, m2);
 		/* add more queue modes here */
 		default:
 			throw new SimError("Unknown queue mode " + sendQueueMode);
@@ -582,14 +865,17 @@ public abstract class MessageRouter {
 	}
 
 	/**
-	 * Returns routing information about this router.
+	 * Returns routing information about this router. The delivered
+	 * messages are listed by their IDs if the message ID registry can list
+	 * them (see {@link #REGISTRY_S}); the registry doesn't keep the
+	 * messages, so their paths are not shown.
 	 * @return The routing information.
 	 */
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo ri = new RoutingInfo(this);
-		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() +
+		RoutingInfo incoming = new RoutingInfo(this.nrofIncomingMessages +
 				" incoming message(s)");
-		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
+		RoutingInfo delivered = new RoutingInfo(this.nrofDeliveredMessages +
 				" delivered message(s)");
 
 		RoutingInfo cons = new RoutingInfo(host.getConnections().size() +
@@ -599,12 +885,18 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 
-		for (Message m : this.incomingMessages.values()) {
-			incoming.addMoreInfo(new RoutingInfo(m));
+		for (int idIndex : this.incomingMessages.keys()) {
+			for (Tuple<Message, DTNHost> t : this.incomingMessages.get(idIndex)) {
+				incoming.addMoreInfo(new RoutingInfo(t.getKey()));
+			}
 		}
 
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
+		/* the registry keeps only the IDs, not the messages and paths */
+		int[] deliveredIds = this.deliveredMessages.getIdIndexes();
+		if (deliveredIds != null) {
+			for (int idIndex : deliveredIds) {
+				delivered.addMoreInfo(new RoutingInfo(Message.getId(idIndex)));
+			}
 		}
 
 		for (Connection c : host.getConnections()) {
@@ -79,7 +79,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	public boolean createNewMessage(Message msg) {
 		makeRoomForNewMessage(msg.getSize());
 
-		msg.setTtl(this.msgTtl);
+		setTtl(msg, this.msgTtl);
 		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
 		addToMessages(msg, true);
 		return true;
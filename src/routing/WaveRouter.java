@@ -4,11 +4,10 @@
  */
 package routing;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
+import routing.util.EvictionPolicy;
 import routing.util.RoutingInfo;
+import util.IntHashMap;
+import util.Tuple;
 
 import core.Connection;
 import core.DTNHost;
@@ -34,10 +33,11 @@ public class WaveRouter extends ActiveRouter {
 	public static final String CUSTODY_S = "custodyFraction";
 	private double immunityTime;
 	private double custodyFraction;
-	/** map of recently received messages and their receive times */
-	private Map<String, Double> recentMessages;
-	/** IDs of the messages this host has custody for */
-	private Map<String, Double> custodyMessages;
+	/** map of recently received messages (ID indexes) and their IDs and
+	 * receive times */
+	private IntHashMap<Tuple<String, Double>> recentMessages;
+	/** ID indexes of the messages this host has custody for */
+	private IntHashMap<Double> custodyMessages;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -56,22 +56,22 @@ public class WaveRouter extends ActiveRouter {
 	 */
 	protected WaveRouter(WaveRouter r) {
 		super(r);
-		recentMessages = new HashMap<String, Double>();
+		recentMessages = new IntHashMap<Tuple<String, Double>>();
 		this.immunityTime = r.immunityTime;
 		this.custodyFraction = r.custodyFraction;
-		this.custodyMessages = new HashMap<String, Double>();
+		this.custodyMessages = new IntHashMap<Double>();
 	}
 
 	@Override
 	protected int checkReceiving(Message m, DTNHost from) {
-		Double lastTime = this.recentMessages.get(m.getId());
+		Tuple<String, Double> recent = this.recentMessages.get(m.getIdIndex());
 
-		if (lastTime != null) {
-			if (lastTime + this.immunityTime > SimClock.getTime()) {
+		if (recent != null) {
+			if (recent.getValue() + this.immunityTime > SimClock.getTime()) {
 				return DENIED_POLICY; /* still immune to the message */
 			} else {
 				/* immunity has passed; remove from recent */
-				this.recentMessages.remove(m.getId());
+				this.recentMessages.remove(m.getIdIndex());
 			}
 		}
 
@@ -83,35 +83,25 @@ public class WaveRouter extends ActiveRouter {
 	 * Returns the oldest message that has been already sent forward
 	 */
 	@Override
-	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-
-		for (Message m : messages) {
-			Double custodyStartTime = this.custodyMessages.get(m.getId());
-			if (custodyStartTime != null) {
-				if (SimClock.getTime() >
-					custodyStartTime + immunityTime * custodyFraction) {
-					this.custodyMessages.remove(m.getId()); /* time passed */
-				} else {
-					continue; /* skip messages that still have custody */
+	protected Message getNextMessageToRemove(
+			final boolean excludeMsgBeingSent) {
+		return getEvictionPolicy().getNextMessageToRemove(getMessageBuffer(),
+				new EvictionPolicy.RemovableFilter() {
+			public boolean isRemovable(Message m) {
+				Double custodyStartTime = custodyMessages.get(m.getIdIndex());
+				if (custodyStartTime != null) {
+					if (SimClock.getTime() >
+						custodyStartTime + immunityTime * custodyFraction) {
+						custodyMessages.remove(m.getIdIndex()); /* time passed */
+					} else {
+						return false; /* still has custody */
+					}
 				}
-			}
-
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; /* skip the message(s) that router is sending */
-			}
 
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+				/* skip the message(s) that router is sending */
+				return !(excludeMsgBeingSent && isSending(m.getId()));
 			}
-		}
-
-		return oldest;
+		});
 	}
 
 	@Override
@@ -133,15 +123,16 @@ public class WaveRouter extends ActiveRouter {
 	public Message messageTransferred(String id, DTNHost from) {
 		Message m = super.messageTransferred(id, from);
 		/* store received message IDs for immunity */
-		this.recentMessages.put(m.getId(), new Double(SimClock.getTime()));
-		this.custodyMessages.put(id, SimClock.getTime());
+		this.recentMessages.put(m.getIdIndex(), new Tuple<String, Double>(
+				m.getId(), SimClock.getTime()));
+		this.custodyMessages.put(m.getIdIndex(), SimClock.getTime());
 		return m;
 	}
 
 	@Override
 	protected void transferDone(Connection con) {
 		/* remove from custody messages (if it was there) */
-		this.custodyMessages.remove(con.getMessage().getId());
+		this.custodyMessages.remove(con.getMessage().getIdIndex());
 	}
 
 	@Override
@@ -150,10 +141,11 @@ public class WaveRouter extends ActiveRouter {
 		RoutingInfo immunity = new RoutingInfo("Immune to " +
 				this.recentMessages.size() + " messages");
 
-		for (String id : recentMessages.keySet()) {
-			RoutingInfo m = new RoutingInfo(id + " until " +
-					String.format("%.2f",
-							recentMessages.get(id) + this.immunityTime));
+		for (int idIndex : recentMessages.keys()) {
+			Tuple<String, Double> recent = recentMessages.get(idIndex);
+			RoutingInfo m = new RoutingInfo(recent.getKey() +
+					" until " + String.format("%.2f",
+							recent.getValue() + this.immunityTime));
 			immunity.addMoreInfo(m);
 		}
 		ri.addMoreInfo(immunity);
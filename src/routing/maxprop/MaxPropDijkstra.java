@@ -4,35 +4,45 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
+import util.IndexedHeap;
+
 /**
- * Dijkstra's shortest path implementation for MaxProp Router module.
+ * <P>Dijkstra's shortest path implementation for MaxProp Router module.</P>
+ *
+ * <P>The searches work on int node indexes with preallocated distance arrays
+ * and an indexed binary heap that are reused between searches. A search is
+ * only continued as far as needed for settling the requested node and it
+ * is kept until the probabilities change, so later requests from the same
+ * source continue from where the previous one stopped. The costs are not
+ * checked against the probabilities: the user must call
+ * {@link #invalidate()} whenever the mapping or any of its probability sets
+ * changes (the MaxProp routers do it when a connection comes up).</P>
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial capacity of the node arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
+	/** The probability sets by node index (loaded from the mapping) */
+	private MeetingProbabilitySet[] graph;
+	/** True if the probabilities have changed since the graph was loaded */
+	private boolean graphChanged;
+	/** Searches of the current graph by their source node */
+	private Map<Integer, Search> searches;
+	/** Searches that can be reused */
+	private List<Search> freeSearches;
+	/** The search that was used last */
+	private Search lastSearch;
 
 	/**
 	 * Constructor.
@@ -41,184 +51,217 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.graph = new MeetingProbabilitySet[0];
+		this.graphChanged = true;
+		this.searches = new HashMap<Integer, Search>();
+		this.freeSearches = new ArrayList<Search>();
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Tells that the probability mapping (or some of its probability sets)
+	 * has changed. The costs are calculated again after this.
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+	public void invalidate() {
+		this.graphChanged = true;
+	}
+
+	/**
+	 * Returns the cost from a node to another node. The cost to a node is the
+	 * sum of complements of probabilities that all the links come up as the
+	 * next contact of the nodes.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost or Double.MAX_VALUE if there is no path to the
+	 * destination node
+	 */
+	public double getCost(int from, int to) {
+		if (graphChanged) {
+			loadGraph();
+		}
+
+		Search search = this.lastSearch;
+		if (search == null || search.source != from) {
+			search = searches.get(from);
+			if (search == null) {
+				search = freeSearches.isEmpty() ? new Search() :
+					freeSearches.remove(freeSearches.size() - 1);
+				search.start(from);
+				searches.put(from, search);
+			}
+			this.lastSearch = search;
+		}
+
+		return search.getCost(to);
 	}
 
 	/**
 	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes.
+	 * come up as the next contact of the nodes. Like
+	 * {@link #getCost(int, int)}, this uses the cached searches, so
+	 * {@link #invalidate()} must be called first if the probabilities have
+	 * changed.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-
-		initWith(from);
-		Integer node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			}
 
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+		for (Integer node : to) {
+			double cost = getCost(from, node);
+			if (cost != INFINITY) {
+				distMap.put(node, cost);
+			}
 		}
 
 		return distMap;
 	}
 
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Loads the probability sets from the mapping to the graph array and
+	 * frees the searches of the old graph
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
+	private void loadGraph() {
+		int maxIndex = -1;
+		for (Integer node : probs.keySet()) {
+			maxIndex = Math.max(maxIndex, node);
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-
-			if (distancesFromStart.get(n) > nDist) {
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
-			}
+		if (graph.length <= maxIndex) {
+			graph = new MeetingProbabilitySet[maxIndex + 1];
+		}
+		else {
+			Arrays.fill(graph, null);
+		}
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			graph[e.getKey()] = e.getValue();
 		}
-	}
 
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+		freeSearches.addAll(searches.values());
+		searches.clear();
+		this.lastSearch = null;
+		this.graphChanged = false;
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Shortest path search from one source node. The search state is kept
+	 * in arrays indexed by node index. Nodes whose stamp is not the stamp of
+	 * the current search have not been reached (so the arrays don't have to
+	 * be cleared between searches).
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
-	}
+	private class Search {
+		/** The source node of the search */
+		private int source;
+		/** Distances of the nodes from the source node */
+		private double[] distances;
+		/** Stamps of the searches that have reached the nodes */
+		private int[] stamps;
+		/** Stamp of the current search */
+		private int stamp;
+		/** Reached nodes whose shortest path is not known yet */
+		private IndexedHeap unvisited;
 
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
+		private Search() {
+			this.distances = new double[INITIAL_CAPACITY];
+			this.stamps = new int[INITIAL_CAPACITY];
+			this.unvisited = new IndexedHeap(INITIAL_CAPACITY);
+			this.stamp = 0;
+		}
 
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Starts a new search
+		 * @param source The source node of the search
 		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+		private void start(int source) {
+			if (stamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				stamp = 0;
 			}
+			stamp++;
+			this.source = source;
+			unvisited.clear();
+			ensureCapacity(Math.max(source, graph.length - 1));
+			setDistance(source, 0);
 		}
-	}
-
-	/**
-	 * Simple Map implementation for storing distances.
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
 
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Continues the search until the given node is settled or all the
+		 * reachable nodes are settled
+		 * @param to The node whose cost is requested
+		 * @return The cost of the node or {@link MaxPropDijkstra#INFINITY} if
+		 * the node is not reachable
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
+		private double getCost(int to) {
+			// always take the node with shortest distance
+			while (!isSettled(to) && !unvisited.isEmpty()) {
+				relax(unvisited.poll());
+			}
+
+			return isSettled(to) ? distances[to] : INFINITY;
 		}
 
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
 		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		private void relax(int node) {
+			MeetingProbabilitySet neighbors = node < graph.length ?
+					graph[node] : null;
+
+			if (neighbors == null) {
+				return; // node's neighbors are not known
 			}
-			else {
-				return INFINITY;
+
+			double nodeDist = distances[node];
+			for (int i=0, size=neighbors.size(); i<size; i++) {
+				int n = neighbors.getNodeAt(i);
+				/* n node's distance from path's source node; the distance
+				 * between the nodes is the complement of the probability that
+				 * the next node "node" meets is n */
+				double nDist = nodeDist + (1 - neighbors.getProbAt(i));
+
+				ensureCapacity(n);
+				if (stamps[n] != stamp ||
+						(unvisited.contains(n) && distances[n] > nDist)) {
+					// not reached or stored distance > found dist -> update
+					setDistance(n, nDist);
+				}
 			}
 		}
 
 		/**
-		 * Puts a new distance value for a map node
+		 * Sets the distance of a node that has not been visited yet
 		 * @param node The node
-		 * @param distance Distance to that node
+		 * @param distance Distance of the node from the source node
 		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		private void setDistance(int node, double distance) {
+			stamps[node] = stamp;
+			distances[node] = distance;
+			unvisited.put(node, distance);
 		}
 
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Returns true if the shortest path to the node is known
+		 * @param node The node
+		 * @return True if the node is settled
+		 */
+		private boolean isSettled(int node) {
+			return node < stamps.length && stamps[node] == stamp &&
+				!unvisited.contains(node);
+		}
+
+		/**
+		 * Makes sure that the node arrays have room for a node index
+		 * @param node The node index
 		 */
-		public String toString() {
-			return map.toString();
+		private void ensureCapacity(int node) {
+			if (node < stamps.length) {
+				return;
+			}
+			int capacity = Math.max(node + 1, stamps.length * 2);
+			distances = Arrays.copyOf(distances, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
 		}
 	}
 }
@@ -4,22 +4,44 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import core.SimClock;
+import core.SimError;
 
 import static core.Constants.DEBUG;
 
 /**
- * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * <P>Class for storing and manipulating the meeting probabilities for the
+ * MaxProp router module.</P>
+ *
+ * <P>The probabilities are stored in primitive arrays sorted by the node
+ * indexes. The arrays are copied on write: replicas and snapshots (see
+ * {@link #snapshot()}) share the arrays with the set they were created from
+ * until either one of them is modified.</P>
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** initial capacity of the arrays */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** indexes of the nodes that have a probability, in ascending order */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * in the same order as the nodes */
+	private double[] probs;
+	/** number of probabilities in the set */
+	private int size;
+	/** true if the arrays are shared with another set (copy before write) */
+	private boolean shared;
+	/** true if this set is an immutable snapshot */
+	private boolean immutable;
+	/** snapshot of the current probabilities or null if not created */
+	private MeetingProbabilitySet snapshot;
+
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
@@ -34,12 +56,12 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
+		this.nodes = new int[INITIAL_CAPACITY];
+		this.probs = new double[INITIAL_CAPACITY];
+		this.size = 0;
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
 	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
 		this.lastUpdateTime = 0;
@@ -62,7 +84,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 
@@ -74,39 +96,40 @@ public class MeetingProbabilitySet {
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
-	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+	public void updateMeetingProbFor(int index) {
+        int smallestNode = -1;
         double smallestValue = Double.MAX_VALUE;
 
+		prepareWrite();
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		for (int i=0; i<size; i++) {
+			probs[i] = probs[i] / (1+alpha);
+            if (probs[i] < smallestValue) {
+                smallestNode = nodes[i];
+                smallestValue = probs[i];
             }
 
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+            if (DEBUG) core.Debug.p("Probsize: " + size + " dropping " +
+					remove(smallestNode));
         }
 	}
 
-	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+	public void updateMeetingProbFor(int index, double iet)	{
+		put(index, iet);
 	}
 
 	/**
@@ -114,9 +137,10 @@ public class MeetingProbabilitySet {
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
-	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+	public double getProbFor(int index) {
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +149,45 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of node indexes that have a probability in this set
+	 * @return the number of probabilities
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of a probability. Together with
+	 * {@link #getProbAt(int)} this can be used for going through the
+	 * probabilities (in ascending node index order) without boxing.
+	 * @param i Index of the probability (0...size()-1)
+	 * @return The node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns a probability value by its index in the set
+	 * @param i Index of the probability (0...size()-1)
+	 * @return The probability value
+	 * @see #getNodeAt(int)
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i];
+	}
+
+	/**
+	 * Returns a copy of the probabilities of this probability set as a
+	 * node index to probability mapping
+	 * @return a new map of the probabilities of this probability set
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i=0; i<size; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
 	}
 
 	/**
@@ -148,20 +206,109 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the
+	 * probability arrays with this set until either one is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
+		shareWith(replica);
+		return replica;
+	}
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+	/**
+	 * Returns an immutable snapshot of the current probabilities. The same
+	 * snapshot is returned until this set is modified, so snapshots can be
+	 * shared by reference (e.g., between routers) and only one copy of each
+	 * version of the probabilities exists. A snapshot of a snapshot is the
+	 * snapshot itself.
+	 * @return an immutable snapshot of the probability set
+	 */
+	public MeetingProbabilitySet snapshot() {
+		if (this.immutable) {
+			return this;
+		}
+		if (this.snapshot == null) {
+			this.snapshot = replicate();
+			this.snapshot.immutable = true;
 		}
+		return this.snapshot;
+	}
 
-		replica.lastUpdateTime = this.lastUpdateTime;
-		return replica;
+	/**
+	 * Makes a set to share the probabilities of this set
+	 * @param other The set that gets the probabilities
+	 */
+	private void shareWith(MeetingProbabilitySet other) {
+		other.nodes = this.nodes;
+		other.probs = this.probs;
+		other.size = this.size;
+		other.lastUpdateTime = this.lastUpdateTime;
+		other.shared = true;
+		this.shared = true;
+	}
+
+	/**
+	 * Prepares the set for modification: copies the shared arrays and
+	 * forgets the snapshot of the old values
+	 * @throws SimError if this set is an immutable snapshot
+	 */
+	private void prepareWrite() {
+		if (this.immutable) {
+			throw new SimError("Can't modify a meeting probability snapshot");
+		}
+		if (this.shared) {
+			this.nodes = this.nodes.clone();
+			this.probs = this.probs.clone();
+			this.shared = false;
+		}
+		this.snapshot = null;
+	}
+
+	/**
+	 * Sets the probability of a node index
+	 * @param index The node index
+	 * @param value The probability
+	 */
+	private void put(int index, double value) {
+		prepareWrite();
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i >= 0) {
+			probs[i] = value;
+			return;
+		}
+
+		i = -i - 1; // insertion point
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			probs = Arrays.copyOf(probs, size * 2);
+		}
+		System.arraycopy(nodes, i, nodes, i + 1, size - i);
+		System.arraycopy(probs, i, probs, i + 1, size - i);
+		nodes[i] = index;
+		probs[i] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the probability of a node index
+	 * @param index The node index
+	 * @return The removed probability or null if there was no probability
+	 * for the index
+	 */
+	private Double remove(int index) {
+		prepareWrite();
+		int i = Arrays.binarySearch(nodes, 0, size, index);
+		if (i < 0) {
+			return null;
+		}
+
+		double value = probs[i];
+		System.arraycopy(nodes, i + 1, nodes, i, size - i - 1);
+		System.arraycopy(probs, i + 1, probs, i, size - i - 1);
+		size--;
+		return value;
 	}
 
 	/**
@@ -170,6 +317,6 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.BitSet;
+
+
+/**
+ * Exact message ID registry that stores one bit per message ID index.
+ * The registry never forgets an ID. It doesn't keep the messages, but its
+ * size grows with the number of message IDs of the run (one bit each); use
+ * {@link TimeWindowIdRegistry} if the memory must stay flat over simulated
+ * time.
+ */
+public class BitSetIdRegistry implements MessageIdRegistry {
+	private BitSet ids;
+
+	/**
+	 * Creates a new, empty, registry
+	 */
+	public BitSetIdRegistry() {
+		this.ids = new BitSet();
+	}
+
+	public void add(int idIndex) {
+		ids.set(idIndex);
+	}
+
+	public boolean contains(int idIndex) {
+		return ids.get(idIndex);
+	}
+
+	/**
+	 * Returns the ID indexes in the registry in ascending order
+	 * @return The ID indexes
+	 */
+	public int[] getIdIndexes() {
+		int[] indexes = new int[ids.cardinality()];
+		int n = 0;
+		for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+			indexes[n++] = i;
+		}
+		return indexes;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+
+/**
+ * Message ID registry that uses a Bloom filter of fixed size. The registry
+ * never forgets an ID and its size doesn't grow, but it may claim to
+ * contain IDs that were never added. The filter is sized so that the
+ * probability of such false positives stays below the given rate until
+ * the expected number of IDs has been added.
+ */
+public class BloomFilterIdRegistry implements MessageIdRegistry {
+	/** the bits of the filter */
+	private long[] bits;
+	/** number of bits in the filter */
+	private int nrofBits;
+	/** number of bits set for every ID */
+	private int nrofHashes;
+
+	/**
+	 * Creates a new, empty, registry
+	 * @param expectedCount Expected number of IDs added to the registry
+	 * @param falsePositiveRate Maximum false positive rate (when no more
+	 * than the expected number of IDs have been added)
+	 */
+	public BloomFilterIdRegistry(int expectedCount,
+			double falsePositiveRate) {
+		double ln2 = Math.log(2);
+		long m = (long)Math.ceil(-expectedCount *
+				Math.log(falsePositiveRate) / (ln2 * ln2));
+		this.nrofBits = (int)Math.max(64, Math.min(m, Integer.MAX_VALUE));
+		this.nrofHashes = (int)Math.max(1,
+				Math.round((double)nrofBits / expectedCount * ln2));
+		this.bits = new long[(nrofBits + 63) / 64];
+	}
+
+	public void add(int idIndex) {
+		long hash = hash(idIndex);
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32) | 1;
+		for (int i=0; i<nrofHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nrofBits;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	public boolean contains(int idIndex) {
+		long hash = hash(idIndex);
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32) | 1;
+		for (int i=0; i<nrofHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % nrofBits;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns null since a Bloom filter can't list the IDs it contains
+	 * @return null
+	 */
+	public int[] getIdIndexes() {
+		return null;
+	}
+
+	/**
+	 * Returns the number of bits in the filter
+	 * @return the number of bits in the filter
+	 */
+	public int getNrofBits() {
+		return this.nrofBits;
+	}
+
+	/**
+	 * Returns a 64-bit hash of an ID index. The two halves of the hash
+	 * are used to compute the bit positions (double hashing).
+	 * @param idIndex The ID index
+	 * @return The hash
+	 */
+	private static long hash(int idIndex) {
+		long h = (idIndex + 1) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		return h ^ (h >>> 32);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+
+/**
+ * Entry of a message in a {@link MessageBuffer}. The values the indexes of
+ * the buffer are ordered by are copied when the message is added, so that
+ * the indexes stay consistent even if the message changes. The entry has
+ * its own links for each linked index it can be in.
+ */
+class BufferEntry {
+	/** link index of the hash table chains (see {@link HashOrderTable}) */
+	static final int TABLE_LINK = 0;
+	/** link index of the receive time list */
+	static final int RECEIVE_LINK = 1;
+	/** link index of the destination lists */
+	static final int DESTINATION_LINK = 2;
+	/** number of linked indexes an entry can be in */
+	static final int NROF_LINKS = 3;
+
+	/** the buffered message */
+	final Message message;
+	/** hash of the message ID, spread like java.util.HashMap spreads it */
+	final int hash;
+	/** sequence number of the ID in the buffer */
+	final long number;
+	final double receiveTime;
+	final int size;
+	/** expiry time the expiry heap has the entry at */
+	double expiryTime;
+	/** key of the entry in the random key queue */
+	long randomKey;
+	/** position in the expiry heap */
+	int heapIndex;
+	/** previous and next entries of each linked index */
+	final BufferEntry[] prev;
+	final BufferEntry[] next;
+	/** true after the entry has been removed from the buffer */
+	boolean removed;
+
+	/**
+	 * Creates an entry for a message
+	 * @param message The message
+	 * @param number Sequence number of the message ID in the buffer
+	 */
+	BufferEntry(Message message, long number) {
+		this.message = message;
+		this.hash = spread(message.getId().hashCode());
+		this.number = number;
+		this.receiveTime = message.getReceiveTime();
+		this.size = message.getSize();
+		this.expiryTime = message.getExpiryTime();
+		this.heapIndex = ExpiryHeap.NOT_IN_HEAP;
+		this.prev = new BufferEntry[NROF_LINKS];
+		this.next = new BufferEntry[NROF_LINKS];
+		this.removed = false;
+	}
+
+	/**
+	 * Spreads the higher bits of a hash code to the lower bits like
+	 * java.util.HashMap does
+	 * @param h The hash code
+	 * @return The spread hash
+	 */
+	static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Compares entries by their sequence numbers
+	 * @param e1 The first entry
+	 * @param e2 The second entry
+	 * @return -1, 0 or 1 if the ID of e1 was added before, at the same time
+	 * or after the ID of e2
+	 */
+	static int compareNumbers(BufferEntry e1, BufferEntry e2) {
+		if (e1.number != e2.number) {
+			return e1.number < e2.number ? -1 : 1;
+		}
+		return 0;
+	}
+}
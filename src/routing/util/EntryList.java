@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import core.Message;
+
+/**
+ * Doubly linked list of buffer entries in a given order. This is an
+ * unmodifiable message view for the users of a {@link MessageBuffer}. The
+ * list uses the links of the given index in the entries, so removing an
+ * entry takes constant time. New entries are added by walking back from
+ * the tail, so entries that go after all the other entries (e.g. new
+ * messages in receive time order) are appended in constant time. A removed
+ * entry keeps its links, so an iteration whose last returned entry was
+ * removed continues from the entry that followed it.
+ */
+class EntryList extends AbstractCollection<Message> {
+	private int link;
+	private Comparator<BufferEntry> order;
+	private BufferEntry head;
+	private BufferEntry tail;
+	private int size;
+
+	/**
+	 * Creates an empty list
+	 * @param link The link index of the list in the entries
+	 * @param order The order of the entries
+	 */
+	EntryList(int link, Comparator<BufferEntry> order) {
+		this.link = link;
+		this.order = order;
+		this.head = null;
+		this.tail = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an entry to its place in the list
+	 * @param e The entry to add
+	 */
+	void add(BufferEntry e) {
+		BufferEntry before = tail;
+		while (before != null && order.compare(before, e) > 0) {
+			before = before.prev[link];
+		}
+		addAfter(before, e);
+	}
+
+	/**
+	 * Adds an entry right before another entry of the list
+	 * @param next The entry that is in the list
+	 * @param e The entry to add
+	 */
+	void addBefore(BufferEntry next, BufferEntry e) {
+		addAfter(next.prev[link], e);
+	}
+
+	/**
+	 * Removes an entry from the list. The links of the removed entry are
+	 * left as they were.
+	 * @param e The entry to remove
+	 */
+	void remove(BufferEntry e) {
+		BufferEntry before = e.prev[link];
+		BufferEntry after = e.next[link];
+		if (before == null) {
+			head = after;
+		}
+		else {
+			before.next[link] = after;
+		}
+		if (after == null) {
+			tail = before;
+		}
+		else {
+			after.prev[link] = before;
+		}
+		size--;
+	}
+
+	/**
+	 * Sorts the list again after the order of the entries has changed. The
+	 * sort is stable and fast for lists that are nearly in order.
+	 */
+	void sort() {
+		ArrayList<BufferEntry> entries = new ArrayList<BufferEntry>(size);
+		for (BufferEntry e = head; e != null; e = e.next[link]) {
+			entries.add(e);
+		}
+		Collections.sort(entries, order);
+
+		head = null;
+		tail = null;
+		size = 0;
+		for (BufferEntry e : entries) {
+			addAfter(tail, e);
+		}
+	}
+
+	/**
+	 * Adds an entry after another entry
+	 * @param before The entry to add after or null to add to the head
+	 * @param e The entry to add
+	 */
+	private void addAfter(BufferEntry before, BufferEntry e) {
+		BufferEntry after = (before == null ? head : before.next[link]);
+		e.prev[link] = before;
+		e.next[link] = after;
+		if (before == null) {
+			head = e;
+		}
+		else {
+			before.next[link] = e;
+		}
+		if (after == null) {
+			tail = e;
+		}
+		else {
+			after.prev[link] = e;
+		}
+		size++;
+	}
+
+	@Override
+	public Iterator<Message> iterator() {
+		return new Iterator<Message>() {
+			private BufferEntry last = null;
+
+			public boolean hasNext() {
+				return following() != null;
+			}
+
+			public Message next() {
+				BufferEntry e = following();
+				if (e == null) {
+					throw new NoSuchElementException();
+				}
+				last = e;
+				return e.message;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			/**
+			 * Returns the entry after the last returned entry. Removed
+			 * entries are skipped by following their links.
+			 */
+			private BufferEntry following() {
+				BufferEntry e = (last == null ? head : last.next[link]);
+				while (e != null && e.removed) {
+					e = e.next[link];
+				}
+				return e;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+
+/**
+ * Policy for choosing the message that a router drops from its buffer when
+ * there is not enough room for a new message.
+ */
+public interface EvictionPolicy {
+
+	/**
+	 * Returns the message that should be removed next from the buffer
+	 * @param buffer The message buffer
+	 * @param filter Filter that tells which messages can be removed, or
+	 * null if any message can be removed
+	 * @return The message to remove or null if no message could be removed
+	 */
+	public Message getNextMessageToRemove(MessageBuffer buffer,
+			RemovableFilter filter);
+
+	/**
+	 * Filter for the messages that can be removed from a buffer
+	 */
+	public interface RemovableFilter {
+		/**
+		 * Returns true if the message can be removed from the buffer
+		 * @param m The message
+		 * @return True if the message can be removed, false if not
+		 */
+		public boolean isRemovable(Message m);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Binary min-heap of buffer entries by their expiry times. The entries know
+ * their positions in the heap, so any entry can be removed in logarithmic
+ * time.
+ */
+class ExpiryHeap {
+	/** Heap index of entries that are not in the heap */
+	static final int NOT_IN_HEAP = -1;
+
+	/** Orders entries by expiry time and then sequence number */
+	static final Comparator<BufferEntry> EXPIRY_TIME_ORDER =
+		new Comparator<BufferEntry>() {
+		public int compare(BufferEntry e1, BufferEntry e2) {
+			if (e1.expiryTime != e2.expiryTime) {
+				return e1.expiryTime < e2.expiryTime ? -1 : 1;
+			}
+			return BufferEntry.compareNumbers(e1, e2);
+		}
+	};
+
+	private ArrayList<BufferEntry> heap;
+
+	ExpiryHeap() {
+		this.heap = new ArrayList<BufferEntry>();
+	}
+
+	boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	/**
+	 * Returns the entry that expires first
+	 * @return The entry that expires first
+	 */
+	BufferEntry peek() {
+		return heap.get(0);
+	}
+
+	void add(BufferEntry e) {
+		heap.add(e);
+		e.heapIndex = heap.size() - 1;
+		siftUp(e.heapIndex);
+	}
+
+	void remove(BufferEntry e) {
+		int index = e.heapIndex;
+		BufferEntry last = heap.remove(heap.size() - 1);
+		e.heapIndex = NOT_IN_HEAP;
+		if (last != e) {
+			set(index, last);
+			siftDown(index);
+			siftUp(last.heapIndex);
+		}
+	}
+
+	/**
+	 * Returns the entries whose expiry time is before the given time.
+	 * Children expire after their parents, so only the subtrees of
+	 * expired entries are visited.
+	 * @param time The time
+	 * @return The entries in heap order
+	 */
+	List<BufferEntry> getEntriesBefore(double time) {
+		List<BufferEntry> entries = new ArrayList<BufferEntry>();
+		if (heap.isEmpty() || heap.get(0).expiryTime >= time) {
+			return entries;
+		}
+
+		entries.add(heap.get(0));
+		for (int i=0; i<entries.size(); i++) {
+			int child = entries.get(i).heapIndex * 2 + 1;
+			for (int c = child; c < child + 2 && c < heap.size(); c++) {
+				if (heap.get(c).expiryTime < time) {
+					entries.add(heap.get(c));
+				}
+			}
+		}
+		return entries;
+	}
+
+	private void siftUp(int index) {
+		BufferEntry e = heap.get(index);
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (EXPIRY_TIME_ORDER.compare(heap.get(parent), e) <= 0) {
+				break;
+			}
+			set(index, heap.get(parent));
+			index = parent;
+		}
+		set(index, e);
+	}
+
+	private void siftDown(int index) {
+		BufferEntry e = heap.get(index);
+		int size = heap.size();
+		while (index * 2 + 1 < size) {
+			int child = index * 2 + 1;
+			if (child + 1 < size && EXPIRY_TIME_ORDER.compare(
+					heap.get(child + 1), heap.get(child)) < 0) {
+				child++;
+			}
+			if (EXPIRY_TIME_ORDER.compare(e, heap.get(child)) <= 0) {
+				break;
+			}
+			set(index, heap.get(child));
+			index = child;
+		}
+		set(index, e);
+	}
+
+	private void set(int index, BufferEntry e) {
+		heap.set(index, e);
+		e.heapIndex = index;
+	}
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+
+/**
+ * Eviction policy that removes the oldest (by receive time) message first.
+ * Uses the receive time index of the buffer, so only the messages older than
+ * the returned one (and that can't be removed) are checked.
+ */
+public class FifoEvictionPolicy implements EvictionPolicy {
+
+	public Message getNextMessageToRemove(MessageBuffer buffer,
+			RemovableFilter filter) {
+		for (Message m : buffer.getReceiveOrder()) {
+			if (filter == null || filter.isRemovable(m)) {
+				return m;
+			}
+		}
+
+		return null;
+	}
+}
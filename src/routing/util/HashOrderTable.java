@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import core.Message;
+
+/**
+ * Chained hash table of buffer entries by the hash codes of their message
+ * IDs. It is the iteration order of a {@link MessageBuffer}. The table
+ * starts with 16 buckets and doubles when it is more than 3/4 full, new
+ * entries are appended to the chains and a growing table keeps the order
+ * of the entries that stay in the same chain. That is how a
+ * java.util.HashMap of the IDs is laid out, so the buffer iterates its
+ * messages in the same order as the hash map based buffer of earlier
+ * versions did and simulation results don't change.
+ * Adding and removing an entry take constant time. The table is an
+ * unmodifiable message view that can be iterated while entries are added
+ * or removed: the iteration continues from the entry that follows the
+ * last returned one in the current order.
+ */
+class HashOrderTable extends AbstractCollection<Message> {
+	/** initial number of buckets */
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int LINK = BufferEntry.TABLE_LINK;
+
+	private BufferEntry[] heads;
+	private BufferEntry[] tails;
+	private int size;
+
+	HashOrderTable() {
+		this.heads = new BufferEntry[INITIAL_CAPACITY];
+		this.tails = new BufferEntry[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an entry of a new ID to the end of its chain
+	 * @param e The entry to add
+	 * @return True if the table grew (and so the order of the entries
+	 * changed), false if not
+	 */
+	boolean add(BufferEntry e) {
+		append(e, bucketOf(e.hash));
+		size++;
+		if (size > heads.length / 4 * 3) {
+			grow();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds an entry to the place of another entry that it replaces. The
+	 * replaced entry must be removed after this.
+	 * @param old The entry to replace
+	 * @param e The replacing entry
+	 */
+	void addBefore(BufferEntry old, BufferEntry e) {
+		int bucket = bucketOf(old.hash);
+		BufferEntry before = old.prev[LINK];
+		e.prev[LINK] = before;
+		e.next[LINK] = old;
+		old.prev[LINK] = e;
+		if (before == null) {
+			heads[bucket] = e;
+		}
+		else {
+			before.next[LINK] = e;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes an entry from the table. The links of the removed entry are
+	 * left as they were.
+	 * @param e The entry to remove
+	 */
+	void remove(BufferEntry e) {
+		int bucket = bucketOf(e.hash);
+		BufferEntry before = e.prev[LINK];
+		BufferEntry after = e.next[LINK];
+		if (before == null) {
+			heads[bucket] = after;
+		}
+		else {
+			before.next[LINK] = after;
+		}
+		if (after == null) {
+			tails[bucket] = before;
+		}
+		else {
+			after.prev[LINK] = before;
+		}
+		size--;
+	}
+
+	/**
+	 * Compares two entries by their order in the table
+	 * @param e1 The first entry
+	 * @param e2 The second entry
+	 * @return -1, 0 or 1 if e1 is before, at the same place or after e2
+	 */
+	int compare(BufferEntry e1, BufferEntry e2) {
+		int cmp = compareBuckets(e1.hash, e2.hash);
+		return cmp != 0 ? cmp : BufferEntry.compareNumbers(e1, e2);
+	}
+
+	/**
+	 * Compares two hashes by the order of their buckets in the table
+	 * @param hash1 The first (spread) hash
+	 * @param hash2 The second (spread) hash
+	 * @return -1, 0 or 1 if the bucket of hash1 is before, the same or
+	 * after the bucket of hash2
+	 */
+	int compareBuckets(int hash1, int hash2) {
+		int bucket1 = bucketOf(hash1);
+		int bucket2 = bucketOf(hash2);
+		if (bucket1 != bucket2) {
+			return bucket1 < bucket2 ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of buckets in the table
+	 * @return the number of buckets
+	 */
+	int getCapacity() {
+		return heads.length;
+	}
+
+	private int bucketOf(int hash) {
+		return hash & (heads.length - 1);
+	}
+
+	private void append(BufferEntry e, int bucket) {
+		BufferEntry last = tails[bucket];
+		e.prev[LINK] = last;
+		e.next[LINK] = null;
+		if (last == null) {
+			heads[bucket] = e;
+		}
+		else {
+			last.next[LINK] = e;
+		}
+		tails[bucket] = e;
+	}
+
+	/**
+	 * Doubles the number of buckets. The entries of each chain are moved
+	 * in their order, so the chains stay in the order the IDs were added.
+	 */
+	private void grow() {
+		BufferEntry[] oldHeads = heads;
+		heads = new BufferEntry[oldHeads.length * 2];
+		tails = new BufferEntry[oldHeads.length * 2];
+		for (BufferEntry head : oldHeads) {
+			BufferEntry e = head;
+			while (e != null) {
+				BufferEntry next = e.next[LINK];
+				append(e, bucketOf(e.hash));
+				e = next;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first entry of the first non-empty bucket at or after
+	 * the given bucket
+	 * @param bucket The bucket to start from
+	 * @return The entry or null if the buckets are empty
+	 */
+	private BufferEntry firstFrom(int bucket) {
+		for (int i = bucket; i < heads.length; i++) {
+			if (heads[i] != null) {
+				return heads[i];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Iterator<Message> iterator() {
+		return new Iterator<Message>() {
+			private BufferEntry last = null;
+
+			public boolean hasNext() {
+				return following() != null;
+			}
+
+			public Message next() {
+				BufferEntry e = following();
+				if (e == null) {
+					throw new NoSuchElementException();
+				}
+				last = e;
+				return e.message;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			/**
+			 * Returns the entry after the last returned entry. If that was
+			 * removed, its chain is searched for the next ID.
+			 */
+			private BufferEntry following() {
+				if (last == null) {
+					return firstFrom(0);
+				}
+				int bucket = bucketOf(last.hash);
+				if (!last.removed) {
+					BufferEntry e = last.next[LINK];
+					return e != null ? e : firstFrom(bucket + 1);
+				}
+				for (BufferEntry e = heads[bucket]; e != null;
+						e = e.next[LINK]) {
+					if (e.number > last.number) {
+						return e;
+					}
+				}
+				return firstFrom(bucket + 1);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import core.DTNHost;
+import core.Message;
+import util.IntHashMap;
+
+/**
+ * <P>Message buffer of a router. Keeps the messages by their IDs, the total
+ * size of the buffered messages (so the occupancy of the buffer is known
+ * without going through the messages) and an index of the messages ordered
+ * by their receive times (see {@link #getReceiveOrder()}).</P>
+ *
+ * <P>The buffer can also keep a send queue where every message gets a
+ * random position when it is added to the buffer (see
+ * {@link #getSendQueue()} and {@link RandomKeyQueue}); without it the send
+ * queue is the receive time index. The messages for each destination host
+ * are indexed in the iteration order of {@link #getMessages()} (see
+ * {@link #getMessagesTo(DTNHost)}). The messages with a finite TTL are kept
+ * in a binary heap by their expiry times (see {@link ExpiryHeap}), so the
+ * expired messages are found without going through the buffer (see
+ * {@link #getExpiredMessages(double)}).</P>
+ *
+ * <P>The messages are looked up by their ID indexes (see
+ * {@link Message#getIdIndex()}) from a primitive int-keyed map; lookups by
+ * ID strings go through the index of the ID. {@link #getMessages()}
+ * iterates the messages in the order of a hash table of the IDs that is
+ * laid out like a java.util.HashMap (see {@link HashOrderTable}), so the
+ * routers see the messages in the same order as with the hash map based
+ * buffer of earlier versions. The other indexes use that order for ties.
+ * The receive time index and the destination indexes are linked lists
+ * through the entries (see {@link EntryList}), so a message is removed
+ * from them in constant time. All the views can be iterated while
+ * messages are added to or removed from the buffer: iteration continues
+ * from the entry that followed the last returned message.</P>
+ */
+public class MessageBuffer {
+	/** buffer entries by message ID indexes */
+	private IntHashMap<BufferEntry> entries;
+	/** entries in the iteration order */
+	private HashOrderTable table;
+	/** entries ordered by their receive times (and iteration order) */
+	private EntryList receiveOrder;
+	/** entries ordered by their random keys or null for FIFO send order */
+	private RandomKeyQueue randomOrder;
+	/** entries of each destination host in the iteration order */
+	private HashMap<DTNHost, EntryList> destinations;
+	/** entries with a finite TTL ordered by their expiry times */
+	private ExpiryHeap expiryOrder;
+	/** total size of the buffered messages (bytes) */
+	private long occupancy;
+	/** sequence number of the next new ID */
+	private long nextNumber;
+
+	/** Orders entries like {@link #getMessages()} iterates them */
+	private final Comparator<BufferEntry> iterationOrder =
+		new Comparator<BufferEntry>() {
+		public int compare(BufferEntry e1, BufferEntry e2) {
+			return table.compare(e1, e2);
+		}
+	};
+
+	/** Orders entries by receive time and then iteration order */
+	private final Comparator<BufferEntry> receiveTimeOrder =
+		new Comparator<BufferEntry>() {
+		public int compare(BufferEntry e1, BufferEntry e2) {
+			if (e1.receiveTime != e2.receiveTime) {
+				return e1.receiveTime < e2.receiveTime ? -1 : 1;
+			}
+			return table.compare(e1, e2);
+		}
+	};
+
+	/** order of the send queue */
+	private Comparator<BufferEntry> sendOrder;
+
+	/**
+	 * Creates a new, empty, message buffer whose send queue is in FIFO
+	 * (receive time) order
+	 */
+	public MessageBuffer() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new, empty, message buffer
+	 * @param rng Random number generator for the keys of the random send
+	 * queue or null if the send queue should be in FIFO (receive time) order
+	 */
+	public MessageBuffer(Random rng) {
+		this.entries = new IntHashMap<BufferEntry>();
+		this.table = new HashOrderTable();
+		this.receiveOrder = new EntryList(BufferEntry.RECEIVE_LINK,
+				receiveTimeOrder);
+		this.destinations = new HashMap<DTNHost, EntryList>();
+		this.expiryOrder = new ExpiryHeap();
+		this.occupancy = 0;
+		this.nextNumber = 0;
+
+		if (rng != null) {
+			this.randomOrder = new RandomKeyQueue(rng);
+			this.sendOrder = RandomKeyQueue.RANDOM_KEY_ORDER;
+		}
+		else {
+			this.sendOrder = receiveTimeOrder;
+		}
+	}
+
+	/**
+	 * Adds a message to the buffer. If the buffer already has a message with
+	 * the same ID, the old message is replaced.
+	 * @param m The message to add
+	 * @return The replaced message or null if no message was replaced
+	 */
+	public Message add(Message m) {
+		BufferEntry old = entries.get(m.getIdIndex());
+		/* a replacing message keeps the sequence number of the ID */
+		BufferEntry e = new BufferEntry(m,
+				old != null ? old.number : nextNumber++);
+		entries.put(m.getIdIndex(), e);
+
+		EntryList forDestination = destinations.get(m.getTo());
+		if (forDestination == null) {
+			forDestination = new EntryList(BufferEntry.DESTINATION_LINK,
+					iterationOrder);
+			destinations.put(m.getTo(), forDestination);
+		}
+		if (old != null) {
+			/* the replacing entry takes the place of the old one */
+			table.addBefore(old, e);
+			if (old.message.getTo() == m.getTo()) {
+				forDestination.addBefore(old, e);
+			}
+			else {
+				forDestination.add(e);
+			}
+			removeFromIndex(old);
+		}
+		else {
+			if (table.add(e)) {
+				/* the table grew and the iteration order changed */
+				receiveOrder.sort();
+				for (EntryList list : destinations.values()) {
+					list.sort();
+				}
+			}
+			forDestination.add(e);
+		}
+
+		receiveOrder.add(e);
+		if (randomOrder != null) {
+			randomOrder.add(e);
+		}
+		if (e.expiryTime != Double.MAX_VALUE) {
+			expiryOrder.add(e);
+		}
+		occupancy += e.size;
+
+		return old != null ? old.message : null;
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if there was no message with the ID
+	 */
+	public Message remove(String id) {
+		int idIndex = Message.getIdIndex(id);
+		return idIndex < 0 ? null : remove(idIndex);
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param idIndex Index of the ID of the message to remove
+	 * @return The removed message or null if there was no message with the ID
+	 */
+	public Message remove(int idIndex) {
+		BufferEntry e = entries.remove(idIndex);
+		if (e == null) {
+			return null;
+		}
+
+		removeFromIndex(e);
+		return e.message;
+	}
+
+	/**
+	 * Returns a message by its ID
+	 * @param id ID of the message
+	 * @return The message or null if there was no message with the ID
+	 */
+	public Message get(String id) {
+		int idIndex = Message.getIdIndex(id);
+		return idIndex < 0 ? null : get(idIndex);
+	}
+
+	/**
+	 * Returns a message by the index of its ID
+	 * @param idIndex Index of the ID of the message
+	 * @return The message or null if there was no message with the ID
+	 */
+	public Message get(int idIndex) {
+		BufferEntry e = entries.get(idIndex);
+		return e == null ? null : e.message;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id ID of the message
+	 * @return True if the buffer has the message, false if not
+	 */
+	public boolean contains(String id) {
+		int idIndex = Message.getIdIndex(id);
+		return idIndex >= 0 && contains(idIndex);
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID index
+	 * @param idIndex Index of the ID of the message
+	 * @return True if the buffer has the message, false if not
+	 */
+	public boolean contains(int idIndex) {
+		return entries.containsKey(idIndex);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return the number of messages in the buffer
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return the total size of the messages (bytes)
+	 */
+	public long getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the messages in the buffer (in the
+	 * iteration order of a hash map of the IDs)
+	 * @return The messages in the buffer
+	 */
+	public Collection<Message> getMessages() {
+		return this.table;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the messages in the buffer ordered by
+	 * their receive times (oldest first). Messages with the same receive
+	 * time are in the order of {@link #getMessages()}.
+	 * @return The messages in the receive time order
+	 */
+	public Collection<Message> getReceiveOrder() {
+		return this.receiveOrder;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the messages in the order they should
+	 * be sent. In FIFO order this is the same as {@link #getReceiveOrder()},
+	 * in random key order every message keeps the random position it got
+	 * when it was added to the buffer (the queue is not reshuffled).
+	 * @return The messages in the send queue order
+	 */
+	public Collection<Message> getSendQueue() {
+		if (randomOrder != null) {
+			return this.randomOrder;
+		}
+		return this.receiveOrder;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the messages whose final recipient is
+	 * the given host, in the order of {@link #getMessages()}
+	 * @param to The destination host
+	 * @return The messages to the host (an empty collection if there are
+	 * none)
+	 */
+	public Collection<Message> getMessagesTo(DTNHost to) {
+		EntryList forDestination = destinations.get(to);
+		if (forDestination == null) {
+			return Collections.emptyList();
+		}
+		return forDestination;
+	}
+
+	/**
+	 * Returns the earliest expiry time of the buffered messages
+	 * (see {@link Message#getExpiryTime()} and {@link #ttlChanged(Message)})
+	 * @return The earliest expiry time or Double.MAX_VALUE if no message in
+	 * the buffer has a finite TTL
+	 */
+	public double getNextExpiryTime() {
+		while (!expiryOrder.isEmpty()) {
+			BufferEntry first = expiryOrder.peek();
+			if (!updateExpiryTime(first)) {
+				return first.expiryTime;
+			}
+		}
+		return Double.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the messages whose expiry time (see
+	 * {@link Message#getExpiryTime()}) is before the given time. Only the
+	 * expired messages are visited, so the cost doesn't depend on the
+	 * number of messages that have not expired. A buffered message whose
+	 * TTL was made longer is noticed here even without
+	 * {@link #ttlChanged(Message)}; a shorter TTL is not.
+	 * @param time The time
+	 * @return The expired messages ordered by their expiry times (a new list)
+	 */
+	public List<Message> getExpiredMessages(double time) {
+		List<BufferEntry> expired = expiryOrder.getEntriesBefore(time);
+		boolean changed = false;
+		for (BufferEntry e : expired) {
+			changed |= updateExpiryTime(e);
+		}
+		if (changed) { /* some TTLs were made longer */
+			expired = expiryOrder.getEntriesBefore(time);
+		}
+		if (expired.size() > 1) {
+			Collections.sort(expired, ExpiryHeap.EXPIRY_TIME_ORDER);
+		}
+
+		List<Message> messages = new ArrayList<Message>(expired.size());
+		for (BufferEntry e : expired) {
+			messages.add(e.message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Updates the expiry time index after the TTL of a buffered message was
+	 * changed (see {@link Message#setTtl(int)}). Nothing is done if the
+	 * message is not in the buffer.
+	 * @param m The message whose TTL was changed
+	 */
+	public void ttlChanged(Message m) {
+		BufferEntry e = entries.get(m.getIdIndex());
+		if (e != null) {
+			updateExpiryTime(e);
+		}
+	}
+
+	/**
+	 * Compares two messages by their send queue order. Messages that are
+	 * not in the buffer are ordered like they would be in FIFO order; in
+	 * random key order they go after the buffered messages and are ordered
+	 * by their receive times and IDs.
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if m1 is before, at the same place or after m2
+	 * in the send queue
+	 */
+	public int compareSendOrder(Message m1, Message m2) {
+		BufferEntry e1 = entries.get(m1.getIdIndex());
+		BufferEntry e2 = entries.get(m2.getIdIndex());
+		if (e1 != null && e2 != null) {
+			return sendOrder.compare(e1, e2);
+		}
+
+		if (randomOrder != null) {
+			if (e1 != null || e2 != null) {
+				return e1 != null ? -1 : 1;
+			}
+			int cmp = compareReceiveTimes(m1, m2);
+			return cmp != 0 ? cmp : compareIds(m1, m2);
+		}
+		int cmp = compareReceiveTimes(m1, m2);
+		return cmp != 0 ? cmp : compareIterationOrder(m1, m2);
+	}
+
+	/**
+	 * Compares two messages by their order in {@link #getMessages()}.
+	 * Messages that are not in the buffer are ordered by the hash table
+	 * bucket their ID would be in; they go after the buffered messages of
+	 * the same bucket and are ordered by their IDs.
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if m1 is before, at the same place or after m2
+	 * in the iteration order of the buffer
+	 */
+	public int compareIterationOrder(Message m1, Message m2) {
+		BufferEntry e1 = entries.get(m1.getIdIndex());
+		BufferEntry e2 = entries.get(m2.getIdIndex());
+		if (e1 != null && e2 != null) {
+			return table.compare(e1, e2);
+		}
+
+		int cmp = table.compareBuckets(
+				BufferEntry.spread(m1.getId().hashCode()),
+				BufferEntry.spread(m2.getId().hashCode()));
+		if (cmp != 0) {
+			return cmp;
+		}
+		if (e1 != null || e2 != null) {
+			return e1 != null ? -1 : 1;
+		}
+		return compareIds(m1, m2);
+	}
+
+	/**
+	 * Compares two messages by their receive times
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if m1 was received before, at the same time or
+	 * after m2
+	 */
+	private static int compareReceiveTimes(Message m1, Message m2) {
+		if (m1.getReceiveTime() != m2.getReceiveTime()) {
+			return m1.getReceiveTime() < m2.getReceiveTime() ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two messages by their IDs
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if the ID of m1 is before, the same or after the
+	 * ID of m2
+	 */
+	private static int compareIds(Message m1, Message m2) {
+		return Integer.signum(m1.getId().compareTo(m2.getId()));
+	}
+
+	/**
+	 * Moves an entry in the expiry heap if the expiry time of its message
+	 * has changed since the entry was added there
+	 * @param e The entry to update
+	 * @return True if the expiry time had changed, false if not
+	 */
+	private boolean updateExpiryTime(BufferEntry e) {
+		double expiryTime = e.message.getExpiryTime();
+		if (expiryTime == e.expiryTime) {
+			return false;
+		}
+
+		if (e.heapIndex != ExpiryHeap.NOT_IN_HEAP) {
+			expiryOrder.remove(e);
+		}
+		e.expiryTime = expiryTime;
+		if (expiryTime != Double.MAX_VALUE) {
+			expiryOrder.add(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes an entry from the indexes and occupancy
+	 * @param e The entry to remove
+	 */
+	private void removeFromIndex(BufferEntry e) {
+		table.remove(e);
+		receiveOrder.remove(e);
+		if (randomOrder != null) {
+			randomOrder.remove(e);
+		}
+
+		DTNHost to = e.message.getTo();
+		EntryList forDestination = destinations.get(to);
+		forDestination.remove(e);
+		if (forDestination.isEmpty()) {
+			destinations.remove(to);
+		}
+		if (e.heapIndex != ExpiryHeap.NOT_IN_HEAP) {
+			expiryOrder.remove(e);
+		}
+		e.removed = true;
+		occupancy -= e.size;
+	}
+
+	/**
+	 * Returns a string representation of the buffer
+	 * @return a string representation of the buffer
+	 */
+	public String toString() {
+		return "MessageBuffer with " + size() + " messages (" +
+			occupancy + " bytes)";
+	}
+}
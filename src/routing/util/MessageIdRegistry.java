@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+
+/**
+ * Registry of message IDs a router has seen, e.g. the IDs of the messages it
+ * has received as the final recipient. Only the ID indexes of the messages
+ * (see {@link Message#getIdIndex()}) are stored, not the messages or the ID
+ * strings. An ID has the same index for the whole run, so a registry also
+ * recognizes the ID when a message with it is created again.
+ */
+public interface MessageIdRegistry {
+
+	/**
+	 * Adds a message ID to the registry
+	 * @param idIndex Index of the message ID
+	 */
+	public void add(int idIndex);
+
+	/**
+	 * Returns true if a message ID is in the registry
+	 * @param idIndex Index of the message ID (not negative)
+	 * @return True if the registry contains the ID (or, depending on the
+	 * registry, probably contains it), false if not
+	 */
+	public boolean contains(int idIndex);
+
+	/**
+	 * Returns the ID indexes in the registry. This is meant for showing the
+	 * IDs (e.g. in the GUI), not for the simulation, so it may be slow.
+	 * @return The ID indexes or null if the registry can't list its IDs
+	 */
+	public int[] getIdIndexes();
+}
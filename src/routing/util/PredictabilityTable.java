@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * <P>Table of delivery predictabilities (e.g. for PRoPHET routers). The
+ * predictabilities are stored in primitive arrays indexed by host
+ * addresses, so no values are boxed.</P>
+ *
+ * <P>The predictabilities are aged lazily: every entry has the (sim)time
+ * when it was last aged and when the entry is read, it is aged to the
+ * current time.
+ * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
+ * time units that have elapsed since the entry was aged.</P>
+ *
+ * <P>The entries can be iterated with {@link #size()},
+ * {@link #getHostAt(int)} and {@link #getValueAt(int)}. The order is the
+ * order the entries were created in.</P>
+ */
+public class PredictabilityTable {
+	/** initial capacity of the arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** predictabilities by host address */
+	private double[] values;
+	/** (sim)times the predictabilities were aged, by host address */
+	private double[] agedTimes;
+	/** hosts by their addresses (null for hosts with no entry) */
+	private DTNHost[] hosts;
+	/** addresses of the hosts that have an entry, in creation order */
+	private int[] entries;
+	/** number of entries */
+	private int nrofEntries;
+
+	/** aging constant */
+	private double gamma;
+	/** number of seconds in time unit */
+	private double secondsInTimeUnit;
+
+	/**
+	 * Creates a new, empty, table
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one time unit of aging
+	 */
+	public PredictabilityTable(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INITIAL_CAPACITY];
+		this.agedTimes = new double[INITIAL_CAPACITY];
+		this.hosts = new DTNHost[INITIAL_CAPACITY];
+		this.entries = new int[INITIAL_CAPACITY];
+		this.nrofEntries = 0;
+	}
+
+	/**
+	 * Returns the current predictability for a host or 0 if there's no
+	 * entry for the host
+	 * @param host The host to look the predictability for
+	 * @return the current predictability
+	 */
+	public double get(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= hosts.length || hosts[address] == null) {
+			return 0;
+		}
+
+		return age(address);
+	}
+
+	/**
+	 * Sets the predictability of a host at the current time. Creates a new
+	 * entry if the host has no entry yet.
+	 * @param host The host
+	 * @param value The predictability
+	 */
+	public void set(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= hosts.length) {
+			int capacity = Math.max(address + 1, hosts.length * 2);
+			values = Arrays.copyOf(values, capacity);
+			agedTimes = Arrays.copyOf(agedTimes, capacity);
+			hosts = Arrays.copyOf(hosts, capacity);
+		}
+
+		if (hosts[address] == null) {
+			if (nrofEntries == entries.length) {
+				entries = Arrays.copyOf(entries, nrofEntries * 2);
+			}
+			entries[nrofEntries++] = address;
+			hosts[address] = host;
+		}
+
+		values[address] = value;
+		agedTimes[address] = SimClock.getTime();
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.nrofEntries;
+	}
+
+	/**
+	 * Returns the host of an entry
+	 * @param index Index of the entry (0...size()-1)
+	 * @return The host of the entry
+	 */
+	public DTNHost getHostAt(int index) {
+		return hosts[entries[index]];
+	}
+
+	/**
+	 * Returns the current predictability of an entry
+	 * @param index Index of the entry (0...size()-1)
+	 * @return The current predictability of the entry
+	 */
+	public double getValueAt(int index) {
+		return age(entries[index]);
+	}
+
+	/**
+	 * Sets a new aging constant. All entries are first aged to the current
+	 * time with the old constant.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		for (int i=0; i<nrofEntries; i++) {
+			age(entries[i]);
+		}
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Ages the predictability of an entry to the current time
+	 * @param address Address of the entry's host
+	 * @return The aged predictability
+	 */
+	private double age(int address) {
+		double now = SimClock.getTime();
+		double timeDiff = (now - agedTimes[address]) / secondsInTimeUnit;
+
+		if (timeDiff != 0) {
+			values[address] *= Math.pow(gamma, timeDiff);
+			agedTimes[address] = now;
+		}
+
+		return values[address];
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.AbstractCollection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Send queue where every buffer entry gets a random key when it is added.
+ * The entries are kept in a balanced tree ordered by the keys, so adding
+ * and removing an entry take logarithmic time. The queue is never
+ * reshuffled: an entry keeps its key for as long as it is in the queue.
+ * This is an unmodifiable message view for the users of a
+ * {@link MessageBuffer}; the iteration looks up the entry after the last
+ * returned one by its key, so it continues from there also if the queue
+ * is modified.
+ */
+class RandomKeyQueue extends AbstractCollection<Message> {
+	/** Orders entries by random key and then sequence number */
+	static final Comparator<BufferEntry> RANDOM_KEY_ORDER =
+		new Comparator<BufferEntry>() {
+		public int compare(BufferEntry e1, BufferEntry e2) {
+			if (e1.randomKey != e2.randomKey) {
+				return e1.randomKey < e2.randomKey ? -1 : 1;
+			}
+			return BufferEntry.compareNumbers(e1, e2);
+		}
+	};
+
+	private TreeSet<BufferEntry> entries;
+	private Random rng;
+
+	/**
+	 * Creates an empty queue
+	 * @param rng Random number generator for the keys
+	 */
+	RandomKeyQueue(Random rng) {
+		this.entries = new TreeSet<BufferEntry>(RANDOM_KEY_ORDER);
+		this.rng = rng;
+	}
+
+	/**
+	 * Gives an entry a random key and adds it to the queue
+	 * @param e The entry to add
+	 */
+	void add(BufferEntry e) {
+		e.randomKey = rng.nextLong();
+		entries.add(e);
+	}
+
+	/**
+	 * Removes an entry from the queue
+	 * @param e The entry to remove
+	 */
+	void remove(BufferEntry e) {
+		entries.remove(e);
+	}
+
+	@Override
+	public Iterator<Message> iterator() {
+		return new Iterator<Message>() {
+			private BufferEntry last = null;
+
+			public boolean hasNext() {
+				return following() != null;
+			}
+
+			public Message next() {
+				BufferEntry e = following();
+				if (e == null) {
+					throw new NoSuchElementException();
+				}
+				last = e;
+				return e.message;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			/**
+			 * Returns the entry after the last returned entry
+			 */
+			private BufferEntry following() {
+				if (last == null) {
+					return entries.isEmpty() ? null : entries.first();
+				}
+				return entries.higher(last);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.SimClock;
+import util.IntHashSet;
+
+/**
+ * Exact message ID registry that forgets the IDs after a time window.
+ * An ID is in the registry from the time it was (first) added until the
+ * window has passed. The memory of the expired IDs is freed, so the size of
+ * the registry depends only on how many IDs are added within a window, not
+ * on the length of the simulation.
+ */
+public class TimeWindowIdRegistry implements MessageIdRegistry {
+	/** Initial (and minimum) size of the queue */
+	private static final int INITIAL_CAPACITY = 16;
+	/** the IDs in the window */
+	private IntHashSet ids;
+	/** the IDs in the order they were added (circular queue) */
+	private int[] queue;
+	/** the times the IDs were added (circular queue) */
+	private double[] times;
+	/** index of the oldest ID in the queue */
+	private int head;
+	/** number of IDs in the queue */
+	private int size;
+	/** length of the window (seconds) */
+	private double window;
+
+	/**
+	 * Creates a new, empty, registry
+	 * @param window Length of the time window (seconds)
+	 */
+	public TimeWindowIdRegistry(double window) {
+		this.ids = new IntHashSet();
+		this.queue = new int[INITIAL_CAPACITY];
+		this.times = new double[INITIAL_CAPACITY];
+		this.head = 0;
+		this.size = 0;
+		this.window = window;
+	}
+
+	public void add(int idIndex) {
+		expire();
+		if (!ids.add(idIndex)) {
+			return; /* the window starts from the first add */
+		}
+
+		if (size == queue.length) {
+			resize(queue.length * 2);
+		}
+		int tail = (head + size) % queue.length;
+		queue[tail] = idIndex;
+		times[tail] = SimClock.getTime();
+		size++;
+	}
+
+	public boolean contains(int idIndex) {
+		expire();
+		return ids.contains(idIndex);
+	}
+
+	/**
+	 * Returns the ID indexes in the window in the order they were added
+	 * @return The ID indexes
+	 */
+	public int[] getIdIndexes() {
+		expire();
+		int[] indexes = new int[size];
+		for (int i=0; i<size; i++) {
+			indexes[i] = queue[(head + i) % queue.length];
+		}
+		return indexes;
+	}
+
+	/**
+	 * Removes the IDs whose window has passed
+	 */
+	private void expire() {
+		double limit = SimClock.getTime() - window;
+		while (size > 0 && times[head] <= limit) {
+			ids.remove(queue[head]);
+			head = (head + 1) % queue.length;
+			size--;
+		}
+		int capacity = queue.length;
+		while (size * 4 < capacity && capacity > INITIAL_CAPACITY) {
+			capacity /= 2;
+		}
+		if (capacity < queue.length) {
+			resize(capacity);
+		}
+	}
+
+	/**
+	 * Returns the number of IDs the registry has room for without growing
+	 * @return The capacity of the registry
+	 */
+	public int getCapacity() {
+		return queue.length;
+	}
+
+	/**
+	 * Moves the queue to arrays of the given size
+	 * @param capacity The new size (at least the number of IDs)
+	 */
+	private void resize(int capacity) {
+		int[] newQueue = new int[capacity];
+		double[] newTimes = new double[capacity];
+		for (int i=0; i<size; i++) {
+			newQueue[i] = queue[(head + i) % queue.length];
+			newTimes[i] = times[(head + i) % queue.length];
+		}
+		this.queue = newQueue;
+		this.times = newTimes;
+		this.head = 0;
+	}
+}
@@ -36,10 +36,13 @@ public class AllTests {
 		suite.addTestSuite(AdjacencyGraphvizReportTest.class);
 		suite.addTestSuite(MessageGraphvizReportTest.class);
 		suite.addTestSuite(ExternalEventsQueueTest.class);
+		suite.addTestSuite(EventCalendarTest.class);
+		suite.addTestSuite(StandardEventsReaderTest.class);
 		suite.addTestSuite(ContactTimesReportTest.class);
 		suite.addTestSuite(TotalContactTimeReportTest.class);
 		suite.addTestSuite(EpidemicRouterTest.class);
 		suite.addTestSuite(ProphetRouterTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
 		suite.addTestSuite(SettingsTest.class);
 		suite.addTestSuite(DijkstraPathFinderTest.class);
 		suite.addTestSuite(PointsOfInterestTest.class);
@@ -48,8 +51,14 @@ public class AllTests {
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(IntHashMapTest.class);
+		suite.addTestSuite(MessageIdRegistryTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(SweepConnectivityGridTest.class);
+		suite.addTestSuite(KineticConnectivityTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the ConnectivityGrid
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double RANGE = 30;
+	/** edge length of the grid's cells with the default multiplier */
+	private static final double CELL_SIZE =
+		RANGE * ConnectivityGrid.DEF_CON_CELL_SIZE_MULT;
+	private static final int NROF_HOSTS = 300;
+
+	private TestUtils utils;
+	private List<NetworkInterface> interfaces;
+	private ConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_SPEED_S, "1");
+		ConnectivityGrid.reset();
+
+		utils = new TestUtils(null, null, ts);
+		interfaces = new ArrayList<NetworkInterface>();
+		grid = ConnectivityGrid.ConnectivityGridFactory(
+				TestUtils.IFACE_NS.hashCode(), RANGE);
+
+		Random rng = new Random(1);
+		for (int i=0; i<NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(new Coord(rng.nextDouble() * 999,
+					rng.nextDouble() * 999));
+			interfaces.add(h.getInterface(1));
+		}
+		/* interfaces are added to the grid before their host has
+		 * a location */
+		updateLocations();
+	}
+
+	public void testNearInterfaces() {
+		assertEquals(NROF_HOSTS, grid.getAllInterfaces().size());
+		checkNearInterfaces();
+	}
+
+	public void testUpdateLocation() {
+		moveHosts(new Random(2));
+		checkNearInterfaces();
+	}
+
+	public void testRemoveInterface() {
+		/* the first, the last, and one in the middle */
+		NetworkInterface[] removed = {interfaces.remove(0),
+				interfaces.remove(interfaces.size() - 1),
+				interfaces.remove(interfaces.size() / 2)};
+
+		for (NetworkInterface ni : removed) {
+			grid.removeInterface(ni);
+			assertEquals(0, grid.getNearInterfaces(ni).size());
+			assertFalse(grid.getAllInterfaces().contains(ni));
+		}
+		grid.removeInterface(removed[0]); // not in the grid anymore
+
+		assertEquals(NROF_HOSTS - removed.length,
+				grid.getAllInterfaces().size());
+		checkNearInterfaces();
+
+		/* interfaces that got a new id must still move between cells */
+		moveHosts(new Random(3));
+		checkNearInterfaces();
+	}
+
+	public void testAddRemovedInterface() {
+		NetworkInterface ni = interfaces.get(5);
+		grid.removeInterface(ni);
+		grid.addInterface(ni);
+		grid.addInterface(ni); // already in the grid
+
+		assertEquals(NROF_HOSTS, grid.getAllInterfaces().size());
+		checkNearInterfaces();
+		moveHosts(new Random(4));
+		checkNearInterfaces();
+	}
+
+	/**
+	 * Moves all hosts to new random locations and updates the grid
+	 * @param rng The random number generator for the locations
+	 */
+	private void moveHosts(Random rng) {
+		for (NetworkInterface ni : interfaces) {
+			ni.getHost().setLocation(new Coord(rng.nextDouble() * 999,
+					rng.nextDouble() * 999));
+		}
+		updateLocations();
+	}
+
+	/**
+	 * Updates the grid locations of all interfaces
+	 */
+	private void updateLocations() {
+		for (NetworkInterface ni : interfaces) {
+			grid.updateLocation(ni);
+		}
+	}
+
+	/**
+	 * Checks that near interfaces of all interfaces are exactly the ones in
+	 * the same or neighboring cells (including the interface itself) and
+	 * that they include all interfaces within range
+	 */
+	private void checkNearInterfaces() {
+		int nrofPairs = 0;
+		for (NetworkInterface ni : interfaces) {
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni);
+			int expected = 0;
+			for (NetworkInterface other : interfaces) {
+				boolean isNear = areInNearCells(ni.getLocation(),
+						other.getLocation());
+				assertEquals(isNear, near.contains(other));
+				if (isNear) {
+					expected++;
+				}
+				if (other != ni && ni.getLocation().distance(
+						other.getLocation()) <= RANGE) {
+					assertTrue(near.contains(other));
+					nrofPairs++;
+				}
+			}
+			assertEquals(expected, near.size());
+		}
+		assertTrue("Too few pairs for a meaningful test", nrofPairs > 100);
+	}
+
+	/**
+	 * Returns true if two locations are in the same or neighboring cells
+	 * @param c1 The first location
+	 * @param c2 The second location
+	 * @return true if the locations are in the same or neighboring cells
+	 */
+	private boolean areInNearCells(Coord c1, Coord c2) {
+		int dx = (int)(c1.getX() / CELL_SIZE) - (int)(c2.getX() / CELL_SIZE);
+		int dy = (int)(c1.getY() / CELL_SIZE) - (int)(c2.getY() / CELL_SIZE);
+		return Math.abs(dx) <= 1 && Math.abs(dy) <= 1;
+	}
+}
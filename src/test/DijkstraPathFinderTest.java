@@ -4,11 +4,15 @@
  */
 package test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.RouteCache;
+import movement.map.SimMap;
 import core.Coord;
 
 public class DijkstraPathFinderTest extends TestCase {
@@ -73,6 +77,74 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 
+	public void testPathFindingInMap() {
+		SimMap map = createMap();
+		r = new DijkstraPathFinder(null, map);
+		testPathFinding();
+		assertEquals(8, map.getGraph().size());
+
+		/* nodes outside the map are searched without the map's graph */
+		MapNode n9 = newNode(30,10);
+		n8.addNeighbor(n9);
+		checkPath(getPath(n9,n9), n9);
+		assertEquals(0, getPath(n8,n9).size()); // not in the map's graph
+		n9.addNeighbor(n8);
+		checkPath(getPath(n9,n7), n9, n8, n7);
+	}
+
+	public void testOkMapNodes() {
+		for (MapNode n : new MapNode[] {n1, n4, n5, n6, n7, n8}) {
+			n.addType(1);
+		}
+		n2.addType(2);
+		n3.addType(2);
+
+		r = new DijkstraPathFinder(new int[] {1}, createMap());
+		checkPath(getPath(n1,n6), n1, n4, n5, n6);
+		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
+		assertEquals(0, getPath(n1,n3).size());
+
+		r = new DijkstraPathFinder(new int[] {1, 2}, createMap());
+		checkPath(getPath(n1,n6), n1, n2, n5, n6);
+	}
+
+	public void testRouteCache() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(RouteCache.ROUTE_CACHE_NS + "." + RouteCache.SIZE_S, "2");
+		ts.putSetting(RouteCache.ROUTE_CACHE_NS + "." +
+				RouteCache.NROF_LANDMARKS_S, "2");
+		RouteCache.reset();
+		RouteCache cache = RouteCache.getInstance();
+		r = new DijkstraPathFinder(null, createMap());
+
+		checkPath(getPath(n1,n3), n1, n2, n3);
+		checkPath(getPath(n1,n3), n1, n2, n3);
+		checkPath(getPath(n4,n8), n4, n5, n6, n7, n8);
+		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4); // evicts n1->n3
+		checkPath(getPath(n1,n3), n1, n2, n3);
+		checkPath(getPath(n5,n3), n5, n6, n3);
+		checkPath(getPath(n1,n1), n1); // not cached
+
+		assertEquals(1, cache.getNrofHits());
+		assertEquals(5, cache.getNrofMisses());
+		assertEquals(3, cache.getNrofEvictions());
+		assertEquals(2, cache.size());
+
+		ts.putSetting(RouteCache.ROUTE_CACHE_NS + "." + RouteCache.SIZE_S, "0");
+		ts.putSetting(RouteCache.ROUTE_CACHE_NS + "." +
+				RouteCache.NROF_LANDMARKS_S, "0");
+		RouteCache.reset();
+		assertNull(RouteCache.getInstance());
+	}
+
+	private SimMap createMap() {
+		Map<Coord, MapNode> nodes = new HashMap<Coord, MapNode>();
+		for (MapNode n : new MapNode[] {n1, n2, n3, n4, n5, n6, n7, n8}) {
+			nodes.put(n.getLocation(), n);
+		}
+		return new SimMap(nodes);
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 
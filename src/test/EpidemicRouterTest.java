@@ -6,6 +6,7 @@ package test;
 
 import routing.EpidemicRouter;
 import routing.MessageRouter;
+import routing.util.RoutingInfo;
 import core.DTNHost;
 import core.Message;
 
@@ -319,6 +320,12 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		updateAllNodes(); // still shouldn't do anything
 
 		assertFalse(mc.next());
+
+		/* the routing info lists the delivered message by its ID */
+		RoutingInfo delivered =
+			h2.getRouter().getRoutingInfo().getMoreInfo().get(1);
+		assertEquals("1 delivered message(s)", delivered.toString());
+		assertEquals(msgId1, delivered.getMoreInfo().get(0).toString());
 	}
 
 	/**
@@ -619,4 +626,15 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertNotSame(orderedIds, runMessageExchange(true));
 		assertNotSame(orderedIds, runMessageExchange(false));
 	}
+
+	public void testRandomKeySendingQ() throws Exception {
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
+				MessageRouter.STR_Q_MODE_RANDOM_KEY);
+		this.setUp();
+
+		String orderedIds = "1 2 3 4 5 ";
+
+		assertNotSame(orderedIds, runMessageExchange(true));
+		assertNotSame(orderedIds, runMessageExchange(false));
+	}
 }
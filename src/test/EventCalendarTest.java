@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventCalendar;
+import input.EventQueue;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventCalendar
+ */
+public class EventCalendarTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private ScheduledUpdatesQueue updates;
+	private List<TestQueue> queues;
+	private EventCalendar calendar;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		updates = new ScheduledUpdatesQueue();
+		queues = new ArrayList<TestQueue>();
+		List<EventQueue> all = new ArrayList<EventQueue>();
+		all.add(updates);
+		for (int i=0; i<5; i++) {
+			TestQueue q = new TestQueue();
+			queues.add(q);
+			all.add(q);
+		}
+
+		queues.get(0).add(1, 4, 4, 9);
+		queues.get(1).add(2, 3);
+		queues.get(3).add(0.5, 4, 10);
+		queues.get(4).add(4);
+		updates.addUpdate(4);
+		updates.addUpdate(6);
+
+		calendar = new EventCalendar(all);
+	}
+
+	public void testMerging() {
+		double[] times = {0.5, 1, 2, 3, 4, 4, 4, 4, 4, 6, 9, 10};
+		Object[] sources = {queues.get(3), queues.get(0), queues.get(1),
+				queues.get(1), updates, queues.get(0), queues.get(0),
+				queues.get(3), queues.get(4), updates, queues.get(0),
+				queues.get(3)};
+
+		for (int i=0; i<times.length; i++) {
+			assertEquals(times[i], calendar.nextEventsTime());
+			ExternalEvent ee = calendar.nextEvent();
+			assertEquals(times[i], ee.getTime());
+			if (sources[i] != updates) {
+				assertSame(sources[i], ((TestEvent)ee).queue);
+			}
+			else {
+				assertFalse(ee instanceof TestEvent);
+			}
+		}
+
+		assertEquals(MAX, calendar.nextEventsTime());
+		assertEquals(MAX, calendar.nextEvent().getTime());
+	}
+
+	public void testChangedQueues() {
+		assertEquals(0.5, calendar.nextEvent().getTime());
+
+		updates.addUpdate(0.7);
+		calendar.queueChanged(updates);
+		assertEquals(0.7, calendar.nextEventsTime());
+		assertEquals(0.7, calendar.nextEvent().getTime());
+
+		/* a queue whose events were removed is skipped */
+		queues.get(0).events.clear();
+		assertEquals(2.0, calendar.nextEventsTime());
+
+		queues.get(2).add(1.5);
+		assertEquals(2.0, calendar.nextEventsTime()); // not told yet
+		calendar.refresh();
+		assertEquals(1.5, calendar.nextEventsTime());
+		assertSame(queues.get(2), ((TestEvent)calendar.nextEvent()).queue);
+		assertEquals(2.0, calendar.nextEvent().getTime());
+	}
+
+	public void testSameTimeScheduledEvents() {
+		List<ExternalEvent> added = new ArrayList<ExternalEvent>();
+		for (int i=0; i<50; i++) {
+			/* events at 5 and 7 interleaved with each other */
+			ExternalEvent ee = new TestEvent(i % 3 == 0 ? 7 : 5, null);
+			added.add(ee);
+			updates.addEvent(ee);
+			if (i == 20) {
+				updates.addUpdate(5); // an update after the first events
+			}
+		}
+		calendar.queueChanged(updates);
+
+		List<ExternalEvent> at5 = new ArrayList<ExternalEvent>();
+		List<ExternalEvent> at7 = new ArrayList<ExternalEvent>();
+		while (calendar.nextEventsTime() != MAX) {
+			ExternalEvent ee = calendar.nextEvent();
+			if (ee.getTime() == 5) {
+				at5.add(ee);
+			}
+			else if (ee.getTime() == 7) {
+				at7.add(ee);
+			}
+		}
+
+		/* same-time events in the order they were added */
+		int nrofBefore = 0;
+		for (ExternalEvent ee : added) {
+			if (ee.getTime() == 7) {
+				assertSame(ee, at7.remove(0));
+			}
+			else {
+				if (nrofBefore == 14) {
+					assertFalse(at5.remove(0) instanceof TestEvent);
+				}
+				assertSame(ee, at5.remove(0));
+				nrofBefore++;
+			}
+		}
+		assertTrue(at5.isEmpty());
+		assertTrue(at7.isEmpty());
+	}
+
+	public void testNoQueues() {
+		calendar = new EventCalendar(new ArrayList<EventQueue>());
+		assertEquals(MAX, calendar.nextEventsTime());
+		assertEquals(MAX, calendar.nextEvent().getTime());
+	}
+
+	/** Event that knows its queue */
+	@SuppressWarnings("serial")
+	private static class TestEvent extends ExternalEvent {
+		private TestQueue queue;
+
+		public TestEvent(double time, TestQueue queue) {
+			super(time);
+			this.queue = queue;
+		}
+	}
+
+	/** Queue of events with the given times */
+	private static class TestQueue implements EventQueue {
+		private List<TestEvent> events = new ArrayList<TestEvent>();
+
+		public void add(double... times) {
+			for (double time : times) {
+				events.add(new TestEvent(time, this));
+			}
+		}
+
+		public ExternalEvent nextEvent() {
+			if (events.isEmpty()) {
+				return new ExternalEvent(MAX);
+			}
+			return events.remove(0);
+		}
+
+		public double nextEventsTime() {
+			return events.isEmpty() ? MAX : events.get(0).getTime();
+		}
+	}
+}
@@ -5,6 +5,7 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.CompactEventsQueue;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -16,6 +17,7 @@ import java.io.PrintWriter;
 import java.util.List;
 
 import junit.framework.TestCase;
+import core.SimError;
 
 public class ExternalEventsQueueTest extends TestCase {
 	private final String[] stdinput = {
@@ -66,6 +68,34 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testReadAheadEEQ() throws Exception {
+		int preload = 1;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload,
+				true);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertEquals(Double.MAX_VALUE, eeq.nextEvent().getTime());
+
+		preload = 3;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload,
+				true);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+
+		// parse errors are thrown when the invalid event's batch is used
+		PrintWriter out = new PrintWriter(tempFile);
+		out.println(stdinput[0]);
+		out.println("x S M1 p1 p2");
+		out.close();
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), 1, true);
+		try {
+			eeq.nextEvent();
+			fail("Invalid event was accepted");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
 	public void testBinaryEEQ() throws Exception{
 		int preload = 7;
 		File tmpBinFile = File.createTempFile("TempBinTest",
@@ -82,6 +112,37 @@ public class ExternalEventsQueueTest extends TestCase {
 	}
 
 
+	public void testCompactEEQ() throws Exception {
+		File compactFile = File.createTempFile("TempCompactTest",
+				CompactEventsQueue.COMPACT_EXT);
+		compactFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(tempFile);
+		for (String s : stdinput) {
+			out.println(s);
+		}
+		out.println("106203.0	CONN	p1	p2	up	wlan");
+		out.println("106204.0	CONN	p1	p2	down");
+		out.close();
+
+		long nrofConverted = CompactEventsQueue.storeToCompactFile(tempFile,
+				compactFile.getAbsolutePath());
+		assertEquals(msgTimes.length + 2, nrofConverted);
+		List<ExternalEvent> events = new StandardEventsReader(
+				tempFile).readEvents(100);
+
+		eeq = new ExternalEventsQueue(compactFile.getAbsolutePath(), 1);
+		assertEquals(events.size(), eeq.eventsLeftInBuffer());
+		for (ExternalEvent expected : events) {
+			assertEquals(expected.getTime(), eeq.nextEventsTime());
+			ExternalEvent ee = eeq.nextEvent();
+			assertEquals(expected.getClass(), ee.getClass());
+			assertEquals(expected.toString(), ee.toString());
+		}
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		assertEquals(Double.MAX_VALUE, eeq.nextEvent().getTime());
+	}
+
+
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
 		assertEquals(msgTimes[0],eeq.nextEventsTime());
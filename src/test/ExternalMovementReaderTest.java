@@ -5,6 +5,7 @@
 package test;
 
 import input.ExternalMovementReader;
+import input.MovementTraceStore;
 
 import java.io.File;
 import java.io.PrintWriter;
@@ -17,6 +18,7 @@ import core.Coord;
 
 public class ExternalMovementReaderTest extends TestCase {
 	private ExternalMovementReader r;
+	private File tmpFile;
 	private static final String INPUT =
 		"0 0 0 0 0 0\n"+
 		"10 1 10 10\n"+
@@ -40,7 +42,7 @@ public class ExternalMovementReaderTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 
-		File tmpFile = File.createTempFile("EMRTest","tmp");
+		tmpFile = File.createTempFile("EMRTest","tmp");
 		tmpFile.deleteOnExit();
 
 		PrintWriter pw = new PrintWriter(tmpFile);
@@ -63,6 +65,31 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testTraceStore() throws Exception {
+		File storeFile = File.createTempFile("EMRTest",
+				MovementTraceStore.STORE_EXT);
+		storeFile.deleteOnExit();
+		assertEquals(9, MovementTraceStore.storeToTraceFile(tmpFile,
+				storeFile.getAbsolutePath()));
+
+		MovementTraceStore store = new MovementTraceStore(storeFile);
+		assertEquals(ids.length, store.getNrofNodes());
+		assertEquals(ids.length, store.getNrofInitialNodes());
+		assertEquals(times[0], store.getInitTime());
+		assertEquals(times[1] - times[0], store.getSamplingInterval());
+
+		for (int n=0; n<ids.length; n++) {
+			assertEquals(ids[n], store.getId(n));
+			long first = store.getFirstSample(n);
+			assertEquals(times.length, store.getSampleEnd(n) - first);
+			for (int i=0; i<times.length; i++) {
+				assertEquals(times[i], store.getTime(first + i));
+				assertEquals(coords[i][n], new Coord(store.getX(first + i),
+						store.getY(first + i)));
+			}
+		}
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 
@@ -4,6 +4,8 @@
  */
 package test;
 
+import input.MovementTraceStore;
+
 import java.io.File;
 import java.io.PrintWriter;
 
@@ -26,6 +28,16 @@ public class ExternalMovementTest extends TestCase {
 		"30 2 40 100"
 	};
 
+	/* node 1 has no sample at time 20 */
+	private static final String[] MISSING_SAMPLE_INPUT = {
+		"0 30 0 350 0 100 0 0",
+		"10 1 10 0",
+		"10 2 20 0",
+		"20 2 300.5 10",
+		"30 1 30 10",
+		"30 2 40 100"
+	};
+
 	/* two stationary nodes */
 	private static final String[] STATIONARY_INPUT = {
 		"0 0 0 0 0 0 0 0",
@@ -49,6 +61,16 @@ public class ExternalMovementTest extends TestCase {
 	private SimClock clock;
 
 	protected void setUpUsing(String[] input) throws Exception {
+		setUpUsing(input, false);
+	}
+
+	protected void setUpUsing(String[] input, boolean readAhead)
+			throws Exception {
+		setUpUsing(input, readAhead, false);
+	}
+
+	protected void setUpUsing(String[] input, boolean readAhead,
+			boolean traceStore) throws Exception {
 		super.setUp();
 		ExternalMovement.reset();
 		TestSettings ts = new TestSettings();
@@ -64,8 +86,19 @@ public class ExternalMovementTest extends TestCase {
 
 		pw.close();
 
+		if (traceStore) {
+			File storeFile = File.createTempFile("eMovementTest",
+					MovementTraceStore.STORE_EXT);
+			storeFile.deleteOnExit();
+			MovementTraceStore.storeToTraceFile(outFile,
+					storeFile.getAbsolutePath());
+			outFile = storeFile;
+		}
+
 		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
 				ExternalMovement.MOVEMENT_FILE_S, outFile.getAbsolutePath());
+		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
+				ExternalMovement.READ_AHEAD_S, "" + readAhead);
 
 		MovementModel emProto = (MovementModel)
 			ts.createIntializedObject("movement.ExternalMovement");
@@ -80,7 +113,40 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testMovement() throws Exception {
 		setUpUsing(INPUT);
+		checkMovement();
+	}
+
+	public void testReadAheadMovement() throws Exception {
+		setUpUsing(INPUT, true);
+		checkMovement();
+	}
+
+	public void testTraceStoreMovement() throws Exception {
+		setUpUsing(INPUT, false, true);
+		checkMovement();
+	}
+
+	public void testTraceStoreMissingSample() throws Exception {
+		setUpUsing(MISSING_SAMPLE_INPUT, false, true);
+		Coord[] h1Coords = { new Coord(10,0), new Coord(20,5),
+				new Coord(30,10) };
+		for (int i=0; i<h1Coords.length; i++) {
+			assertEquals((i+1) + ". coord of h1", h1Coords[i],
+					h1.getLocation());
+			assertEquals((i+1) + ". coord of h2",
+					INPUT_COORDS[1][i], h2.getLocation());
 
+			clock.advance(CLOCK_STEP);
+			moveAllHosts(CLOCK_STEP);
+		}
+	}
+
+	public void testTraceStoreStationary() throws Exception {
+		setUpUsing(STATIONARY_INPUT, false, true);
+		checkStationary();
+	}
+
+	private void checkMovement() {
 		// h3 should not get any fancy coordinates
 		assertEquals(c0, h3.getLocation());
 		assertFalse(h3.isMovementActive());
@@ -99,7 +165,10 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testStationary() throws Exception {
 		setUpUsing(STATIONARY_INPUT);
+		checkStationary();
+	}
 
+	private void checkStationary() {
 		for (int i=0; i<3; i++) {
 			// hosts h1 & h2 should stay in the same place all the time
 			assertEquals((i+1) + ". coord of h1",
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import util.IntHashMap;
+import util.IntHashSet;
+
+/**
+ * Tests for the IntHashMap and IntHashSet
+ */
+public class IntHashMapTest extends TestCase {
+
+	public void testMap() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(17, "b"));
+		assertEquals("a", map.put(1, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(17));
+		assertNull(map.get(2));
+		assertFalse(map.containsKey(-1));
+
+		assertEquals("c", map.remove(1));
+		assertNull(map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertTrue(map.containsKey(17));
+		assertTrue(Arrays.equals(new int[] {17}, map.keys()));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(17));
+
+		try {
+			map.put(-1, "a");
+			fail("Negative key was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testMapAgainstHashMap() {
+		Random rng = new Random(1);
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		for (int i=0; i<20000; i++) {
+			int key = rng.nextInt(500);
+			if (rng.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			else {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+
+		for (int key=0; key<500; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+
+	public void testSetAgainstHashSet() {
+		Random rng = new Random(2);
+		IntHashSet set = new IntHashSet();
+		Set<Integer> expected = new HashSet<Integer>();
+
+		for (int i=0; i<20000; i++) {
+			int value = rng.nextInt(500);
+			if (rng.nextInt(3) == 0) {
+				assertEquals(expected.remove(value), set.remove(value));
+			}
+			else {
+				assertEquals(expected.add(value), set.add(value));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+
+		for (int value=0; value<500; value++) {
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+
+		IntHashSet other = new IntHashSet();
+		other.add(1000);
+		other.addAll(set);
+		assertEquals(expected.size() + 1, other.size());
+		assertTrue(other.contains(1000));
+		for (int value : set.toArray()) {
+			assertTrue(other.contains(value));
+		}
+	}
+}
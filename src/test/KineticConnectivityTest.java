@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.ConnectivityOptimizer;
+import interfaces.KineticConnectivity;
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.PassiveRouter;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SettingsError;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the KineticConnectivity optimizer
+ */
+public class KineticConnectivityTest extends TestCase {
+	private static final double RANGE = 5;
+	private static final double UP_INTERVAL = 10;
+	/* for rounding errors with event times */
+	private static final double TIME_DELTA = 0.00001;
+
+	private TestSettings ts;
+	private List<DTNHost> hosts;
+	private List<ConnectionListener> conListeners;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityOptimizer.OPTIMIZER_S,
+				ConnectivityOptimizer.KINETIC_OPTIMIZER);
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_SPEED_S, "1");
+		KineticConnectivity.reset();
+
+		hosts = new ArrayList<DTNHost>();
+		upTimes = new ArrayList<Double>();
+		downTimes = new ArrayList<Double>();
+		conListeners = new ArrayList<ConnectionListener>();
+		conListeners.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				upTimes.add(SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				downTimes.add(SimClock.getTime());
+			}
+		});
+	}
+
+	public void testContactBetweenUpdates() {
+		/* passes the other host within range during [15.04, 15.96] */
+		createHost(new Coord(0, 100), new Coord(1000, 100), 10);
+		createHost(new Coord(155, 102), null, 0);
+		World world = createWorld();
+
+		world.update();
+		world.update();
+
+		double halfChord = Math.sqrt(RANGE * RANGE - 2 * 2) / 10;
+		assertEquals(1, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals(15.5 - halfChord, upTimes.get(0), TIME_DELTA);
+		assertEquals(15.5 + halfChord, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testStopsWithinRange() {
+		/* reaches the destination at 15.0 and stays within range */
+		createHost(new Coord(0, 100), new Coord(150, 100), 10);
+		createHost(new Coord(154, 100), null, 0);
+		World world = createWorld();
+
+		world.update();
+		world.update();
+		world.update();
+
+		assertEquals(1, upTimes.size());
+		assertEquals(0, downTimes.size());
+		assertEquals(14.9, upTimes.get(0), TIME_DELTA);
+	}
+
+	public void testContactAtUpdate() {
+		/* within range at the first update, out of range at 13.0 */
+		createHost(new Coord(50, 100), new Coord(1000, 100), 1);
+		createHost(new Coord(58, 100), null, 0);
+		World world = createWorld();
+
+		world.update();
+		assertEquals(1, upTimes.size());
+		assertEquals(0, downTimes.size());
+		world.update();
+
+		assertEquals(UP_INTERVAL, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(13.0, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testNoContactsMissedWithLongInterval() {
+		/* hosts passing each other fast; the default grid doesn't see it */
+		createHost(new Coord(0, 100), new Coord(1000, 100), 20);
+		createHost(new Coord(1000, 103), new Coord(0, 103), 20);
+		World world = createWorld();
+
+		for (int i=0; i<5; i++) {
+			world.update();
+		}
+
+		double halfChord = Math.sqrt(RANGE * RANGE - 3 * 3) / 40;
+		assertEquals(1, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals(25 - halfChord, upTimes.get(0), TIME_DELTA);
+		assertEquals(25 + halfChord, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testRequiresAffectedHostsOnly() {
+		createHost(new Coord(0, 100), null, 0);
+		World world = createWorld();
+		assertNotNull(world.getAffectedHostsListener());
+
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.UPDATE_AFFECTED_ONLY_S, "false");
+		try {
+			createWorld();
+			fail("Kinetic optimizer without affected host updates");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Creates a host with a simple broadcast interface that moves once
+	 * along a line (or stays still)
+	 * @param from Start location
+	 * @param to Destination (or null for stationary host)
+	 * @param speed Speed of the movement
+	 */
+	private void createHost(Coord from, Coord to, double speed) {
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		NetworkInterface ni = new SimpleBroadcastInterface(ts);
+		ts.restoreNameSpace();
+		ni.setClisteners(conListeners);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+
+		DTNHost host = new DTNHost(null, null, "h", li,
+				new ModuleCommunicationBus(), new LineMovement(from, to, speed),
+				new PassiveRouter(ts));
+		hosts.add(host);
+	}
+
+	private World createWorld() {
+		World world = new World(hosts, 1000, 1000, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		/* the world needs to know about the connections of the hosts */
+		conListeners.add(world.getAffectedHostsListener());
+		world.warmupMovementModel(0);
+		return world;
+	}
+}
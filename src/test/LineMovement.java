@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+
+/**
+ * A dummy movement model for testing purposes where nodes move once along
+ * a line from a location to another (or stay still)
+ */
+public class LineMovement extends MovementModel {
+	private Coord from;
+	private Coord to;
+	private double speed;
+	private boolean pathGiven;
+
+	/**
+	 * Creates a new movement model
+	 * @param from Start location
+	 * @param to Destination (or null for a stationary node)
+	 * @param speed Speed of the movement
+	 */
+	public LineMovement(Coord from, Coord to, double speed) {
+		this.from = from;
+		this.to = to;
+		this.speed = speed;
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		return from;
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public Path getPath() {
+		Path p = new Path(speed);
+		p.addWaypoint(from);
+		if (to != null) {
+			p.addWaypoint(to);
+		}
+		pathGiven = true;
+		return p;
+	}
+
+	@Override
+	public double nextPathAvailable() {
+		return pathGiven ? Double.MAX_VALUE : 0;
+	}
+
+	@Override
+	public LineMovement replicate() {
+		return new LineMovement(from, to, speed);
+	}
+}
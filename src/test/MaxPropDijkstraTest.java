@@ -74,6 +74,42 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals(0.125, mps.getProbFor(2));
 	}
 
+	/**
+	 * Tests that snapshots are shared until the set changes and that the
+	 * copied on write probabilities stay independent
+	 */
+	public void testSnapshots() {
+		MeetingProbabilitySet mps = msets.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+
+		MeetingProbabilitySet snapshot = mps.snapshot();
+		assertSame(snapshot, mps.snapshot());
+		assertSame(snapshot, snapshot.snapshot());
+		MeetingProbabilitySet replica = mps.replicate();
+
+		mps.updateMeetingProbFor(2);
+		assertNotSame(snapshot, mps.snapshot());
+		assertEquals(0.5, snapshot.getProbFor(2));
+		assertEquals(0.75, mps.getProbFor(2));
+
+		replica.updateMeetingProbFor(1);
+		assertEquals(0.75, replica.getProbFor(1));
+		assertEquals(0.25, mps.getProbFor(1));
+		assertEquals(0.5, snapshot.getProbFor(1));
+
+		assertEquals(2, snapshot.size());
+		assertEquals(1, snapshot.getNodeAt(0));
+		assertEquals(2, snapshot.getNodeAt(1));
+
+		try {
+			snapshot.updateMeetingProbFor(1);
+			fail("Snapshot was modified");
+		} catch (core.SimError e) {
+			// expected
+		}
+	}
+
 	public void testPath() {
 		targets.add(1);
 		targets.add(2);
@@ -124,6 +160,37 @@ public class MaxPropDijkstraTest extends TestCase {
 	}
 
 
+	/**
+	 * Tests that the costs are calculated incrementally from multiple sources
+	 * and that they are recalculated only after invalidation
+	 */
+	public void testCachedCosts() {
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+		mapping.get(1).updateMeetingProbFor(3);
+
+		assertEquals(0.0, mpd.getCost(0, 1));
+		assertEquals(0.5, mpd.getCost(1, 3));
+		assertEquals(0.5, mpd.getCost(0, 2));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 4));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 100));
+
+		/* h1 meets h3 again -> costs change only after invalidation */
+		mapping.get(1).updateMeetingProbFor(3);
+		assertEquals(0.5, mpd.getCost(0, 2));
+		mpd.invalidate();
+		assertEquals(0.75, mpd.getCost(0, 2));
+		assertEquals(0.25, mpd.getCost(0, 3));
+		assertEquals(0.75, mpd.getCost(1, 2));
+
+		/* getCosts uses the same cached searches */
+		targets.add(2);
+		mapping.get(1).updateMeetingProbFor(2);
+		assertEquals(0.75, mpd.getCosts(0, targets).get(2));
+		mpd.invalidate();
+		assertEquals(0.375, mpd.getCosts(0, targets).get(2));
+	}
+
 	public void testProbabilitySumsToOne() {
 		double total;
 
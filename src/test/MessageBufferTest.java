@@ -0,0 +1,375 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.EvictionPolicy;
+import routing.util.FifoEvictionPolicy;
+import routing.util.MessageBuffer;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the MessageBuffer and FifoEvictionPolicy
+ */
+public class MessageBufferTest extends TestCase {
+	private MessageBuffer buffer;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		buffer = new MessageBuffer();
+	}
+
+	public void testOccupancy() {
+		buffer.add(newMessage("M1", 100, 1));
+		buffer.add(newMessage("M2", 200, 2));
+		buffer.add(newMessage("M3", 300, 3));
+		assertEquals(600, buffer.getOccupancy());
+		assertEquals(3, buffer.size());
+
+		assertEquals("M2", buffer.remove("M2").getId());
+		assertNull(buffer.remove("M2"));
+		assertEquals(400, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+		assertFalse(buffer.contains("M2"));
+		assertTrue(buffer.contains("M3"));
+	}
+
+	public void testReplace() {
+		Message old = newMessage("M1", 100, 1);
+		buffer.add(old);
+		buffer.add(newMessage("M2", 200, 2));
+
+		Message replacing = newMessage("M1", 50, 3);
+		assertSame(old, buffer.add(replacing));
+		assertEquals(250, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+		assertSame(replacing, buffer.get("M1"));
+		assertEquals("[M2, M1]", ids(buffer.getReceiveOrder()).toString());
+	}
+
+	public void testReceiveOrder() {
+		buffer.add(newMessage("M1", 1, 5));
+		buffer.add(newMessage("M2", 1, 2));
+		buffer.add(newMessage("M3", 1, 7));
+		buffer.add(newMessage("M4", 1, 2)); // same time as M2 -> hash order
+		buffer.add(newMessage("M5", 1, 1));
+
+		assertEquals("[M5, M2, M4, M1, M3]",
+				ids(buffer.getReceiveOrder()).toString());
+		buffer.remove("M2");
+		assertEquals("[M5, M4, M1, M3]",
+				ids(buffer.getReceiveOrder()).toString());
+	}
+
+	public void testFifoEviction() {
+		EvictionPolicy fifo = new FifoEvictionPolicy();
+		assertNull(fifo.getNextMessageToRemove(buffer, null));
+
+		buffer.add(newMessage("M1", 1, 5));
+		buffer.add(newMessage("M2", 1, 2));
+		buffer.add(newMessage("M3", 1, 7));
+		assertEquals("M2", fifo.getNextMessageToRemove(buffer, null).getId());
+
+		EvictionPolicy.RemovableFilter notM2 =
+			new EvictionPolicy.RemovableFilter() {
+			public boolean isRemovable(Message m) {
+				return !m.getId().equals("M2");
+			}
+		};
+		assertEquals("M1", fifo.getNextMessageToRemove(buffer,
+				notM2).getId());
+
+		buffer.remove("M1");
+		buffer.remove("M3");
+		assertNull(fifo.getNextMessageToRemove(buffer, notM2));
+	}
+
+	public void testSendQueueRemoveWhileIterating() {
+		for (int i=1; i<=5; i++) {
+			buffer.add(newMessage("M" + i, 1, i));
+		}
+
+		List<String> iterated = new ArrayList<String>();
+		for (Message m : buffer.getSendQueue()) {
+			iterated.add(m.getId());
+			if (m.getId().equals("M2")) {
+				buffer.remove("M2"); // current message
+				buffer.remove("M4"); // not yet iterated message
+			}
+		}
+
+		assertEquals("[M1, M2, M3, M5]", iterated.toString());
+		assertEquals("[M1, M3, M5]", ids(buffer.getSendQueue()).toString());
+	}
+
+	public void testReplaceWhileIterating() {
+		for (int i=1; i<=4; i++) {
+			buffer.add(newMessage("M" + i, 1, i));
+		}
+
+		List<String> iterated = new ArrayList<String>();
+		for (Message m : buffer.getMessages()) {
+			iterated.add(m.getId());
+			if (m.getId().equals("M1")) {
+				buffer.add(newMessage("M1", 1, 5)); // current message
+				buffer.add(newMessage("M3", 1, 6)); // not yet iterated
+				buffer.add(newMessage("M5", 1, 7)); // new message
+			}
+		}
+
+		assertEquals("[M1, M2, M3, M4, M5]", iterated.toString());
+		assertEquals(iterated, ids(buffer.getMessages()));
+		assertEquals("[M2, M4, M1, M3, M5]",
+				ids(buffer.getReceiveOrder()).toString());
+	}
+
+	public void testRandomSendQueue() {
+		MessageBuffer random1 = new MessageBuffer(new Random(1));
+		MessageBuffer random2 = new MessageBuffer(new Random(1));
+		for (int i=1; i<=20; i++) {
+			random1.add(newMessage("M" + i, 1, i));
+			random2.add(newMessage("M" + i, 1, i));
+		}
+
+		List<String> order = ids(random1.getSendQueue());
+		assertEquals(order, ids(random2.getSendQueue()));
+		assertEquals(20, order.size());
+		assertFalse(order.equals(ids(random1.getReceiveOrder())));
+
+		/* removing a message doesn't change the order of the others */
+		random1.remove("M7");
+		order.remove("M7");
+		assertEquals(order, ids(random1.getSendQueue()));
+
+		/* iteration continues after a removed message */
+		List<String> iterated = new ArrayList<String>();
+		for (Message m : random1.getSendQueue()) {
+			iterated.add(m.getId());
+			if (iterated.size() == 5) {
+				random1.remove(m.getId());
+				random1.remove(order.get(5));
+			}
+		}
+		order.remove(5);
+		assertEquals(order, iterated);
+		assertEquals(17, random1.size());
+	}
+
+	public void testCompareNotBuffered() {
+		MessageBuffer random = new MessageBuffer(new Random(1));
+		Message m1 = newMessage("M1", 1, 1);
+		Message m2 = newMessage("M2", 1, 2);
+		Message out1 = newMessage("X1", 1, 0);
+		Message out2 = newMessage("X2", 1, 0);
+		buffer.add(m1);
+		buffer.add(m2);
+		random.add(m1);
+		random.add(m2);
+
+		/* FIFO order works for any messages */
+		assertTrue(buffer.compareSendOrder(out1, m1) < 0);
+		assertTrue(buffer.compareSendOrder(m2, out2) > 0);
+		assertTrue(buffer.compareSendOrder(out1, out2) < 0);
+		assertEquals(0, buffer.compareSendOrder(out1, out1));
+
+		/* messages that are not in the random queue go after it */
+		assertTrue(random.compareSendOrder(m2, out1) < 0);
+		assertTrue(random.compareSendOrder(out1, m1) > 0);
+		assertTrue(random.compareSendOrder(out1, out2) < 0);
+
+		assertTrue(buffer.compareIterationOrder(out1, out2) < 0);
+		assertTrue(buffer.compareIterationOrder(out2, out1) > 0);
+		assertEquals(0, buffer.compareIterationOrder(out1, out1));
+		assertEquals(-buffer.compareIterationOrder(m1, out1),
+				buffer.compareIterationOrder(out1, m1));
+	}
+
+	public void testMessagesTo() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+
+		buffer.add(newMessage("M1", h1, 3));
+		buffer.add(newMessage("M2", h2, 2));
+		buffer.add(newMessage("M3", h1, 1));
+		buffer.add(newMessage("M4", h1, 4));
+
+		/* in the order of getMessages() */
+		assertEquals(idsTo(h1, buffer.getMessages()),
+				ids(buffer.getMessagesTo(h1)));
+		assertEquals("[M1, M3, M4]", ids(buffer.getMessagesTo(h1)).toString());
+		assertEquals("[M2]", ids(buffer.getMessagesTo(h2)).toString());
+		assertTrue(buffer.getMessagesTo(h3).isEmpty());
+		assertTrue(buffer.compareSendOrder(buffer.get("M3"),
+				buffer.get("M2")) < 0);
+
+		buffer.remove("M2");
+		buffer.remove("M1");
+		assertTrue(buffer.getMessagesTo(h2).isEmpty());
+		assertEquals("[M3, M4]", ids(buffer.getMessagesTo(h1)).toString());
+	}
+
+	public void testIterationOrder() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] hosts = {utils.createHost(), utils.createHost(),
+				utils.createHost()};
+		Random rng = new Random(1);
+		HashMap<String, Message> reference = new HashMap<String, Message>();
+
+		/* the buffer grows past a few hash map resizes, some messages are
+		 * removed, re-added and replaced */
+		for (int i=0; i<1000; i++) {
+			String id = "M" + rng.nextInt(400);
+			if (rng.nextInt(3) == 0) {
+				assertSame(reference.remove(id), buffer.remove(id));
+			}
+			else {
+				Message m = newMessage(id, hosts[rng.nextInt(hosts.length)],
+						rng.nextInt(20));
+				assertSame(reference.put(id, m), buffer.add(m));
+			}
+		}
+		assertTrue(buffer.size() > 200);
+		assertEquals(reference.size(), buffer.size());
+
+		/* iterated like a hash map of the same messages */
+		List<String> order = ids(buffer.getMessages());
+		assertEquals(ids(reference.values()), order);
+		for (DTNHost h : hosts) {
+			assertEquals(idsTo(h, buffer.getMessages()),
+					ids(buffer.getMessagesTo(h)));
+		}
+
+		/* same receive times are in the order of getMessages() */
+		Message previous = null;
+		for (Message m : buffer.getReceiveOrder()) {
+			if (previous != null) {
+				assertTrue(previous.getReceiveTime() <= m.getReceiveTime());
+				if (previous.getReceiveTime() == m.getReceiveTime()) {
+					assertTrue(order.indexOf(previous.getId()) <
+							order.indexOf(m.getId()));
+					assertTrue(buffer.compareIterationOrder(previous, m) < 0);
+				}
+			}
+			previous = m;
+		}
+	}
+
+	public void testExpiry() {
+		SimClock clock = SimClock.getInstance();
+		assertEquals(Double.MAX_VALUE, buffer.getNextExpiryTime());
+		buffer.add(newMessage("INF", 1, 0)); // infinite TTL
+
+		Random rng = new Random(1);
+		for (int i=0; i<200; i++) {
+			clock.setTime(i * 3);
+			Message m = newMessage("M" + i, 1, i * 3);
+			m.setTtl(1 + rng.nextInt(20));
+			buffer.add(m);
+		}
+		for (int i=0; i<200; i+=3) {
+			buffer.remove("M" + i);
+		}
+
+		clock.setTime(700);
+		List<Message> expired = buffer.getExpiredMessages(700);
+		double last = 0;
+		int nrofExpired = 0;
+		for (Message m : buffer.getMessages()) {
+			if (m.getTtl() <= 0) {
+				nrofExpired++;
+				assertTrue(expired.contains(m));
+			}
+		}
+		assertEquals(nrofExpired, expired.size());
+		for (Message m : expired) {
+			assertTrue(m.getExpiryTime() >= last);
+			last = m.getExpiryTime();
+		}
+		assertEquals(expired.get(0).getExpiryTime(),
+				buffer.getNextExpiryTime());
+
+		for (Message m : expired) {
+			buffer.remove(m.getId());
+		}
+		assertTrue(buffer.getExpiredMessages(700).isEmpty());
+		assertTrue(buffer.getNextExpiryTime() >= 700);
+		assertTrue(buffer.contains("INF"));
+	}
+
+	public void testTtlChanged() {
+		Message m1 = newMessage("M1", 1, 0);
+		Message m2 = newMessage("M2", 1, 0);
+		Message m3 = newMessage("M3", 1, 0); // infinite TTL
+		m1.setTtl(10);
+		m2.setTtl(20);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		assertEquals(m1.getExpiryTime(), buffer.getNextExpiryTime());
+
+		/* shorter TTLs are known after ttlChanged */
+		m2.setTtl(5);
+		buffer.ttlChanged(m2);
+		assertEquals(m2.getExpiryTime(), buffer.getNextExpiryTime());
+		m3.setTtl(2);
+		buffer.ttlChanged(m3);
+		assertEquals(m3.getExpiryTime(), buffer.getNextExpiryTime());
+		buffer.ttlChanged(newMessage("X1", 1, 0)); // not in the buffer
+
+		/* longer TTLs are noticed also without it */
+		m3.setTtl(Message.INFINITE_TTL);
+		m2.setTtl(30);
+		assertEquals(m1.getExpiryTime(), buffer.getNextExpiryTime());
+		m1.setTtl(40);
+		assertTrue(buffer.getExpiredMessages(m2.getExpiryTime()).isEmpty());
+		assertEquals("[M2]", ids(buffer.getExpiredMessages(
+				m1.getExpiryTime())).toString());
+		assertEquals(m2.getExpiryTime(), buffer.getNextExpiryTime());
+
+		buffer.remove("M2");
+		buffer.remove("M1");
+		assertEquals(Double.MAX_VALUE, buffer.getNextExpiryTime());
+	}
+
+	private Message newMessage(String id, DTNHost to, double receiveTime) {
+		Message m = new Message(null, to, id, 1);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	private Message newMessage(String id, int size, double receiveTime) {
+		Message m = new Message(null, null, id, size);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	private List<String> idsTo(DTNHost to, Iterable<Message> messages) {
+		List<String> ids = new ArrayList<String>();
+		for (Message m : messages) {
+			if (m.getTo() == to) {
+				ids.add(m.getId());
+			}
+		}
+		return ids;
+	}
+
+	private List<String> ids(Iterable<Message> messages) {
+		List<String> ids = new ArrayList<String>();
+		for (Message m : messages) {
+			ids.add(m.getId());
+		}
+		return ids;
+	}
+}
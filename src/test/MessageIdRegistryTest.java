@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import routing.util.BitSetIdRegistry;
+import routing.util.BloomFilterIdRegistry;
+import routing.util.MessageIdRegistry;
+import routing.util.TimeWindowIdRegistry;
+import core.SimClock;
+
+/**
+ * Tests for the message ID registries
+ */
+public class MessageIdRegistryTest extends TestCase {
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+	}
+
+	public void testBitSet() {
+		MessageIdRegistry r = new BitSetIdRegistry();
+		r.add(3);
+		r.add(1000);
+		clock.setTime(1e6);
+		assertTrue(r.contains(3));
+		assertTrue(r.contains(1000));
+		assertFalse(r.contains(0));
+		assertFalse(r.contains(999));
+		assertEquals("[3, 1000]", Arrays.toString(r.getIdIndexes()));
+	}
+
+	public void testTimeWindow() {
+		MessageIdRegistry r = new TimeWindowIdRegistry(100);
+		r.add(1);
+		clock.setTime(50);
+		r.add(2);
+		r.add(1); // doesn't extend the window of the first add
+		for (int i=10; i<50; i++) {
+			r.add(i);
+		}
+
+		clock.setTime(99);
+		assertTrue(r.contains(1));
+		assertTrue(r.contains(2));
+		assertFalse(r.contains(3));
+
+		clock.setTime(100);
+		assertFalse(r.contains(1));
+		assertTrue(r.contains(2));
+		assertTrue(r.contains(49));
+		int[] ids = r.getIdIndexes();
+		assertEquals(41, ids.length);
+		assertEquals(2, ids[0]);
+		assertEquals(49, ids[40]);
+
+		clock.setTime(150);
+		assertFalse(r.contains(2));
+		assertFalse(r.contains(49));
+		assertEquals(0, r.getIdIndexes().length);
+
+		r.add(1);
+		assertTrue(r.contains(1));
+		assertEquals("[1]", Arrays.toString(r.getIdIndexes()));
+	}
+
+	public void testTimeWindowFreesMemory() {
+		TimeWindowIdRegistry r = new TimeWindowIdRegistry(10);
+		for (int i=0; i<1000; i++) {
+			r.add(i);
+		}
+		int peak = r.getCapacity();
+		assertTrue(peak >= 1000);
+
+		/* only a few IDs per window after the peak */
+		for (int t=1; t<=5; t++) {
+			clock.setTime(t * 20);
+			r.add(1000 + t);
+		}
+		assertTrue(r.contains(1005));
+		assertFalse(r.contains(999));
+		assertTrue("Capacity not freed: " + r.getCapacity(),
+				r.getCapacity() < peak / 8);
+	}
+
+	public void testBloomFilter() {
+		BloomFilterIdRegistry r = new BloomFilterIdRegistry(1000, 0.01);
+		for (int i=0; i<2000; i+=2) {
+			r.add(i);
+		}
+
+		int falsePositives = 0;
+		for (int i=0; i<2000; i+=2) {
+			assertTrue(r.contains(i));
+			if (r.contains(i+1)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("Too many false positives: " + falsePositives,
+				falsePositives < 30);
+		assertTrue(r.getNrofBits() >= 9585);
+		assertNull(r.getIdIndexes());
+	}
+}
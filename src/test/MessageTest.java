@@ -4,6 +4,9 @@
  */
 package test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -60,5 +63,104 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicate() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h0 = utils.createHost();
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		msg = new Message(h0, h1, "M", 100);
+		msg.addProperty("foo", "value1");
+		msg.setAppID("app");
+		sc.advance(5);
+
+		Message r1 = msg.replicate();
+		r1.addNodeOnPath(h2);
+		Message r2 = r1.replicate();
+		r2.addNodeOnPath(h1);
+
+		assertEquals("M", r2.getId());
+		assertEquals(100, r2.getSize());
+		assertEquals(h0, r2.getFrom());
+		assertEquals(h1, r2.getTo());
+		assertEquals(10.0, r2.getCreationTime());
+		assertEquals("app", r2.getAppID());
+		assertTrue(msg.getUniqueId() != r1.getUniqueId());
+
+		/* paths of the replicates share the beginning but not the end */
+		assertEquals(Arrays.asList(h0), msg.getHops());
+		assertEquals(Arrays.asList(h0, h2), r1.getHops());
+		assertEquals(Arrays.asList(h0, h2, h1), r2.getHops());
+		assertEquals(0, msg.getHopCount());
+		assertEquals(2, r2.getHopCount());
+		assertEquals(h2, r2.getHops().get(1));
+		assertTrue(r2.getHops().contains(h2));
+		assertFalse(r1.getHops().contains(h1));
+
+		List<DTNHost> hops = r1.getHops();
+		r1.addNodeOnPath(h0);
+		assertEquals(2, hops.size()); // returned lists don't change
+		try {
+			hops.add(h1);
+			fail("Path was modified");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		/* properties and application id are copied on write */
+		r1.updateProperty("foo", "value2");
+		r2.addProperty("bar", "value3");
+		r2.setAppID("app2");
+		assertEquals("value1", msg.getProperty("foo"));
+		assertEquals("value2", r1.getProperty("foo"));
+		assertEquals("value1", r2.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+		assertNull(r1.getProperty("bar"));
+		assertEquals("value3", r2.getProperty("bar"));
+		assertEquals("app", msg.getAppID());
+		assertEquals("app2", r2.getAppID());
+	}
+
+	public void testIdIndex() {
+		Message.reset();
+		Message m1 = new Message(from, to, "M1", 100);
+		Message m2 = new Message(from, to, "M2", 100);
+		Message m1b = new Message(from, to, "M1", 200);
+
+		assertEquals(0, m1.getIdIndex());
+		assertEquals(1, m2.getIdIndex());
+		assertEquals(0, m1b.getIdIndex());
+		assertEquals(1, m2.replicate().getIdIndex());
+
+		m2.setAppID("app");
+		assertEquals(1, m2.getIdIndex());
+
+		assertEquals(0, Message.getIdIndex("M1"));
+		assertEquals(-1, Message.getIdIndex("M3"));
+		assertEquals("M2", Message.getId(1));
+		assertNull(Message.getId(2));
+		assertNull(Message.getId(-1));
+	}
+
+	public void testIdKeepsIndex() {
+		Message.reset();
+		Message m1 = new Message(from, to, "M1", 100);
+		Message m2 = new Message(from, to, "M2", 100);
+		assertEquals(0, m1.getIdIndex());
+		m2 = null;
+		System.gc();
+
+		/* the ID keeps its index when no message has it */
+		assertEquals(1, Message.getIdIndex("M2"));
+		m2 = new Message(from, to, "M2", 100);
+		assertEquals(1, m2.getIdIndex());
+		assertEquals(1, Message.getIdIndex(new String("M2")));
+		assertEquals(0, new Message(from, to, "M1", 100).getIdIndex());
+		assertEquals(2, new Message(from, to, "M3", 100).getIdIndex());
+
+		Message.reset();
+		assertEquals(-1, Message.getIdIndex("M1"));
+	}
+
 
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import core.Coord;
+import core.DTNHost;
+import core.SimClock;
+import core.SimError;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Benchmark for the parallel movement of {@link World} (see
+ * {@link World#PARALLEL_MOVEMENT_S}). Moves the same random waypoint hosts
+ * first sequentially and then in parallel, prints the time of the world
+ * updates of both, and checks that the hosts end up in the same
+ * locations.<BR>
+ * Usage: <CODE>java test.ParallelMovementBenchmark [nrof hosts]
+ * [nrof threads] [nrof rounds]</CODE>
+ */
+public class ParallelMovementBenchmark {
+	/** Default number of hosts */
+	private static final int DEFAULT_NROF_HOSTS = 50000;
+	/** Default number of world updates */
+	private static final int DEFAULT_NROF_ROUNDS = 500;
+	/** Update interval (seconds) */
+	private static final double UP_INTERVAL = 1.0;
+	/** How many times both modes are run */
+	private static final int NROF_REPEATS = 3;
+
+	public static void main(String[] args) {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		int nrofHosts = (args.length > 0 ? Integer.parseInt(args[0]) :
+			DEFAULT_NROF_HOSTS);
+		int nrofThreads = (args.length > 1 ? Integer.parseInt(args[1]) :
+			Runtime.getRuntime().availableProcessors());
+		int nrofRounds = (args.length > 2 ? Integer.parseInt(args[2]) :
+			DEFAULT_NROF_ROUNDS);
+
+		System.out.printf("%d hosts, %d rounds, %d thread(s), %d " +
+				"processor(s)%n", nrofHosts, nrofRounds, nrofThreads,
+				Runtime.getRuntime().availableProcessors());
+		for (int i=1; i<=NROF_REPEATS; i++) {
+			List<Coord> sequential = run("sequential", nrofHosts, nrofRounds,
+					0);
+			List<Coord> parallel = run("parallel", nrofHosts, nrofRounds,
+					nrofThreads);
+			if (!sequential.equals(parallel)) {
+				throw new SimError("Parallel movement gave different " +
+						"locations than the sequential movement");
+			}
+		}
+	}
+
+	/**
+	 * Creates the hosts and a world, updates the world and prints the time
+	 * the updates took
+	 * @param name Name of the mode for the output
+	 * @param nrofHosts How many hosts to create
+	 * @param nrofRounds How many times the world is updated
+	 * @param nrofThreads Number of movement threads or 0 for sequential
+	 * movement
+	 * @return Final locations of the hosts
+	 */
+	private static List<Coord> run(String name, int nrofHosts,
+			int nrofRounds, int nrofThreads) {
+		TestSettings ts = new TestSettings();
+		SimClock.reset();
+		MovementModel.reset();
+		DTNHost.reset();
+
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PARALLEL_MOVEMENT_S, "" + (nrofThreads > 0));
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.NROF_THREADS_S, "" + Math.max(nrofThreads, 1));
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.RANDOMIZE_UPDATES_S, "false");
+		ts.putSetting("rwp." + MovementModel.SPEED, "0.5, 1.5");
+		ts.putSetting("rwp." + MovementModel.WAIT_TIME, "0, 120");
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		MovementModel mmProto = new RandomWaypoint(new TestSettings("rwp"));
+		for (int i=0; i<nrofHosts; i++) {
+			utils.createHost(mmProto, null);
+		}
+
+		World w = new World(utils.getAllHosts(), 1000, 1000, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), false,
+				new ArrayList<EventQueue>());
+		long start = System.nanoTime();
+		try {
+			for (int i=0; i<nrofRounds; i++) {
+				w.update();
+			}
+		} finally {
+			w.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-10s: %.2fs (%.1f us/update)%n", name, seconds,
+				seconds * 1e6 / nrofRounds);
+
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost h : utils.getAllHosts()) {
+			locations.add(h.getLocation().clone());
+		}
+		return locations;
+	}
+}
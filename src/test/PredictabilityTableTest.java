@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.PredictabilityTable;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the PredictabilityTable
+ */
+public class PredictabilityTableTest extends TestCase {
+	private static final double GAMMA = 0.9;
+	private static final double UNIT = 10;
+
+	private SimClock clock;
+	private PredictabilityTable table;
+	private DTNHost h1;
+	private DTNHost h2;
+	private DTNHost h3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		table = new PredictabilityTable(GAMMA, UNIT);
+
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+	}
+
+	public void testSetAndGet() {
+		assertEquals(0.0, table.get(h1));
+		table.set(h2, 0.5);
+		table.set(h1, 0.25);
+		table.set(h2, 0.75);
+
+		assertEquals(0.25, table.get(h1));
+		assertEquals(0.75, table.get(h2));
+		assertEquals(0.0, table.get(h3));
+
+		/* entries are in creation order */
+		assertEquals(2, table.size());
+		assertSame(h2, table.getHostAt(0));
+		assertSame(h1, table.getHostAt(1));
+		assertEquals(0.75, table.getValueAt(0));
+	}
+
+	public void testAging() {
+		table.set(h1, 0.5);
+		clock.advance(UNIT * 2);
+		double expected = 0.5 * Math.pow(GAMMA, 2);
+		assertEquals(expected, table.get(h1));
+		assertEquals(expected, table.getValueAt(0));
+
+		clock.advance(UNIT / 2);
+		expected = expected * Math.pow(GAMMA, 0.5);
+		assertEquals(expected, table.get(h1));
+
+		/* setting a value resets the aging of the entry */
+		table.set(h1, 0.5);
+		assertEquals(0.5, table.get(h1));
+	}
+
+	public void testSetGamma() {
+		table.set(h1, 0.5);
+		clock.advance(UNIT);
+		table.setGamma(0.5);
+		clock.advance(UNIT);
+
+		assertEquals(0.5 * GAMMA * 0.5, table.get(h1), 1e-12);
+	}
+}
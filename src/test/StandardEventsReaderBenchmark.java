@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ConnectionEvent;
+import input.ExternalEvent;
+import input.ExternalEventsReader;
+import input.MessageCreateEvent;
+import input.MessageDeleteEvent;
+import input.MessageRelayEvent;
+import input.StandardEventsReader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import core.SimError;
+
+/**
+ * Throughput benchmark for {@link StandardEventsReader}. Creates a trace of
+ * mixed connection and message events and reads it a few times with both
+ * the streaming reader and the earlier Scanner based reader
+ * ({@link ScannerEventsReader}), so that the two can be compared on the
+ * same trace in the same run.<BR>
+ * Usage: <CODE>java test.StandardEventsReaderBenchmark [nrof events]
+ * [trace file]</CODE><BR>
+ * If the trace file exists, it is read instead of creating a new trace.
+ */
+public class StandardEventsReaderBenchmark {
+	/** Default number of events in the created trace */
+	private static final int DEFAULT_NROF_EVENTS = 1000000;
+	/** How many times the trace is read */
+	private static final int NROF_ROUNDS = 3;
+	/** How many events are requested from the reader at a time */
+	private static final int NROF_PRELOAD = 500;
+
+	public static void main(String[] args) throws IOException {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		int nrofEvents = (args.length > 0 ? Integer.parseInt(args[0]) :
+			DEFAULT_NROF_EVENTS);
+		File trace;
+		if (args.length > 1) {
+			trace = new File(args[1]);
+		}
+		else {
+			trace = File.createTempFile("serBenchmark", ".txt");
+			trace.deleteOnExit();
+		}
+		if (!trace.exists() || trace.length() == 0) {
+			createTrace(trace, nrofEvents);
+		}
+
+		for (int round = 1; round <= NROF_ROUNDS; round++) {
+			long nrofStd = benchmark("streaming", round,
+					new StandardEventsReader(trace), trace);
+			long nrofScanner = benchmark("Scanner", round,
+					new ScannerEventsReader(trace), trace);
+			if (nrofStd != nrofScanner) {
+				throw new SimError("Readers disagree on the number of " +
+						"events: " + nrofStd + " vs. " + nrofScanner);
+			}
+		}
+	}
+
+	/**
+	 * Reads all events of the trace and prints the throughput
+	 * @param name Name of the reader for the output
+	 * @param round Number of the round
+	 * @param reader The reader to read the trace with
+	 * @param trace The trace file (for its size)
+	 * @return Number of events read
+	 */
+	private static long benchmark(String name, int round,
+			ExternalEventsReader reader, File trace) {
+		long start = System.nanoTime();
+		long nrofRead = 0;
+		List<ExternalEvent> events;
+		while (!(events = reader.readEvents(NROF_PRELOAD)).isEmpty()) {
+			nrofRead += events.size();
+		}
+		reader.close();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Round %d, %-9s: %d events in %.2fs " +
+				"(%.0f events/s, %.1f MB/s)%n", round, name, nrofRead,
+				seconds, nrofRead / seconds, trace.length() / 1e6 / seconds);
+		return nrofRead;
+	}
+
+	/**
+	 * Writes a trace of random events
+	 * @param file The file to write to
+	 * @param nrofEvents Number of events to write
+	 * @throws IOException if writing failed
+	 */
+	private static void createTrace(File file, int nrofEvents)
+			throws IOException {
+		Random rng = new Random(0);
+		PrintWriter out = new PrintWriter(new BufferedWriter(
+				new FileWriter(file)));
+		double time = 0;
+		for (int i=0; i<nrofEvents; i++) {
+			time += rng.nextDouble();
+			String hosts = "p" + rng.nextInt(1000) + "\tp" + rng.nextInt(1000);
+			String t = String.format("%.3f", time);
+			switch (rng.nextInt(4)) {
+			case 0:
+				out.println(t + "\tC\tM" + i + "\t" + hosts + "\t" +
+						(1 + rng.nextInt(1000)) + "k");
+				break;
+			case 1:
+				out.println(t + "\tS\tM" + i + "\t" + hosts);
+				break;
+			default:
+				out.println(t + "\tCONN\t" + hosts + "\t" +
+						(rng.nextBoolean() ? "up" : "down"));
+			}
+		}
+		out.close();
+	}
+
+	/**
+	 * The standard events reader as it was before the streaming tokenizer:
+	 * a Scanner and regular expressions for every line. Kept here only as
+	 * the baseline of the benchmark.
+	 */
+	private static class ScannerEventsReader implements ExternalEventsReader {
+		private BufferedReader reader;
+
+		public ScannerEventsReader(File eventsFile) {
+			try {
+				this.reader = new BufferedReader(new FileReader(eventsFile));
+			} catch (FileNotFoundException e) {
+				throw new SimError(e.getMessage(),e);
+			}
+		}
+
+		public List<ExternalEvent> readEvents(int nrof) {
+			ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+			int eventsRead = 0;
+			// skip empty and comment lines
+			Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
+
+			String line = readLine();
+			while (eventsRead < nrof && line != null) {
+				Scanner lineScan = new Scanner(line);
+				if (skipPattern.matcher(line).matches()) {
+					line = readLine();
+					continue;
+				}
+
+				try {
+					double time = lineScan.nextDouble();
+					String action = lineScan.next();
+
+					if (action.equals(StandardEventsReader.DROP) ||
+							action.equals(StandardEventsReader.REMOVE)) {
+						String msgId = lineScan.next();
+						int hostAddr = getHostAddress(lineScan.next());
+						events.add(new MessageDeleteEvent(hostAddr, msgId,
+								time, action.equals(StandardEventsReader.DROP)));
+					}
+					else if (action.equals(StandardEventsReader.CONNECTION)) {
+						int hostAddr = getHostAddress(lineScan.next());
+						int host2Addr = getHostAddress(lineScan.next());
+						String connEventType = lineScan.next();
+						String interfaceId = null;
+						if (lineScan.hasNext()) {
+							interfaceId = lineScan.next();
+						}
+						boolean isUp = connEventType.equalsIgnoreCase(
+								StandardEventsReader.CONNECTION_UP);
+						events.add(new ConnectionEvent(hostAddr, host2Addr,
+								interfaceId, isUp, time));
+					}
+					else {
+						String msgId = lineScan.next();
+						int hostAddr = getHostAddress(lineScan.next());
+						int host2Addr = getHostAddress(lineScan.next());
+
+						if (action.equals(StandardEventsReader.CREATE)) {
+							int size = lineScan.hasNextInt() ?
+									lineScan.nextInt() :
+									convertToInteger(lineScan.next());
+							int respSize = 0;
+							if (lineScan.hasNextInt()) {
+								respSize = lineScan.nextInt();
+							}
+							else if (lineScan.hasNext()) {
+								respSize = convertToInteger(lineScan.next());
+							}
+							events.add(new MessageCreateEvent(hostAddr,
+									host2Addr, msgId, size, respSize, time));
+						}
+						else {
+							int stage;
+							if (action.equals(StandardEventsReader.SEND)) {
+								stage = MessageRelayEvent.SENDING;
+							}
+							else if (action.equals(
+									StandardEventsReader.DELIVERED)) {
+								stage = MessageRelayEvent.TRANSFERRED;
+							}
+							else {
+								stage = MessageRelayEvent.ABORTED;
+							}
+							events.add(new MessageRelayEvent(hostAddr,
+									host2Addr, msgId, time, stage));
+						}
+					}
+					if (lineScan.hasNextLine()) {
+						lineScan.nextLine();
+					}
+				} catch (RuntimeException e) {
+					throw new SimError("Can't parse external event " +
+							(eventsRead+1) + " from '" + line + "'", e);
+				}
+				eventsRead++;
+				if (eventsRead < nrof) {
+					line = readLine();
+				}
+			}
+
+			return events;
+		}
+
+		private String readLine() {
+			try {
+				return this.reader.readLine();
+			} catch (IOException e) {
+				throw new SimError("Reading from external event file failed.");
+			}
+		}
+
+		private int getHostAddress(String hostId) {
+			String addressPart;
+			if (hostId.matches("^\\d+$")) {
+				addressPart = hostId;
+			}
+			else if (hostId.matches("^\\D+\\d+$")) {
+				String [] parts = hostId.split("\\D");
+				addressPart = parts[parts.length-1];
+			}
+			else {
+				throw new SimError("Invalid host ID '" + hostId + "'");
+			}
+			return Integer.parseInt(addressPart);
+		}
+
+		private int convertToInteger(String str) {
+			String dataUnit = str.replaceAll("[\\d.]","").trim();
+			int number = Integer.parseInt(str.replaceAll("[^\\d.]",""));
+			if (dataUnit.equals("k")) {
+				return number * 1000;
+			}
+			else if (dataUnit.equals("M")) {
+				return number * 1000000;
+			}
+			else if (dataUnit.equals("G")) {
+				return number * 1000000000;
+			}
+			else if (dataUnit.equals("kiB")) {
+				return number * 1024;
+			}
+			else if (dataUnit.equals("MiB")) {
+				return number * 1048576;
+			}
+			else if (dataUnit.equals("GiB")) {
+				return number * 1073741824;
+			}
+			throw new NumberFormatException("Invalid size [" + str + "]");
+		}
+
+		public void close() {
+			try {
+				this.reader.close();
+			} catch (IOException e) {}
+		}
+	}
+}
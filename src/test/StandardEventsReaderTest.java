@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalEvent;
+import input.StandardEventsReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.SimError;
+
+/**
+ * Tests for the StandardEventsReader's parser
+ */
+public class StandardEventsReaderTest extends TestCase {
+
+	private File tempFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		tempFile = File.createTempFile("serTest", ".tmp");
+		tempFile.deleteOnExit();
+	}
+
+	private StandardEventsReader readerFor(String contents)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(tempFile);
+		out.write(contents.getBytes("UTF-8"));
+		out.close();
+		return new StandardEventsReader(tempFile);
+	}
+
+	public void testEvents() throws IOException {
+		StandardEventsReader r = readerFor(
+				"1.5 C M1 p1 p2 100\n" +
+				"# comment\n" +
+				"2\tS\tM1\tp1\tc2\r\n" +
+				"\t \n" +
+				"3.25 DE M1 1 2\r" +
+				"4 A M1 host_x10 host_y20\n" +
+				"5 DR * p3\n" +
+				"6 R M2 p4\n" +
+				"7 CONN p1 p2 up\n" +
+				"8 CONN 1 2 DOWN wlan\n" +
+				"9.125 C M3 p1 p2 10k 2kiB"); // no newline at the end
+		List<ExternalEvent> events = r.readEvents(100);
+		r.close();
+
+		assertEquals(9, events.size());
+		assertEquals("MSG @1.5 M1 [1->2] size:100 CREATE",
+				events.get(0).toString());
+		assertEquals("MSG @2.0 M1 [1->2] SENDING", events.get(1).toString());
+		assertEquals("MSG @3.25 M1 [1->2] TRANSFERRED",
+				events.get(2).toString());
+		assertEquals("MSG @4.0 M1 [10->20] ABORTED",
+				events.get(3).toString());
+		assertEquals("MSG @5.0 * [3] DELETE", events.get(4).toString());
+		assertEquals("MSG @6.0 M2 [4] DELETE", events.get(5).toString());
+		assertEquals("CONN up @7.0 1<->2", events.get(6).toString());
+		assertEquals("CONN down @8.0 1<->2", events.get(7).toString());
+		assertEquals("MSG @9.125 M3 [1->2] size:10000 CREATE",
+				events.get(8).toString());
+	}
+
+	public void testUnits() throws IOException {
+		StandardEventsReader r = readerFor(
+				"1 C M1 p1 p2 1k\n" +
+				"1 C M2 p1 p2 2M\n" +
+				"1 C M3 p1 p2 1G\n" +
+				"1 C M4 p1 p2 3kiB\n" +
+				"1 C M5 p1 p2 1MiB\n" +
+				"1 C M6 p1 p2 1GiB\n");
+		List<ExternalEvent> events = r.readEvents(100);
+		r.close();
+
+		int[] sizes = {1000, 2000000, 1000000000, 3072, 1048576, 1073741824};
+		assertEquals(sizes.length, events.size());
+		for (int i=0; i<sizes.length; i++) {
+			assertTrue(events.get(i).toString().endsWith(
+					" size:" + sizes[i] + " CREATE"));
+		}
+	}
+
+	public void testReadInParts() throws IOException {
+		// more than the reader's buffer holds
+		PrintWriter out = new PrintWriter(tempFile);
+		int nrofEvents = 100000;
+		for (int i=0; i<nrofEvents; i++) {
+			out.println(i + ".5 CONN p" + i + " p" + (i+1) + " up");
+		}
+		out.close();
+
+		StandardEventsReader r = new StandardEventsReader(tempFile);
+		int nrofRead = 0;
+		List<ExternalEvent> events;
+		while (!(events = r.readEvents(333)).isEmpty()) {
+			for (ExternalEvent ee : events) {
+				assertEquals(nrofRead + 0.5, ee.getTime());
+				assertEquals("CONN up @" + (nrofRead + 0.5) + " " + nrofRead +
+						"<->" + (nrofRead + 1), ee.toString());
+				nrofRead++;
+			}
+		}
+		r.close();
+		assertEquals(nrofEvents, nrofRead);
+	}
+
+	public void testInvalidEvents() throws IOException {
+		String[] invalid = {"1 C M1 p1", "1 X M1 p1 p2", "1 S M1 p1p 2",
+				"1 CONN p1 p2 sideways", "x S M1 p1 p2", "1 C M1 p1 p2 1kB"};
+		for (String line : invalid) {
+			StandardEventsReader r = readerFor(line);
+			try {
+				r.readEvents(1);
+				fail("Invalid event '" + line + "' was accepted");
+			} catch (SimError e) {
+				// expected
+			} finally {
+				r.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.ExternalEvent;
+import interfaces.ConnectivityOptimizer;
+import interfaces.SimpleBroadcastInterface;
+import interfaces.SweepConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import routing.PassiveRouter;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the SweepConnectivityGrid
+ */
+public class SweepConnectivityGridTest extends TestCase {
+	private static final double RANGE = 30;
+	private static final int NROF_HOSTS = 300;
+	private static final double UP_INTERVAL = 10;
+
+	private TestSettings ts;
+	private TestUtils utils;
+	private List<NetworkInterface> interfaces;
+	private SweepConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityOptimizer.OPTIMIZER_S,
+				ConnectivityOptimizer.SWEEP_OPTIMIZER);
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(TestUtils.IFACE_NS + "." +
+				NetworkInterface.TRANSMIT_SPEED_S, "1");
+		SweepConnectivityGrid.reset();
+
+		utils = new TestUtils(null, null, ts);
+		interfaces = new ArrayList<NetworkInterface>();
+		Random rng = new Random(1);
+		for (int i=0; i<NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(new Coord(rng.nextDouble() * 999,
+					rng.nextDouble() * 999));
+			interfaces.add(h.getInterface(1));
+		}
+
+		grid = SweepConnectivityGrid.SweepConnectivityGridFactory(
+				TestUtils.IFACE_NS.hashCode(), RANGE);
+	}
+
+	public void testNearInterfacesAreWithinRange() {
+		checkAgainstAllPairs();
+	}
+
+	public void testLocationsAreUpdatedAfterMove() {
+		checkAgainstAllPairs();
+
+		/* move all hosts -> new pairs are found after the world tells
+		 * that the hosts have moved */
+		Random rng = new Random(2);
+		for (NetworkInterface ni : interfaces) {
+			ni.getHost().setLocation(new Coord(rng.nextDouble() * 999,
+					rng.nextDouble() * 999));
+		}
+		SimClock.getInstance().advance(1);
+		grid.hostsMoved(1);
+		checkAgainstAllPairs();
+	}
+
+	public void testParallelSweep() {
+		List<List<NetworkInterface>> sequential = nearInterfaces();
+
+		/* the pairs of a parallel sweep are in the same order */
+		SimClock.getInstance().advance(1);
+		grid.hostsMoved(1);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			grid.updateLocations(pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(sequential, nearInterfaces());
+		checkAgainstAllPairs();
+	}
+
+	public void testEventAtUpdateTime() {
+		SweepConnectivityGrid.reset();
+		DTNHost.reset();
+		final List<Double> upTimes = new ArrayList<Double>();
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				upTimes.add(SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {}
+		});
+
+		/* out of range at 0.0, within range after the first move */
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(createMovingHost(new Coord(0, 100), new Coord(1000, 100),
+				2, cl));
+		hosts.add(createMovingHost(new Coord(45, 100), null, 0, cl));
+
+		/* the hosts are updated after the event before they are moved,
+		 * and again after the move at the same simulation time */
+		final List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new ExternalEvent(UP_INTERVAL));
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new EventQueue() {
+			public ExternalEvent nextEvent() {
+				return events.remove(0);
+			}
+			public double nextEventsTime() {
+				return events.isEmpty() ? Double.MAX_VALUE :
+					events.get(0).getTime();
+			}
+		});
+
+		World world = new World(hosts, 1000, 1000, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true, queues);
+		world.warmupMovementModel(0);
+		world.update();
+
+		assertEquals(UP_INTERVAL, SimClock.getTime());
+		assertEquals(1, upTimes.size());
+		assertEquals(UP_INTERVAL, upTimes.get(0));
+	}
+
+	/**
+	 * Creates a host with a simple broadcast interface that moves once
+	 * along a line (or stays still)
+	 * @param from Start location
+	 * @param to Destination (or null for stationary host)
+	 * @param speed Speed of the movement
+	 * @param cl Connection listeners of the interface
+	 * @return The new host
+	 */
+	private DTNHost createMovingHost(Coord from, Coord to, double speed,
+			List<ConnectionListener> cl) {
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		NetworkInterface ni = new SimpleBroadcastInterface(ts);
+		ts.restoreNameSpace();
+		ni.setClisteners(cl);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+
+		return new DTNHost(null, null, "h", li, new ModuleCommunicationBus(),
+				new LineMovement(from, to, speed), new PassiveRouter(ts));
+	}
+
+	public void testIsWithinRange() {
+		int nrofPairs = 0;
+		for (NetworkInterface ni : interfaces) {
+			for (NetworkInterface other : interfaces) {
+				if (other == ni) {
+					continue;
+				}
+				double distance = ni.getLocation().distance(
+						other.getLocation());
+				assertEquals(distance <= RANGE,
+						grid.isWithinRange(ni, other, RANGE));
+				/* a range that differs from the one of the sweep */
+				assertEquals(distance <= RANGE / 2,
+						grid.isWithinRange(ni, other, RANGE / 2));
+				assertFalse(grid.isWithinRange(ni, other, 0));
+				if (distance <= RANGE) {
+					nrofPairs++;
+				}
+			}
+		}
+		assertTrue("Too few pairs for a meaningful test", nrofPairs > 100);
+	}
+
+	public void testRemoveInterface() {
+		NetworkInterface removed = interfaces.remove(0);
+		grid.removeInterface(removed);
+		assertEquals(NROF_HOSTS - 1, grid.getAllInterfaces().size());
+		assertEquals(0, grid.getNearInterfaces(removed).size());
+		checkAgainstAllPairs();
+	}
+
+	/**
+	 * Returns the near interfaces of all interfaces in the grid's order
+	 * @return Lists of near interfaces in the order of the interfaces
+	 */
+	private List<List<NetworkInterface>> nearInterfaces() {
+		List<List<NetworkInterface>> near =
+			new ArrayList<List<NetworkInterface>>();
+		for (NetworkInterface ni : interfaces) {
+			near.add(new ArrayList<NetworkInterface>(
+					grid.getNearInterfaces(ni)));
+		}
+		return near;
+	}
+
+	/**
+	 * Checks that near interfaces of all interfaces are exactly the ones
+	 * within range (not including the interface itself)
+	 */
+	private void checkAgainstAllPairs() {
+		int nrofPairs = 0;
+		for (NetworkInterface ni : interfaces) {
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni);
+			int expected = 0;
+			for (NetworkInterface other : interfaces) {
+				if (other == ni) {
+					continue;
+				}
+				boolean inRange = ni.getLocation().distance(
+						other.getLocation()) <= RANGE;
+				assertEquals(inRange, near.contains(other));
+				if (inRange) {
+					expected++;
+				}
+			}
+			assertEquals(expected, near.size());
+			nrofPairs += expected;
+		}
+		assertTrue("Too few pairs for a meaningful test", nrofPairs > 100);
+	}
+}
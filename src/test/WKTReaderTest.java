@@ -4,6 +4,7 @@
  */
 package test;
 
+import input.BinaryMapReader;
 import input.WKTMapReader;
 
 import java.io.File;
@@ -12,7 +13,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
@@ -237,6 +240,59 @@ public class WKTReaderTest extends TestCase {
 		assertFalse(map.getNodeByCoord(n11c).isType(2));
 	}
 
+	public void testBinaryMapFile() throws Exception {
+		File wktFile1 = File.createTempFile("WKTReaderTest","tmp");
+		File wktFile2 = File.createTempFile("WKTReaderTest","tmp");
+		File binFile = File.createTempFile("WKTReaderTest",
+				BinaryMapReader.BINARY_EXT);
+		wktFile1.deleteOnExit();
+		wktFile2.deleteOnExit();
+		binFile.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(wktFile1);
+		pw.println(TST_TOPOLOGY);
+		pw.close();
+		pw = new PrintWriter(wktFile2);
+		pw.println(ADD_TOPOLOGY);
+		pw.close();
+
+		List<String> sources = new ArrayList<String>();
+		sources.add(wktFile1.getPath());
+		sources.add(wktFile2.getPath());
+		BinaryMapReader.storeToBinaryFile(binFile.getPath(), sources);
+		binFile.setLastModified(wktFile2.lastModified() + 2000);
+
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(wktFile1, 1);
+		reader.addPaths(wktFile2, 2);
+		List<MapNode> wktNodes = reader.getMap().getNodes();
+		List<MapNode> binNodes = BinaryMapReader.readMap(binFile).getNodes();
+
+		// same nodes, types and neighbors in the same order
+		assertEquals(wktNodes.size(), binNodes.size());
+		for (int i=0; i<wktNodes.size(); i++) {
+			MapNode wn = wktNodes.get(i);
+			MapNode bn = binNodes.get(i);
+			assertEquals(wn.getLocation(), bn.getLocation());
+			assertEquals(wn.isType(1), bn.isType(1));
+			assertEquals(wn.isType(2), bn.isType(2));
+			assertEquals(wn.getNeighbors().size(), bn.getNeighbors().size());
+			for (int j=0; j<wn.getNeighbors().size(); j++) {
+				assertEquals(wn.getNeighbors().get(j).getLocation(),
+						bn.getNeighbors().get(j).getLocation());
+			}
+		}
+
+		assertTrue(BinaryMapReader.isUpToDate(binFile, sources));
+		assertFalse(BinaryMapReader.isUpToDate(binFile,
+				sources.subList(0, 1)));
+		assertFalse(BinaryMapReader.isUpToDate(wktFile1, sources));
+
+		// modified source file -> binary file is out of date
+		wktFile2.setLastModified(binFile.lastModified() + 2000);
+		assertFalse(BinaryMapReader.isUpToDate(binFile, sources));
+	}
+
 	private void basicNodesTests(WKTMapReader reader) {
 		Collection<MapNode> col = reader.getNodes();
 
@@ -5,12 +5,25 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.ActiveRouter;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.CBRConnection;
+import core.Coord;
 import core.DTNHost;
+import core.Message;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
@@ -25,6 +38,8 @@ import core.World;
 public class WorldTest extends TestCase {
 	/* for rounding errors with SimClock */
 	private static final double TIME_DELTA = 0.00001;
+	/* update interval that is not a multiple of the TTL check interval */
+	private static final double TTL_TEST_INTERVAL = 25;
 	private World world;
 	private boolean simulateConnections = true;
 	private int worldSizeX = 100;
@@ -59,6 +74,14 @@ public class WorldTest extends TestCase {
 				ts.getExternalEvents() );
 	}
 
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		this.world.shutdown();
+		SimClock.reset();
+		MovementModel.reset();
+		DTNHost.reset();
+	}
+
 	public void testUpdate() {
 		double endTime = 1000;
 		int nrofRounds = (int)(endTime/upInterval);
@@ -102,6 +125,340 @@ public class WorldTest extends TestCase {
 	}
 
 
+	public void testParallelMovement() {
+		final int nrofHosts = 600;
+		final int nrofRounds = 500;
+		List<Coord> sequential = moveHosts(nrofHosts, nrofRounds, false);
+		List<Coord> parallel = moveHosts(nrofHosts, nrofRounds, true);
+
+		assertEquals(nrofHosts, parallel.size());
+		for (int i=0; i<nrofHosts; i++) {
+			/* locations must be exactly the same */
+			assertEquals(sequential.get(i), parallel.get(i));
+			assertEquals(sequential.get(i).getX(), parallel.get(i).getX(), 0);
+			assertEquals(sequential.get(i).getY(), parallel.get(i).getY(), 0);
+		}
+	}
+
+	public void testUpdateAffectedHostsOnly() {
+		SimClock.reset();
+		DTNHost.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.UPDATE_AFFECTED_ONLY_S, "true");
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<5; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new TestInterface(ts));
+			hosts.add(new TestDTNHost(li, new ModuleCommunicationBus(), ts));
+		}
+
+		final List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new HostEvent(0.12, 3));
+		events.add(new HostEvent(0.14, 3));
+		events.add(new ExternalEvent(0.16)); // refers to no hosts
+		events.add(new HostEvent(0.18, 1));
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new EventQueue() {
+			public ExternalEvent nextEvent() {
+				return events.remove(0);
+			}
+			public double nextEventsTime() {
+				return events.isEmpty() ? Double.MAX_VALUE :
+					events.get(0).getTime();
+			}
+		});
+
+		World w = new World(hosts, worldSizeX, worldSizeY, upInterval,
+				new ArrayList<UpdateListener>(), false, queues);
+		assertNotNull(w.getAffectedHostsListener());
+		w.update();
+		w.update();
+
+		/* two interval updates, one full update after the event that
+		 * didn't refer to hosts, and the updates after host events */
+		int[] expected = {3, 4, 3, 5, 3};
+		for (int i=0; i<hosts.size(); i++) {
+			assertEquals("host " + i, expected[i],
+					((TestDTNHost)hosts.get(i)).nrofUpdate);
+		}
+	}
+
+	public void testTransferDoneEvents() {
+		/* the transfer starts at the first update (10.0) and lasts 1.5 s */
+		assertEquals(20.0, transferDoneTime(false, false), TIME_DELTA);
+		assertEquals(11.5, transferDoneTime(true, false), TIME_DELTA);
+		CBRConnection.reset();
+	}
+
+	public void testAbortedTransferDoneEvent() {
+		/* the event of the aborted transfer (11.5) doesn't update the hosts,
+		 * so the transfer is started again at the next update (20.0) */
+		assertEquals(21.5, transferDoneTime(true, true), TIME_DELTA);
+		CBRConnection.reset();
+	}
+
+	/**
+	 * Transfers a message between two hosts and returns the time when the
+	 * transfer was finalized
+	 * @param transferDoneEvents Are transfer done events used
+	 * @param abortFirst Is the first transfer aborted right after it has
+	 * started
+	 * @return The time when the transfer was finalized
+	 */
+	private double transferDoneTime(boolean transferDoneEvents,
+			boolean abortFirst) {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.TRANSFER_DONE_EVENTS_S, "" + transferDoneEvents);
+		ts.putSetting(MessageRouter.B_SIZE_S, "100");
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "10");
+
+		final List<Double> doneTimes = new ArrayList<Double>();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new MessageChecker() {
+			@Override
+			public void messageTransferred(Message m, DTNHost from,
+					DTNHost to, boolean firstDelivery) {
+				doneTimes.add(SimClock.getTime());
+			}
+		});
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		DTNHost h0 = utils.createHost();
+		DTNHost h1 = utils.createHost();
+
+		World w = new World(utils.getAllHosts(), worldSizeX, worldSizeY, 10,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		h0.connect(h1);
+		h0.createNewMessage(new Message(h0, h1, "M1", 15));
+		w.update();
+		if (abortFirst) {
+			h0.getConnections().get(0).abortTransfer();
+		}
+		for (int i=0; i<3 && doneTimes.isEmpty(); i++) {
+			w.update();
+		}
+
+		assertEquals(1, doneTimes.size());
+		return doneTimes.get(0);
+	}
+
+	public void testTtlExpiryEvents() {
+		/* the message is created at 0.0 and its TTL runs out after 60.0 */
+		assertEquals(120.0, ttlExpiryTime(false), TIME_DELTA);
+		assertEquals(60.0, ttlExpiryTime(true), TIME_DELTA);
+		ActiveRouter.reset();
+	}
+
+	/**
+	 * Creates a message with a two minute TTL and returns the time when
+	 * the message was dropped
+	 * @param ttlExpiryEvents Are TTL expiry events used
+	 * @return The time when the message was dropped
+	 */
+	private double ttlExpiryTime(boolean ttlExpiryEvents) {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.TTL_EXPIRY_EVENTS_S, "" + ttlExpiryEvents);
+		ts.putSetting(MessageRouter.MSG_TTL_S, "2");
+		EpidemicRouter routerProto = new EpidemicRouter(ts);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "10");
+
+		final List<Double> dropTimes = new ArrayList<Double>();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new MessageChecker() {
+			@Override
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {
+				dropTimes.add(SimClock.getTime());
+			}
+		});
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(routerProto);
+		DTNHost h0 = utils.createHost();
+		DTNHost h1 = utils.createHost();
+
+		World w = new World(utils.getAllHosts(), worldSizeX, worldSizeY, 10,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		h0.createNewMessage(new Message(h0, h1, "M1", 15));
+		for (int i=0; i<15; i++) {
+			w.update();
+		}
+
+		assertEquals(1, dropTimes.size());
+		return dropTimes.get(0);
+	}
+
+	public void testUpdateAffectedHostsOnlyWithTtl() {
+		List<String> allUpdated = ttlDrops(false);
+		List<String> affectedUpdated = ttlDrops(true);
+
+		assertEquals(allUpdated, affectedUpdated);
+		assertTrue(allUpdated.size() > 10);
+		/* the host that no event refers to drops its message at its TTL
+		 * check after the first event, not at the next update interval */
+		for (String drop : allUpdated) {
+			if (drop.endsWith(" M5")) {
+				double time = Double.parseDouble(drop.split(" ")[0]);
+				assertTrue(time > 60 && time % TTL_TEST_INTERVAL != 0);
+			}
+		}
+	}
+
+	/**
+	 * Creates messages with a two minute TTL with events between the update
+	 * intervals and returns the drops of the messages
+	 * @param updateAffectedOnly Are only the affected hosts updated after
+	 * events
+	 * @return The drops as "time host message" strings
+	 */
+	private List<String> ttlDrops(boolean updateAffectedOnly) {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.UPDATE_AFFECTED_ONLY_S, "" + updateAffectedOnly);
+		ts.putSetting(MessageRouter.MSG_TTL_S, "2");
+		EpidemicRouter routerProto = new EpidemicRouter(ts);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "10");
+
+		final List<String> drops = new ArrayList<String>();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(new MessageChecker() {
+			@Override
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {
+				drops.add(SimClock.getTime() + " " + where + " " + m.getId());
+			}
+		});
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(routerProto);
+		for (int i=0; i<6; i++) {
+			utils.createHost(new Coord(i * 10, 0));
+		}
+
+		/* hosts 0-4 create messages at random times, no event refers to
+		 * host 5 */
+		Random rng = new Random(1);
+		List<Double> times = new ArrayList<Double>();
+		for (int i=0; i<40; i++) {
+			times.add(rng.nextDouble() * 600);
+		}
+		Collections.sort(times);
+		final List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		for (int i=0; i<times.size(); i++) {
+			int from = rng.nextInt(5);
+			events.add(new MessageCreateEvent(from, (from + 1) % 5,
+					"E" + i, 10, 0, times.get(i)));
+		}
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new EventQueue() {
+			public ExternalEvent nextEvent() {
+				return events.remove(0);
+			}
+			public double nextEventsTime() {
+				return events.isEmpty() ? Double.MAX_VALUE :
+					events.get(0).getTime();
+			}
+		});
+
+		DTNHost h5 = utils.getAllHosts().get(5);
+		h5.createNewMessage(new Message(h5, utils.getAllHosts().get(0),
+				"M5", 10));
+		World w = new World(utils.getAllHosts(), worldSizeX, worldSizeY,
+				TTL_TEST_INTERVAL, new ArrayList<UpdateListener>(), false,
+				queues);
+		if (updateAffectedOnly) {
+			ml.add(w.getAffectedHostsListener());
+		}
+		for (int i=0; i<32; i++) {
+			w.update();
+		}
+
+		return drops;
+	}
+
+	/** Event that refers to one host */
+	@SuppressWarnings("serial")
+	private static class HostEvent extends ExternalEvent {
+		private int address;
+
+		public HostEvent(double time, int address) {
+			super(time);
+			this.address = address;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			world.getNodeByAddress(address);
+		}
+	}
+
+	/**
+	 * Creates a world with random waypoint hosts and moves the hosts
+	 * @param nrofHosts How many hosts to create
+	 * @param nrofRounds How many update rounds to run
+	 * @param parallel Should the hosts be moved in parallel
+	 * @return Final locations of the hosts
+	 */
+	private List<Coord> moveHosts(int nrofHosts, int nrofRounds,
+			boolean parallel) {
+		SimClock.reset();
+		MovementModel.reset();
+		DTNHost.reset();
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.PARALLEL_MOVEMENT_S, "" + parallel);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.NROF_THREADS_S, "4");
+		ts.putSetting("rwp." + MovementModel.SPEED, "0.5, 10");
+		ts.putSetting("rwp." + MovementModel.WAIT_TIME, "0, 5");
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		MovementModel mmProto = new RandomWaypoint(new TestSettings("rwp"));
+		for (int i=0; i<nrofHosts; i++) {
+			utils.createHost(mmProto, null);
+		}
+
+		World w = new World(utils.getAllHosts(), 1000, 1000, upInterval,
+				new ArrayList<UpdateListener>(), false,
+				new ArrayList<EventQueue>());
+		try {
+			for (int i=0; i<nrofRounds; i++) {
+				w.update();
+			}
+		} finally {
+			w.shutdown();
+		}
+
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost h : utils.getAllHosts()) {
+			locations.add(h.getLocation().clone());
+		}
+		return locations;
+	}
+
 	/** Dummy scenario for providing test values for the World */
 	@SuppressWarnings("serial")
 	private class TestScenario extends core.SimScenario {
@@ -12,9 +12,26 @@ import core.SimClock;
 public class DTNSimTextUI extends DTNSimUI {
 	private long lastUpdateRt;	// real time of last ui update
 	private long startTime; // simulation start time
+	private String outputPrefix; // prefix of the printed lines
 	/** How often the UI view is updated (milliseconds) */
 	public static final long UI_UP_INTERVAL = 60000;
 
+	/**
+	 * Creates a new text UI
+	 */
+	public DTNSimTextUI() {
+		this("");
+	}
+
+	/**
+	 * Creates a new text UI whose printed lines start with the given prefix
+	 * (e.g., to tell apart the runs that are executed in parallel)
+	 * @param outputPrefix The prefix
+	 */
+	public DTNSimTextUI(String outputPrefix) {
+		this.outputPrefix = outputPrefix;
+	}
+
 	protected void runSim() {
 		double simTime = SimClock.getTime();
 		double endTime = scen.getEndTime();
@@ -28,6 +45,10 @@ public class DTNSimTextUI extends DTNSimUI {
 			try {
 				world.update();
 			} catch (AssertionError e) {
+				if (throwErrors) {
+					done();
+					throw e;
+				}
 				e.printStackTrace();
 				done();
 				return;
@@ -68,7 +89,7 @@ public class DTNSimTextUI extends DTNSimUI {
 	}
 
 	private void print(String txt) {
-		System.out.println(txt);
+		System.out.println(outputPrefix + txt);
 	}
 
 }
@@ -58,6 +58,8 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** are errors thrown to the caller instead of exiting the JVM */
+	protected boolean throwErrors;
 
 	/**
 	 * Constructor.
@@ -73,6 +75,17 @@ public abstract class DTNSimUI {
 	 * Starts the simulation.
 	 */
 	public void start() {
+		start(false);
+	}
+
+	/**
+	 * Starts the simulation.
+	 * @param throwErrors If true, errors are thrown to the caller (e.g.,
+	 * when this is one of the runs executed in parallel). If false, the
+	 * JVM exits if the simulation can't be started.
+	 */
+	public void start(boolean throwErrors) {
+		this.throwErrors = throwErrors;
 		initModel();
 		runSim();
 	}
@@ -114,11 +127,17 @@ public abstract class DTNSimUI {
 			world.warmupMovementModel(warmupTime);
 		}
 		catch (SettingsError se) {
+			if (throwErrors) {
+				throw se;
+			}
 			System.err.println("Can't start: error in configuration file(s)");
 			System.err.println(se.getMessage());
 			System.exit(-1);
 		}
 		catch (SimError er) {
+			if (throwErrors) {
+				throw er;
+			}
 			System.err.println("Can't start: " + er.getMessage());
 			System.err.println("Caught at " + er.getStackTrace()[0]);
 			System.exit(-1);
@@ -132,6 +151,9 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		if (this.world != null) {
+			this.world.shutdown();
+		}
 	}
 
 	/**
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int elements (e.g. node indexes of a graph) with double
+ * keys. The heap position of every element is stored, so the key of an
+ * element can be decreased without searching for the element. Elements with
+ * equal keys are ordered by the element value. The heap can be cleared and
+ * reused without allocating new arrays.
+ */
+public class IndexedHeap {
+	/** Position value of elements that are not in the heap */
+	private static final int NOT_IN_HEAP = -1;
+
+	/** the elements in heap order */
+	private int[] heap;
+	/** number of elements in the heap */
+	private int size;
+	/** keys by element */
+	private double[] keys;
+	/** heap positions by element (or NOT_IN_HEAP) */
+	private int[] positions;
+
+	/**
+	 * Creates a new, empty, heap
+	 * @param capacity Initial capacity (biggest element value + 1)
+	 */
+	public IndexedHeap(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.heap = new int[capacity];
+		this.keys = new double[capacity];
+		this.positions = new int[capacity];
+		Arrays.fill(positions, NOT_IN_HEAP);
+		this.size = 0;
+	}
+
+	/**
+	 * Removes all the elements from the heap
+	 */
+	public void clear() {
+		for (int i=0; i<size; i++) {
+			positions[heap[i]] = NOT_IN_HEAP;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Returns true if the heap has no elements
+	 * @return true if the heap is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns the number of elements in the heap
+	 * @return the number of elements in the heap
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the element is in the heap
+	 * @param element The element
+	 * @return true if the element is in the heap
+	 */
+	public boolean contains(int element) {
+		return element < positions.length && positions[element] >= 0;
+	}
+
+	/**
+	 * Adds an element to the heap or, if the element is already in the heap,
+	 * changes its key
+	 * @param element The element (a non-negative value)
+	 * @param key The key of the element
+	 */
+	public void put(int element, double key) {
+		if (contains(element)) {
+			int position = positions[element];
+			double oldKey = keys[element];
+			keys[element] = key;
+			if (key < oldKey) {
+				siftUp(position);
+			}
+			else {
+				siftDown(position);
+			}
+			return;
+		}
+
+		ensureCapacity(element);
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		keys[element] = key;
+		heap[size] = element;
+		positions[element] = size;
+		siftUp(size++);
+	}
+
+	/**
+	 * Removes and returns the element with the smallest key
+	 * @return The element with the smallest key
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int poll() {
+		if (size == 0) {
+			throw new IllegalStateException("Heap is empty");
+		}
+
+		int element = heap[0];
+		positions[element] = NOT_IN_HEAP;
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return element;
+	}
+
+	/**
+	 * Moves an element up in the heap to its place
+	 * @param position The heap position of the element
+	 */
+	private void siftUp(int position) {
+		int element = heap[position];
+		while (position > 0) {
+			int parentPosition = (position - 1) / 2;
+			int parent = heap[parentPosition];
+			if (!isBefore(element, parent)) {
+				break;
+			}
+			heap[position] = parent;
+			positions[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = element;
+		positions[element] = position;
+	}
+
+	/**
+	 * Moves an element down in the heap to its place
+	 * @param position The heap position of the element
+	 */
+	private void siftDown(int position) {
+		int element = heap[position];
+		int half = size / 2;
+		while (position < half) {
+			int childPosition = 2 * position + 1;
+			int child = heap[childPosition];
+			if (childPosition + 1 < size &&
+					isBefore(heap[childPosition + 1], child)) {
+				child = heap[++childPosition];
+			}
+			if (!isBefore(child, element)) {
+				break;
+			}
+			heap[position] = child;
+			positions[child] = position;
+			position = childPosition;
+		}
+		heap[position] = element;
+		positions[element] = position;
+	}
+
+	/**
+	 * Returns true if element1 should be before element2 in the heap
+	 */
+	private boolean isBefore(int element1, int element2) {
+		double key1 = keys[element1];
+		double key2 = keys[element2];
+		if (key1 != key2) {
+			return key1 < key2;
+		}
+		return element1 < element2;
+	}
+
+	/**
+	 * Makes sure that the element arrays have room for an element
+	 * @param element The element
+	 */
+	private void ensureCapacity(int element) {
+		if (element < positions.length) {
+			return;
+		}
+		int oldCapacity = positions.length;
+		int capacity = Math.max(element + 1, oldCapacity * 2);
+		keys = Arrays.copyOf(keys, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		Arrays.fill(positions, oldCapacity, capacity, NOT_IN_HEAP);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with non-negative int keys (e.g. message ID indexes, see
+ * {@link core.Message#getIdIndex()}). The keys are stored in a primitive
+ * array with open addressing, so no key objects are created and a lookup
+ * doesn't compare strings or follow entry references. Null values are
+ * not allowed.
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> {
+	/** Key value of free slots */
+	private static final int FREE = -1;
+	/** Initial number of slots */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** keys by slot (or FREE) */
+	private int[] keys;
+	/** values by slot */
+	private Object[] values;
+	/** number of keys in the map */
+	private int size;
+
+	/**
+	 * Creates a new, empty, map
+	 */
+	public IntHashMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.keys, FREE);
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the map doesn't contain the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = slotOf(key);
+		return keys[slot] == FREE ? null : (V)values[slot];
+	}
+
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return true if the map contains the key
+	 */
+	public boolean containsKey(int key) {
+		return keys[slotOf(key)] != FREE;
+	}
+
+	/**
+	 * Sets the value of a key
+	 * @param key The key (must not be negative)
+	 * @param value The value (must not be null)
+	 * @return The previous value of the key or null if the map didn't
+	 * contain the key
+	 * @throws IllegalArgumentException if the key is negative or the
+	 * value is null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (key < 0 || value == null) {
+			throw new IllegalArgumentException("Invalid key " + key +
+					" or value " + value);
+		}
+
+		int slot = slotOf(key);
+		V old = (V)values[slot];
+		values[slot] = value;
+		if (keys[slot] == FREE) {
+			keys[slot] = key;
+			size++;
+			if (size * 2 > keys.length) {
+				rehash(keys.length * 2);
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key to remove
+	 * @return The value of the removed key or null if the map didn't
+	 * contain the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = slotOf(key);
+		if (keys[slot] == FREE) {
+			return null;
+		}
+
+		V old = (V)values[slot];
+		removeSlot(slot);
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return the number of keys in the map
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the map has no keys
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the keys from the map
+	 */
+	public void clear() {
+		Arrays.fill(this.keys, FREE);
+		Arrays.fill(this.values, null);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the keys of the map in a new array (in no particular order)
+	 * @return The keys
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key != FREE) {
+				result[n++] = key;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the slot of a key: the slot where the key is or the free slot
+	 * where it would be added
+	 * @param key The key
+	 * @return The slot of the key
+	 */
+	private int slotOf(int key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empties a slot and moves the following keys of the same probe
+	 * sequence backwards so that they can still be found
+	 * @param slot The slot to empty
+	 */
+	private void removeSlot(int slot) {
+		int mask = keys.length - 1;
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (keys[next] != FREE) {
+			int home = hash(keys[next]) & mask;
+			/* move the key if its home slot isn't between free and next */
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[free] = FREE;
+		values[free] = null;
+		size--;
+	}
+
+	/**
+	 * Moves the keys to new arrays
+	 * @param capacity Number of slots in the new arrays (power of two)
+	 */
+	private void rehash(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = new int[capacity];
+		Arrays.fill(this.keys, FREE);
+		this.values = new Object[capacity];
+
+		for (int i=0; i<oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of a key so that consecutive keys don't form long
+	 * probe sequences
+	 * @param key The key
+	 * @return The hash of the key
+	 */
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
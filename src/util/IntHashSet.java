@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Hash set of non-negative int values (e.g. message ID indexes, see
+ * {@link core.Message#getIdIndex()}). The values are stored in a primitive
+ * array with open addressing like the keys of {@link IntHashMap}. The array
+ * shrinks when most of the values have been removed.
+ */
+public class IntHashSet {
+	/** Value of free slots */
+	private static final int FREE = -1;
+	/** Initial number of slots */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** values by slot (or FREE) */
+	private int[] slots;
+	/** number of values in the set */
+	private int size;
+
+	/**
+	 * Creates a new, empty, set
+	 */
+	public IntHashSet() {
+		this.slots = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.slots, FREE);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns true if the set contains the value
+	 * @param value The value
+	 * @return true if the set contains the value
+	 */
+	public boolean contains(int value) {
+		return slots[slotOf(value)] != FREE;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value to add (must not be negative)
+	 * @return true if the value was added, false if the set already
+	 * contained it
+	 * @throws IllegalArgumentException if the value is negative
+	 */
+	public boolean add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Invalid value " + value);
+		}
+
+		int slot = slotOf(value);
+		if (slots[slot] != FREE) {
+			return false;
+		}
+
+		slots[slot] = value;
+		size++;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the values of another set to this set
+	 * @param other The other set
+	 */
+	public void addAll(IntHashSet other) {
+		if (other == this) {
+			return;
+		}
+		for (int value : other.slots) {
+			if (value != FREE) {
+				add(value);
+			}
+		}
+	}
+
+	/**
+	 * Removes a value from the set
+	 * @param value The value to remove
+	 * @return true if the value was removed, false if the set didn't
+	 * contain it
+	 */
+	public boolean remove(int value) {
+		int mask = slots.length - 1;
+		int free = slotOf(value);
+		if (slots[free] == FREE) {
+			return false;
+		}
+
+		/* move the following values of the probe sequence backwards */
+		int next = (free + 1) & mask;
+		while (slots[next] != FREE) {
+			int home = IntHashMap.hash(slots[next]) & mask;
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				slots[free] = slots[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		slots[free] = FREE;
+		size--;
+		if (size * 8 < slots.length && slots.length > INITIAL_CAPACITY) {
+			rehash(slots.length / 2); /* don't keep the memory of a peak */
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return the number of values in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the set has no values
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the values from the set
+	 */
+	public void clear() {
+		Arrays.fill(this.slots, FREE);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the values of the set in a new array (in no particular order)
+	 * @return The values
+	 */
+	public int[] toArray() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int value : slots) {
+			if (value != FREE) {
+				result[n++] = value;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the slot of a value: the slot where the value is or the free
+	 * slot where it would be added
+	 * @param value The value
+	 * @return The slot of the value
+	 */
+	private int slotOf(int value) {
+		int mask = slots.length - 1;
+		int slot = IntHashMap.hash(value) & mask;
+		while (slots[slot] != FREE && slots[slot] != value) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Moves the values to a new array
+	 * @param capacity Number of slots in the new array (power of two)
+	 */
+	private void rehash(int capacity) {
+		int[] old = this.slots;
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, FREE);
+
+		for (int value : old) {
+			if (value != FREE) {
+				slots[slotOf(value)] = value;
+			}
+		}
+	}
+}
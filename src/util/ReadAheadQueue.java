@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.DTNSim;
+import core.SimError;
+
+/**
+ * Reads items (e.g., batches of parsed input) from a source in a background
+ * thread into a bounded queue, so that reading and parsing the input
+ * overlaps the simulation. The items are returned in the same order as the
+ * source gives them. Errors of the source are thrown from {@link #take()}.
+ * All the reader threads of a simulation run are stopped when the
+ * simulator is reset.
+ * @param <T> Type of the items
+ */
+public class ReadAheadQueue<T> {
+	/** Marker for the end of the items */
+	private static final Object END = new Object();
+
+	/** the queues of the current run */
+	private static List<ReadAheadQueue<?>> queues;
+
+	static {
+		DTNSim.registerForReset(ReadAheadQueue.class.getCanonicalName());
+		reset();
+	}
+
+	private BlockingQueue<Object> items;
+	private Thread readerThread;
+	/** has the end of the items been reached */
+	private boolean finished;
+
+	/**
+	 * Source of the items
+	 * @param <T> Type of the items
+	 */
+	public interface Source<T> {
+		/**
+		 * Reads the next item. Called from the reader thread.
+		 * @return The next item or null if there are no more items
+		 */
+		public T read();
+	}
+
+	/**
+	 * Creates a new queue and starts reading the items
+	 * @param name Name of the reader thread
+	 * @param source Source of the items
+	 * @param capacity Maximum number of items read ahead
+	 */
+	public ReadAheadQueue(String name, final Source<T> source, int capacity) {
+		this.items = new ArrayBlockingQueue<Object>(capacity);
+		this.finished = false;
+		this.readerThread = new Thread(name) {
+			@Override
+			public void run() {
+				try {
+					T item;
+					while ((item = source.read()) != null) {
+						items.put(item);
+					}
+					items.put(END);
+				} catch (InterruptedException e) {
+					return; // stopped
+				} catch (Throwable t) {
+					try {
+						items.put(new Failure(t));
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		this.readerThread.setDaemon(true);
+
+		synchronized (ReadAheadQueue.class) {
+			queues.add(this);
+		}
+		this.readerThread.start();
+	}
+
+	/**
+	 * Returns the next item, waiting for it to be read if necessary
+	 * @return The next item or null if there are no more items
+	 * @throws RuntimeException or Error if the source failed with one, or
+	 * SimError wrapping any other failure of the source
+	 */
+	public T take() {
+		if (finished) {
+			return null;
+		}
+
+		Object item = null;
+		boolean interrupted = false;
+		while (item == null) {
+			try {
+				item = items.take();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (item == END) {
+			finished = true;
+			return null;
+		}
+		if (item instanceof Failure) {
+			finished = true;
+			Throwable t = ((Failure)item).cause;
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException)t;
+			}
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+			SimError error = new SimError("Reading ahead failed: " + t,
+					t instanceof Exception ? (Exception)t : null);
+			error.initCause(t);
+			throw error;
+		}
+
+		@SuppressWarnings("unchecked") // only T items and markers are queued
+		T next = (T)item;
+		return next;
+	}
+
+	/**
+	 * Stops the reader thread. No more items are read after this.
+	 */
+	public void stop() {
+		readerThread.interrupt();
+		finished = true;
+	}
+
+	/**
+	 * Stops the reader threads of all queues
+	 */
+	public static synchronized void reset() {
+		if (queues != null) {
+			for (ReadAheadQueue<?> q : queues) {
+				q.stop();
+			}
+		}
+		queues = new ArrayList<ReadAheadQueue<?>>();
+	}
+
+	/**
+	 * Error thrown by the source
+	 */
+	private static class Failure {
+		private Throwable cause;
+
+		private Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+}